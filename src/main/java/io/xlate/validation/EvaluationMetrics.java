@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation;
+
+import java.util.Map;
+
+import io.xlate.validation.constraints.EvaluationBudget;
+import io.xlate.validation.constraints.ResultCache;
+import io.xlate.validation.constraints.Snapshot;
+import io.xlate.validation.internal.constraintvalidators.EvaluationCounters;
+
+/**
+ * Counters recorded while evaluating constraints, for export to an
+ * application's metrics or monitoring system.
+ *
+ * <p>
+ * Constraints are identified by their expression, statement, query or
+ * patterns only. Counts of constraints declared with the same expression (for
+ * example, on different classes) are merged.
+ *
+ * @since 1.6
+ */
+public final class EvaluationMetrics {
+
+    private EvaluationMetrics() {
+    }
+
+    /**
+     * The number of evaluations that exceeded their {@link EvaluationBudget},
+     * for each constraint having a budget. Constraints are identified by
+     * their expression (or by their <code>when</code> expression when using a
+     * predicate).
+     *
+     * @return a snapshot of the counts, sorted by expression
+     */
+    public static Map<String, Long> getBudgetExceededCounts() {
+        return EvaluationCounters.getBudgetExceededCounts();
+    }
+
+    /**
+     * The number of evaluations of the constraint(s) with the expression that
+     * exceeded their {@link EvaluationBudget}.
+     *
+     * @param expression
+     *            the expression of the constraint
+     * @return the count, zero when the expression has no budget
+     */
+    public static long getBudgetExceededCount(String expression) {
+        return getBudgetExceededCounts().getOrDefault(expression, 0L);
+    }
+
+    /**
+     * Reset the counts of evaluations exceeding their budget to zero.
+     */
+    public static void resetBudgetExceededCounts() {
+        EvaluationCounters.resetBudgetExceededCounts();
+    }
+
+    /**
+     * The number of validations answered by a {@link ResultCache}, for each
+     * constraint having a cache. Constraints are identified by their
+     * expression (<code>@Expression</code>), their SQL statement
+     * (<code>@JdbcStatement</code>), or their list of patterns
+     * (<code>@DateTime</code>).
+     *
+     * @return a snapshot of the counts, sorted by constraint
+     */
+    public static Map<String, Long> getResultCacheHitCounts() {
+        return EvaluationCounters.getResultCacheHitCounts();
+    }
+
+    /**
+     * The number of validations not answered by a {@link ResultCache}, for
+     * each constraint having a cache, identified as by
+     * {@link #getResultCacheHitCounts()}.
+     *
+     * @return a snapshot of the counts, sorted by constraint
+     */
+    public static Map<String, Long> getResultCacheMissCounts() {
+        return EvaluationCounters.getResultCacheMissCounts();
+    }
+
+    /**
+     * Reset the counts of result cache hits and misses to zero.
+     */
+    public static void resetResultCacheCounts() {
+        EvaluationCounters.resetResultCacheCounts();
+    }
+
+    /**
+     * The number of failed refreshes of each {@link Snapshot}, identified by
+     * its query. The keys loaded by the last successful refresh remain in use
+     * after a failure.
+     *
+     * @return a snapshot of the counts, sorted by query
+     */
+    public static Map<String, Long> getSnapshotRefreshFailureCounts() {
+        return EvaluationCounters.getSnapshotRefreshFailureCounts();
+    }
+}
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import jakarta.validation.ConstraintDeclarationException;
+import jakarta.validation.ValidationException;
+
+import io.xlate.validation.constraints.ELResolverType;
+import io.xlate.validation.constraints.Expression;
+import io.xlate.validation.constraints.Expression.ExceptionalValue;
+import io.xlate.validation.internal.constraintvalidators.ExpressionRule;
+import io.xlate.validation.spi.FunctionLibrary;
+
+/**
+ * Evaluates a boolean expression against arbitrary targets outside of Bean
+ * Validation, using the same engine, imports, and function libraries as the
+ * {@link Expression @Expression} constraint.
+ *
+ * <p>
+ * The expression is parsed once when the evaluator is created. Evaluators are
+ * thread-safe and intended to be created once and reused, e.g. to filter a
+ * stream or a batch of records.
+ *
+ * <pre>
+ * ExpressionEvaluator inRange = ExpressionEvaluator.builder("self.low le self.high")
+ *                                                  .nullValue(ExceptionalValue.FALSE)
+ *                                                  .build();
+ *
+ * long count = ranges.stream().filter(inRange).count();
+ * </pre>
+ *
+ * @since 1.6
+ */
+public final class ExpressionEvaluator implements Predicate<Object> {
+
+    private final Expression constraint;
+    private final ExpressionRule rule;
+
+    private ExpressionEvaluator(Expression constraint) {
+        this.constraint = constraint;
+        this.rule = ExpressionRule.of(constraint);
+    }
+
+    /**
+     * Create an evaluator for the expression using the defaults of
+     * {@link Expression @Expression}.
+     *
+     * @param expression
+     *            the expression to evaluate, referring to the target as
+     *            {@code self}
+     * @return a new evaluator
+     * @throws ConstraintDeclarationException
+     *             when the expression is not valid
+     */
+    public static ExpressionEvaluator of(String expression) {
+        return builder(expression).build();
+    }
+
+    /**
+     * Create an evaluator for an existing constraint, e.g. one read from a
+     * class by reflection. The constraint's {@code value}, {@code when},
+     * {@code predicate}, imports, function libraries, resolvers, and
+     * exceptional values apply as they would during Bean Validation.
+     *
+     * @param constraint
+     *            the constraint to evaluate
+     * @return a new evaluator
+     * @throws ConstraintDeclarationException
+     *             when the constraint is not valid
+     */
+    public static ExpressionEvaluator of(Expression constraint) {
+        return new ExpressionEvaluator(Objects.requireNonNull(constraint, "constraint"));
+    }
+
+    /**
+     * Begin building an evaluator for the expression.
+     *
+     * @param expression
+     *            the expression to evaluate
+     * @return a new builder
+     */
+    public static Builder builder(String expression) {
+        return new Builder(Objects.requireNonNull(expression, "expression"));
+    }
+
+    /**
+     * Evaluate the expression for the target.
+     *
+     * @param target
+     *            the object referred to by the expression's target name
+     * @return true when the expression (and {@code when} condition, if any)
+     *         is satisfied by the target, otherwise false
+     * @throws ValidationException
+     *             when the expression can not be evaluated and no
+     *             {@code exceptionalValue} was given
+     */
+    @Override
+    public boolean test(Object target) {
+        return rule.isValid(target);
+    }
+
+    /**
+     * @return the constraint describing the expression and its options
+     */
+    public Expression getConstraint() {
+        return constraint;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionEvaluator[" + constraint.value() + "]";
+    }
+
+    /**
+     * Builder of {@link ExpressionEvaluator}. Each option corresponds to the
+     * {@link Expression @Expression} attribute of the same name and has the
+     * same default.
+     */
+    public static final class Builder {
+        private final Map<String, Object> values = new HashMap<>();
+
+        Builder(String expression) {
+            values.put("value", expression);
+        }
+
+        /**
+         * @see Expression#when()
+         */
+        public Builder when(String when) {
+            return set("when", when);
+        }
+
+        /**
+         * @see Expression#targetName()
+         */
+        public Builder targetName(String targetName) {
+            return set("targetName", targetName);
+        }
+
+        /**
+         * @see Expression#packageImports()
+         */
+        public Builder packageImports(String... packageImports) {
+            return set("packageImports", packageImports.clone());
+        }
+
+        /**
+         * @see Expression#classImports()
+         */
+        public Builder classImports(String... classImports) {
+            return set("classImports", classImports.clone());
+        }
+
+        /**
+         * @see Expression#staticImports()
+         */
+        public Builder staticImports(String... staticImports) {
+            return set("staticImports", staticImports.clone());
+        }
+
+        /**
+         * @see Expression#functionLibraries()
+         */
+        @SafeVarargs
+        public final Builder functionLibraries(Class<? extends FunctionLibrary>... functionLibraries) {
+            // Copied element-wise, the varargs array itself must not escape
+            Class<?>[] libraries = new Class<?>[functionLibraries.length];
+
+            for (int i = 0; i < libraries.length; i++) {
+                libraries[i] = functionLibraries[i];
+            }
+
+            return set("functionLibraries", libraries);
+        }
+
+        /**
+         * @see Expression#resolvers()
+         */
+        public Builder resolvers(ELResolverType... resolvers) {
+            return set("resolvers", resolvers.clone());
+        }
+
+        /**
+         * @see Expression#exceptionalValue()
+         */
+        public Builder exceptionalValue(ExceptionalValue exceptionalValue) {
+            return set("exceptionalValue", exceptionalValue);
+        }
+
+        /**
+         * @see Expression#nullValue()
+         */
+        public Builder nullValue(ExceptionalValue nullValue) {
+            return set("nullValue", nullValue);
+        }
+
+        /**
+         * @see Expression#compile()
+         */
+        public Builder compile(boolean compile) {
+            return set("compile", compile);
+        }
+
+        Builder set(String name, Object value) {
+            values.put(name, Objects.requireNonNull(value, name));
+            return this;
+        }
+
+        /**
+         * Parse the expression and create the evaluator.
+         *
+         * @return a new evaluator
+         * @throws ConstraintDeclarationException
+         *             when the expression or options are not valid
+         */
+        public ExpressionEvaluator build() {
+            return new ExpressionEvaluator(newConstraint(new HashMap<>(values)));
+        }
+
+        /**
+         * Implement the annotation with the given values, using the declared
+         * defaults for attributes not set. Equality and hash code follow the
+         * contract of {@link java.lang.annotation.Annotation Annotation}.
+         */
+        static Expression newConstraint(Map<String, Object> values) {
+            return (Expression) Proxy.newProxyInstance(Expression.class.getClassLoader(),
+                                                       new Class<?>[] { Expression.class },
+                                                       (proxy, method, args) -> invoke(values, proxy, method, args));
+        }
+
+        static Object invoke(Map<String, Object> values, Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+            case "annotationType":
+                return Expression.class;
+            case "equals":
+                return proxy == args[0] || isEqual(values, args[0]);
+            case "hashCode":
+                return hashCode(values);
+            case "toString":
+                return "@" + Expression.class.getName() + values;
+            default:
+                Object value = valueOf(values, method);
+                // Like the annotations implemented by the JDK, arrays are copied for each caller
+                return value instanceof Object[] ? ((Object[]) value).clone() : value;
+            }
+        }
+
+        static Object valueOf(Map<String, Object> values, Method member) {
+            Object value = values.get(member.getName());
+            return value != null ? value : member.getDefaultValue();
+        }
+
+        static boolean isEqual(Map<String, Object> values, Object other) {
+            if (!(other instanceof Expression)) {
+                return false;
+            }
+
+            for (Method member : Expression.class.getDeclaredMethods()) {
+                Object otherValue;
+
+                try {
+                    otherValue = member.invoke(other);
+                } catch (ReflectiveOperationException e) {
+                    return false;
+                }
+
+                if (!Objects.deepEquals(valueOf(values, member), otherValue)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        static int hashCode(Map<String, Object> values) {
+            int hash = 0;
+
+            for (Method member : Expression.class.getDeclaredMethods()) {
+                Object value = valueOf(values, member);
+                int valueHash = value instanceof Object[] ? Arrays.hashCode((Object[]) value) : value.hashCode();
+                hash += (127 * member.getName().hashCode()) ^ valueHash;
+            }
+
+            return hash;
+        }
+    }
+}
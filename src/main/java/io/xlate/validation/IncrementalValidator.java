@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import jakarta.validation.groups.Default;
+
+import io.xlate.validation.constraints.Expression;
+import io.xlate.validation.internal.constraintvalidators.ExpressionRule;
+
+/**
+ * Validates the {@link Expression @Expression} constraints of a single bean
+ * repeatedly as it is modified, re-evaluating only the constraints affected
+ * by the properties that changed since the previous validation.
+ *
+ * <p>
+ * The properties read by each constraint are determined when the constraints
+ * of the bean's class are first used, by analyzing the constraint's
+ * expressions. Constraints declared on a field or getter depend on that
+ * property only. Constraints whose dependencies can not be determined (e.g.
+ * those using a predicate, or passing the bean itself to a method) are
+ * re-evaluated by every validation.
+ *
+ * <p>
+ * Constraints are evaluated directly rather than by the Bean Validation
+ * provider: group sequences, cascaded validation, container element
+ * constraints, and message interpolation are not supported. Instances are
+ * not thread-safe.
+ *
+ * <pre>
+ * IncrementalValidator&lt;Order&gt; validator = IncrementalValidator.of(order);
+ * validator.validate(); // All constraints
+ * order.setQuantity(5);
+ * validator.validate(Set.of("quantity")); // Only constraints reading quantity
+ * </pre>
+ *
+ * @param <T>
+ *            the type of the bean
+ *
+ * @since 1.6
+ */
+public final class IncrementalValidator<T> {
+
+    /**
+     * A constraint that was not satisfied by the bean.
+     */
+    public static final class Violation {
+        private final Expression constraint;
+        private final String property;
+
+        Violation(Expression constraint, String property) {
+            this.constraint = constraint;
+            this.property = property;
+        }
+
+        /**
+         * @return the constraint that was not satisfied
+         */
+        public Expression getConstraint() {
+            return constraint;
+        }
+
+        /**
+         * @return the name of the property on which the constraint is
+         *         declared, or null when declared on the bean's class
+         */
+        public String getProperty() {
+            return property;
+        }
+
+        /**
+         * @return the constraint's (uninterpolated) message
+         */
+        public String getMessage() {
+            return constraint.message();
+        }
+
+        @Override
+        public String toString() {
+            return (property != null ? property + ": " : "") + constraint.message();
+        }
+    }
+
+    private final T bean;
+    private final List<ExpressionRule> rules;
+    private final Boolean[] results;
+    private int evaluated;
+
+    private IncrementalValidator(T bean, List<ExpressionRule> rules) {
+        this.bean = bean;
+        this.rules = rules;
+        this.results = new Boolean[rules.size()];
+    }
+
+    /**
+     * Create a validator for the constraints of the bean in the given groups,
+     * or the {@link Default} group when no groups are given.
+     *
+     * @param <T>
+     *            the type of the bean
+     * @param bean
+     *            the bean to validate
+     * @param groups
+     *            the groups of the constraints to validate
+     * @return the validator
+     * @throws jakarta.validation.ConstraintDeclarationException
+     *             when a constraint of the bean's class is not valid
+     */
+    public static <T> IncrementalValidator<T> of(T bean, Class<?>... groups) {
+        Objects.requireNonNull(bean, "bean");
+        Set<Class<?>> memberOf = new HashSet<>(groups.length > 0 ? Arrays.asList(groups) : List.of(Default.class));
+        List<ExpressionRule> rules = ExpressionRule.getRules(bean.getClass())
+                .stream()
+                .filter(rule -> rule.isMember(memberOf))
+                .collect(Collectors.toList());
+        return new IncrementalValidator<>(bean, rules);
+    }
+
+    /**
+     * @return the bean validated
+     */
+    public T getBean() {
+        return bean;
+    }
+
+    /**
+     * Evaluate all of the constraints.
+     *
+     * @return the violated constraints
+     */
+    public List<Violation> validate() {
+        Arrays.fill(results, null);
+        return validate(Collections.emptySet());
+    }
+
+    /**
+     * Evaluate the constraints depending on any of the changed properties (and
+     * those never evaluated), re-using the previous results of the other
+     * constraints.
+     *
+     * @param changedProperties
+     *            names of the bean's properties changed since the previous
+     *            validation
+     * @return the violated constraints
+     */
+    public List<Violation> validate(Collection<String> changedProperties) {
+        List<Violation> violations = new ArrayList<>();
+        evaluated = 0;
+
+        try {
+            for (int i = 0; i < results.length; i++) {
+                ExpressionRule rule = rules.get(i);
+
+                if (results[i] == null || isAffected(rule.getDependencies(), changedProperties)) {
+                    results[i] = rule.isValid(bean);
+                    evaluated++;
+                }
+
+                if (!results[i]) {
+                    violations.add(new Violation(rule.getConstraint(), rule.getProperty()));
+                }
+            }
+        } finally {
+            // Shared constraints evaluated partially must not re-use values in a later validation
+            ExpressionRule.endSharedEvaluation();
+        }
+
+        return violations;
+    }
+
+    static boolean isAffected(Set<String> dependencies, Collection<String> changedProperties) {
+        if (dependencies == null) {
+            return true;
+        }
+
+        for (String property : changedProperties) {
+            if (dependencies.contains(property)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of constraints evaluated by the last validation,
+     *         i.e. those for which the previous result could not be used
+     */
+    public int getEvaluatedCount() {
+        return evaluated;
+    }
+}
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import jakarta.validation.groups.Default;
+
+import io.xlate.validation.constraints.BatchQuery;
+import io.xlate.validation.constraints.JdbcStatement;
+import io.xlate.validation.internal.constraintvalidators.JdbcStatementRule;
+
+/**
+ * Validates the {@link JdbcStatement @JdbcStatement} constraints of many
+ * beans together, evaluating each constraint's parameters for every bean and
+ * resolving the distinct keys (parameter values) with as few database
+ * round-trips as possible, rather than executing the constraint's statement
+ * once for each bean.
+ *
+ * <p>
+ * The keys of each constraint are resolved using the constraint's snapshot,
+ * filter, and result cache when enabled. The remaining keys are given to the
+ * constraint's {@link JdbcStatement#batch() batch query} in chunks, or, when
+ * the constraint has no batch query, to the constraint's statement once for
+ * each distinct key. All of the keys of a constraint are resolved using a
+ * single connection.
+ *
+ * <p>
+ * Constraints are evaluated directly rather than by the Bean Validation
+ * provider: group sequences, cascaded validation, container element
+ * constraints, and message interpolation are not supported.
+ *
+ * <pre>
+ * List&lt;JdbcBatchValidator.Violation&lt;Order&gt;&gt; violations = JdbcBatchValidator.validate(orders);
+ * </pre>
+ *
+ * @see BatchQuery
+ * @since 1.6
+ */
+public final class JdbcBatchValidator {
+
+    /**
+     * A constraint that was not satisfied by a bean.
+     *
+     * @param <T>
+     *            the type of the bean
+     */
+    public static final class Violation<T> {
+        private final T bean;
+        private final JdbcStatement constraint;
+        private final String property;
+
+        Violation(T bean, JdbcStatement constraint, String property) {
+            this.bean = bean;
+            this.constraint = constraint;
+            this.property = property;
+        }
+
+        /**
+         * @return the bean that did not satisfy the constraint
+         */
+        public T getBean() {
+            return bean;
+        }
+
+        /**
+         * @return the constraint that was not satisfied
+         */
+        public JdbcStatement getConstraint() {
+            return constraint;
+        }
+
+        /**
+         * @return the name of the property on which the constraint is
+         *         declared, or null when declared on the bean's class
+         */
+        public String getProperty() {
+            return property;
+        }
+
+        /**
+         * @return the constraint's (uninterpolated) message
+         */
+        public String getMessage() {
+            return constraint.message();
+        }
+
+        @Override
+        public String toString() {
+            return (property != null ? property + ": " : "") + constraint.message();
+        }
+    }
+
+    private JdbcBatchValidator() {
+    }
+
+    /**
+     * Validate the constraints of the beans in the given groups, or the
+     * {@link Default} group when no groups are given.
+     *
+     * @param <T>
+     *            the type of the beans
+     * @param beans
+     *            the beans to validate
+     * @param groups
+     *            the groups of the constraints to validate
+     * @return the violated constraints, ordered by the position of the bean
+     *         in the collection
+     * @throws jakarta.validation.ConstraintDeclarationException
+     *             when a constraint of a bean's class is not valid
+     * @throws jakarta.validation.ValidationException
+     *             when a constraint can not be evaluated
+     */
+    public static <T> List<Violation<T>> validate(Collection<? extends T> beans, Class<?>... groups) {
+        Objects.requireNonNull(beans, "beans");
+        Set<Class<?>> memberOf = new HashSet<>(groups.length > 0 ? Arrays.asList(groups) : List.of(Default.class));
+        List<T> targets = new ArrayList<>(beans);
+        Map<JdbcStatementRule, List<Integer>> positions = new IdentityHashMap<>();
+        Map<JdbcStatementRule, List<List<Object>>> keys = new IdentityHashMap<>();
+        List<JdbcStatementRule> rules = new ArrayList<>();
+
+        for (int i = 0; i < targets.size(); i++) {
+            T bean = Objects.requireNonNull(targets.get(i), "bean");
+
+            for (JdbcStatementRule rule : JdbcStatementRule.getRules(bean.getClass())) {
+                if (!rule.isMember(memberOf)) {
+                    continue;
+                }
+
+                Object[] values = rule.getParameterValues(bean);
+
+                if (values != null) {
+                    if (!positions.containsKey(rule)) {
+                        rules.add(rule);
+                    }
+                    positions.computeIfAbsent(rule, r -> new ArrayList<>()).add(i);
+                    keys.computeIfAbsent(rule, r -> new ArrayList<>()).add(Arrays.asList(values));
+                }
+            }
+        }
+
+        Map<Integer, List<Violation<T>>> violations = new TreeMap<>();
+
+        for (JdbcStatementRule rule : rules) {
+            List<List<Object>> ruleKeys = keys.get(rule);
+            List<Integer> rulePositions = positions.get(rule);
+            Map<List<Object>, Boolean> results = rule.validate(new LinkedHashSet<>(ruleKeys));
+
+            for (int k = 0; k < ruleKeys.size(); k++) {
+                if (!Boolean.TRUE.equals(results.get(ruleKeys.get(k)))) {
+                    int position = rulePositions.get(k);
+                    violations.computeIfAbsent(position, p -> new ArrayList<>())
+                        .add(new Violation<>(targets.get(position), rule.getConstraint(), rule.getProperty()));
+                }
+            }
+        }
+
+        List<Violation<T>> result = new ArrayList<>();
+        violations.values().forEach(result::addAll);
+        return result;
+    }
+}
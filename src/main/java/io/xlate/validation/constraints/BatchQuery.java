@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.constraints;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Configuration of the (optional) set-based query used by a
+ * {@link JdbcStatement} constraint when validating many beans at once with
+ * {@link io.xlate.validation.JdbcBatchValidator}, given by the constraint's
+ * <code>batch</code> attribute. Rather than executing the constraint's
+ * statement for each bean, the distinct values of the constraint's
+ * parameters are given to the batch query in chunks of up to
+ * {@link #size()} keys.
+ *
+ * <p>
+ * The marker <code>{keys}</code> in the query is replaced by a list of
+ * parameter markers, one for each key of a chunk (parenthesized when the
+ * constraint has more than one parameter). The query selects the valid keys
+ * among those given, with one column for each parameter in the same order.
+ * For example:
+ *
+ * <pre>
+ * SELECT CODE FROM CURRENCY WHERE CODE IN ({keys})
+ * SELECT ID, VERSION FROM DOCUMENT WHERE (ID, VERSION) IN ({keys})
+ * </pre>
+ *
+ * <p>
+ * The selected keys are matched with the given keys according to the SQL
+ * types of the query's columns, as for a {@link Snapshot}. Keys with values
+ * the database would have to convert to compare with a column (e.g. a String
+ * with a numeric column) are validated by executing the constraint's
+ * statement. The number of columns is checked when the constraint is
+ * initialized if the driver describes the results of the prepared query,
+ * otherwise when the query is first executed.
+ *
+ * @since 1.6
+ */
+@Target({})
+@Retention(RUNTIME)
+@Documented
+public @interface BatchQuery {
+
+    /**
+     * The marker replaced by the keys of a chunk.
+     */
+    String KEYS = "{keys}";
+
+    /**
+     * The query selecting the valid keys among those given. The default, an
+     * empty query, executes the constraint's statement for each distinct key.
+     *
+     * @return the query selecting the valid keys
+     */
+    String value() default "";
+
+    /**
+     * The maximum number of keys given to each execution of the query.
+     *
+     * @return the maximum number of keys of a chunk
+     */
+    int size() default 500;
+}
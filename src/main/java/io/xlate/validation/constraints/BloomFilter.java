@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.constraints;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Configuration of the (optional) Bloom filter used by a {@link JdbcStatement}
+ * constraint to reject values without executing the constraint's statement,
+ * given by the constraint's <code>filter</code> attribute. The filter is
+ * built from all valid keys, selected by the filter's query, when the
+ * constraint is initialized and rebuilt after each refresh interval.
+ * Values not found in the filter are invalid. Values possibly found in the
+ * filter (including a fraction of invalid values given by the
+ * {@link #falsePositiveRate()}) are validated by executing the statement.
+ *
+ * <p>
+ * The filter requires about <code>-expectedKeys * ln(falsePositiveRate) /
+ * ln(2)<sup>2</sup></code> bits, e.g. 1.2 MB per million keys with the
+ * default false positive rate of 1%. Keys added to the database after the
+ * filter is built are rejected until the next refresh.
+ *
+ * <p>
+ * Values are compared with the keys according to the SQL types of the
+ * filter query's columns, as for a {@link Snapshot}. Values the database would
+ * have to convert to compare with a column (e.g. a String with a numeric
+ * column) are always validated by executing the statement.
+ *
+ * @since 1.6
+ */
+@Target({})
+@Retention(RUNTIME)
+@Documented
+public @interface BloomFilter {
+
+    /**
+     * The query selecting all valid keys, with one column for each of the
+     * constraint's parameters in the same order. The default, an empty
+     * query, disables the filter.
+     *
+     * @return the query selecting all valid keys
+     */
+    String value() default "";
+
+    /**
+     * The number of keys the filter is sized for. The false positive rate
+     * increases when more keys are loaded.
+     *
+     * @return the expected number of keys
+     */
+    long expectedKeys() default 1_000_000;
+
+    /**
+     * The fraction of invalid values (between zero and one, exclusive)
+     * expected to be found in the filter when loaded with the
+     * {@link #expectedKeys()}.
+     *
+     * @return the false positive rate
+     */
+    double falsePositiveRate() default 0.01;
+
+    /**
+     * The time between builds of the filter, in {@link #refreshUnit()}s. The
+     * default, zero, builds the filter only once.
+     *
+     * @return the time between builds of the filter
+     */
+    long refresh() default 0;
+
+    /**
+     * The unit of {@link #refresh()}, one with an exact duration (i.e. up to
+     * {@link ChronoUnit#DAYS}).
+     *
+     * @return the unit of {@link #refresh()}
+     */
+    ChronoUnit refreshUnit() default ChronoUnit.MINUTES;
+}
@@ -103,6 +103,17 @@ public @interface DateTime {
      */
     ResolverStyle resolverStyle() default ResolverStyle.SMART;
 
+    /**
+     * Cache of the results of this constraint, disabled by default. Results
+     * are always remembered for the characters of the value, regardless of
+     * the {@link ResultCache#key() key type}, so repeatedly validated values
+     * are only parsed once and a mutated sequence is parsed again.
+     *
+     * @return the configuration of the result cache
+     * @since 1.6
+     */
+    ResultCache cache() default @ResultCache;
+
     /**
      * Defines several {@link DateTime} annotations on the same element.
      *
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.constraints;
+
+/**
+ * The standard EL resolvers that may be used to evaluate the expressions of
+ * {@link Expression @Expression} and {@link JdbcStatement @JdbcStatement}
+ * constraints, in the order they are consulted. The constraint's target and
+ * the public properties of beans and records are always resolved (using
+ * accessors prepared once per class) before any of these resolvers.
+ *
+ * <p>
+ * Constraints select the resolvers they need using their
+ * <code>resolvers</code> attribute. Constraints that do not select any use
+ * those named (comma-separated) by the system property
+ * <code>io.xlate.validation.resolvers</code>, or all of them when the
+ * property is not set. Expressions only consult the resolvers selected, so
+ * fewer resolvers make each resolution that is not handled by the accessors
+ * cheaper.
+ *
+ * @since 1.6
+ */
+public enum ELResolverType {
+
+    /**
+     * Collection operations such as <code>list.stream()</code>.
+     *
+     * @see jakarta.el.ExpressionFactory#getStreamELResolver()
+     */
+    STREAM,
+
+    /**
+     * Static fields and methods of imported classes, e.g.
+     * <code>Integer.MAX_VALUE</code>.
+     *
+     * @see jakarta.el.StaticFieldELResolver
+     */
+    STATIC_FIELD,
+
+    /**
+     * Entries of {@link java.util.Map}s, e.g. <code>map.key</code>.
+     *
+     * @see jakarta.el.MapELResolver
+     */
+    MAP,
+
+    /**
+     * @see jakarta.el.ResourceBundleELResolver
+     */
+    RESOURCE_BUNDLE,
+
+    /**
+     * Elements of {@link java.util.List}s, e.g. <code>list[0]</code>.
+     *
+     * @see jakarta.el.ListELResolver
+     */
+    LIST,
+
+    /**
+     * Elements of arrays, e.g. <code>array[0]</code>.
+     *
+     * @see jakarta.el.ArrayELResolver
+     */
+    ARRAY,
+
+    /**
+     * Components of records not otherwise accessible.
+     *
+     * @see jakarta.el.RecordELResolver
+     */
+    RECORD,
+
+    /**
+     * Properties of beans not otherwise accessible and method invocations,
+     * e.g. <code>self.code.length()</code>. Required to invoke methods of
+     * objects in expressions.
+     *
+     * @see jakarta.el.BeanELResolver
+     */
+    BEAN
+}
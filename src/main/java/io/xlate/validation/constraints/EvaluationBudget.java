@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.constraints;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Limits on the work done by a single evaluation of a constraint's
+ * expressions, given by the constraint's <code>budget</code> attribute. An
+ * evaluation exceeding its budget is abandoned and the constraint's
+ * <code>exceptionalValue</code> is used as its result. When the constraint
+ * has no exceptional value, a {@link jakarta.validation.ValidationException}
+ * is thrown.
+ *
+ * <p>
+ * Steps are counted each time a property is read, a method or function is
+ * called, or a lambda expression is invoked. Elapsed time is checked at
+ * each step, so a single call that blocks is only detected once it returns.
+ *
+ * <p>
+ * Limits not given by the annotation are taken from the system properties
+ * <code>io.xlate.validation.maxSteps</code> and
+ * <code>io.xlate.validation.maxTime</code> (in milliseconds), when set.
+ *
+ * @since 1.6
+ */
+@Target({})
+@Retention(RUNTIME)
+@Documented
+public @interface EvaluationBudget {
+
+    /**
+     * The maximum number of steps of an evaluation. Zero allows any number of
+     * steps, and the default, -1, uses the system property
+     * <code>io.xlate.validation.maxSteps</code>.
+     *
+     * @return the maximum number of steps
+     */
+    long maxSteps() default -1;
+
+    /**
+     * The maximum elapsed time of an evaluation, in {@link #timeUnit()}s.
+     * Zero allows any elapsed time, and the default, -1, uses the system
+     * property <code>io.xlate.validation.maxTime</code>.
+     *
+     * @return the maximum elapsed time
+     */
+    long maxTime() default -1;
+
+    /**
+     * The unit of {@link #maxTime()}, one with an exact duration (i.e. up to
+     * {@link ChronoUnit#DAYS}).
+     *
+     * @return the unit of {@link #maxTime()}
+     */
+    ChronoUnit timeUnit() default ChronoUnit.MILLIS;
+}
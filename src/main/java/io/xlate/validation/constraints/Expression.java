@@ -29,6 +29,7 @@ import java.lang.annotation.Documented;
 import java.lang.annotation.Repeatable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.util.function.Predicate;
 
 import jakarta.validation.Constraint;
 import jakarta.validation.ConstraintTarget;
@@ -36,6 +37,7 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Payload;
 
 import io.xlate.validation.internal.constraintvalidators.ExpressionValidator;
+import io.xlate.validation.spi.FunctionLibrary;
 
 /**
  * Constraint to evaluate an arbitrary EL expression with the annotated target
@@ -68,19 +70,63 @@ public @interface Expression {
     /**
      * A boolean expression evaluated to determine whether the constraint
      * is valid. When the expression is true, it is considered valid. Else,
-     * it is considered invalid.
+     * it is considered invalid. When a {@link #predicate()} is given, the
+     * expression instead gives the value tested by the predicate and may be
+     * of any type.
+     *
+     * <p>
+     * Without a predicate, an expression that is known not to evaluate to a
+     * Boolean without being evaluated (e.g. a string or number literal, or an
+     * arithmetic or concatenation operation) is rejected with a
+     * {@link jakarta.validation.ConstraintDeclarationException} when the
+     * constraint is initialized, rather than failing each validation. The
+     * result of any other expression is checked when it is evaluated.
      *
      * @return the expression to evaluate to determine the validity of the
      *         constraint
      */
     String value();
 
+    /**
+     * A {@link Predicate} tested with the result of the {@link #value()}
+     * expression to determine whether the constraint is valid, for rules
+     * better written in Java. When the expression is the
+     * {@link #targetName()} alone (e.g. <code>self</code>), the predicate is
+     * tested with the annotated target directly, without evaluating EL. The
+     * class must have a public constructor without parameters and is
+     * instantiated once for each constraint. It must be safe for use by
+     * concurrent validations.
+     *
+     * <pre>
+     * &#64;Expression(value = "self", predicate = ValidOrder.class, message = "order is not valid")
+     * &#64;Expression(value = "self.name", predicate = ValidName.class, message = "name is not valid")
+     * </pre>
+     *
+     * <p>
+     * The {@link #when()}, {@link #node()}, {@link #message()} and
+     * {@link #exceptionalValue()} attributes apply as they do without a
+     * predicate, e.g. an exception thrown by the predicate results in the
+     * {@link #exceptionalValue()}, when set. Since the message defaults to a
+     * description of the {@link #value()} expression, a message should be
+     * given with the predicate. The {@link #nullValue()} does not apply to the
+     * expression giving the value tested by a predicate.
+     *
+     * @return the class of the predicate to test, or {@link Predicate} itself
+     *         (the default) to use the {@link #value()} expression's Boolean
+     *         result
+     * @since 1.6
+     */
+    @SuppressWarnings("rawtypes")
+    Class<? extends Predicate> predicate() default Predicate.class;
+
     /**
      * A boolean EL expression used to determine if the expression given by
      * {@link #value()} should be checked. This expression is available to
      * short-circuit the constraint validation of this {@link Expression} in
      * scenarios when it should not apply, e.g. a value is null and the
-     * constraint only applies to non-null values.
+     * constraint only applies to non-null values. As for the
+     * {@link #value()}, an expression known not to evaluate to a Boolean is
+     * rejected when the constraint is initialized.
      *
      * @return the expression to evaluate to determine whether the constraint
      *         should be checked
@@ -142,6 +188,44 @@ public @interface Expression {
      */
     String[] staticImports() default {};
 
+    /**
+     * Libraries of functions, in addition to those registered as services,
+     * available to the expressions in {@link #value()} and {@link #when()}
+     * using the library's prefix, e.g. <code>chk:luhn(self.number)</code>.
+     * The built-in string functions with prefix <code>str</code> are always
+     * available: <code>matches</code> and <code>find</code> (regular
+     * expressions, compiled once), <code>startsWith</code>,
+     * <code>endsWith</code>, <code>lengthBetween</code>, <code>digits</code>,
+     * <code>letters</code>, <code>alphanumeric</code>, <code>ascii</code>,
+     * and <code>charsIn</code>.
+     * So are the aggregate functions with prefix <code>coll</code>, taking a
+     * collection and a property path read from each element:
+     * <code>sum</code>, <code>count</code>, <code>min</code>,
+     * <code>max</code>, <code>distinct</code>, <code>anyMatch</code>,
+     * <code>allMatch</code>, and <code>noneMatch</code>.
+     *
+     * @return the function libraries available during expression evaluation
+     *
+     * @see FunctionLibrary
+     *
+     * @since 1.6
+     */
+    Class<? extends FunctionLibrary>[] functionLibraries() default {};
+
+    /**
+     * The standard EL resolvers used to evaluate the expressions in
+     * {@link #value()} and {@link #when()}. When empty, the resolvers
+     * named by the system property <code>io.xlate.validation.resolvers</code>
+     * are used, or all resolvers when the property is not set. For example,
+     * expressions reading bean properties and calling methods only need
+     * {@link ELResolverType#BEAN}.
+     *
+     * @return the EL resolvers used during expression evaluation
+     *
+     * @since 1.6
+     */
+    ELResolverType[] resolvers() default {};
+
     /**
      * Value used in place of the {@link #value()} expression's return when
      * evaluation results in an exception being thrown.
@@ -152,6 +236,90 @@ public @interface Expression {
      */
     ExceptionalValue exceptionalValue() default ExceptionalValue.UNSET;
 
+    /**
+     * Value used in place of the {@link #value()} expression's result when a
+     * property or method is referenced on a null value, e.g.
+     * {@code self.account.type} when {@code account} is null. By default, such
+     * references evaluate to null as specified by EL, often leading to
+     * exceptions or a result that is not a Boolean.
+     *
+     * <p>
+     * When set, the {@link #value()} expression is {@linkplain #compile()
+     * compiled} and its evaluation completes as soon as the null is
+     * encountered, without an exception being thrown. Parts of the expression
+     * that can not be compiled use the EL default. Similarly, when an
+     * {@link #exceptionalValue()} is set, failures to resolve or read
+     * properties in compiled expressions complete the evaluation without
+     * creating an exception.
+     *
+     * @return value used in place of the result of the {@link #value()}
+     *         expression when navigating through a null value
+     * @since 1.6
+     */
+    ExceptionalValue nullValue() default ExceptionalValue.UNSET;
+
+    /**
+     * Whether the {@link #value()} and {@link #when()} expressions should be
+     * compiled rather than interpreted by the EL implementation. Compiled
+     * expressions resolve names, property accessors, and static methods once
+     * and evaluate operators and {@linkplain #functionLibraries() functions}
+     * directly, avoiding most of the overhead of the EL
+     * implementation for expressions evaluated frequently. Parts of an
+     * expression that can not be compiled (e.g. lambda expressions, assignment,
+     * or collection construction) are still evaluated by the EL
+     * implementation, and compiled expressions give the same results as
+     * interpreted ones.
+     *
+     * @return true if the expressions should be compiled
+     * @since 1.6
+     */
+    boolean compile() default false;
+
+    /**
+     * Whether the evaluation of this constraint should be shared with the
+     * other shared {@link Expression @Expression} constraints (having the same
+     * {@link #groups()}) declared on the class of the validated object. Each
+     * property of an object is read at most once while the constraints
+     * evaluate in turn against the same object, and the value read is re-used
+     * by the remaining constraints. When the expressions are also
+     * {@linkplain #compile() compiled}, subexpressions common to the
+     * {@link #when()} and {@link #value()} expressions of the shared
+     * constraints (e.g. {@code self.status ne null}) are likewise evaluated
+     * once. Violations are reported separately for each constraint as usual.
+     *
+     * <p>
+     * Only applies to constraints declared on a class (or one of its super
+     * types). Expressions of shared constraints must not have side effects.
+     *
+     * @return true if property reads should be shared with other constraints
+     *         on the same class
+     * @since 1.6
+     */
+    boolean shared() default false;
+
+    /**
+     * Cache of the results of this constraint, disabled by default. When
+     * enabled, a target already validated by this constraint (the same
+     * instance, or an equal instance, depending on the cache's key type) is
+     * not evaluated again. Only targets that do not change should be
+     * validated by constraints with a result cache.
+     *
+     * @return the configuration of the result cache
+     * @since 1.6
+     */
+    ResultCache cache() default @ResultCache;
+
+    /**
+     * Limits on the steps and elapsed time of each evaluation of this
+     * constraint's expressions. By default, the limits given by system
+     * properties apply (none unless set). An evaluation exceeding a limit
+     * results in the {@link #exceptionalValue()}.
+     *
+     * @return the evaluation budget
+     * @since 1.6
+     */
+    EvaluationBudget budget() default @EvaluationBudget;
+
     /**
      * Defines several {@link Expression} annotations on the same element.
      *
@@ -37,6 +37,7 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Payload;
 
 import io.xlate.validation.internal.constraintvalidators.JdbcStatementValidator;
+import io.xlate.validation.spi.FunctionLibrary;
 
 /**
  * Constraint to execute a read-only JDBC statement (i.e., a query). By default,
@@ -90,13 +91,102 @@ public @interface JdbcStatement {
      * {@link #value()} should be checked. This expression is available to
      * short-circuit the constraint validation of this {@link Expression} in
      * scenarios when it should not apply, e.g. a value is null and the
-     * constraint only applies to non-null values.
+     * constraint only applies to non-null values. An expression known not to
+     * evaluate to a Boolean without being evaluated (e.g. a string or number
+     * literal) is rejected with a
+     * {@link jakarta.validation.ConstraintDeclarationException} when the
+     * constraint is initialized.
      *
      * @return the expression to evaluate to determine whether the constraint
      *         should be checked
      */
     String when() default "";
 
+    /**
+     * Libraries of functions, in addition to those registered as services,
+     * available to the expressions in {@link #parameters()} and
+     * {@link #when()} using the library's prefix.
+     * The built-in string functions with prefix <code>str</code> are always
+     * available: <code>matches</code> and <code>find</code> (regular
+     * expressions, compiled once), <code>startsWith</code>,
+     * <code>endsWith</code>, <code>lengthBetween</code>, <code>digits</code>,
+     * <code>letters</code>, <code>alphanumeric</code>, <code>ascii</code>,
+     * and <code>charsIn</code>.
+     * So are the aggregate functions with prefix <code>coll</code>, taking a
+     * collection and a property path read from each element:
+     * <code>sum</code>, <code>count</code>, <code>min</code>,
+     * <code>max</code>, <code>distinct</code>, <code>anyMatch</code>,
+     * <code>allMatch</code>, and <code>noneMatch</code>.
+     *
+     * @return the function libraries available during expression evaluation
+     *
+     * @see FunctionLibrary
+     *
+     * @since 1.6
+     */
+    Class<? extends FunctionLibrary>[] functionLibraries() default {};
+
+    /**
+     * The standard EL resolvers used to evaluate the expressions in
+     * {@link #parameters()} and {@link #when()}. When empty, the resolvers
+     * named by the system property <code>io.xlate.validation.resolvers</code>
+     * are used, or all resolvers when the property is not set. For example,
+     * expressions reading bean properties and calling methods only need
+     * {@link ELResolverType#BEAN}.
+     *
+     * @return the EL resolvers used during expression evaluation
+     *
+     * @since 1.6
+     */
+    ELResolverType[] resolvers() default {};
+
+    /**
+     * Cache of the results of this constraint's statement, disabled by
+     * default. When enabled, results are remembered for the values of the
+     * {@link #parameters()} (compared using {@link Object#equals(Object)},
+     * regardless of the cache's key type) and the statement is only executed
+     * for values without a remembered result. Separate TTLs may be given for
+     * results finding rows and those finding none, e.g. to quickly recognize
+     * rows inserted after a failed validation.
+     *
+     * @return the configuration of the result cache
+     * @since 1.6
+     */
+    ResultCache cache() default @ResultCache;
+
+    /**
+     * In-memory snapshot of the valid values of the {@link #parameters()},
+     * disabled by default. When enabled, the statement given by
+     * {@link #value()} is not executed and the constraint is valid when the
+     * parameter values are among the keys loaded by the snapshot's query.
+     *
+     * @return the configuration of the snapshot
+     * @since 1.6
+     */
+    Snapshot snapshot() default @Snapshot;
+
+    /**
+     * Bloom filter of the valid values of the {@link #parameters()}, disabled
+     * by default. When enabled, values not found in the filter are invalid
+     * without executing the statement given by {@link #value()}, which is
+     * only executed for values possibly found in the filter. Not used when a
+     * {@link #snapshot()} is enabled.
+     *
+     * @return the configuration of the filter
+     * @since 1.6
+     */
+    BloomFilter filter() default @BloomFilter;
+
+    /**
+     * Set-based query used to validate the values of many beans at once with
+     * {@link io.xlate.validation.JdbcBatchValidator}. Not used by Bean
+     * Validation.
+     *
+     * @return the configuration of the batch query
+     * @since 1.6
+     */
+    BatchQuery batch() default @BatchQuery;
+
     /**
      * The JNDI lookup name of the resource to be used to obtain a
      * {@link Connection}. It can link to any compatible {@link DataSource}
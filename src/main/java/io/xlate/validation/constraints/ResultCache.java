@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.constraints;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Configuration of the (optional) cache of validation results kept by a
+ * constraint, given by the constraint's <code>cache</code> attribute. When
+ * enabled, validating a target already validated by the constraint returns
+ * the remembered result rather than evaluating the constraint again. This is
+ * only correct for targets that do not change, e.g. records and other
+ * immutable values.
+ *
+ * <p>
+ * Targets are strongly referenced by the cache until evicted, either because
+ * the cache is full (according to the {@link #eviction()} policy) or because
+ * the result has expired.
+ *
+ * @since 1.6
+ */
+@Target({})
+@Retention(RUNTIME)
+@Documented
+public @interface ResultCache {
+
+    public enum KeyType {
+        /**
+         * Results are remembered for the same instance (i.e. by reference)
+         */
+        IDENTITY,
+        /**
+         * Results are remembered for equal instances, using
+         * {@link Object#equals(Object)} and {@link Object#hashCode()}
+         */
+        EQUALS
+    }
+
+    /**
+     * Which result is evicted when the cache is full. Results are evicted
+     * from a small group of results selected by the hash of the target, so
+     * the policy is approximate for caches of more than 8 results.
+     */
+    public enum EvictionPolicy {
+        /**
+         * The least recently used result
+         */
+        LRU,
+        /**
+         * The oldest result
+         */
+        FIFO
+    }
+
+    /**
+     * The maximum number of results remembered. The default, zero, disables
+     * the cache.
+     *
+     * @return the maximum number of results remembered
+     */
+    int size() default 0;
+
+    /**
+     * The time a result is remembered, in {@link #ttlUnit()}s. The default,
+     * zero, remembers results until evicted due to the cache {@link #size()}.
+     *
+     * @return the time a result is remembered
+     */
+    long ttl() default 0;
+
+    /**
+     * The unit of {@link #ttl()}, one with an exact duration (i.e. up to
+     * {@link ChronoUnit#DAYS}).
+     *
+     * @return the unit of {@link #ttl()}
+     */
+    ChronoUnit ttlUnit() default ChronoUnit.SECONDS;
+
+    /**
+     * The time a negative result (i.e. a constraint violation) is
+     * remembered, in {@link #ttlUnit()}s. Zero remembers negative results until
+     * evicted, and the default, -1, uses the {@link #ttl()} of all results.
+     *
+     * @return the time a negative result is remembered
+     */
+    long negativeTtl() default -1;
+
+    /**
+     * How targets are matched with remembered results.
+     *
+     * @return the type of key used to remember results
+     */
+    KeyType key() default KeyType.IDENTITY;
+
+    /**
+     * Which result is evicted when the cache is full, by default the least
+     * recently used.
+     *
+     * @return the eviction policy
+     */
+    EvictionPolicy eviction() default EvictionPolicy.LRU;
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.constraints;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Configuration of the (optional) in-memory snapshot of valid keys used by a
+ * {@link JdbcStatement} constraint, given by the constraint's
+ * <code>snapshot</code> attribute. When enabled, the snapshot query loading
+ * all valid keys is executed when the constraint is initialized and again
+ * after each refresh interval. Validations then check whether the values of
+ * the constraint's parameters are among the keys, without executing the
+ * constraint's statement or waiting for the database.
+ *
+ * <p>
+ * Snapshots are intended for small to medium reference tables (e.g. currency
+ * codes). Keys read from a single integral column are held as primitive
+ * longs. A failed refresh keeps the previous keys.
+ *
+ * <p>
+ * Values are compared with the keys according to the SQL types of the
+ * snapshot query's columns, e.g. ignoring the scale of decimals and the
+ * trailing spaces of fixed-length character columns. Null values never match
+ * a key. Values the database would have to convert to compare with a column
+ * (e.g. a String with a numeric column) are validated by executing the
+ * constraint's statement.
+ *
+ * @since 1.6
+ */
+@Target({})
+@Retention(RUNTIME)
+@Documented
+public @interface Snapshot {
+
+    /**
+     * The query selecting all valid keys, with one column for each of the
+     * constraint's parameters in the same order. The default, an empty
+     * query, disables the snapshot.
+     *
+     * @return the query selecting all valid keys
+     */
+    String value() default "";
+
+    /**
+     * The time between loads of the keys, in {@link #refreshUnit()}s. The
+     * default, zero, loads the keys only once.
+     *
+     * @return the time between loads of the keys
+     */
+    long refresh() default 0;
+
+    /**
+     * The unit of {@link #refresh()}, one with an exact duration (i.e. up to
+     * {@link ChronoUnit#DAYS}).
+     *
+     * @return the unit of {@link #refresh()}
+     */
+    ChronoUnit refreshUnit() default ChronoUnit.MINUTES;
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.ELResolver;
+
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+/**
+ * Read-only resolver for bean properties, record components, and public
+ * fields using the {@link MethodHandle}s cached (for all constraints) by
+ * {@link PropertyAccessors}. Installed ahead of the standard resolvers so that
+ * reads of properties avoid the reflective lookups and invocations of the EL
+ * {@code BeanELResolver}. Anything else, including writes, is left to the
+ * standard resolvers.
+ */
+class AccessorELResolver extends ELResolver {
+
+    static final AccessorELResolver INSTANCE = new AccessorELResolver();
+
+    private AccessorELResolver() {
+    }
+
+    @Override
+    public Object getValue(ELContext context, Object base, Object property) {
+        if (base == null) {
+            return null;
+        }
+
+        MethodHandle accessor = PropertyAccessors.getAccessor(base, property);
+
+        if (accessor == null) {
+            return null;
+        }
+
+        TargetELContext targetContext = (TargetELContext) context.getContext(TargetELContext.class);
+        Object value;
+
+        try {
+            if (targetContext != null) {
+                value = targetContext.read(base, property, accessor);
+            } else {
+                value = accessor.invokeExact(base);
+            }
+        } catch (Throwable e) {
+            throw new ELException(e);
+        }
+
+        context.setPropertyResolved(base, property);
+        return value;
+    }
+
+    @Override
+    public Class<?> getType(ELContext context, Object base, Object property) {
+        return null;
+    }
+
+    @Override
+    public void setValue(ELContext context, Object base, Object property, Object value) {
+        // Left to the standard resolvers
+    }
+
+    @Override
+    public boolean isReadOnly(ELContext context, Object base, Object property) {
+        return false;
+    }
+
+    @Override
+    public Class<?> getCommonPropertyType(ELContext context, Object base) {
+        return base != null ? Object.class : null;
+    }
+}
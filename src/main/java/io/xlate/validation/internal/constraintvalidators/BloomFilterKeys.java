@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import jakarta.validation.ConstraintDeclarationException;
+
+import io.xlate.validation.constraints.BloomFilter;
+import io.xlate.validation.internal.constraintvalidators.ReferenceSnapshot.Keys;
+
+/**
+ * Bloom filter of keys, answering whether a key is possibly (or definitely
+ * not) one of the keys added. Keys are normalized by the types of their
+ * {@link KeyColumns}, like those of a {@link ReferenceSnapshot}, and hashed
+ * to 64 bits, from which the indices of
+ * the bits for each hash function are derived by double hashing.
+ */
+final class BloomFilterKeys implements Keys {
+
+    private static final double LN2 = Math.log(2);
+
+    private final KeyColumns columns;
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private int size;
+
+    BloomFilterKeys(KeyColumns columns, long expectedKeys, double falsePositiveRate) {
+        this.columns = columns;
+        long m = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (LN2 * LN2));
+        // Rounded to whole words, limited by the maximum array length
+        int words = (int) Math.min((Math.max(m, Long.SIZE) + Long.SIZE - 1) / Long.SIZE, Integer.MAX_VALUE - 8);
+        this.bits = new long[words];
+        this.bitCount = (long) words * Long.SIZE;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedKeys * LN2));
+    }
+
+    /**
+     * Create a loader of filters configured by the annotation.
+     *
+     * @throws ConstraintDeclarationException
+     *             when the configuration is not valid
+     */
+    static ReferenceSnapshot.Loader loader(BloomFilter annotation) {
+        long expectedKeys = annotation.expectedKeys();
+        double falsePositiveRate = annotation.falsePositiveRate();
+
+        if (expectedKeys <= 0) {
+            throw new ConstraintDeclarationException("Invalid filter expected keys " + expectedKeys);
+        }
+
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new ConstraintDeclarationException("Invalid filter false positive rate " + falsePositiveRate);
+        }
+
+        return (ResultSet results, KeyColumns columns) -> {
+            BloomFilterKeys filter = new BloomFilterKeys(columns, expectedKeys, falsePositiveRate);
+            Object[] values = new Object[columns.size()];
+
+            while (results.next()) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = results.getObject(i + 1);
+                }
+
+                filter.add(values);
+            }
+
+            return filter;
+        };
+    }
+
+    /**
+     * Identifies the configuration of the filter among the snapshots sharing
+     * the same query.
+     */
+    static Object configuration(BloomFilter annotation) {
+        return List.of(BloomFilter.class, annotation.expectedKeys(), annotation.falsePositiveRate());
+    }
+
+    /**
+     * Add the key of the values read from a row, unless a value is null.
+     */
+    void add(Object[] values) {
+        Object key = columns.rowKey(values);
+
+        if (key == null) {
+            // Rows with null values never equal any parameter values
+            return;
+        }
+
+        long hash = hash(key);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(hash + i * step, bitCount);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+
+        size++;
+    }
+
+    @Override
+    public KeyColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Whether the (normalized) key may have been added, false when definitely
+     * not added.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        long hash = hash(key);
+        long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(hash + i * step, bitCount);
+
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The number of keys added (including duplicates).
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    long getBitCount() {
+        return bitCount;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 64-bit hash of a normalized key. Strings and integral numbers (the usual
+     * keys) are hashed using all of their bits rather than their 32-bit hash
+     * code.
+     */
+    static long hash(Object key) {
+        if (key instanceof Long) {
+            return mix((Long) key);
+        }
+
+        if (key instanceof String) {
+            String value = (String) key;
+            long hash = 0xCBF29CE484222325L;
+
+            for (int i = 0, m = value.length(); i < m; i++) {
+                hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+            }
+
+            return mix(hash);
+        }
+
+        if (key instanceof List) {
+            long hash = 1;
+
+            for (Object element : (List<?>) key) {
+                hash = hash * 31 + hash(element);
+            }
+
+            return mix(hash);
+        }
+
+        return mix(key != null ? key.hashCode() : 0);
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreading the bits of the value.
+     */
+    static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,17 +1,23 @@
 package io.xlate.validation.internal.constraintvalidators;
 
-import jakarta.el.BeanNameResolver;
-import jakarta.el.ELProcessor;
+import jakarta.el.ELException;
 import jakarta.validation.ConstraintDeclarationException;
 
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
 public interface BooleanExpression {
 
-    default boolean evaluate(ELProcessor processor, String expression, Boolean exceptionalValue) {
-        if (!expression.isEmpty()) {
+    /**
+     * Evaluate a {@link CompiledExpression} previously created by
+     * {@link #compile(TemplateELContext, String, boolean)}. A null expression
+     * (i.e. one compiled from an empty string) always evaluates to true.
+     */
+    default boolean evaluate(TargetELContext context, CompiledExpression expression, Boolean exceptionalValue) {
+        if (expression != null) {
             Object result;
 
             try {
-                result = processor.eval(expression);
+                result = expression.getValue(context);
             } catch (Exception e) {
                 if (exceptionalValue != null) {
                     result = exceptionalValue;
@@ -20,28 +26,89 @@ public interface BooleanExpression {
                 }
             }
 
-            if (result instanceof Boolean) {
-                return (Boolean) result;
-            } else {
-                throw new ConstraintDeclarationException("Expression `" + expression + "` does not evaluate to Boolean");
-            }
+            return toBoolean(expression.getExpressionString(), result);
         }
 
         return true;
     }
 
-    default BeanNameResolver newNameResolver(Object target, String targetName) {
-        return new BeanNameResolver() {
-            @Override
-            public boolean isNameResolved(String beanName) {
-                return targetName.equals(beanName);
+    /**
+     * Parse the expression once so that it may be evaluated any number of
+     * times (and by multiple threads) using
+     * {@link #evaluate(TargetELContext, CompiledExpression, Boolean)}.
+     *
+     * <p>
+     * The expression is analyzed (in either mode) to fold constant
+     * subexpressions. An expression that is constant is returned in its
+     * folded form, and an expression proven not to evaluate to a Boolean is
+     * rejected.
+     *
+     * @param compiled
+     *            whether the expression should be compiled rather than
+     *            interpreted by the EL implementation
+     * @return the parsed expression, or null when the expression is empty
+     * @throws ConstraintDeclarationException
+     *             when the expression can not be parsed or does not evaluate
+     *             to Boolean
+     */
+    default CompiledExpression compile(TemplateELContext context, String expression, boolean compiled) {
+        return compile(context, expression, compiled, null, null);
+    }
+
+    /**
+     * Parse the expression as with
+     * {@link #compile(TemplateELContext, String, boolean)}, using null-safe
+     * navigation and/or stackless handling of failures when given the values
+     * to use in those cases. Null-safe navigation requires the expression to
+     * be compiled.
+     *
+     * @see CompiledExpression#compile(TemplateELContext, String, Boolean, Boolean)
+     */
+    default CompiledExpression compile(TemplateELContext context,
+                                       String expression,
+                                       boolean compiled,
+                                       Boolean nullValue,
+                                       Boolean exceptionalValue) {
+        if (expression.isEmpty()) {
+            return null;
+        }
+
+        CompiledExpression result;
+        compiled |= nullValue != null;
+
+        try {
+            if (compiled) {
+                result = CompiledExpression.compile(context, expression, nullValue, exceptionalValue);
+            } else {
+                result = CompiledExpression.interpret(context, expression);
             }
+        } catch (ELException e) {
+            throw new ConstraintDeclarationException("Expression `" + expression + "` could not be parsed", e);
+        }
 
-            @Override
-            public Object getBean(String beanName) {
-                return isNameResolved(beanName) ? target : null;
+        CompiledExpression analyzed = compiled ? result : CompiledExpression.analyze(context, expression);
+
+        if (analyzed != null) {
+            Class<?> resultType = analyzed.getResultType();
+
+            if (resultType != null && resultType != Boolean.class) {
+                throw new ConstraintDeclarationException("Expression `" + expression + "` does not evaluate to Boolean");
+            }
+
+            if (analyzed.isConstant()) {
+                return analyzed;
             }
-        };
+        }
+
+        return result;
+    }
+
+    private static boolean toBoolean(String expression, Object result) {
+        if (result instanceof Boolean) {
+            return (Boolean) result;
+        } else {
+            throw new ConstraintDeclarationException("Expression `" + expression + "` does not evaluate to Boolean");
+        }
     }
 
 }
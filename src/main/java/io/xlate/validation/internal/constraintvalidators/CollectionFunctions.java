@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import jakarta.el.PropertyNotFoundException;
+
+import io.xlate.validation.spi.FunctionLibrary;
+
+/**
+ * Built-in aggregate functions over collections, available to all expressions
+ * with the prefix <code>coll</code>, e.g.
+ * <code>coll:sum(self.lines, 'amount') == self.total</code>.
+ *
+ * <p>
+ * The first argument of each function is a collection, an array, or a map
+ * (whose values are used), with null treated as empty. The second argument is
+ * a property path (e.g. <code>'item.sku'</code>) read from each element using
+ * the same accessors as expressions, or an empty string for the elements
+ * themselves. Null values are ignored by every function.
+ *
+ * <p>
+ * Collections and arrays with at least {@link #PARALLEL_THRESHOLD} elements
+ * are processed in parallel using the common fork-join pool. The threshold may
+ * be set with the system property
+ * <code>io.xlate.validation.parallelThreshold</code>, where zero or a
+ * negative value disables parallel processing.
+ */
+public final class CollectionFunctions implements FunctionLibrary {
+
+    static final String PREFIX = "coll";
+    static final int PARALLEL_THRESHOLD = Integer.getInteger("io.xlate.validation.parallelThreshold", 10_000);
+    static final int MAX_PATHS = 256;
+    static final Map<String, String[]> PATHS = new ConcurrentHashMap<>();
+    static final Pattern PATH_SEPARATOR = Pattern.compile("\\.");
+
+    @Override
+    public String getPrefix() {
+        return PREFIX;
+    }
+
+    /**
+     * Sum of the numeric values. The sum is accumulated as a long while all
+     * values are integers (and the sum does not overflow), as a double when
+     * some values are floating point numbers, and as a BigDecimal when some
+     * values are BigDecimals or BigIntegers.
+     */
+    public static Number sum(Object values, String path) {
+        Elements elements = Elements.of(values, path, PARALLEL_THRESHOLD);
+        Sum sum;
+
+        if (elements.parallel) {
+            sum = IntStream.range(0, elements.size())
+                           .parallel()
+                           .collect(Sum::new, (s, i) -> s.add(elements.get(i)), Sum::combine);
+        } else {
+            sum = new Sum();
+
+            for (int i = 0, m = elements.size(); i < m; i++) {
+                sum.add(elements.get(i));
+            }
+        }
+
+        return sum.getValue();
+    }
+
+    /**
+     * Number of non-null values.
+     */
+    public static long count(Object values, String path) {
+        Elements elements = Elements.of(values, path, PARALLEL_THRESHOLD);
+
+        if (elements.parallel) {
+            return IntStream.range(0, elements.size()).parallel().filter(i -> elements.get(i) != null).count();
+        }
+
+        long count = 0;
+
+        for (int i = 0, m = elements.size(); i < m; i++) {
+            if (elements.get(i) != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * The least of the (mutually comparable) values, or null when there are
+     * no values.
+     */
+    public static Object min(Object values, String path) {
+        return extreme(Elements.of(values, path, PARALLEL_THRESHOLD), -1);
+    }
+
+    /**
+     * The greatest of the (mutually comparable) values, or null when there are
+     * no values.
+     */
+    public static Object max(Object values, String path) {
+        return extreme(Elements.of(values, path, PARALLEL_THRESHOLD), 1);
+    }
+
+    /**
+     * Whether no two values are equal.
+     */
+    public static boolean distinct(Object values, String path) {
+        Elements elements = Elements.of(values, path, PARALLEL_THRESHOLD);
+        Set<Object> seen = elements.parallel ? ConcurrentHashMap.newKeySet() : new HashSet<>();
+        return !elements.anyMatch(value -> !seen.add(value));
+    }
+
+    /**
+     * Whether any value is {@link Boolean#TRUE}.
+     */
+    public static boolean anyMatch(Object values, String path) {
+        return Elements.of(values, path, PARALLEL_THRESHOLD).anyMatch(Boolean.TRUE::equals);
+    }
+
+    /**
+     * Whether every value is {@link Boolean#TRUE}, also true when there are
+     * no values.
+     */
+    public static boolean allMatch(Object values, String path) {
+        return !Elements.of(values, path, PARALLEL_THRESHOLD).anyMatch(value -> !Boolean.TRUE.equals(value));
+    }
+
+    /**
+     * Whether no value is {@link Boolean#TRUE}.
+     */
+    public static boolean noneMatch(Object values, String path) {
+        return !anyMatch(values, path);
+    }
+
+    static Object extreme(Elements elements, int sign) {
+        if (elements.parallel) {
+            return IntStream.range(0, elements.size())
+                            .parallel()
+                            .mapToObj(elements::get)
+                            .reduce(null, (a, b) -> extreme(a, b, sign));
+        }
+
+        Object result = null;
+
+        for (int i = 0, m = elements.size(); i < m; i++) {
+            result = extreme(result, elements.get(i), sign);
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Object extreme(Object current, Object value, int sign) {
+        if (value == null) {
+            return current;
+        }
+        if (current == null) {
+            return value;
+        }
+        return Integer.signum(((Comparable) value).compareTo(current)) == sign ? value : current;
+    }
+
+    static String[] parsePath(String path) {
+        String[] segments = PATHS.get(path);
+
+        if (segments == null) {
+            segments = path.isEmpty() ? new String[0] : PATH_SEPARATOR.split(path);
+
+            if (PATHS.size() >= MAX_PATHS) {
+                // Make room by discarding an arbitrary entry
+                Iterator<String> keys = PATHS.keySet().iterator();
+
+                if (keys.hasNext()) {
+                    PATHS.remove(keys.next());
+                }
+            }
+
+            PATHS.put(path, segments);
+        }
+
+        return segments;
+    }
+
+    static Object read(Object element, String[] path) {
+        Object value = element;
+
+        for (int i = 0; i < path.length && value != null; i++) {
+            if (value instanceof Map) {
+                value = ((Map<?, ?>) value).get(path[i]);
+                continue;
+            }
+
+            MethodHandle accessor = PropertyAccessors.getAccessor(value, path[i]);
+
+            if (accessor == null) {
+                throw new PropertyNotFoundException("Property '" + path[i] + "' not found on type " + value.getClass().getName());
+            }
+
+            try {
+                value = accessor.invokeExact(value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Indexed access to the values read from the elements of a list or array.
+     * Other collections are copied to an array once.
+     */
+    static final class Elements {
+        final List<?> list;
+        final Object[] array;
+        final String[] path;
+        final boolean parallel;
+
+        Elements(List<?> list, Object[] array, String[] path, int parallelThreshold) {
+            this.list = list;
+            this.array = array;
+            this.path = path;
+            this.parallel = parallelThreshold > 0 && size() >= parallelThreshold;
+        }
+
+        static Elements of(Object values, String path, int parallelThreshold) {
+            String[] segments = parsePath(path);
+
+            if (values == null) {
+                return new Elements(List.of(), null, segments, parallelThreshold);
+            }
+            if (values instanceof Map) {
+                values = ((Map<?, ?>) values).values();
+            }
+            if (values instanceof List && values instanceof RandomAccess) {
+                return new Elements((List<?>) values, null, segments, parallelThreshold);
+            }
+            if (values instanceof Collection) {
+                return new Elements(null, ((Collection<?>) values).toArray(), segments, parallelThreshold);
+            }
+            if (values instanceof Object[]) {
+                return new Elements(null, (Object[]) values, segments, parallelThreshold);
+            }
+
+            throw new IllegalArgumentException("Not a collection or array: " + values.getClass().getName());
+        }
+
+        int size() {
+            return list != null ? list.size() : array.length;
+        }
+
+        Object get(int index) {
+            return read(list != null ? list.get(index) : array[index], path);
+        }
+
+        /**
+         * Whether the predicate is true for any non-null value.
+         */
+        boolean anyMatch(Predicate<Object> predicate) {
+            if (parallel) {
+                return IntStream.range(0, size()).parallel().anyMatch(i -> {
+                    Object value = get(i);
+                    return value != null && predicate.test(value);
+                });
+            }
+
+            for (int i = 0, m = size(); i < m; i++) {
+                Object value = get(i);
+
+                if (value != null && predicate.test(value)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Accumulator for {@link CollectionFunctions#sum(Object, String)}, using
+     * primitive accumulators until a BigDecimal is required.
+     */
+    static final class Sum {
+        long integral;
+        double floating;
+        boolean isFloating;
+        BigDecimal decimal;
+
+        void add(Object value) {
+            if (value == null) {
+                return;
+            }
+            if (value instanceof BigDecimal) {
+                addDecimal((BigDecimal) value);
+            } else if (value instanceof BigInteger) {
+                addDecimal(new BigDecimal((BigInteger) value));
+            } else if (value instanceof Double || value instanceof Float) {
+                floating += ((Number) value).doubleValue();
+                isFloating = true;
+            } else if (value instanceof Number) {
+                addIntegral(((Number) value).longValue());
+            } else {
+                throw new IllegalArgumentException("Not a number: " + value);
+            }
+        }
+
+        void addIntegral(long value) {
+            try {
+                integral = Math.addExact(integral, value);
+            } catch (ArithmeticException e) {
+                addDecimal(BigDecimal.valueOf(value));
+            }
+        }
+
+        void addDecimal(BigDecimal value) {
+            decimal = decimal != null ? decimal.add(value) : value;
+        }
+
+        void combine(Sum other) {
+            addIntegral(other.integral);
+            floating += other.floating;
+            isFloating |= other.isFloating;
+
+            if (other.decimal != null) {
+                addDecimal(other.decimal);
+            }
+        }
+
+        Number getValue() {
+            if (decimal != null) {
+                BigDecimal result = decimal.add(BigDecimal.valueOf(integral));
+                return isFloating ? result.add(BigDecimal.valueOf(floating)) : result;
+            }
+            if (isFloating) {
+                return integral + floating;
+            }
+            return integral;
+        }
+    }
+}
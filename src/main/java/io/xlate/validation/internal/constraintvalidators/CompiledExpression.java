@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.el.ELException;
+import jakarta.el.ELManager;
+import jakarta.el.ValueExpression;
+
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Binder;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Generated;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Interpreted;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Literal;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Sharing;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+import io.xlate.validation.spi.PrecompiledExpressions.Evaluator;
+
+/**
+ * An expression prepared once for evaluation any number of times (and by
+ * multiple threads) using the {@link TargetELContext}s of a single
+ * {@link TemplateELContext}.
+ *
+ * <p>
+ * Interpreted expressions are evaluated by the EL implementation. Compiled
+ * expressions are parsed to a tree of {@link ExpressionNode}s with names,
+ * property accessors, and static methods resolved ahead of time, leaving only
+ * the parts of the expression that can not be compiled to the EL
+ * implementation. Compiled expressions for which the annotation processor
+ * generated Java code at build time are evaluated by the generated code when
+ * possible.
+ */
+final class CompiledExpression {
+
+    private final String expression;
+    private final ExpressionNode root;
+    private final Boolean nullValue;
+    private final Boolean exceptionalValue;
+
+    private CompiledExpression(String expression, ExpressionNode root) {
+        this(expression, root, null, null);
+    }
+
+    private CompiledExpression(String expression, ExpressionNode root, Boolean nullValue, Boolean exceptionalValue) {
+        this.expression = expression;
+        this.root = root;
+        this.nullValue = nullValue;
+        this.exceptionalValue = exceptionalValue;
+    }
+
+    /**
+     * Prepare the expression for evaluation by the EL implementation.
+     *
+     * @throws ELException when the expression is not valid EL
+     */
+    static CompiledExpression interpret(TemplateELContext template, String expression) {
+        ValueExpression valueExpression = ELManager.getExpressionFactory()
+                .createValueExpression(template, "${" + expression + '}', Object.class);
+        return new CompiledExpression(expression, new Interpreted(0, expression.length(), valueExpression));
+    }
+
+    /**
+     * Compile the expression, falling back to the interpreted form of the
+     * expression when the expression uses constructs that are not supported
+     * by the compiler.
+     *
+     * @throws ELException when the expression is not valid EL
+     */
+    static CompiledExpression compile(TemplateELContext template, String expression) {
+        return compile(template, expression, null, null);
+    }
+
+    /**
+     * Compile the expression with null-safe navigation and/or stackless
+     * handling of failures.
+     *
+     * @param nullValue
+     *            value of the expression when a property or method is
+     *            referenced on a null value, or null to evaluate such
+     *            references to null (the EL default)
+     * @param exceptionalValue
+     *            value of the expression when a property can not be
+     *            resolved or read, or null to throw an exception describing
+     *            the failure
+     *
+     * @throws ELException when the expression is not valid EL
+     */
+    static CompiledExpression compile(TemplateELContext template, String expression, Boolean nullValue, Boolean exceptionalValue) {
+        String key = template.getPrecompiledKey(expression);
+
+        if (!Precompiled.isVerified(key)) {
+            // Parsed by the EL implementation first so that errors are reported the same way
+            interpret(template, expression);
+        }
+
+        try {
+            Binder binder = new Binder(template, expression, nullValue != null, exceptionalValue != null);
+            ExpressionNode root = ExpressionParser.parse(expression).bind(binder).fold();
+
+            if (nullValue == null && exceptionalValue == null && !(root instanceof Literal)) {
+                // Generated code navigates and fails like EL, as do expressions compiled without these values
+                List<Evaluator> evaluators = Precompiled.getEvaluators(key);
+
+                if (!evaluators.isEmpty()) {
+                    root = new Generated(root, evaluators);
+                }
+            }
+
+            return new CompiledExpression(expression, root, nullValue, exceptionalValue);
+        } catch (RuntimeException e) {
+            return interpret(template, expression);
+        }
+    }
+
+    /**
+     * Analyze an expression (already validated by the EL implementation) by
+     * compiling it, regardless of whether the compiled form will be used for
+     * evaluation.
+     *
+     * @return the compiled expression with constant subexpressions folded, or
+     *         null when the expression can not be compiled
+     */
+    static CompiledExpression analyze(TemplateELContext template, String expression) {
+        try {
+            ExpressionNode root = ExpressionParser.parse(expression).bind(new Binder(template, expression)).fold();
+            return new CompiledExpression(expression, root);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the expression always evaluates to the same value, given by
+     * {@link #getConstantValue()}.
+     */
+    boolean isConstant() {
+        return root instanceof Literal;
+    }
+
+    Object getConstantValue() {
+        return ((Literal) root).value;
+    }
+
+    /**
+     * @see ExpressionNode#getResultType()
+     */
+    Class<?> getResultType() {
+        return root.getResultType();
+    }
+
+    /**
+     * Prepare this (compiled) expression for evaluating its subexpressions at
+     * most once during a {@link SharedEvaluation}, possibly re-using the
+     * values obtained by other expressions. The nodes of this expression are
+     * modified and this expression must not be used after the call.
+     */
+    CompiledExpression share(TemplateELContext template) {
+        if (!isCompiled()) {
+            return this;
+        }
+        // Subexpressions are only shared by expressions with the same navigation and failure modes
+        String prefix = template.getSignature() + (nullValue != null ? "?" : "") + (exceptionalValue != null ? "!" : "");
+        return new CompiledExpression(expression, root.share(new Sharing(prefix, expression)), nullValue, exceptionalValue);
+    }
+
+    /**
+     * The names of the target's properties read by this expression.
+     *
+     * @return the property names, or null when they can not be determined
+     *         (e.g. the expression is interpreted or passes the target to a
+     *         method)
+     */
+    Set<String> getDependencies() {
+        Set<String> properties = new HashSet<>();
+        return root.collectDependencies(properties) ? properties : null;
+    }
+
+    String getExpressionString() {
+        return expression;
+    }
+
+    boolean isCompiled() {
+        return ExpressionNode.isCompiled(root);
+    }
+
+    Object getValue(TargetELContext context) {
+        try {
+            return root.getValue(context);
+        } catch (EvaluationSignal signal) {
+            return signal == EvaluationSignal.NULL_BASE ? nullValue : exceptionalValue;
+        }
+    }
+}
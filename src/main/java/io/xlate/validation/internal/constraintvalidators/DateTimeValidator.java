@@ -37,10 +37,12 @@ public class DateTimeValidator implements ConstraintValidator<DateTime, CharSequ
 
     private List<Object> formatters;
     private DateTime.ParserType formatterType;
+    private ValidationResults results;
 
     @Override
     public void initialize(DateTime constraintAnnotation) {
         formatterType = constraintAnnotation.parserType();
+        results = ValidationResults.of(Arrays.toString(constraintAnnotation.patterns()), constraintAnnotation.cache(), false);
 
         final DateTime annotation = constraintAnnotation;
         final String[] patterns = annotation.patterns();
@@ -66,6 +68,24 @@ public class DateTimeValidator implements ConstraintValidator<DateTime, CharSequ
             return true;
         }
 
+        if (results == null) {
+            return parse(sequence);
+        }
+
+        // Keyed by the characters rather than the possibly mutable sequence
+        String key = sequence.toString();
+        Boolean cached = results.get(key);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        boolean valid = parse(sequence);
+        results.put(key, valid);
+        return valid;
+    }
+
+    boolean parse(CharSequence sequence) {
         if (formatterType == ParserType.JAVA_TEXT) {
             final String value = sequence.toString();
 
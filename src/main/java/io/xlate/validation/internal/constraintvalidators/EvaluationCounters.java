@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.Map;
+
+/**
+ * Access to the counters recorded by the constraint validators, for
+ * {@link io.xlate.validation.EvaluationMetrics}. Counters are kept by name
+ * (an expression, statement, query or list of patterns), so constraints
+ * declared with the same name on different classes share their counts.
+ */
+public final class EvaluationCounters {
+
+    private EvaluationCounters() {
+    }
+
+    public static Map<String, Long> getBudgetExceededCounts() {
+        return EvaluationLimits.getExceededCounts();
+    }
+
+    public static void resetBudgetExceededCounts() {
+        EvaluationLimits.resetExceededCounts();
+    }
+
+    public static Map<String, Long> getResultCacheHitCounts() {
+        return ResultCacheCounts.getHitCounts();
+    }
+
+    public static Map<String, Long> getResultCacheMissCounts() {
+        return ResultCacheCounts.getMissCounts();
+    }
+
+    public static void resetResultCacheCounts() {
+        ResultCacheCounts.resetCounts();
+    }
+
+    public static Map<String, Long> getSnapshotRefreshFailureCounts() {
+        return ReferenceSnapshot.getRefreshFailureCounts();
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.time.Duration;
+import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import jakarta.validation.ConstraintDeclarationException;
+import jakarta.validation.ValidationException;
+
+import io.xlate.validation.constraints.EvaluationBudget;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+/**
+ * Limits on the steps and elapsed time of the evaluations of a single
+ * constraint, configured by an {@link EvaluationBudget} annotation and the
+ * global system properties. The number of evaluations exceeding their budget
+ * is counted for each constraint.
+ */
+final class EvaluationLimits {
+
+    static final String MAX_STEPS_PROPERTY = "io.xlate.validation.maxSteps";
+    static final String MAX_TIME_PROPERTY = "io.xlate.validation.maxTime";
+
+    private static final Map<String, LongAdder> EXCEEDED = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final long maxSteps;
+    private final long maxNanos;
+    private final LongSupplier clock;
+    private final LongAdder exceeded;
+
+    /**
+     * Thrown during an evaluation that exceeded its budget, possibly wrapped
+     * by the EL implementation.
+     */
+    static final class ExceededException extends ValidationException {
+        private static final long serialVersionUID = 1L;
+
+        ExceededException(String message) {
+            super(message);
+        }
+    }
+
+    EvaluationLimits(String name, long maxSteps, long maxNanos, LongSupplier clock) {
+        this.name = name;
+        this.maxSteps = maxSteps > 0 ? maxSteps : Long.MAX_VALUE;
+        this.maxNanos = maxNanos;
+        this.clock = clock;
+        this.exceeded = EXCEEDED.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Create the limits configured by the annotation, with those not given
+     * taken from the system properties.
+     *
+     * @param name
+     *            identifies the constraint in the counts of evaluations
+     *            exceeding their budget
+     * @return the limits, or null when evaluations are not limited
+     * @throws ConstraintDeclarationException
+     *             when the configuration is not valid
+     */
+    static EvaluationLimits of(String name, EvaluationBudget annotation) {
+        long maxSteps = annotation.maxSteps();
+        long maxNanos;
+
+        if (maxSteps < 0) {
+            maxSteps = getProperty(MAX_STEPS_PROPERTY);
+        }
+
+        if (annotation.maxTime() < 0) {
+            maxNanos = TimeUnit.MILLISECONDS.toNanos(getProperty(MAX_TIME_PROPERTY));
+        } else {
+            try {
+                maxNanos = Duration.of(annotation.maxTime(), annotation.timeUnit()).toNanos();
+            } catch (UnsupportedTemporalTypeException | ArithmeticException e) {
+                throw new ConstraintDeclarationException("Invalid evaluation budget time " + annotation.maxTime() + ' '
+                        + annotation.timeUnit(), e);
+            }
+        }
+
+        if (maxSteps == 0 && maxNanos == 0) {
+            return null;
+        }
+
+        return new EvaluationLimits(name, maxSteps, maxNanos, System::nanoTime);
+    }
+
+    static long getProperty(String key) {
+        String value = System.getProperty(key);
+
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+
+        try {
+            return Math.max(Long.parseLong(value.trim()), 0);
+        } catch (NumberFormatException e) {
+            throw new ConstraintDeclarationException("Invalid value `" + value + "` of system property " + key, e);
+        }
+    }
+
+    /**
+     * Begin limiting the evaluation using the context.
+     */
+    void start(TargetELContext context) {
+        context.limits = this;
+        context.steps = 0;
+        context.started = maxNanos > 0 ? clock.getAsLong() : 0;
+        context.exceeded = false;
+    }
+
+    /**
+     * Count a step of the evaluation using the context.
+     *
+     * @throws ExceededException
+     *             when the evaluation has exceeded its budget
+     */
+    void step(TargetELContext context) {
+        if (++context.steps > maxSteps) {
+            exceeded(context, "Evaluation of `" + name + "` exceeded " + maxSteps + " steps");
+        }
+
+        if (maxNanos > 0 && clock.getAsLong() - context.started > maxNanos) {
+            exceeded(context, "Evaluation of `" + name + "` exceeded " + maxNanos + "ns");
+        }
+    }
+
+    void exceeded(TargetELContext context, String message) {
+        if (!context.exceeded) {
+            // Counted once, even when the EL implementation continues after the exception
+            context.exceeded = true;
+            exceeded.increment();
+        }
+        throw new ExceededException(message);
+    }
+
+    /**
+     * Find the {@link ExceededException} wrapped by the EL implementation.
+     *
+     * @return the exception, or the given exception when not found
+     */
+    static RuntimeException unwrap(RuntimeException thrown) {
+        for (Throwable e = thrown; e != null; e = e.getCause()) {
+            if (e instanceof ExceededException) {
+                return (ExceededException) e;
+            }
+        }
+        return thrown;
+    }
+
+    /**
+     * The number of evaluations that exceeded their budget, for each
+     * constraint (identified by its expression) with a budget. Constraints
+     * with the same expression share a count.
+     */
+    static Map<String, Long> getExceededCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        EXCEEDED.forEach((name, count) -> counts.put(name, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Reset the counts of evaluations exceeding their budget.
+     */
+    static void resetExceededCounts() {
+        EXCEEDED.values().forEach(LongAdder::reset);
+    }
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+/**
+ * Preallocated exception without a stack trace, used by compiled expressions
+ * to complete evaluation early without the cost of creating an exception.
+ * Signals are caught by the {@link CompiledExpression} being evaluated and
+ * never escape to callers.
+ */
+final class EvaluationSignal extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A property or method was referenced on a null value during null-safe
+     * navigation.
+     */
+    static final EvaluationSignal NULL_BASE = new EvaluationSignal("Null base");
+
+    /**
+     * Evaluation failed and the expression has an exceptional value.
+     */
+    static final EvaluationSignal FAILED = new EvaluationSignal("Evaluation failed");
+
+    private EvaluationSignal(String message) {
+        super(message, null, false, false);
+    }
+}
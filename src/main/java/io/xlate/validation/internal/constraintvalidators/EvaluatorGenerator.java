@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Binary;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.BinaryOperator;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Choice;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Identifier;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Literal;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Property;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Unary;
+import io.xlate.validation.spi.PrecompiledExpressions;
+
+/**
+ * Translates expressions to Java source code for the
+ * {@link PrecompiledExpressions.Evaluator}s generated by the annotation
+ * processor. Expressions are parsed with the same {@link ExpressionParser}
+ * used at runtime, and only expressions limited to literals, the target, the
+ * (statically typed) properties of the target, and operators are translated.
+ * Operators are applied by {@link PrecompiledExpressions.Operations}, except
+ * for comparisons of integral and boolean values, which Java evaluates the
+ * same way.
+ *
+ * <p>
+ * This class is used by the annotation processor and is not intended for use
+ * by applications.
+ */
+public final class EvaluatorGenerator {
+
+    private static final String OPERATIONS = PrecompiledExpressions.Operations.class.getCanonicalName();
+
+    private static final Map<String, String> BOXES = Map.of("boolean", "java.lang.Boolean",
+                                                            "byte", "java.lang.Byte",
+                                                            "short", "java.lang.Short",
+                                                            "char", "java.lang.Character",
+                                                            "int", "java.lang.Integer",
+                                                            "long", "java.lang.Long",
+                                                            "float", "java.lang.Float",
+                                                            "double", "java.lang.Double");
+
+    private static final Set<String> INTEGRAL = Set.of("byte", "short", "int", "long");
+
+    private static final String NULL = "null";
+    private static final String OBJECT = "java.lang.Object";
+
+    /**
+     * The properties of types known to the caller (i.e. the annotation
+     * processor).
+     */
+    public interface Types {
+        /**
+         * Find the property of the type as read by the validators at runtime.
+         *
+         * @param type
+         *            canonical name of a class
+         * @param name
+         *            name of the property
+         * @return the property, or null when the property is not known or
+         *         must be resolved by the EL resolvers (e.g. the type is a
+         *         {@link Map})
+         */
+        TypeProperty getProperty(String type, String name);
+    }
+
+    /**
+     * Property of a type, read by a getter method or a public field.
+     */
+    public static final class TypeProperty {
+        final String accessor;
+        final String type;
+
+        /**
+         * @param accessor
+         *            the source reading the property from a bean, e.g.
+         *            <code>getName()</code> or the name of a field
+         * @param type
+         *            the (erased) canonical name of the property's type, or
+         *            the primitive type
+         */
+        public TypeProperty(String accessor, String type) {
+            this.accessor = accessor;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Java source of (a part of) an expression.
+     */
+    static final class Code {
+        final String source;
+        final String type;
+        final boolean nullable;
+
+        Code(String source, String type, boolean nullable) {
+            this.source = source;
+            this.type = type;
+            this.nullable = nullable;
+        }
+
+        boolean isPrimitive() {
+            return BOXES.containsKey(type);
+        }
+
+        boolean is(String primitive) {
+            return type.equals(primitive);
+        }
+
+        boolean isIntegral() {
+            return INTEGRAL.contains(type);
+        }
+    }
+
+    private final Types types;
+    private final StringBuilder methods = new StringBuilder();
+    private final Map<String, String> readers = new HashMap<>();
+    private int evaluators;
+
+    public EvaluatorGenerator(Types types) {
+        this.types = types;
+    }
+
+    /**
+     * Generate a method evaluating the expression for targets of the given
+     * type. The method is <code>static</code>, accepts the target and the
+     * {@link PrecompiledExpressions.Operations}, and returns the value of the
+     * expression.
+     *
+     * @param expression
+     *            the expression (already verified)
+     * @param targetName
+     *            the name of the target in the expression
+     * @param targetType
+     *            the canonical name of the target's type
+     * @return the name of the generated method, or null when the expression
+     *         can not be translated
+     */
+    public String generate(String expression, String targetName, String targetType) {
+        Method method = new Method(targetName, targetType);
+        Code code;
+
+        try {
+            code = method.translate(ExpressionParser.parse(expression));
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        if (code == null) {
+            return null;
+        }
+
+        String name = "evaluate" + evaluators++;
+        methods.append("    private static Object ").append(name).append('(').append(targetType).append(" target, ")
+               .append(OPERATIONS).append(" operations) {\n");
+
+        for (int i = 0; i < method.temporaries.size(); i++) {
+            methods.append("        ").append(method.temporaries.get(i)).append(" v").append(i).append(";\n");
+        }
+
+        methods.append("        return ").append(code.source).append(";\n");
+        methods.append("    }\n\n");
+        return name;
+    }
+
+    /**
+     * @return the source of the methods generated, to be included in the
+     *         generated class
+     */
+    public String getMethods() {
+        return methods.toString();
+    }
+
+    /**
+     * Obtain the name of the method reading a property, wrapping failures
+     * like a compiled expression does.
+     */
+    String reader(String type, TypeProperty property) {
+        return readers.computeIfAbsent(type + '.' + property.accessor, key -> {
+            String name = "read" + readers.size();
+            methods.append("    private static ").append(property.type).append(' ').append(name).append('(')
+                   .append(type).append(" bean, ").append(OPERATIONS).append(" operations) {\n");
+            methods.append("        try {\n");
+            methods.append("            return bean.").append(property.accessor).append(";\n");
+            methods.append("        } catch (RuntimeException | Error e) {\n");
+            methods.append("            throw operations.propertyFailed(e);\n");
+            methods.append("        }\n");
+            methods.append("    }\n\n");
+            return name;
+        });
+    }
+
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ' || c == 0x7f) {
+                // Octal, line terminators may not be given as unicode escapes
+                quoted.append(String.format("\\%03o", (int) c));
+            } else if (c > 0x7f) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * State of the translation of a single expression.
+     */
+    final class Method {
+        final String targetName;
+        final String targetType;
+        final List<String> temporaries = new ArrayList<>();
+
+        Method(String targetName, String targetType) {
+            this.targetName = targetName;
+            this.targetType = targetType;
+        }
+
+        String temporary(String type) {
+            temporaries.add(type);
+            return "v" + (temporaries.size() - 1);
+        }
+
+        /**
+         * @return the code, or null when the node can not be translated
+         */
+        Code translate(ExpressionNode node) {
+            if (node instanceof Literal) {
+                return literal(((Literal) node).value);
+            }
+            if (node instanceof Identifier) {
+                // The target is never null, those are validated by the validators
+                return ((Identifier) node).name.equals(targetName) ? new Code("target", targetType, false) : null;
+            }
+            if (node instanceof Property) {
+                return property((Property) node);
+            }
+            if (node instanceof Unary) {
+                return unary((Unary) node);
+            }
+            if (node instanceof Binary) {
+                return binary((Binary) node);
+            }
+            if (node instanceof Choice) {
+                return choice((Choice) node);
+            }
+            // Method calls, functions, and constructs evaluated by the EL implementation
+            return null;
+        }
+
+        Code literal(Object value) {
+            if (value == null) {
+                return new Code(NULL, NULL, true);
+            }
+            if (value instanceof Boolean) {
+                return new Code(value.toString(), "boolean", false);
+            }
+            if (value instanceof Long) {
+                return new Code(value + "L", "long", false);
+            }
+            if (value instanceof Double) {
+                return new Code(value + "d", "double", false);
+            }
+            return new Code(quote((String) value), "java.lang.String", false);
+        }
+
+        Code property(Property node) {
+            if (!(node.property instanceof Literal) || !(((Literal) node.property).value instanceof String)) {
+                // Computed property name
+                return null;
+            }
+
+            Code base = translate(node.base);
+
+            if (base == null || base.isPrimitive() || base.is(NULL)) {
+                return null;
+            }
+
+            TypeProperty property = types.getProperty(base.type, (String) ((Literal) node.property).value);
+
+            if (property == null) {
+                return null;
+            }
+
+            String reader = reader(base.type, property);
+
+            if (!base.nullable) {
+                boolean primitive = BOXES.containsKey(property.type);
+                return new Code(reader + '(' + base.source + ", operations)", property.type, !primitive);
+            }
+
+            // A property of null is null
+            String temporary = temporary(base.type);
+            String source = "((" + temporary + " = " + base.source + ") == null ? null : " + reader + '(' + temporary
+                    + ", operations))";
+            return new Code(source, BOXES.getOrDefault(property.type, property.type), true);
+        }
+
+        Code unary(Unary node) {
+            Code operand = translate(node.operand);
+
+            if (operand == null) {
+                return null;
+            }
+
+            switch (node.operator) {
+            case NOT:
+                return new Code("!" + bool(operand), "boolean", false);
+            case NEGATE:
+                return new Code("operations.negate(" + operand.source + ')', OBJECT, true);
+            default:
+                return new Code("operations.isEmpty(" + operand.source + ')', "boolean", false);
+            }
+        }
+
+        Code binary(Binary node) {
+            Code left = translate(node.left);
+            Code right = left != null ? translate(node.right) : null;
+
+            if (right == null) {
+                return null;
+            }
+
+            BinaryOperator operator = node.operator;
+
+            switch (operator) {
+            case AND:
+                return new Code('(' + bool(left) + " && " + bool(right) + ')', "boolean", false);
+            case OR:
+                return new Code('(' + bool(left) + " || " + bool(right) + ')', "boolean", false);
+            case EQ:
+            case NE:
+                return equality(operator, left, right);
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+                return comparison(operator, left, right);
+            case ADD:
+                return operation("add", left, right, "java.lang.Number");
+            case SUBTRACT:
+                return operation("subtract", left, right, "java.lang.Number");
+            case MULTIPLY:
+                return operation("multiply", left, right, "java.lang.Number");
+            case DIVIDE:
+                return operation("divide", left, right, "java.lang.Number");
+            case MOD:
+                return operation("mod", left, right, "java.lang.Number");
+            default:
+                return operation("concat", left, right, OBJECT);
+            }
+        }
+
+        Code equality(BinaryOperator operator, Code left, Code right) {
+            String source;
+
+            if ((left.isIntegral() && right.isIntegral()) || (left.is("boolean") && right.is("boolean"))) {
+                source = '(' + left.source + (operator == BinaryOperator.EQ ? " == " : " != ") + right.source + ')';
+            } else {
+                source = (operator == BinaryOperator.EQ ? "" : "!") + "operations.equal(" + left.source + ", "
+                        + right.source + ')';
+            }
+
+            return new Code(source, "boolean", false);
+        }
+
+        Code comparison(BinaryOperator operator, Code left, Code right) {
+            if (left.isIntegral() && right.isIntegral()) {
+                String symbol;
+
+                switch (operator) {
+                case LT:
+                    symbol = " < ";
+                    break;
+                case GT:
+                    symbol = " > ";
+                    break;
+                case LE:
+                    symbol = " <= ";
+                    break;
+                default:
+                    symbol = " >= ";
+                    break;
+                }
+
+                return new Code('(' + left.source + symbol + right.source + ')', "boolean", false);
+            }
+
+            String method;
+
+            switch (operator) {
+            case LT:
+                method = "lessThan";
+                break;
+            case GT:
+                method = "greaterThan";
+                break;
+            case LE:
+                method = "lessThanOrEqual";
+                break;
+            default:
+                method = "greaterThanOrEqual";
+                break;
+            }
+
+            if ((operator == BinaryOperator.LT || operator == BinaryOperator.GT) && left.nullable) {
+                // The right operand is not evaluated when the left is null
+                String temporary = temporary(OBJECT);
+                String source = "((" + temporary + " = " + left.source + ") == null ? false : operations." + method
+                        + '(' + temporary + ", " + right.source + "))";
+                return new Code(source, "boolean", false);
+            }
+
+            return operation(method, left, right, "boolean");
+        }
+
+        Code operation(String method, Code left, Code right, String type) {
+            String source = "operations." + method + '(' + left.source + ", " + right.source + ')';
+            return new Code(source, type, !BOXES.containsKey(type));
+        }
+
+        Code choice(Choice node) {
+            Code condition = translate(node.condition);
+            Code whenTrue = condition != null ? translate(node.whenTrue) : null;
+            Code whenFalse = whenTrue != null ? translate(node.whenFalse) : null;
+
+            if (whenFalse == null) {
+                return null;
+            }
+
+            String source = '(' + bool(condition) + " ? (Object) " + whenTrue.source + " : (Object) "
+                    + whenFalse.source + ')';
+            return new Code(source, OBJECT, true);
+        }
+
+        String bool(Code code) {
+            return code.is("boolean") ? code.source : "operations.coerceToBoolean(" + code.source + ')';
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * JVM-wide cache used to share immutable, thread-safe objects (e.g.
+ * {@link TemplateELContext}s and {@link CompiledExpression}s) between
+ * constraint instances declared with the same attributes.
+ *
+ * <p>
+ * Entries are cached for the context class loader in use when they are
+ * created, since the names in expressions and imports are resolved using that
+ * class loader. Values are weakly referenced and are discarded once no longer
+ * used by any constraint. Since keys commonly reference classes of the context
+ * class loader, the entries of a class loader are only softly referenced and
+ * are dropped entirely once all of their values have been discarded, allowing
+ * the class loader to be unloaded.
+ *
+ * <p>
+ * Values are created without holding any lock shared between keys. Concurrent
+ * requests for the same key wait for the value created by the first request.
+ */
+final class ExpressionCache {
+
+    private static final Map<ClassLoader, SoftReference<Segment>> CACHE = new WeakHashMap<>();
+    private static final ReferenceQueue<Object> CLEARED = new ReferenceQueue<>();
+
+    private ExpressionCache() {
+    }
+
+    /**
+     * The entries cached for a single class loader, either an {@link Entry} or
+     * the {@link FutureTask} creating the value of a key.
+     */
+    @SuppressWarnings("serial")
+    static final class Segment extends ConcurrentHashMap<Object, Object> {
+        final WeakReference<ClassLoader> loader;
+
+        Segment(ClassLoader loader) {
+            this.loader = new WeakReference<>(loader);
+        }
+    }
+
+    /**
+     * Weak reference to a cached value, removed from the cache once cleared.
+     */
+    static final class Entry extends WeakReference<Object> {
+        final Segment segment;
+        final Object key;
+
+        Entry(Segment segment, Object key, Object value) {
+            super(value, CLEARED);
+            this.segment = segment;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Obtain the value cached for the key, or cache a new value obtained from
+     * the factory.
+     *
+     * @param key
+     *            identifies the value, must implement
+     *            {@link Object#equals(Object)} and {@link Object#hashCode()}
+     * @param factory
+     *            creates the value when not present in the cache. Exceptions
+     *            thrown by the factory are propagated and nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T intern(Object key, Supplier<T> factory) {
+        Segment segment = getSegment(Thread.currentThread().getContextClassLoader());
+
+        for (;;) {
+            Object current = segment.get(key);
+
+            if (current instanceof FutureTask) {
+                return (T) await((FutureTask<Object>) current);
+            }
+
+            Object value = current != null ? ((Entry) current).get() : null;
+
+            if (value != null) {
+                return (T) value;
+            }
+
+            FutureTask<Object> task = new FutureTask<>(factory::get);
+
+            if (current != null ? segment.replace(key, current, task) : segment.putIfAbsent(key, task) == null) {
+                task.run();
+
+                try {
+                    value = await(task);
+                } catch (RuntimeException | Error e) {
+                    segment.remove(key, task);
+                    throw e;
+                }
+
+                segment.replace(key, task, new Entry(segment, key, value));
+                return (T) value;
+            }
+        }
+    }
+
+    static Segment getSegment(ClassLoader loader) {
+        synchronized (CACHE) {
+            expungeClearedEntries();
+
+            SoftReference<Segment> reference = CACHE.get(loader);
+            Segment segment = reference != null ? reference.get() : null;
+
+            if (segment == null) {
+                segment = new Segment(loader);
+                CACHE.put(loader, new SoftReference<>(segment));
+            }
+
+            return segment;
+        }
+    }
+
+    static Object await(FutureTask<Object> task) {
+        boolean interrupted = false;
+
+        try {
+            for (;;) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Remove the entries of discarded values, and the segments of class loaders
+     * left without any entries. Must be called while holding the lock of
+     * {@link #CACHE}.
+     */
+    static void expungeClearedEntries() {
+        Entry entry;
+
+        while ((entry = (Entry) CLEARED.poll()) != null) {
+            Segment segment = entry.segment;
+
+            if (segment.remove(entry.key, entry) && segment.isEmpty()) {
+                ClassLoader loader = segment.loader.get();
+                SoftReference<Segment> reference = CACHE.get(loader);
+
+                if (reference != null && reference.get() == segment) {
+                    CACHE.remove(loader);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of (possibly cleared) entries for the current context class
+     * loader.
+     */
+    static int size() {
+        synchronized (CACHE) {
+            expungeClearedEntries();
+            SoftReference<Segment> reference = CACHE.get(Thread.currentThread().getContextClassLoader());
+            Segment segment = reference != null ? reference.get() : null;
+            return segment != null ? segment.size() : 0;
+        }
+    }
+}
@@ -0,0 +1,1246 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.el.ELClass;
+import jakarta.el.ELException;
+import jakarta.el.ELManager;
+import jakarta.el.ELResolver;
+import jakarta.el.ImportHandler;
+import jakarta.el.PropertyNotFoundException;
+import jakarta.el.ValueExpression;
+
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+import io.xlate.validation.spi.PrecompiledExpressions.Evaluator;
+
+/**
+ * Node of a compiled expression. Nodes produced by the
+ * {@link ExpressionParser} are bound to the {@link TemplateELContext} of the
+ * constraint before evaluation: names are resolved to the target, imported
+ * classes and static members, and operators are evaluated directly. Any
+ * construct that is not supported by the compiler (e.g. lambda expressions or
+ * collection construction) is evaluated by the EL implementation.
+ */
+abstract class ExpressionNode {
+
+    /**
+     * Offsets of the node's text within the expression, used to evaluate the
+     * node with the EL implementation when it may not be compiled.
+     */
+    final int start;
+    final int end;
+
+    ExpressionNode(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    abstract Object getValue(TargetELContext context);
+
+    /**
+     * Obtain the value of this node when it is the base of a property or
+     * method reference, e.g. `Math` in `Math.PI`.
+     */
+    Object getBase(TargetELContext context) {
+        return getValue(context);
+    }
+
+    ExpressionNode bind(Binder binder) {
+        return this;
+    }
+
+    static void bind(Binder binder, ExpressionNode[] nodes) {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = nodes[i].bind(binder);
+        }
+    }
+
+    /**
+     * Replace the (bound) constant subexpressions of this node by
+     * {@link Literal}s. Operators are only folded when they complete normally
+     * so that exceptions are still raised (and handled) during evaluation.
+     */
+    ExpressionNode fold() {
+        return this;
+    }
+
+    /**
+     * Obtain the type of the values produced by this node, when known before
+     * evaluation.
+     *
+     * @return the type of the values produced, {@link Void} for null, or null
+     *         when unknown
+     */
+    Class<?> getResultType() {
+        return null;
+    }
+
+    /**
+     * Evaluate a node of which all operands are {@link Literal}s.
+     */
+    ExpressionNode evaluateConstant() {
+        try {
+            return new Literal(start, end, getValue(null));
+        } catch (RuntimeException e) {
+            // Left for evaluation to raise the exception
+            return this;
+        }
+    }
+
+    /**
+     * Replace the (bound) subexpressions of this node that may be shared with
+     * other expressions by {@link Memoized} nodes.
+     */
+    ExpressionNode share(Sharing sharing) {
+        return this;
+    }
+
+    /**
+     * Add the names of the target's properties read by this node to the set.
+     *
+     * @return false when the properties read can not be determined, e.g. the
+     *         target itself is passed to a method or the node is interpreted
+     */
+    boolean collectDependencies(Set<String> properties) {
+        return false;
+    }
+
+    static boolean collectDependencies(Set<String> properties, ExpressionNode... nodes) {
+        for (ExpressionNode node : nodes) {
+            if (!node.collectDependencies(properties)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Append the canonical form of this (bound) node to the key identifying
+     * its value in a {@link SharedEvaluation}. Equivalent nodes have the same
+     * form regardless of how they were written, e.g. `a eq b` and `a == b`.
+     * Nodes evaluated by the EL implementation use their text, ignoring
+     * whitespace.
+     */
+    void appendKey(StringBuilder key, Sharing sharing) {
+        key.append(Sharing.normalize(sharing.expression.substring(start, end)));
+    }
+
+    static void appendKey(StringBuilder key, Sharing sharing, ExpressionNode[] nodes) {
+        key.append('(');
+
+        for (int i = 0; i < nodes.length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            nodes[i].appendKey(key, sharing);
+        }
+
+        key.append(')');
+    }
+
+    static void share(Sharing sharing, ExpressionNode[] nodes) {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = nodes[i].share(sharing);
+        }
+    }
+
+    static Object[] getValues(TargetELContext context, ExpressionNode[] nodes) {
+        Object[] values = new Object[nodes.length];
+
+        for (int i = 0; i < nodes.length; i++) {
+            values[i] = nodes[i].getValue(context);
+        }
+
+        return values;
+    }
+
+    static boolean isCompiled(ExpressionNode node) {
+        if (node instanceof Generated) {
+            return isCompiled(((Generated) node).node);
+        }
+        return !(node instanceof Interpreted);
+    }
+
+    /**
+     * Resolves the names used in an expression using the constraint's
+     * {@link TemplateELContext}.
+     */
+    static class Binder {
+        final TemplateELContext template;
+        final String expression;
+        final boolean nullSafe;
+        final boolean signalFailures;
+
+        Binder(TemplateELContext template, String expression) {
+            this(template, expression, false, false);
+        }
+
+        /**
+         * @param nullSafe
+         *            whether a reference to a property or method of a null
+         *            value signals {@link EvaluationSignal#NULL_BASE} rather
+         *            than evaluating to null
+         * @param signalFailures
+         *            whether failures to resolve or read properties signal
+         *            {@link EvaluationSignal#FAILED} rather than throwing an
+         *            exception describing the failure
+         */
+        Binder(TemplateELContext template, String expression, boolean nullSafe, boolean signalFailures) {
+            this.template = template;
+            this.expression = expression;
+            this.nullSafe = nullSafe;
+            this.signalFailures = signalFailures;
+        }
+
+        ExpressionNode interpret(ExpressionNode node) {
+            String text = expression.substring(node.start, node.end);
+            ValueExpression valueExpression = ELManager.getExpressionFactory()
+                    .createValueExpression(template, "${" + text + '}', Object.class);
+            return new Interpreted(node.start, node.end, valueExpression);
+        }
+    }
+
+    /**
+     * Identifies the subexpressions of an expression. Equivalent
+     * subexpressions (see {@link ExpressionNode#appendKey(StringBuilder, Sharing)})
+     * in constraints having the same target name and imports have the same
+     * key and are evaluated once during a {@link SharedEvaluation}.
+     */
+    static class Sharing {
+        final String prefix;
+        final String expression;
+
+        /**
+         * @param prefix
+         *            identifies the context in which the expression is
+         *            evaluated, e.g. the target name, imports, and options
+         *            affecting the values of the subexpressions
+         */
+        Sharing(String prefix, String expression) {
+            this.prefix = prefix;
+            this.expression = expression;
+        }
+
+        ExpressionNode memoize(ExpressionNode node) {
+            StringBuilder key = new StringBuilder(prefix);
+            node.appendKey(key, this);
+            return new Memoized(key.toString(), node);
+        }
+
+        /**
+         * Remove whitespace outside of string literals.
+         */
+        static String normalize(String text) {
+            StringBuilder result = new StringBuilder(text.length());
+            char quote = 0;
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+
+                if (quote != 0) {
+                    result.append(c);
+
+                    if (c == '\\' && i + 1 < text.length()) {
+                        result.append(text.charAt(++i));
+                    } else if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                    result.append(c);
+                } else if (!Character.isWhitespace(c)) {
+                    result.append(c);
+                }
+            }
+
+            return result.toString();
+        }
+    }
+
+    /**
+     * Subexpression evaluated at most once during a {@link SharedEvaluation}.
+     */
+    static final class Memoized extends ExpressionNode {
+        final String key;
+        final ExpressionNode node;
+
+        Memoized(String key, ExpressionNode node) {
+            super(node.start, node.end);
+            this.key = key;
+            this.node = node;
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return node.collectDependencies(properties);
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            node.appendKey(key, sharing);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            SharedEvaluation shared = context.shared;
+
+            if (shared != null) {
+                return shared.getValue(key, node, context);
+            }
+
+            return node.getValue(context);
+        }
+
+        @Override
+        Class<?> getResultType() {
+            return node.getResultType();
+        }
+    }
+
+    static final class Interpreted extends ExpressionNode {
+        final ValueExpression expression;
+
+        Interpreted(int start, int end, ValueExpression expression) {
+            super(start, end);
+            this.expression = expression;
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            return expression.getValue(context);
+        }
+    }
+
+    /**
+     * Expression evaluated by the {@link Evaluator}s generated at build time
+     * for the declared types of the target, falling back to the (compiled or
+     * interpreted) node for targets of other types and for evaluations that
+     * are limited or shared with other constraints.
+     */
+    static final class Generated extends ExpressionNode {
+        final ExpressionNode node;
+        final Evaluator[] evaluators;
+
+        Generated(ExpressionNode node, List<Evaluator> evaluators) {
+            super(node.start, node.end);
+            this.node = node;
+            this.evaluators = evaluators.toArray(new Evaluator[0]);
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            return node.share(sharing);
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            node.appendKey(key, sharing);
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return node.collectDependencies(properties);
+        }
+
+        @Override
+        Class<?> getResultType() {
+            return node.getResultType();
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            Object target = context.target;
+
+            if (target != null && context.limits == null && context.shared == null && PropertyAccessors.isBean(target)) {
+                for (Evaluator evaluator : evaluators) {
+                    if (evaluator.getTargetType().isInstance(target)) {
+                        return evaluator.evaluate(target, Operators.Instance.INSTANCE);
+                    }
+                }
+            }
+
+            return node.getValue(context);
+        }
+    }
+
+    static final class Unsupported extends ExpressionNode {
+        Unsupported(int start, int end) {
+            super(start, end);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            throw new IllegalStateException("Unbound expression");
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            return binder.interpret(this);
+        }
+    }
+
+    static final class Literal extends ExpressionNode {
+        final Object value;
+
+        Literal(int start, int end, Object value) {
+            super(start, end);
+            this.value = value;
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return true;
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            if (value instanceof String) {
+                key.append('\'').append(((String) value).replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+            } else if (value == null || value instanceof Boolean || value instanceof Long || value instanceof Double) {
+                // Types of the literals written in expressions (or folded from them)
+                key.append(value);
+            } else {
+                super.appendKey(key, sharing);
+            }
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            return value;
+        }
+
+        @Override
+        Class<?> getResultType() {
+            return value != null ? value.getClass() : Void.class;
+        }
+    }
+
+    static final class Identifier extends ExpressionNode {
+        final String name;
+
+        Identifier(int start, int end, String name) {
+            super(start, end);
+            this.name = name;
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            throw new IllegalStateException("Unbound identifier: " + name);
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            if (name.equals(binder.template.getTargetName())) {
+                return new Target(start, end);
+            }
+
+            ImportHandler imports = binder.template.getImportHandler();
+            Class<?> type = imports.resolveStatic(name);
+            Class<?> classReference = imports.resolveClass(name);
+
+            if (type != null) {
+                ELClass fallback = classReference != null ? new ELClass(classReference) : null;
+                return StaticProperty.of(start, end, new ELClass(type), name, fallback);
+            }
+
+            if (classReference != null) {
+                return new ClassReference(start, end, new ELClass(classReference), name);
+            }
+
+            // Unknown name, let EL report the error
+            return binder.interpret(this);
+        }
+    }
+
+    static final class Target extends ExpressionNode {
+        Target(int start, int end) {
+            super(start, end);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            return context.target;
+        }
+    }
+
+    static final class ClassReference extends ExpressionNode {
+        final ELClass type;
+        final String name;
+
+        ClassReference(int start, int end, ELClass type, String name) {
+            super(start, end);
+            this.type = type;
+            this.name = name;
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return true;
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            throw new PropertyNotFoundException("ELResolver cannot handle a null base Object with identifier '" + name + "'");
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            key.append(type.getKlass().getName());
+        }
+
+        @Override
+        Object getBase(TargetELContext context) {
+            return type;
+        }
+    }
+
+    /**
+     * Statically imported field. Values of final fields are read once.
+     */
+    static final class StaticProperty extends ExpressionNode {
+        final ELClass type;
+        final String name;
+        final ELClass fallback;
+
+        StaticProperty(int start, int end, ELClass type, String name, ELClass fallback) {
+            super(start, end);
+            this.type = type;
+            this.name = name;
+            this.fallback = fallback;
+        }
+
+        static ExpressionNode of(int start, int end, ELClass type, String name, ELClass fallback) {
+            try {
+                Field field = type.getKlass().getField(name);
+                int modifiers = field.getModifiers();
+
+                if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)) {
+                    return new Literal(start, end, field.get(null));
+                }
+            } catch (NoSuchFieldException | IllegalAccessException e) {
+                // Resolved (or reported) by the EL resolvers
+            }
+
+            return new StaticProperty(start, end, type, name, fallback);
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return true;
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            key.append(type.getKlass().getName()).append('.').append(name);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            return context.getELResolver().getValue(context, type, name);
+        }
+
+        @Override
+        Object getBase(TargetELContext context) {
+            try {
+                return getValue(context);
+            } catch (PropertyNotFoundException e) {
+                if (fallback != null) {
+                    return fallback;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Property reference using either the `.` or `[]` operator.
+     */
+    static final class Property extends ExpressionNode {
+        ExpressionNode base;
+        ExpressionNode property;
+        boolean nullSafe;
+        boolean signalFailures;
+
+        Property(int start, int end, ExpressionNode base, ExpressionNode property) {
+            super(start, end);
+            this.base = base;
+            this.property = property;
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            base = base.bind(binder);
+            property = property.bind(binder);
+            nullSafe = binder.nullSafe;
+            signalFailures = binder.signalFailures;
+            return this;
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            base = base.share(sharing);
+            property = property.share(sharing);
+
+            if (base instanceof Target && property instanceof Literal) {
+                // Properties of the target are already read once per shared evaluation
+                return this;
+            }
+
+            return sharing.memoize(this);
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            // Same form for `a.b` and `a['b']`
+            base.appendKey(key, sharing);
+            key.append('[');
+            property.appendKey(key, sharing);
+            key.append(']');
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            if (base instanceof Target) {
+                if (property instanceof Literal && ((Literal) property).value instanceof String) {
+                    properties.add((String) ((Literal) property).value);
+                    return true;
+                }
+                // Computed property name
+                return false;
+            }
+            return collectDependencies(properties, base, property);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            Object baseValue = base.getBase(context);
+
+            if (baseValue == null) {
+                if (nullSafe) {
+                    throw EvaluationSignal.NULL_BASE;
+                }
+                return null;
+            }
+
+            Object propertyValue = property.getValue(context);
+
+            if (propertyValue == null) {
+                return null;
+            }
+
+            MethodHandle accessor = PropertyAccessors.getAccessor(baseValue, propertyValue);
+
+            if (accessor != null) {
+                try {
+                    return context.read(baseValue, propertyValue, accessor);
+                } catch (Throwable e) {
+                    if (signalFailures) {
+                        throw EvaluationSignal.FAILED;
+                    }
+                    throw new ELException(e);
+                }
+            }
+
+            ELResolver resolver = context.getELResolver();
+            context.setPropertyResolved(false);
+            Object value = resolver.getValue(context, baseValue, propertyValue);
+
+            if (!context.isPropertyResolved()) {
+                if (signalFailures) {
+                    throw EvaluationSignal.FAILED;
+                }
+                throw new PropertyNotFoundException("ELResolver did not handle type: " + baseValue.getClass()
+                    + " with property of '" + propertyValue + "'");
+            }
+
+            return value;
+        }
+    }
+
+    static final class MethodCall extends ExpressionNode {
+        ExpressionNode base;
+        final String name;
+        final ExpressionNode[] arguments;
+        boolean nullSafe;
+
+        MethodCall(int start, int end, ExpressionNode base, String name, ExpressionNode[] arguments) {
+            super(start, end);
+            this.base = base;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            base = base.bind(binder);
+            bind(binder, arguments);
+            nullSafe = binder.nullSafe;
+            return this;
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            base = base.share(sharing);
+            share(sharing, arguments);
+            return this;
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            base.appendKey(key, sharing);
+            key.append('.').append(name);
+            appendKey(key, sharing, arguments);
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return collectDependencies(properties, base) && collectDependencies(properties, arguments);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            Object baseValue = base.getBase(context);
+
+            if (baseValue == null) {
+                if (nullSafe) {
+                    throw EvaluationSignal.NULL_BASE;
+                }
+                return null;
+            }
+
+            Object[] params = getValues(context, arguments);
+            context.setPropertyResolved(false);
+            return context.getELResolver().invoke(context, baseValue, name, null, params);
+        }
+    }
+
+    /**
+     * Function call, e.g. `fn:name(arg)` or (for a static import) `name(arg)`.
+     */
+    static final class Function extends ExpressionNode {
+        final String prefix;
+        final String name;
+        final ExpressionNode[] arguments;
+
+        Function(int start, int end, String prefix, String name, ExpressionNode[] arguments) {
+            super(start, end);
+            this.prefix = prefix;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            throw new IllegalStateException("Unbound function: " + name);
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            TemplateELContext template = binder.template;
+            FunctionRegistry functions = template.getFunctionMapper();
+            Method method = functions.resolveFunction(prefix, name);
+
+            if (method != null) {
+                // Bound once by the registry, shared by every expression calling the function
+                MethodHandle handle = method.getParameterCount() == arguments.length
+                        ? functions.getHandle(prefix, name)
+                        : null;
+
+                if (handle != null) {
+                    bind(binder, arguments);
+                    return new StaticCall(start, end, name, method, handle, arguments, true);
+                }
+            } else if (prefix.isEmpty() && !name.equals(template.getTargetName())) {
+                ImportHandler imports = template.getImportHandler();
+
+                if (imports.resolveClass(name) == null) {
+                    Class<?> type = imports.resolveStatic(name);
+
+                    if (type != null) {
+                        bind(binder, arguments);
+                        return StaticCall.of(start, end, type, name, arguments);
+                    }
+                }
+            }
+
+            // Constructors, lambda invocations, unresolved functions
+            return binder.interpret(this);
+        }
+    }
+
+    /**
+     * Call of a static method, invoked directly when the method is known
+     * (i.e. not overloaded), otherwise by the EL resolvers.
+     */
+    static final class StaticCall extends ExpressionNode {
+        final String name;
+        final Method method;
+        final Class<?>[] parameterTypes;
+        final Class<?>[] argumentTypes;
+        final MethodHandle handle;
+        final ExpressionNode[] arguments;
+        final boolean mapped;
+
+        StaticCall(int start, int end, String name, Method method, MethodHandle handle, ExpressionNode[] arguments, boolean mapped) {
+            super(start, end);
+            this.name = name;
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+            // Arguments of the (boxed) parameter types are passed without coercion
+            this.argumentTypes = MethodType.methodType(void.class, parameterTypes).wrap().parameterArray();
+            this.handle = handle;
+            this.arguments = arguments;
+            this.mapped = mapped;
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            share(sharing, arguments);
+            return this;
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            // Functions and static imports of the same method are equivalent
+            key.append(method.getDeclaringClass().getName()).append('.').append(method.getName());
+            appendKey(key, sharing, arguments);
+        }
+
+        static ExpressionNode of(int start, int end, Class<?> type, String name, ExpressionNode[] arguments) {
+            Method method = null;
+
+            for (Method candidate : type.getMethods()) {
+                if (candidate.getName().equals(name)) {
+                    if (method != null) {
+                        // Overloaded, the EL resolver will select the method based on the arguments
+                        return new StaticInvoke(start, end, new ELClass(type), name, arguments);
+                    }
+                    method = candidate;
+                }
+            }
+
+            MethodHandle handle = null;
+
+            if (method != null && Modifier.isStatic(method.getModifiers()) && !method.isVarArgs()) {
+                handle = handle(method, arguments.length);
+            }
+
+            if (handle == null) {
+                return new StaticInvoke(start, end, new ELClass(type), name, arguments);
+            }
+
+            return new StaticCall(start, end, name, method, handle, arguments, false);
+        }
+
+        static MethodHandle handle(Method method, int argumentCount) {
+            if (method.getParameterCount() != argumentCount) {
+                return null;
+            }
+
+            MethodHandle handle = PropertyAccessors.unreflect(method);
+
+            if (handle == null) {
+                return null;
+            }
+
+            return handle.asSpreader(Object[].class, argumentCount)
+                         .asType(MethodType.methodType(Object.class, Object[].class));
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return collectDependencies(properties, arguments);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            Object[] params = new Object[arguments.length];
+
+            for (int i = 0; i < params.length; i++) {
+                Object value = arguments[i].getValue(context);
+
+                if (argumentTypes[i].isInstance(value)) {
+                    params[i] = value;
+                    continue;
+                }
+
+                try {
+                    params[i] = context.convertToType(value, parameterTypes[i]);
+                } catch (ELException e) {
+                    if (mapped) {
+                        throw new ELException("Problems calling function '" + name + "'", e);
+                    }
+                    throw e;
+                }
+            }
+
+            context.step();
+
+            try {
+                return handle.invokeExact(params);
+            } catch (Throwable e) {
+                if (mapped) {
+                    throw new ELException("Problems calling function '" + name + "'", e);
+                }
+                throw new ELException(e);
+            }
+        }
+    }
+
+    static final class StaticInvoke extends ExpressionNode {
+        final ELClass type;
+        final String name;
+        final ExpressionNode[] arguments;
+
+        StaticInvoke(int start, int end, ELClass type, String name, ExpressionNode[] arguments) {
+            super(start, end);
+            this.type = type;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            share(sharing, arguments);
+            return this;
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return collectDependencies(properties, arguments);
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            key.append(type.getKlass().getName()).append('.').append(name);
+            appendKey(key, sharing, arguments);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            Object[] params = getValues(context, arguments);
+            return context.getELResolver().invoke(context, type, name, null, params);
+        }
+    }
+
+    static final class Choice extends ExpressionNode {
+        ExpressionNode condition;
+        ExpressionNode whenTrue;
+        ExpressionNode whenFalse;
+
+        Choice(int start, int end, ExpressionNode condition, ExpressionNode whenTrue, ExpressionNode whenFalse) {
+            super(start, end);
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            condition = condition.bind(binder);
+            whenTrue = whenTrue.bind(binder);
+            whenFalse = whenFalse.bind(binder);
+            return this;
+        }
+
+        @Override
+        ExpressionNode fold() {
+            condition = condition.fold();
+            whenTrue = whenTrue.fold();
+            whenFalse = whenFalse.fold();
+
+            if (condition instanceof Literal) {
+                try {
+                    return Operators.coerceToBoolean(((Literal) condition).value) ? whenTrue : whenFalse;
+                } catch (RuntimeException e) {
+                    return this;
+                }
+            }
+
+            return this;
+        }
+
+        @Override
+        Class<?> getResultType() {
+            Class<?> type = whenTrue.getResultType();
+            return type != null && type.equals(whenFalse.getResultType()) ? type : null;
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            condition = condition.share(sharing);
+            whenTrue = whenTrue.share(sharing);
+            whenFalse = whenFalse.share(sharing);
+            return sharing.memoize(this);
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            key.append('(');
+            condition.appendKey(key, sharing);
+            key.append('?');
+            whenTrue.appendKey(key, sharing);
+            key.append(':');
+            whenFalse.appendKey(key, sharing);
+            key.append(')');
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return collectDependencies(properties, condition, whenTrue, whenFalse);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            if (Operators.coerceToBoolean(condition.getValue(context))) {
+                return whenTrue.getValue(context);
+            }
+            return whenFalse.getValue(context);
+        }
+    }
+
+    enum UnaryOperator {
+        NOT, NEGATE, EMPTY
+    }
+
+    static final class Unary extends ExpressionNode {
+        final UnaryOperator operator;
+        ExpressionNode operand;
+
+        Unary(int start, int end, UnaryOperator operator, ExpressionNode operand) {
+            super(start, end);
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            operand = operand.bind(binder);
+            return this;
+        }
+
+        @Override
+        ExpressionNode fold() {
+            operand = operand.fold();
+            return operand instanceof Literal ? evaluateConstant() : this;
+        }
+
+        @Override
+        Class<?> getResultType() {
+            return operator == UnaryOperator.NEGATE ? Number.class : Boolean.class;
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            operand = operand.share(sharing);
+            return sharing.memoize(this);
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            key.append('(').append(operator).append(' ');
+            operand.appendKey(key, sharing);
+            key.append(')');
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return collectDependencies(properties, operand);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            Object value = operand.getValue(context);
+
+            switch (operator) {
+            case NOT:
+                return Boolean.valueOf(!Operators.coerceToBoolean(value));
+            case NEGATE:
+                return Operators.negate(value);
+            default:
+                return Boolean.valueOf(Operators.isEmpty(value));
+            }
+        }
+    }
+
+    enum BinaryOperator {
+        AND, OR, EQ, NE, LT, GT, LE, GE, ADD, SUBTRACT, MULTIPLY, DIVIDE, MOD, CONCAT
+    }
+
+    static final class Binary extends ExpressionNode {
+        final BinaryOperator operator;
+        ExpressionNode left;
+        ExpressionNode right;
+
+        Binary(BinaryOperator operator, ExpressionNode left, ExpressionNode right) {
+            super(left.start, right.end);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        ExpressionNode bind(Binder binder) {
+            left = left.bind(binder);
+            right = right.bind(binder);
+            return this;
+        }
+
+        @Override
+        ExpressionNode fold() {
+            left = left.fold();
+            right = right.fold();
+
+            if (left instanceof Literal) {
+                if (right instanceof Literal) {
+                    return evaluateConstant();
+                }
+
+                if (operator == BinaryOperator.AND || operator == BinaryOperator.OR) {
+                    return foldShortCircuit();
+                }
+            }
+
+            return this;
+        }
+
+        ExpressionNode foldShortCircuit() {
+            boolean value;
+
+            try {
+                value = Operators.coerceToBoolean(((Literal) left).value);
+            } catch (RuntimeException e) {
+                return this;
+            }
+
+            if (operator == BinaryOperator.AND && !value) {
+                return new Literal(start, end, Boolean.FALSE);
+            }
+            if (operator == BinaryOperator.OR && value) {
+                return new Literal(start, end, Boolean.TRUE);
+            }
+
+            return this;
+        }
+
+        @Override
+        Class<?> getResultType() {
+            switch (operator) {
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case MOD:
+                return Number.class;
+            case CONCAT:
+                return String.class;
+            default:
+                return Boolean.class;
+            }
+        }
+
+        @Override
+        ExpressionNode share(Sharing sharing) {
+            left = left.share(sharing);
+            right = right.share(sharing);
+            return sharing.memoize(this);
+        }
+
+        @Override
+        void appendKey(StringBuilder key, Sharing sharing) {
+            key.append('(');
+            left.appendKey(key, sharing);
+            key.append(' ').append(operator).append(' ');
+            right.appendKey(key, sharing);
+            key.append(')');
+        }
+
+        @Override
+        boolean collectDependencies(Set<String> properties) {
+            return collectDependencies(properties, left, right);
+        }
+
+        @Override
+        Object getValue(TargetELContext context) {
+            switch (operator) {
+            case AND:
+                return Operators.coerceToBoolean(left.getValue(context))
+                        ? Boolean.valueOf(Operators.coerceToBoolean(right.getValue(context)))
+                        : Boolean.FALSE;
+            case OR:
+                return Operators.coerceToBoolean(left.getValue(context))
+                        ? Boolean.TRUE
+                        : Boolean.valueOf(Operators.coerceToBoolean(right.getValue(context)));
+            case LT:
+            case GT:
+                return Boolean.valueOf(compare(context));
+            default:
+                return apply(left.getValue(context), right.getValue(context));
+            }
+        }
+
+        boolean compare(TargetELContext context) {
+            // The right operand is not evaluated when the left is null
+            Object value0 = left.getValue(context);
+
+            if (value0 == null) {
+                return false;
+            }
+
+            Object value1 = right.getValue(context);
+
+            if (operator == BinaryOperator.LT) {
+                return Operators.lessThan(value0, value1);
+            }
+            return Operators.greaterThan(value0, value1);
+        }
+
+        Object apply(Object value0, Object value1) {
+            switch (operator) {
+            case EQ:
+                return Boolean.valueOf(Operators.equal(value0, value1));
+            case NE:
+                return Boolean.valueOf(!Operators.equal(value0, value1));
+            case LE:
+                return Boolean.valueOf(Operators.lessThanOrEqual(value0, value1));
+            case GE:
+                return Boolean.valueOf(Operators.greaterThanOrEqual(value0, value1));
+            case ADD:
+                return Operators.add(value0, value1);
+            case SUBTRACT:
+                return Operators.subtract(value0, value1);
+            case MULTIPLY:
+                return Operators.multiply(value0, value1);
+            case DIVIDE:
+                return Operators.divide(value0, value1);
+            case MOD:
+                return Operators.mod(value0, value1);
+            default:
+                return Operators.concat(value0, value1);
+            }
+        }
+    }
+}
@@ -0,0 +1,600 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Binary;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.BinaryOperator;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Choice;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Function;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Identifier;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Literal;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.MethodCall;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Property;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Unary;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.UnaryOperator;
+import io.xlate.validation.internal.constraintvalidators.ExpressionNode.Unsupported;
+
+/**
+ * Parser for the EL expression grammar producing {@link ExpressionNode}s.
+ * Expressions are parsed only after they have been accepted by the EL
+ * implementation, so any failure simply means that the expression will not be
+ * compiled. Constructs that are not compiled are parsed (to find their
+ * extent in the expression) as {@link Unsupported} nodes.
+ */
+final class ExpressionParser {
+
+    private static final Set<String> KEYWORDS = Set.of("empty", "not", "and", "or", "eq", "ne", "lt", "gt", "le", "ge",
+                                                       "div", "mod", "instanceof");
+
+    private static final String[] SYMBOLS = { "==", "!=", "<=", ">=", "&&", "||", "->", "+=",
+                                              ".", "[", "]", "(", ")", ",", "?", ":", ";", "{", "}",
+                                              "+", "-", "*", "/", "%", "!", "<", ">", "=" };
+
+    enum TokenType {
+        IDENTIFIER, LITERAL, SYMBOL, END
+    }
+
+    static final class Token {
+        final TokenType type;
+        final String image;
+        final Object value;
+        final int start;
+        final int end;
+
+        Token(TokenType type, String image, Object value, int start, int end) {
+            this.type = type;
+            this.image = image;
+            this.value = value;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final List<Token> tokens;
+    private int index;
+
+    private ExpressionParser(String expression) {
+        this.tokens = tokenize(expression);
+    }
+
+    /**
+     * Parse the expression (without the <code>${</code> and <code>}</code>
+     * delimiters).
+     *
+     * @throws IllegalArgumentException when the expression can not be parsed
+     */
+    static ExpressionNode parse(String expression) {
+        ExpressionParser parser = new ExpressionParser(expression);
+        ExpressionNode node = parser.expression();
+
+        if (parser.current().type != TokenType.END) {
+            throw parser.unexpected();
+        }
+
+        return node;
+    }
+
+    static List<Token> tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = text.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i++;
+
+                while (i < length && Character.isJavaIdentifierPart(text.charAt(i))) {
+                    i++;
+                }
+
+                tokens.add(word(text.substring(start, i), start, i));
+            } else if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(text.charAt(i + 1)))) {
+                i = number(text, i, tokens);
+            } else if (c == '\'' || c == '"') {
+                i = string(text, i, tokens);
+            } else {
+                i = symbol(text, i, tokens);
+            }
+        }
+
+        tokens.add(new Token(TokenType.END, "", null, length, length));
+        return tokens;
+    }
+
+    static Token word(String image, int start, int end) {
+        switch (image) {
+        case "true":
+            return new Token(TokenType.LITERAL, image, Boolean.TRUE, start, end);
+        case "false":
+            return new Token(TokenType.LITERAL, image, Boolean.FALSE, start, end);
+        case "null":
+            return new Token(TokenType.LITERAL, image, null, start, end);
+        default:
+            return new Token(KEYWORDS.contains(image) ? TokenType.SYMBOL : TokenType.IDENTIFIER, image, null, start, end);
+        }
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static int number(String text, int start, List<Token> tokens) {
+        int length = text.length();
+        int i = start;
+        boolean floating = false;
+
+        while (i < length && isDigit(text.charAt(i))) {
+            i++;
+        }
+
+        if (i < length && text.charAt(i) == '.') {
+            floating = true;
+            i++;
+
+            while (i < length && isDigit(text.charAt(i))) {
+                i++;
+            }
+        }
+
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            int j = i + 1;
+
+            if (j < length && (text.charAt(j) == '+' || text.charAt(j) == '-')) {
+                j++;
+            }
+
+            if (j < length && isDigit(text.charAt(j))) {
+                floating = true;
+                i = j;
+
+                while (i < length && isDigit(text.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+
+        String image = text.substring(start, i);
+        // Integers too large for a Long fail when evaluated by EL, left uncompiled (NumberFormatException)
+        Object value = floating ? (Object) Double.valueOf(image) : (Object) Long.valueOf(image);
+        tokens.add(new Token(TokenType.LITERAL, image, value, start, i));
+        return i;
+    }
+
+    static int string(String text, int start, List<Token> tokens) {
+        int length = text.length();
+        char quote = text.charAt(start);
+        StringBuilder value = new StringBuilder();
+
+        for (int i = start + 1; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c == quote) {
+                tokens.add(new Token(TokenType.LITERAL, text.substring(start, i + 1), value.toString(), start, i + 1));
+                return i + 1;
+            }
+
+            if (c == '\\' && i + 1 < length) {
+                char next = text.charAt(i + 1);
+
+                if (next == '\\' || next == '"' || next == '\'' || next == '#' || next == '$') {
+                    c = next;
+                    i++;
+                }
+            }
+
+            value.append(c);
+        }
+
+        throw new IllegalArgumentException("Unterminated string literal at offset " + start);
+    }
+
+    static int symbol(String text, int start, List<Token> tokens) {
+        for (String symbol : SYMBOLS) {
+            if (text.startsWith(symbol, start)) {
+                int end = start + symbol.length();
+                tokens.add(new Token(TokenType.SYMBOL, symbol, null, start, end));
+                return end;
+            }
+        }
+
+        throw new IllegalArgumentException("Unexpected character `" + text.charAt(start) + "` at offset " + start);
+    }
+
+    Token current() {
+        return tokens.get(index);
+    }
+
+    Token peek(int offset) {
+        return tokens.get(Math.min(index + offset, tokens.size() - 1));
+    }
+
+    boolean is(int offset, String symbol) {
+        Token token = peek(offset);
+        return token.type == TokenType.SYMBOL && token.image.equals(symbol);
+    }
+
+    boolean accept(String symbol) {
+        if (is(0, symbol)) {
+            index++;
+            return true;
+        }
+        return false;
+    }
+
+    Token expect(String symbol) {
+        Token token = current();
+
+        if (!accept(symbol)) {
+            throw unexpected();
+        }
+
+        return token;
+    }
+
+    Token expectIdentifier() {
+        Token token = current();
+
+        if (token.type != TokenType.IDENTIFIER) {
+            throw unexpected();
+        }
+
+        index++;
+        return token;
+    }
+
+    /**
+     * End offset of the most recently consumed token
+     */
+    int previousEnd() {
+        return tokens.get(index - 1).end;
+    }
+
+    IllegalArgumentException unexpected() {
+        Token token = current();
+        return new IllegalArgumentException("Unexpected token `" + token.image + "` at offset " + token.start);
+    }
+
+    ExpressionNode expression() {
+        int start = current().start;
+        ExpressionNode node = assignment();
+
+        while (accept(";")) {
+            assignment();
+            node = new Unsupported(start, previousEnd());
+        }
+
+        return node;
+    }
+
+    ExpressionNode assignment() {
+        if (isLambda()) {
+            return lambda();
+        }
+
+        int start = current().start;
+        ExpressionNode node = choice();
+
+        while (accept("=")) {
+            assignment();
+            node = new Unsupported(start, previousEnd());
+        }
+
+        return node;
+    }
+
+    boolean isLambda() {
+        if (peek(0).type == TokenType.IDENTIFIER) {
+            return is(1, "->");
+        }
+
+        if (is(0, "(")) {
+            int offset = 1;
+
+            if (is(offset, ")")) {
+                return is(offset + 1, "->");
+            }
+
+            while (peek(offset).type == TokenType.IDENTIFIER) {
+                offset++;
+
+                if (is(offset, ")")) {
+                    return is(offset + 1, "->");
+                }
+                if (!is(offset, ",")) {
+                    break;
+                }
+                offset++;
+            }
+        }
+
+        return false;
+    }
+
+    ExpressionNode lambda() {
+        int start = current().start;
+
+        while (!accept("->")) {
+            index++;
+        }
+
+        if (isLambda()) {
+            lambda();
+        } else {
+            choice();
+        }
+
+        return new Unsupported(start, previousEnd());
+    }
+
+    ExpressionNode choice() {
+        ExpressionNode node = or();
+
+        if (accept("?")) {
+            ExpressionNode whenTrue = choice();
+            expect(":");
+            ExpressionNode whenFalse = choice();
+            node = new Choice(node.start, whenFalse.end, node, whenTrue, whenFalse);
+        }
+
+        return node;
+    }
+
+    ExpressionNode or() {
+        ExpressionNode node = and();
+
+        while (accept("||") || accept("or")) {
+            node = new Binary(BinaryOperator.OR, node, and());
+        }
+
+        return node;
+    }
+
+    ExpressionNode and() {
+        ExpressionNode node = equality();
+
+        while (accept("&&") || accept("and")) {
+            node = new Binary(BinaryOperator.AND, node, equality());
+        }
+
+        return node;
+    }
+
+    ExpressionNode equality() {
+        ExpressionNode node = compare();
+
+        while (true) {
+            if (accept("==") || accept("eq")) {
+                node = new Binary(BinaryOperator.EQ, node, compare());
+            } else if (accept("!=") || accept("ne")) {
+                node = new Binary(BinaryOperator.NE, node, compare());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    ExpressionNode compare() {
+        ExpressionNode node = concatenation();
+
+        while (true) {
+            if (accept("<") || accept("lt")) {
+                node = new Binary(BinaryOperator.LT, node, concatenation());
+            } else if (accept(">") || accept("gt")) {
+                node = new Binary(BinaryOperator.GT, node, concatenation());
+            } else if (accept("<=") || accept("le")) {
+                node = new Binary(BinaryOperator.LE, node, concatenation());
+            } else if (accept(">=") || accept("ge")) {
+                node = new Binary(BinaryOperator.GE, node, concatenation());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    ExpressionNode concatenation() {
+        ExpressionNode node = math();
+
+        while (accept("+=")) {
+            node = new Binary(BinaryOperator.CONCAT, node, math());
+        }
+
+        return node;
+    }
+
+    ExpressionNode math() {
+        ExpressionNode node = multiplication();
+
+        while (true) {
+            if (accept("+")) {
+                node = new Binary(BinaryOperator.ADD, node, multiplication());
+            } else if (accept("-")) {
+                node = new Binary(BinaryOperator.SUBTRACT, node, multiplication());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    ExpressionNode multiplication() {
+        ExpressionNode node = unary();
+
+        while (true) {
+            if (accept("*")) {
+                node = new Binary(BinaryOperator.MULTIPLY, node, unary());
+            } else if (accept("/") || accept("div")) {
+                node = new Binary(BinaryOperator.DIVIDE, node, unary());
+            } else if (accept("%") || accept("mod")) {
+                node = new Binary(BinaryOperator.MOD, node, unary());
+            } else {
+                return node;
+            }
+        }
+    }
+
+    ExpressionNode unary() {
+        int start = current().start;
+        UnaryOperator operator;
+
+        if (accept("-")) {
+            operator = UnaryOperator.NEGATE;
+        } else if (accept("!") || accept("not")) {
+            operator = UnaryOperator.NOT;
+        } else if (accept("empty")) {
+            operator = UnaryOperator.EMPTY;
+        } else {
+            return value();
+        }
+
+        ExpressionNode operand = unary();
+        return new Unary(start, operand.end, operator, operand);
+    }
+
+    ExpressionNode value() {
+        int start = current().start;
+        ExpressionNode node = valuePrefix();
+
+        while (true) {
+            if (accept(".")) {
+                Token name = expectIdentifier();
+
+                if (is(0, "(")) {
+                    ExpressionNode[] arguments = arguments();
+                    node = new MethodCall(start, previousEnd(), node, name.image, arguments);
+                } else {
+                    ExpressionNode property = new Literal(name.start, name.end, name.image);
+                    node = new Property(start, name.end, node, property);
+                }
+            } else if (accept("[")) {
+                ExpressionNode property = expression();
+                expect("]");
+
+                if (is(0, "(")) {
+                    // Method name given by an expression
+                    arguments();
+                    node = new Unsupported(start, previousEnd());
+                } else {
+                    node = new Property(start, previousEnd(), node, property);
+                }
+            } else {
+                return node;
+            }
+        }
+    }
+
+    ExpressionNode valuePrefix() {
+        Token token = current();
+
+        switch (token.type) {
+        case LITERAL:
+            index++;
+            return new Literal(token.start, token.end, token.value);
+        case IDENTIFIER:
+            return identifierOrFunction();
+        case SYMBOL:
+            if (accept("(")) {
+                ExpressionNode node = expression();
+                expect(")");
+
+                if (is(0, "(")) {
+                    // Immediately invoked lambda expression
+                    while (is(0, "(")) {
+                        arguments();
+                    }
+                    return new Unsupported(token.start, previousEnd());
+                }
+
+                return node;
+            }
+            if (accept("{")) {
+                // Set or Map construction
+                if (!accept("}")) {
+                    do {
+                        expression();
+                        if (accept(":")) {
+                            expression();
+                        }
+                    } while (accept(","));
+                    expect("}");
+                }
+                return new Unsupported(token.start, previousEnd());
+            }
+            if (accept("[")) {
+                // List construction
+                if (!accept("]")) {
+                    do {
+                        expression();
+                    } while (accept(","));
+                    expect("]");
+                }
+                return new Unsupported(token.start, previousEnd());
+            }
+            throw unexpected();
+        default:
+            throw unexpected();
+        }
+    }
+
+    ExpressionNode identifierOrFunction() {
+        Token name = expectIdentifier();
+        int start = name.start;
+        String prefix = "";
+
+        if (is(0, ":") && peek(1).type == TokenType.IDENTIFIER && is(2, "(")) {
+            index++;
+            prefix = name.image;
+            name = expectIdentifier();
+        }
+
+        if (is(0, "(")) {
+            ExpressionNode[] arguments = arguments();
+
+            if (is(0, "(")) {
+                // Repeated invocation of a lambda expression, e.g. `fn(1)(2)`
+                while (is(0, "(")) {
+                    arguments();
+                }
+                return new Unsupported(start, previousEnd());
+            }
+
+            return new Function(start, previousEnd(), prefix, name.image, arguments);
+        }
+
+        return new Identifier(name.start, name.end, name.image);
+    }
+
+    ExpressionNode[] arguments() {
+        expect("(");
+        List<ExpressionNode> arguments = new ArrayList<>();
+
+        if (!accept(")")) {
+            do {
+                arguments.add(expression());
+            } while (accept(","));
+            expect(")");
+        }
+
+        return arguments.toArray(new ExpressionNode[0]);
+    }
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import jakarta.validation.ConstraintDeclarationException;
+import jakarta.validation.ValidationException;
+import jakarta.validation.groups.Default;
+
+import io.xlate.validation.constraints.Expression;
+
+/**
+ * An {@link Expression @Expression} constraint declared on a class (or one of
+ * its super types), either on the class itself or on one of its fields or
+ * getter methods, along with the names of the properties its expressions
+ * depend on.
+ *
+ * <p>
+ * Rules are evaluated individually, outside of a Bean Validation provider,
+ * to support re-validating only the rules affected by a change to a bean.
+ */
+public final class ExpressionRule {
+
+    private static final ClassValue<List<ExpressionRule>> RULES = new ClassValue<List<ExpressionRule>>() {
+        @Override
+        protected List<ExpressionRule> computeValue(Class<?> type) {
+            return findRules(type);
+        }
+    };
+
+    private final Expression constraint;
+    private final String property;
+    private final MethodHandle accessor;
+    private final ExpressionValidator validator;
+    private final Set<String> dependencies;
+
+    ExpressionRule(Expression constraint, String property, MethodHandle accessor) {
+        this.constraint = constraint;
+        this.property = property;
+        this.accessor = accessor;
+        this.validator = new ExpressionValidator();
+        validator.initialize(constraint);
+
+        if (property != null) {
+            // The target of the expressions is the property's value
+            dependencies = Set.of(property);
+        } else {
+            dependencies = validator.getDependencies();
+        }
+    }
+
+    /**
+     * A rule for a constraint not declared by a bean, evaluated against the
+     * target given to {@link #isValid(Object)}.
+     *
+     * @throws ConstraintDeclarationException
+     *             when the constraint is not valid
+     */
+    public static ExpressionRule of(Expression constraint) {
+        return new ExpressionRule(constraint, null, null);
+    }
+
+    /**
+     * The rules declared by the type and its super types.
+     *
+     * @throws ConstraintDeclarationException
+     *             when a constraint is not valid
+     */
+    public static List<ExpressionRule> getRules(Class<?> type) {
+        return RULES.get(type);
+    }
+
+    static List<ExpressionRule> findRules(Class<?> type) {
+        return findRules(type, Expression.class, ExpressionRule::new);
+    }
+
+    /**
+     * Creates the rule for a constraint declared on a class, field, or getter.
+     */
+    interface RuleFactory<A extends Annotation, R> {
+        /**
+         * @param property
+         *            the name of the field or getter's property, or null for
+         *            a constraint declared on the class
+         * @param accessor
+         *            reads the property's value from a bean, or null for a
+         *            constraint declared on the class
+         */
+        R create(A constraint, String property, MethodHandle accessor);
+    }
+
+    /**
+     * Find the constraints of the annotation type declared by the type and its
+     * super types, creating a rule for each.
+     */
+    static <A extends Annotation, R> List<R> findRules(Class<?> type, Class<A> annotationType, RuleFactory<A, R> factory) {
+        List<R> rules = new ArrayList<>();
+
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            addRules(rules, current, annotationType, factory);
+        }
+
+        return Collections.unmodifiableList(rules);
+    }
+
+    static <A extends Annotation, R> void addRules(List<R> rules, Class<?> type, Class<A> annotationType, RuleFactory<A, R> factory) {
+        for (A constraint : type.getDeclaredAnnotationsByType(annotationType)) {
+            rules.add(factory.create(constraint, null, null));
+        }
+
+        for (Field field : type.getDeclaredFields()) {
+            A[] constraints = field.getDeclaredAnnotationsByType(annotationType);
+
+            if (constraints.length > 0 && !Modifier.isStatic(field.getModifiers())) {
+                MethodHandle accessor = unreflect(field, field.getName());
+
+                for (A constraint : constraints) {
+                    rules.add(factory.create(constraint, field.getName(), accessor));
+                }
+            }
+        }
+
+        for (Method method : type.getDeclaredMethods()) {
+            A[] constraints = method.getDeclaredAnnotationsByType(annotationType);
+            String name = getPropertyName(method);
+
+            if (constraints.length > 0 && name != null) {
+                MethodHandle accessor = unreflect(method, name);
+
+                for (A constraint : constraints) {
+                    rules.add(factory.create(constraint, name, accessor));
+                }
+            }
+        }
+    }
+
+    static String getPropertyName(Method method) {
+        if (method.getParameterCount() > 0 || Modifier.isStatic(method.getModifiers()) || method.isSynthetic()) {
+            return null;
+        }
+
+        String name = method.getName();
+
+        if (name.startsWith("get")) {
+            return PropertyAccessors.getPropertyName(name.substring(3));
+        }
+        if (name.startsWith("is") && method.getReturnType() == boolean.class) {
+            return PropertyAccessors.getPropertyName(name.substring(2));
+        }
+
+        return null;
+    }
+
+    static MethodHandle unreflect(AccessibleObject member, String name) {
+        if (!member.trySetAccessible()) {
+            throw new ConstraintDeclarationException("Property `" + name + "` is not accessible");
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = member instanceof Field
+                    ? lookup.unreflectGetter((Field) member)
+                    : lookup.unreflect((Method) member);
+            return handle.asType(handle.type().changeReturnType(Object.class).changeParameterType(0, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new ConstraintDeclarationException("Property `" + name + "` is not accessible", e);
+        }
+    }
+
+    public Expression getConstraint() {
+        return constraint;
+    }
+
+    /**
+     * The name of the property on which the rule is declared, or null when
+     * declared on the class.
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * The names of the bean's properties read when evaluating the rule.
+     *
+     * @return the property names, or null when they can not be determined and
+     *         the rule must be evaluated following any change
+     */
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Whether the rule belongs to any of the groups.
+     */
+    public boolean isMember(Set<Class<?>> groups) {
+        return isMember(constraint.groups(), groups);
+    }
+
+    static boolean isMember(Class<?>[] declared, Set<Class<?>> groups) {
+        if (declared.length == 0) {
+            return groups.contains(Default.class);
+        }
+
+        return Arrays.stream(declared).anyMatch(groups::contains);
+    }
+
+    /**
+     * Evaluate the rule for the bean.
+     *
+     * @throws ValidationException
+     *             when the rule can not be evaluated
+     */
+    public boolean isValid(Object bean) {
+        Object target = getTarget(bean, accessor);
+
+        try {
+            return validator.getResult(target);
+        } catch (ValidationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ValidationException("Constraint " + this + " could not be evaluated", e);
+        }
+    }
+
+    /**
+     * The target of a constraint for the bean, i.e. the value of the property
+     * read by the accessor or the bean itself when there is no accessor.
+     */
+    static Object getTarget(Object bean, MethodHandle accessor) {
+        if (accessor == null) {
+            return bean;
+        }
+
+        try {
+            return accessor.invokeExact(bean);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ValidationException(e);
+        }
+    }
+
+    /**
+     * End the evaluation of shared constraints in progress on this thread.
+     * Must be called after evaluating a subset of the rules of a class.
+     *
+     * @see SharedEvaluation#endPasses()
+     */
+    public static void endSharedEvaluation() {
+        SharedEvaluation.endPasses();
+    }
+
+    @Override
+    public String toString() {
+        return (property != null ? property + ": " : "") + constraint;
+    }
+}
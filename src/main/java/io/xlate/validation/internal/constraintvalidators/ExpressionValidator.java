@@ -17,11 +17,14 @@
 package io.xlate.validation.internal.constraintvalidators;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 
-import jakarta.el.ELManager;
-import jakarta.el.ELProcessor;
-import jakarta.el.ImportHandler;
+import jakarta.el.ELException;
+import jakarta.validation.ConstraintDeclarationException;
 import jakarta.validation.ConstraintValidator;
 import jakarta.validation.ConstraintValidatorContext;
 import jakarta.validation.ConstraintValidatorContext.ConstraintViolationBuilder.NodeBuilderCustomizableContext;
@@ -29,6 +32,8 @@ import jakarta.validation.constraintvalidation.SupportedValidationTarget;
 import jakarta.validation.constraintvalidation.ValidationTarget;
 
 import io.xlate.validation.constraints.Expression;
+import io.xlate.validation.constraints.Expression.ExceptionalValue;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
 
 @SupportedValidationTarget({
     ValidationTarget.ANNOTATED_ELEMENT,
@@ -36,57 +41,296 @@ import io.xlate.validation.constraints.Expression;
 })
 public class ExpressionValidator implements BooleanExpression, ConstraintValidator<Expression, Object> {
 
-    private Expression annotation;
+    private SharedEvaluation.Participant participant;
+    private TemplateELContext template;
+    private CompiledExpression whenExpression;
+    private CompiledExpression valueExpression;
+    private Predicate<Object> predicate;
+    private boolean disabled;
+    private ValidationResults results;
+    EvaluationLimits limits;
+    private Boolean exceptionalValue;
+    private String message;
+    private String[] node;
 
     @Override
     public void initialize(Expression constraintAnnotation) {
-        annotation = constraintAnnotation;
+        participant = constraintAnnotation.shared() ? new SharedEvaluation.Participant(constraintAnnotation) : null;
+
+        // Resolvers, imports, and functions are prepared once and shared by all evaluations (and constraints)
+        String targetName = constraintAnnotation.targetName();
+        String[] packageImports = constraintAnnotation.packageImports();
+        String[] classImports = constraintAnnotation.classImports();
+        String[] staticImports = constraintAnnotation.staticImports();
+
+        template = TemplateELContext.getInstance(targetName,
+                                                 packageImports,
+                                                 classImports,
+                                                 staticImports,
+                                                 constraintAnnotation.functionLibraries(),
+                                                 constraintAnnotation.resolvers());
+
+        // Parse once, the resulting expressions are thread-safe and evaluated for each target
+        whenExpression = intern(constraintAnnotation.when(),
+                                constraintAnnotation.compile(),
+                                ExceptionalValue.UNSET,
+                                ExceptionalValue.UNSET,
+                                constraintAnnotation.shared());
+        exceptionalValue = constraintAnnotation.exceptionalValue().booleanValue();
+        predicate = newPredicate(constraintAnnotation.predicate());
+
+        if (predicate == null) {
+            valueExpression = intern(constraintAnnotation.value(),
+                                     constraintAnnotation.compile(),
+                                     constraintAnnotation.nullValue(),
+                                     constraintAnnotation.exceptionalValue(),
+                                     constraintAnnotation.shared());
+        } else if (!constraintAnnotation.value().trim().equals(targetName)) {
+            // The predicate tests the value of the expression, of any type
+            valueExpression = internOperand(constraintAnnotation.value(),
+                                            constraintAnnotation.compile(),
+                                            constraintAnnotation.shared());
+        }
+
+        if (whenExpression != null && whenExpression.isConstant()) {
+            // The constraint either never or always applies
+            disabled = !((Boolean) whenExpression.getConstantValue());
+            whenExpression = null;
+        }
+
+        String name = constraintAnnotation.value();
+        results = ValidationResults.of(name, constraintAnnotation.cache());
+        limits = EvaluationLimits.of(name, constraintAnnotation.budget());
+        message = constraintAnnotation.message();
+        node = Arrays.stream(constraintAnnotation.node())
+                .filter(Predicate.not(String::isEmpty))
+                .toArray(String[]::new);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static Predicate<Object> newPredicate(Class<? extends Predicate> type) {
+        if (type == Predicate.class) {
+            return null;
+        }
+
+        try {
+            return type.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new ConstraintDeclarationException("Predicate " + type.getName() + " could not be instantiated", e);
+        }
+    }
+
+    /**
+     * Obtain the expression from the cache of expressions shared by all
+     * constraints, compiling it when not present.
+     */
+    CompiledExpression intern(String expression,
+                              boolean compiled,
+                              ExceptionalValue nullValue,
+                              ExceptionalValue exceptionalValue,
+                              boolean shared) {
+        if (expression == null || expression.isEmpty()) {
+            return null;
+        }
+
+        List<Object> key = List.of(template, expression, compiled, nullValue, exceptionalValue, shared);
+
+        return ExpressionCache.intern(key, () -> {
+            CompiledExpression result = compile(template,
+                                                expression,
+                                                compiled,
+                                                nullValue.booleanValue(),
+                                                exceptionalValue.booleanValue());
+
+            // Common subexpressions evaluated once for all shared constraints evaluating a target
+            return shared ? result.share(template) : result;
+        });
+    }
+
+    /**
+     * Obtain the expression giving the value tested by the constraint's
+     * predicate from the cache of expressions shared by all constraints,
+     * compiling it when not present. Unlike the constraint's Boolean
+     * expressions, the result may be of any type.
+     */
+    CompiledExpression internOperand(String expression, boolean compiled, boolean shared) {
+        List<Object> key = List.of(template, expression, compiled, Predicate.class, shared);
+
+        return ExpressionCache.intern(key, () -> {
+            CompiledExpression result;
+
+            try {
+                result = compiled
+                        ? CompiledExpression.compile(template, expression, null, null)
+                        : CompiledExpression.interpret(template, expression);
+            } catch (ELException e) {
+                throw new ConstraintDeclarationException("Expression `" + expression + "` could not be parsed", e);
+            }
+
+            return shared ? result.share(template) : result;
+        });
+    }
+
+    /**
+     * Analyze the expressions of this constraint to find the names of the
+     * target's properties they read.
+     *
+     * @return the property names, or null when they can not be determined
+     */
+    Set<String> getDependencies() {
+        if (disabled) {
+            return Collections.emptySet();
+        }
+        if (predicate != null && valueExpression == null) {
+            // The predicate is given the target itself
+            return null;
+        }
+        return getDependencies(whenExpression, valueExpression);
+    }
+
+    Set<String> getDependencies(CompiledExpression... expressions) {
+        Set<String> properties = new HashSet<>();
+
+        for (CompiledExpression expression : expressions) {
+            if (expression == null) {
+                continue;
+            }
+
+            // Interpreted expressions are analyzed in their compiled form
+            CompiledExpression analyzed = expression.isCompiled()
+                    ? expression
+                    : CompiledExpression.analyze(template, expression.getExpressionString());
+            Set<String> read = analyzed != null ? analyzed.getDependencies() : null;
+
+            if (read == null) {
+                return null;
+            }
+
+            properties.addAll(read);
+        }
+
+        return Collections.unmodifiableSet(properties);
     }
 
     @Override
     public boolean isValid(Object target, ConstraintValidatorContext context) {
-        ELProcessor processor = buildProcessor(target);
+        final boolean valid = getResult(target);
+
+        if (!valid && node.length > 0) {
+            context.disableDefaultConstraintViolation();
+            NodeBuilderCustomizableContext builder = context
+                    .buildConstraintViolationWithTemplate(message)
+                    .addPropertyNode(node[0]);
+
+            for (int n = 1; n < node.length; n++) {
+                builder = builder.addPropertyNode(node[n]);
+            }
+
+            builder.addConstraintViolation();
+        }
+
+        return valid;
+    }
 
-        if (!evaluate(processor, annotation.when(), null)) {
+    /**
+     * Validate the target, or obtain the cached result for the target.
+     */
+    boolean getResult(Object target) {
+        if (disabled) {
+            skipSharedEvaluation(target);
             return true;
         }
 
-        if (!evaluate(processor, annotation.value(), annotation.exceptionalValue().booleanValue())) {
-            String[] node = Arrays.stream(annotation.node())
-                    .filter(Predicate.not(String::isEmpty))
-                    .toArray(String[]::new);
+        if (results == null) {
+            return validate(target, null);
+        }
 
-            if (node.length > 0) {
-                context.disableDefaultConstraintViolation();
-                NodeBuilderCustomizableContext builder = context
-                        .buildConstraintViolationWithTemplate(annotation.message())
-                        .addPropertyNode(node[0]);
+        Boolean cached = results.get(target);
 
-                for (int n = 1; n < node.length; n++) {
-                    builder = builder.addPropertyNode(node[n]);
-                }
+        if (cached != null) {
+            skipSharedEvaluation(target);
+            return cached;
+        }
 
-                builder.addConstraintViolation();
-            }
+        return validate(target, results);
+    }
 
-            return false;
+    /**
+     * Let the pass of the shared constraints over the target end without
+     * this constraint taking part.
+     */
+    void skipSharedEvaluation(Object target) {
+        if (participant != null) {
+            SharedEvaluation.skip(participant, target);
         }
+    }
 
-        return true;
+    boolean validate(Object target) {
+        return validate(target, null);
     }
 
-    ELProcessor buildProcessor(Object target) {
-        ELProcessor processor = new ELProcessor();
-        ELManager manager = processor.getELManager();
-        ImportHandler imports = manager.getELContext().getImportHandler();
-        String targetName = annotation.targetName();
+    /**
+     * Validate the target, remembering the result in the cache (when given)
+     * unless the evaluation exceeded its budget.
+     */
+    boolean validate(Object target, ValidationResults cache) {
+        boolean valid;
+        boolean exceeded = false;
+
+        if (predicate != null && whenExpression == null && valueExpression == null) {
+            // No EL evaluation required
+            skipSharedEvaluation(target);
+            valid = test(null, target);
+        } else {
+            try (TargetELContext elContext = template.acquireContext(target)) {
+                if (participant != null) {
+                    // Property reads shared with the other shared constraints evaluating this target
+                    elContext.shared = SharedEvaluation.join(participant, target);
+                }
+
+                if (limits != null) {
+                    limits.start(elContext);
+                }
+
+                try {
+                    valid = !evaluate(elContext, whenExpression, null)
+                            || (predicate != null
+                                    ? test(elContext, target)
+                                    : evaluate(elContext, valueExpression, exceptionalValue));
+                } catch (RuntimeException e) {
+                    if (!elContext.exceeded || exceptionalValue == null) {
+                        if (elContext.shared != null) {
+                            // The validation of the target ends, the other constraints will not take part
+                            elContext.shared.end();
+                        }
+                        throw elContext.exceeded ? EvaluationLimits.unwrap(e) : e;
+                    }
+                    valid = exceptionalValue;
+                }
+
+                exceeded = elContext.exceeded;
+            }
+        }
 
-        manager.addBeanNameResolver(newNameResolver(target, targetName));
+        if (cache != null && !exceeded) {
+            cache.put(target, valid);
+        }
 
-        Arrays.stream(annotation.packageImports()).forEach(imports::importPackage);
-        Arrays.stream(annotation.classImports()).forEach(imports::importClass);
-        Arrays.stream(annotation.staticImports()).forEach(imports::importStatic);
+        return valid;
+    }
 
-        return processor;
+    /**
+     * Test the predicate with the value of the value expression, or with the
+     * target itself when there is no value expression.
+     */
+    boolean test(TargetELContext elContext, Object target) {
+        try {
+            return predicate.test(valueExpression != null ? valueExpression.getValue(elContext) : target);
+        } catch (RuntimeException e) {
+            if (exceptionalValue != null) {
+                return exceptionalValue;
+            }
+            throw e;
+        }
     }
 }
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import jakarta.el.FunctionMapper;
+import jakarta.validation.ConstraintDeclarationException;
+
+import io.xlate.validation.spi.FunctionLibrary;
+
+/**
+ * The functions of the {@link FunctionLibrary}s available to a constraint:
+ * the built-in libraries, those registered as services, and those named by the
+ * constraint. Each
+ * function is bound to a {@link MethodHandle} when the registry is created
+ * and registries are shared by all constraints naming the same libraries.
+ * The handles are only used by compiled expressions; as a
+ * {@link FunctionMapper}, the registry provides interpreted expressions with
+ * the {@link Method}, invoked reflectively by the EL implementation.
+ */
+final class FunctionRegistry extends FunctionMapper {
+
+    static final List<FunctionLibrary> BUILT_IN_LIBRARIES = List.of(new StringFunctions(), new CollectionFunctions());
+    static final FunctionRegistry BUILT_IN = new FunctionRegistry(BUILT_IN_LIBRARIES);
+
+    private final Map<String, Method> methods = new HashMap<>();
+    private final Map<String, MethodHandle> handles = new HashMap<>();
+    private final String signature;
+
+    FunctionRegistry(List<FunctionLibrary> libraries) {
+        List<String> names = new ArrayList<>(libraries.size());
+
+        for (FunctionLibrary library : libraries) {
+            names.add(library.getClass().getName());
+            String prefix = library.getPrefix();
+            Map<String, Method> functions;
+
+            try {
+                functions = library.getFunctions();
+            } catch (RuntimeException e) {
+                throw new ConstraintDeclarationException("Function library " + library.getClass().getName() + " is not valid", e);
+            }
+
+            functions.forEach((name, method) -> register(prefix, name, method));
+        }
+
+        signature = names.toString();
+    }
+
+    /**
+     * Obtain the registry for the built-in libraries, the libraries registered
+     * as services with the context class loader, and the given libraries.
+     *
+     * @throws ConstraintDeclarationException
+     *             when a library can not be loaded or instantiated, or its
+     *             functions are not valid
+     */
+    static FunctionRegistry getInstance(List<Class<? extends FunctionLibrary>> declared) {
+        return ExpressionCache.intern(List.of(FunctionRegistry.class, declared), () -> {
+            List<FunctionLibrary> services = loadServices();
+
+            if (services.isEmpty() && declared.isEmpty()) {
+                return BUILT_IN;
+            }
+
+            List<FunctionLibrary> libraries = new ArrayList<>(BUILT_IN_LIBRARIES);
+            libraries.addAll(services);
+
+            for (Class<? extends FunctionLibrary> type : declared) {
+                libraries.add(newLibrary(type));
+            }
+
+            return new FunctionRegistry(libraries);
+        });
+    }
+
+    static List<FunctionLibrary> loadServices() {
+        // Services are looked up once for each context class loader
+        return ExpressionCache.intern(FunctionLibrary.class, () -> {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            List<FunctionLibrary> libraries = new ArrayList<>();
+
+            try {
+                for (FunctionLibrary library : ServiceLoader.load(FunctionLibrary.class, loader)) {
+                    libraries.add(library);
+                }
+            } catch (ServiceConfigurationError e) {
+                throw new ConstraintDeclarationException("Function libraries could not be loaded", e);
+            }
+
+            return libraries;
+        });
+    }
+
+    static FunctionLibrary newLibrary(Class<? extends FunctionLibrary> type) {
+        try {
+            return type.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new ConstraintDeclarationException("Function library " + type.getName() + " could not be instantiated", e);
+        }
+    }
+
+    void register(String prefix, String name, Method method) {
+        String key = prefix + ':' + name;
+
+        if (!Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(method.getModifiers())) {
+            throw new ConstraintDeclarationException("Function " + key + " must be a public static method");
+        }
+
+        if (methods.putIfAbsent(key, method) != null) {
+            throw new ConstraintDeclarationException("Function " + key + " is defined more than once");
+        }
+
+        MethodHandle handle = ExpressionNode.StaticCall.handle(method, method.getParameterCount());
+
+        if (handle != null) {
+            handles.put(key, handle);
+        }
+    }
+
+    /**
+     * Identifies the libraries of this registry.
+     */
+    String getSignature() {
+        return signature;
+    }
+
+    @Override
+    public Method resolveFunction(String prefix, String localName) {
+        return methods.get(prefix + ':' + localName);
+    }
+
+    /**
+     * The handle bound to the function, taking the arguments as an array and
+     * returning the result as an Object.
+     *
+     * @return the handle, or null when the function is not known or can not be
+     *         invoked directly
+     */
+    MethodHandle getHandle(String prefix, String localName) {
+        return handles.get(prefix + ':' + localName);
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.validation.ConstraintDeclarationException;
+import jakarta.validation.ValidationException;
+
+import io.xlate.validation.constraints.JdbcStatement;
+
+/**
+ * A {@link JdbcStatement} constraint declared by a class (or one of its super
+ * types), either on the class itself or on one of its fields or getter
+ * methods.
+ *
+ * <p>
+ * Rules are evaluated outside of a Bean Validation provider to support
+ * validating the keys (parameter values) of many beans together.
+ */
+public final class JdbcStatementRule {
+
+    private static final ClassValue<List<JdbcStatementRule>> RULES = new ClassValue<List<JdbcStatementRule>>() {
+        @Override
+        protected List<JdbcStatementRule> computeValue(Class<?> type) {
+            return ExpressionRule.findRules(type, JdbcStatement.class, JdbcStatementRule::new);
+        }
+    };
+
+    private final JdbcStatement constraint;
+    private final String property;
+    private final MethodHandle accessor;
+    private final JdbcStatementValidator validator;
+
+    JdbcStatementRule(JdbcStatement constraint, String property, MethodHandle accessor) {
+        this.constraint = constraint;
+        this.property = property;
+        this.accessor = accessor;
+        this.validator = new JdbcStatementValidator();
+        validator.initialize(constraint);
+    }
+
+    /**
+     * The rules declared by the type and its super types.
+     *
+     * @throws ConstraintDeclarationException
+     *             when a constraint is not valid
+     */
+    public static List<JdbcStatementRule> getRules(Class<?> type) {
+        return RULES.get(type);
+    }
+
+    public JdbcStatement getConstraint() {
+        return constraint;
+    }
+
+    /**
+     * The name of the property on which the rule is declared, or null when
+     * declared on the class.
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Whether the rule belongs to any of the groups.
+     */
+    public boolean isMember(Set<Class<?>> groups) {
+        return ExpressionRule.isMember(constraint.groups(), groups);
+    }
+
+    /**
+     * Evaluate the parameters of the rule for the bean.
+     *
+     * @return the parameter values, or null when the rule does not apply to
+     *         the bean due to its 'when' condition
+     * @throws ValidationException
+     *             when the parameters can not be evaluated
+     */
+    public Object[] getParameterValues(Object bean) {
+        Object target = ExpressionRule.getTarget(bean, accessor);
+
+        try {
+            return validator.getParameterValues(target);
+        } catch (ValidationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new ValidationException("Constraint " + this + " could not be evaluated", e);
+        }
+    }
+
+    /**
+     * Validate the keys (parameter values) together.
+     *
+     * @return the validity of each key
+     * @throws ValidationException
+     *             when the statement or batch query fails
+     */
+    public Map<List<Object>, Boolean> validate(Collection<List<Object>> keys) {
+        return validator.getResults(keys);
+    }
+
+    @Override
+    public String toString() {
+        return (property != null ? property + ": " : "") + constraint;
+    }
+}
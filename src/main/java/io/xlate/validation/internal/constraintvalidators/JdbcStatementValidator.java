@@ -19,53 +19,127 @@ package io.xlate.validation.internal.constraintvalidators;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
-import jakarta.el.ELManager;
-import jakarta.el.ELProcessor;
+import jakarta.el.ELException;
 import jakarta.validation.ConstraintDeclarationException;
 import jakarta.validation.ConstraintValidator;
 import jakarta.validation.ConstraintValidatorContext;
 import jakarta.validation.ValidationException;
 
+import io.xlate.validation.constraints.BatchQuery;
+import io.xlate.validation.constraints.BloomFilter;
 import io.xlate.validation.constraints.JdbcStatement;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
 
 public class JdbcStatementValidator implements BooleanExpression, ConstraintValidator<JdbcStatement, Object> {
 
+    private static final String[] NO_IMPORTS = {};
+    private static final Object[] NO_VALUES = {};
+
     JdbcStatement annotation;
     DataSource dataSource;
+    TemplateELContext template;
+    CompiledExpression whenExpression;
+    ParameterBinder[] parameters;
+    ValidationResults results;
+    ReferenceSnapshot snapshot;
+    ReferenceSnapshot filter;
+    BatchQuery batch;
 
     @Override
     public void initialize(JdbcStatement constraintAnnotation) {
         this.annotation = constraintAnnotation;
         this.dataSource = getDataSource(annotation.dataSourceLookup());
+
+        // Expressions and the functions they call are bound once, shared by all validations
+        template = TemplateELContext.getInstance("self",
+                                                 NO_IMPORTS,
+                                                 NO_IMPORTS,
+                                                 NO_IMPORTS,
+                                                 annotation.functionLibraries(),
+                                                 annotation.resolvers());
+        whenExpression = compile(template, annotation.when(), true);
+        parameters = compileParameters(template, annotation.parameters());
+        // Keyed by the parameter values, the statement is the same for every validation
+        results = ValidationResults.of(annotation.value(), annotation.cache(), false);
+
+        if (!annotation.snapshot().value().isEmpty()) {
+            // Keys loaded now (and refreshed in the background), validations never wait for the database
+            snapshot = ReferenceSnapshot.getInstance(annotation.dataSourceLookup(),
+                                                     dataSource,
+                                                     annotation.snapshot(),
+                                                     parameters.length);
+        } else if (!annotation.filter().value().isEmpty()) {
+            BloomFilter filterAnnotation = annotation.filter();
+            filter = ReferenceSnapshot.getInstance(annotation.dataSourceLookup(),
+                                                   dataSource,
+                                                   filterAnnotation.value(),
+                                                   ReferenceSnapshot.toNanos(filterAnnotation.refresh(),
+                                                                             filterAnnotation.refreshUnit()),
+                                                   parameters.length,
+                                                   BloomFilterKeys.configuration(filterAnnotation),
+                                                   BloomFilterKeys.loader(filterAnnotation));
+        }
+
+        batch = annotation.batch();
+
+        if (!batch.value().isEmpty() && (!batch.value().contains(BatchQuery.KEYS) || batch.size() <= 0)) {
+            throw new ConstraintDeclarationException("Batch query `" + batch.value() + "` requires the marker "
+                    + BatchQuery.KEYS + " and a positive size");
+        }
+    }
+
+    /**
+     * Check the number of columns selected by the batch query, once it has
+     * been executed.
+     *
+     * @throws ConstraintDeclarationException
+     *             when the query does not select a column for each parameter
+     */
+    void verifyBatchColumns(ResultSetMetaData metadata) throws SQLException {
+        if (metadata.getColumnCount() != parameters.length) {
+            throw new ConstraintDeclarationException("Batch query `" + batch.value() + "` must select "
+                    + parameters.length + " column(s), one for each parameter");
+        }
+    }
+
+    static ParameterBinder[] compileParameters(TemplateELContext template, String[] parameters) {
+        ParameterBinder[] binders = new ParameterBinder[parameters.length];
+
+        for (int i = 0; i < parameters.length; i++) {
+            try {
+                binders[i] = new ParameterBinder(CompiledExpression.compile(template, parameters[i]));
+            } catch (ELException e) {
+                throw new ConstraintDeclarationException("Expression `" + parameters[i] + "` could not be parsed", e);
+            }
+        }
+
+        return binders;
     }
 
     @Override
     public boolean isValid(Object target, ConstraintValidatorContext context) {
-        final String sql = annotation.value();
-        final String[] parameters = annotation.parameters();
-        final String when = annotation.when();
-        final ELProcessor processor;
-
-        if (!when.isEmpty() || parameters.length > 0) {
-            processor = new ELProcessor();
-            ELManager manager = processor.getELManager();
-            manager.addBeanNameResolver(newNameResolver(target, "self"));
-
-            if (!evaluate(processor, when, null)) {
-                // Validation does not apply based on 'when' condition
-                return true;
-            }
-        } else {
-            processor = null;
+        final Object[] values = getParameterValues(target);
+
+        if (values == null) {
+            // Validation does not apply based on 'when' condition
+            return true;
         }
 
-        final boolean valid = executeQuery(processor, sql, parameters);
+        final boolean valid = isValid(values);
 
         if (!valid) {
             updateValidationContext(context, annotation.node(), annotation.message());
@@ -74,6 +148,148 @@ public class JdbcStatementValidator implements BooleanExpression, ConstraintVali
         return valid;
     }
 
+    /**
+     * Evaluate the parameters for the target.
+     *
+     * @return the parameter values, or null when the constraint does not apply
+     *         to the target due to its 'when' condition
+     */
+    Object[] getParameterValues(Object target) {
+        if (whenExpression == null && parameters.length == 0) {
+            return NO_VALUES;
+        }
+
+        try (TargetELContext elContext = template.acquireContext(target)) {
+            if (!evaluate(elContext, whenExpression, null)) {
+                return null;
+            }
+
+            return getParameterValues(elContext, parameters);
+        }
+    }
+
+    boolean isValid(Object[] values) {
+        if (snapshot != null) {
+            Boolean found = snapshot.contains(values);
+
+            if (found != null) {
+                return found;
+            }
+            // Values not comparable with the snapshot's keys are validated by the statement
+        } else if (filter != null && Boolean.FALSE.equals(filter.contains(values))) {
+            // Definitely not a valid key
+            return false;
+        }
+
+        return getResult(annotation.value(), values);
+    }
+
+    /**
+     * Validate many keys (parameter values) at once, using the snapshot,
+     * filter, and cache (when enabled), and executing the batch query (or the
+     * statement) for the remaining keys using a single connection.
+     *
+     * @return the validity of each key
+     */
+    Map<List<Object>, Boolean> getResults(Collection<List<Object>> keys) {
+        Map<List<Object>, Boolean> resolved = new HashMap<>();
+        List<List<Object>> pending = new ArrayList<>();
+
+        for (List<Object> key : keys) {
+            Object[] values = key.toArray();
+            Boolean cached = null;
+
+            if (snapshot != null) {
+                cached = snapshot.contains(values);
+            } else if (filter != null && Boolean.FALSE.equals(filter.contains(values))) {
+                cached = Boolean.FALSE;
+            } else if (results != null) {
+                cached = results.get(key);
+            }
+
+            if (cached != null) {
+                resolved.put(key, cached);
+            } else {
+                pending.add(key);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return resolved;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            if (batch.value().isEmpty()) {
+                for (List<Object> key : pending) {
+                    resolved.put(key, executeQuery(connection, annotation.value(), parameters, key.toArray()));
+                }
+            } else {
+                for (int i = 0; i < pending.size(); i += batch.size()) {
+                    List<List<Object>> chunk = pending.subList(i, Math.min(i + batch.size(), pending.size()));
+                    ReferenceSnapshot.Keys found = executeBatch(connection, chunk);
+
+                    for (List<Object> key : chunk) {
+                        Object[] values = key.toArray();
+                        Boolean valid = found.contains(values);
+
+                        if (valid == null) {
+                            // Not comparable with the keys selected, compared by the database
+                            valid = executeQuery(connection, annotation.value(), parameters, values);
+                        }
+
+                        resolved.put(key, valid);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new ValidationException(e);
+        }
+
+        if (results != null) {
+            pending.forEach(key -> results.put(key, resolved.get(key)));
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Execute the batch query for the keys.
+     *
+     * @return the keys selected by the query
+     */
+    ReferenceSnapshot.Keys executeBatch(Connection connection, List<List<Object>> keys) throws SQLException {
+        String sql = batch.value().replace(BatchQuery.KEYS, getMarkers(keys.size(), parameters.length));
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            Object[] values = new Object[keys.size() * parameters.length];
+            ParameterBinder[] binders = new ParameterBinder[values.length];
+
+            for (int k = 0, v = 0; k < keys.size(); k++) {
+                for (int p = 0; p < parameters.length; p++, v++) {
+                    values[v] = keys.get(k).get(p);
+                    binders[v] = parameters[p];
+                }
+            }
+
+            setParameters(binders, values, statement);
+
+            try (ResultSet results = statement.executeQuery()) {
+                verifyBatchColumns(results.getMetaData());
+                return ReferenceSnapshot.loadObjects(results, KeyColumns.of(results.getMetaData(), parameters.length));
+            }
+        }
+    }
+
+    /**
+     * Parameter markers for the number of keys, e.g. <code>?, ?</code> or
+     * <code>(?, ?), (?, ?)</code> for keys of two columns.
+     */
+    static String getMarkers(int keys, int columns) {
+        String key = columns == 1 ? "?" : String.join(", ", Collections.nCopies(columns, "?"));
+        String marker = columns == 1 ? key : '(' + key + ')';
+        return String.join(", ", Collections.nCopies(keys, marker));
+    }
+
     static DataSource getDataSource(String dataSourceLookup) {
         final DataSource source;
 
@@ -90,45 +306,71 @@ public class JdbcStatementValidator implements BooleanExpression, ConstraintVali
         return source;
     }
 
-    boolean executeQuery(ELProcessor processor, String sql, String[] parameters) {
-        final boolean valid;
+    /**
+     * Execute the statement with the parameter values, or obtain the cached
+     * result for the values.
+     */
+    boolean getResult(String sql, Object[] values) {
+        if (results == null) {
+            return executeQuery(sql, parameters, values);
+        }
 
-        try (Connection connection = dataSource.getConnection()) {
-            try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                setParameters(processor, parameters, statement);
+        List<Object> key = Arrays.asList(values);
+        Boolean cached = results.get(key);
 
-                try (ResultSet results = statement.executeQuery()) {
-                    valid = results.next();
-                }
-            }
+        if (cached != null) {
+            return cached;
+        }
+
+        boolean valid = executeQuery(sql, parameters, values);
+        results.put(key, valid);
+        return valid;
+    }
+
+    boolean executeQuery(String sql, ParameterBinder[] parameters, Object[] values) {
+        try (Connection connection = dataSource.getConnection()) {
+            return executeQuery(connection, sql, parameters, values);
         } catch (SQLException e) {
             throw new ValidationException(e);
         }
+    }
 
-        return valid;
+    static boolean executeQuery(Connection connection, String sql, ParameterBinder[] parameters, Object[] values) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            setParameters(parameters, values, statement);
+
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next();
+            }
+        }
     }
 
-    void setParameters(ELProcessor processor, String[] parameters, PreparedStatement statement) {
+    static Object[] getParameterValues(TargetELContext context, ParameterBinder[] parameters) {
         if (parameters.length == 0) {
-            return;
+            return NO_VALUES;
         }
 
-        int p = 0;
-
-        for (String parameterExpression : parameters) {
-            Object parameter;
+        Object[] values = new Object[parameters.length];
 
+        for (int i = 0; i < parameters.length; i++) {
             try {
-                parameter = processor.eval(parameterExpression);
+                values[i] = parameters[i].getValue(context);
             } catch (Exception e) {
                 throw new ConstraintDeclarationException(e);
             }
+        }
+
+        return values;
+    }
 
+    static void setParameters(ParameterBinder[] parameters, Object[] values, PreparedStatement statement) {
+        for (int i = 0; i < parameters.length; i++) {
             try {
-                statement.setObject(++p, parameter);
+                // Typed setter matching the parameter's value
+                parameters[i].bind(statement, i + 1, values[i]);
             } catch (SQLException e) {
-                String msg = "Expression `" + parameterExpression +
-                        "` does not evaluate to a valid JDBC parameter for marker #" + p;
+                String msg = "Expression `" + parameters[i].getExpression().getExpressionString() +
+                        "` does not evaluate to a valid JDBC parameter for marker #" + (i + 1);
                 throw new ConstraintDeclarationException(msg, e);
             }
         }
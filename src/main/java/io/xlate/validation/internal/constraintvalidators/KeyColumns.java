@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * The types of the columns of keys selected by a query, normalizing the
+ * values read from the database and the values of parameters so that values
+ * equal in SQL are equal in Java, e.g. <code>1.50</code> and <code>1.5</code>
+ * in a decimal column, or <code>'EUR '</code> and <code>'EUR'</code> in a
+ * fixed-length character column.
+ *
+ * <p>
+ * Parameter values of a type the database would have to convert to compare
+ * with a column (e.g. a String with a numeric column) can not be compared
+ * with the keys and are reported as {@link #MISMATCH}, leaving them to be
+ * validated by the database.
+ */
+final class KeyColumns {
+
+    /**
+     * Key of values that can not be compared with the keys of the columns.
+     */
+    static final Object MISMATCH = new Object();
+
+    enum Kind {
+        /**
+         * Integral numbers, normalized to {@link Long}
+         */
+        INTEGRAL,
+        /**
+         * Decimal and floating point numbers, normalized to
+         * {@link BigDecimal} without trailing zeros
+         */
+        DECIMAL,
+        /**
+         * Variable length character strings
+         */
+        STRING,
+        /**
+         * Fixed length character strings, compared without trailing spaces
+         */
+        CHAR,
+        BOOLEAN,
+        /**
+         * Dates, normalized to {@link LocalDate}
+         */
+        DATE,
+        /**
+         * Times, normalized to {@link LocalTime}
+         */
+        TIME,
+        /**
+         * Timestamps, normalized to {@link LocalDateTime}
+         */
+        TIMESTAMP,
+        /**
+         * Any other type, compared with values of the column's Java class
+         * only
+         */
+        OTHER
+    }
+
+    private final Kind[] kinds;
+    private final String[] classNames;
+
+    KeyColumns(Kind[] kinds, String[] classNames) {
+        this.kinds = kinds;
+        this.classNames = classNames;
+    }
+
+    /**
+     * The types of the first columns of query results.
+     */
+    static KeyColumns of(ResultSetMetaData metadata, int columns) throws SQLException {
+        Kind[] kinds = new Kind[columns];
+        String[] classNames = new String[columns];
+
+        for (int i = 0; i < columns; i++) {
+            kinds[i] = kind(metadata.getColumnType(i + 1), metadata.getScale(i + 1));
+            classNames[i] = kinds[i] == Kind.OTHER ? metadata.getColumnClassName(i + 1) : null;
+        }
+
+        return new KeyColumns(kinds, classNames);
+    }
+
+    static Kind kind(int sqlType, int scale) {
+        switch (sqlType) {
+        case Types.BIGINT:
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+            return Kind.INTEGRAL;
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+            return scale == 0 ? Kind.INTEGRAL : Kind.DECIMAL;
+        case Types.DOUBLE:
+        case Types.FLOAT:
+        case Types.REAL:
+            return Kind.DECIMAL;
+        case Types.VARCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.LONGNVARCHAR:
+            return Kind.STRING;
+        case Types.CHAR:
+        case Types.NCHAR:
+            return Kind.CHAR;
+        case Types.BOOLEAN:
+        case Types.BIT:
+            return Kind.BOOLEAN;
+        case Types.DATE:
+            return Kind.DATE;
+        case Types.TIME:
+            return Kind.TIME;
+        case Types.TIMESTAMP:
+            return Kind.TIMESTAMP;
+        default:
+            return Kind.OTHER;
+        }
+    }
+
+    int size() {
+        return kinds.length;
+    }
+
+    Kind getKind(int column) {
+        return kinds[column];
+    }
+
+    /**
+     * The key of values read from the columns of a row.
+     *
+     * @return the key, or null when any value is null (and the row can not be
+     *         matched)
+     */
+    Object rowKey(Object[] values) {
+        return key(values, true);
+    }
+
+    /**
+     * The key of parameter values, to be compared with the keys of the rows.
+     *
+     * @return the key, null when any value is null (and can not match any
+     *         row), or {@link #MISMATCH} when a value can not be compared with
+     *         its column
+     */
+    Object key(Object[] values) {
+        return key(values, false);
+    }
+
+    Object key(Object[] values, boolean row) {
+        if (values.length == 1) {
+            return normalize(0, values[0], row);
+        }
+
+        Object[] key = new Object[values.length];
+        boolean mismatch = false;
+
+        for (int i = 0; i < key.length; i++) {
+            key[i] = normalize(i, values[i], row);
+
+            if (key[i] == null) {
+                return null;
+            }
+
+            mismatch |= key[i] == MISMATCH;
+        }
+
+        return mismatch ? MISMATCH : Arrays.asList(key);
+    }
+
+    Object normalize(int column, Object value, boolean row) {
+        if (value == null) {
+            return null;
+        }
+
+        Object normalized = normalize(kinds[column], value);
+
+        if (normalized == MISMATCH) {
+            if (kinds[column] == Kind.OTHER && (row || value.getClass().getName().equals(classNames[column]))) {
+                return value;
+            }
+            if (row) {
+                // Unexpected type read from the database, values of the column are no longer comparable
+                kinds[column] = Kind.OTHER;
+                return value;
+            }
+        }
+
+        return normalized;
+    }
+
+    static Object normalize(Kind kind, Object value) {
+        switch (kind) {
+        case INTEGRAL:
+            return toLong(value);
+        case DECIMAL:
+            return toDecimal(value);
+        case STRING:
+            return value instanceof String ? value : value instanceof Character ? value.toString() : MISMATCH;
+        case CHAR:
+            return value instanceof String || value instanceof Character ? stripTrailingSpaces(value.toString()) : MISMATCH;
+        case BOOLEAN:
+            return value instanceof Boolean ? value : MISMATCH;
+        case DATE:
+            return value instanceof LocalDate ? value : value instanceof java.sql.Date ? ((java.sql.Date) value).toLocalDate() : MISMATCH;
+        case TIME:
+            return value instanceof LocalTime ? value : value instanceof java.sql.Time ? ((java.sql.Time) value).toLocalTime() : MISMATCH;
+        case TIMESTAMP:
+            return value instanceof LocalDateTime ? value : value instanceof java.sql.Timestamp ? ((java.sql.Timestamp) value).toLocalDateTime() : MISMATCH;
+        default:
+            return MISMATCH;
+        }
+    }
+
+    /**
+     * Integral numbers as {@link Long}. Other numbers can only equal an
+     * integral value when they have no fractional part.
+     */
+    static Object toLong(Object value) {
+        if (value instanceof Long) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+
+        Object decimal = toDecimal(value);
+
+        if (decimal == MISMATCH) {
+            return MISMATCH;
+        }
+
+        try {
+            return ((BigDecimal) decimal).longValueExact();
+        } catch (ArithmeticException e) {
+            // Fractional (never equal to an integral value) or out of range
+            return decimal;
+        }
+    }
+
+    static Object toDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return strip((BigDecimal) value);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                return MISMATCH;
+            }
+
+            // Shortest representation, so that a float is equal to the decimal it was written as
+            return strip(new BigDecimal(value.toString()));
+        }
+        return MISMATCH;
+    }
+
+    static BigDecimal strip(BigDecimal value) {
+        return value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros();
+    }
+
+    static String stripTrailingSpaces(String value) {
+        int end = value.length();
+
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+
+        return end == value.length() ? value : value.substring(0, end);
+    }
+}
@@ -0,0 +1,719 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.Map;
+
+import jakarta.el.ELException;
+
+import io.xlate.validation.spi.PrecompiledExpressions;
+
+/**
+ * EL operator semantics (coercion, comparison, equality and arithmetic) as
+ * defined by the Jakarta Expression Language specification, used by compiled
+ * expressions. The rules (and their precedence) intentionally match those of
+ * the EL implementation so that compiled and interpreted evaluation of the
+ * same expression always agree.
+ */
+final class Operators {
+
+    private static final Long ZERO = Long.valueOf(0);
+
+    private Operators() {
+    }
+
+    static boolean coerceToBoolean(Object obj) {
+        if (obj == null || "".equals(obj)) {
+            return false;
+        }
+        if (obj instanceof Boolean) {
+            return (Boolean) obj;
+        }
+        if (obj instanceof String) {
+            return Boolean.parseBoolean((String) obj);
+        }
+
+        throw new IllegalArgumentException(convertMessage(obj, Boolean.class));
+    }
+
+    static String coerceToString(Object obj) {
+        if (obj == null) {
+            return "";
+        }
+        if (obj instanceof String) {
+            return (String) obj;
+        }
+        if (obj instanceof Enum) {
+            return ((Enum<?>) obj).name();
+        }
+        return obj.toString();
+    }
+
+    static boolean isEmpty(Object obj) {
+        if (obj == null) {
+            return true;
+        }
+        if (obj instanceof String) {
+            return ((String) obj).isEmpty();
+        }
+        if (obj instanceof Object[]) {
+            return ((Object[]) obj).length == 0;
+        }
+        if (obj instanceof Collection) {
+            return ((Collection<?>) obj).isEmpty();
+        }
+        if (obj instanceof Map) {
+            return ((Map<?, ?>) obj).isEmpty();
+        }
+        return false;
+    }
+
+    static Object negate(Object obj) {
+        if (obj == null) {
+            return ZERO;
+        }
+        if (obj instanceof BigDecimal) {
+            return ((BigDecimal) obj).negate();
+        }
+        if (obj instanceof BigInteger) {
+            return ((BigInteger) obj).negate();
+        }
+        if (obj instanceof String) {
+            String value = (String) obj;
+            if (isStringFloat(value)) {
+                return Double.valueOf(-Double.parseDouble(value));
+            }
+            return Long.valueOf(-Long.parseLong(value));
+        }
+        if (obj instanceof Long) {
+            return Long.valueOf(-((Long) obj).longValue());
+        }
+        if (obj instanceof Double) {
+            return Double.valueOf(-((Double) obj).doubleValue());
+        }
+        if (obj instanceof Integer) {
+            return Integer.valueOf(-((Integer) obj).intValue());
+        }
+        if (obj instanceof Float) {
+            return Float.valueOf(-((Float) obj).floatValue());
+        }
+        if (obj instanceof Short) {
+            return Short.valueOf((short) -((Short) obj).shortValue());
+        }
+        if (obj instanceof Byte) {
+            return Byte.valueOf((byte) -((Byte) obj).byteValue());
+        }
+        return Long.valueOf(-toLong(obj));
+    }
+
+    static boolean equal(Object obj0, Object obj1) {
+        if (obj0 == obj1) {
+            return true;
+        }
+        if (obj0 == null || obj1 == null) {
+            return false;
+        }
+        if (isBigDecimalOp(obj0, obj1)) {
+            return toBigDecimal(obj0).equals(toBigDecimal(obj1));
+        }
+        if (isDoubleOp(obj0, obj1)) {
+            // Same as Double#equals, without boxing
+            return Double.doubleToLongBits(toDouble(obj0)) == Double.doubleToLongBits(toDouble(obj1));
+        }
+        if (isBigIntegerOp(obj0, obj1)) {
+            return toBigInteger(obj0).equals(toBigInteger(obj1));
+        }
+        if (isLongOp(obj0, obj1)) {
+            return toLong(obj0) == toLong(obj1);
+        }
+        if (obj0 instanceof Boolean || obj1 instanceof Boolean) {
+            return coerceToBoolean(obj0) == coerceToBoolean(obj1);
+        }
+        if (obj0.getClass().isEnum()) {
+            return obj0.equals(coerceToEnum(obj1, obj0.getClass()));
+        }
+        if (obj1.getClass().isEnum()) {
+            return obj1.equals(coerceToEnum(obj0, obj1.getClass()));
+        }
+        if (obj0 instanceof String || obj1 instanceof String) {
+            return coerceToString(obj0).equals(coerceToString(obj1));
+        }
+        return obj0.equals(obj1);
+    }
+
+    static boolean lessThan(Object obj0, Object obj1) {
+        return obj0 != null && obj1 != null && compare(obj0, obj1) < 0;
+    }
+
+    static boolean greaterThan(Object obj0, Object obj1) {
+        return obj0 != null && obj1 != null && compare(obj0, obj1) > 0;
+    }
+
+    static boolean lessThanOrEqual(Object obj0, Object obj1) {
+        if (obj0 == obj1) {
+            return true;
+        }
+        return obj0 != null && obj1 != null && compare(obj0, obj1) <= 0;
+    }
+
+    static boolean greaterThanOrEqual(Object obj0, Object obj1) {
+        if (obj0 == obj1) {
+            return true;
+        }
+        return obj0 != null && obj1 != null && compare(obj0, obj1) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(Object obj0, Object obj1) {
+        if (obj0 == obj1) {
+            return 0;
+        }
+
+        /*
+         * The numeric comparisons are checked before equality (unlike the EL
+         * implementation) since they coerce the operands exactly the same way
+         * that the equality check would and give the same result.
+         */
+        if (isBigDecimalOp(obj0, obj1)) {
+            return toBigDecimal(obj0).compareTo(toBigDecimal(obj1));
+        }
+        if (isDoubleOp(obj0, obj1)) {
+            return Double.compare(toDouble(obj0), toDouble(obj1));
+        }
+        if (isBigIntegerOp(obj0, obj1)) {
+            return toBigInteger(obj0).compareTo(toBigInteger(obj1));
+        }
+        if (isLongOp(obj0, obj1)) {
+            return Long.compare(toLong(obj0), toLong(obj1));
+        }
+
+        if (equal(obj0, obj1)) {
+            return 0;
+        }
+        if (obj0 instanceof String || obj1 instanceof String) {
+            return coerceToString(obj0).compareTo(coerceToString(obj1));
+        }
+        if (obj0 instanceof Comparable) {
+            return (obj1 != null) ? ((Comparable<Object>) obj0).compareTo(obj1) : 1;
+        }
+        if (obj1 instanceof Comparable) {
+            return (obj0 != null) ? -((Comparable<Object>) obj1).compareTo(obj0) : -1;
+        }
+
+        throw new ELException("Cannot compare " + obj0 + " to " + obj1);
+    }
+
+    static Object concat(Object obj0, Object obj1) {
+        return obj0.toString() + obj1.toString();
+    }
+
+    static Number add(Object obj0, Object obj1) {
+        if (obj0 == null && obj1 == null) {
+            return ZERO;
+        }
+        Arithmetic delegate = Arithmetic.of(obj0, obj1);
+        return delegate.add(delegate.coerce(obj0), delegate.coerce(obj1));
+    }
+
+    static Number subtract(Object obj0, Object obj1) {
+        if (obj0 == null && obj1 == null) {
+            return ZERO;
+        }
+        Arithmetic delegate = Arithmetic.of(obj0, obj1);
+        return delegate.subtract(delegate.coerce(obj0), delegate.coerce(obj1));
+    }
+
+    static Number multiply(Object obj0, Object obj1) {
+        if (obj0 == null && obj1 == null) {
+            return ZERO;
+        }
+        Arithmetic delegate = Arithmetic.of(obj0, obj1);
+        return delegate.multiply(delegate.coerce(obj0), delegate.coerce(obj1));
+    }
+
+    static Number mod(Object obj0, Object obj1) {
+        if (obj0 == null && obj1 == null) {
+            return ZERO;
+        }
+        Arithmetic delegate = Arithmetic.of(obj0, obj1);
+        return delegate.mod(delegate.coerce(obj0), delegate.coerce(obj1));
+    }
+
+    static Number divide(Object obj0, Object obj1) {
+        if (obj0 == null && obj1 == null) {
+            return ZERO;
+        }
+        Arithmetic delegate;
+        if (obj0 instanceof BigDecimal || obj1 instanceof BigDecimal || obj0 instanceof BigInteger || obj1 instanceof BigInteger) {
+            delegate = Arithmetic.BIGDECIMAL;
+        } else {
+            delegate = Arithmetic.DOUBLE;
+        }
+        return delegate.divide(delegate.coerce(obj0), delegate.coerce(obj1));
+    }
+
+    private static boolean isStringFloat(String str) {
+        int len = str.length();
+        if (len > 1) {
+            for (int i = 0; i < len; i++) {
+                switch (str.charAt(i)) {
+                case 'E':
+                case 'e':
+                case '.':
+                    return true;
+                default:
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBigDecimalOp(Object obj0, Object obj1) {
+        return obj0 instanceof BigDecimal || obj1 instanceof BigDecimal;
+    }
+
+    private static boolean isBigIntegerOp(Object obj0, Object obj1) {
+        return obj0 instanceof BigInteger || obj1 instanceof BigInteger;
+    }
+
+    private static boolean isDoubleOp(Object obj0, Object obj1) {
+        return obj0 instanceof Double || obj1 instanceof Double || obj0 instanceof Float || obj1 instanceof Float;
+    }
+
+    private static boolean isLongOp(Object obj0, Object obj1) {
+        return isLongType(obj0) || isLongType(obj1);
+    }
+
+    private static boolean isLongType(Object obj) {
+        return obj instanceof Long || obj instanceof Integer || obj instanceof Character || obj instanceof Short || obj instanceof Byte;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Enum<?> coerceToEnum(Object obj, Class type) {
+        if (obj == null || "".equals(obj)) {
+            return null;
+        }
+        if (obj.getClass().isEnum()) {
+            return (Enum<?>) obj;
+        }
+        return Enum.valueOf(type, obj.toString());
+    }
+
+    private static long toLong(Object obj) {
+        if (obj == null || "".equals(obj)) {
+            return 0L;
+        }
+        if (obj instanceof String) {
+            return Long.parseLong((String) obj);
+        }
+        if (obj instanceof Number) {
+            return ((Number) obj).longValue();
+        }
+        if (obj instanceof Character) {
+            return (short) ((Character) obj).charValue();
+        }
+        throw new IllegalArgumentException(convertMessage(obj, Long.class));
+    }
+
+    private static double toDouble(Object obj) {
+        if (obj == null || "".equals(obj)) {
+            return 0d;
+        }
+        if (obj instanceof String) {
+            return Double.parseDouble((String) obj);
+        }
+        if (obj instanceof Number) {
+            return ((Number) obj).doubleValue();
+        }
+        if (obj instanceof Character) {
+            return (short) ((Character) obj).charValue();
+        }
+        throw new IllegalArgumentException(convertMessage(obj, Double.class));
+    }
+
+    private static BigInteger toBigInteger(Object obj) {
+        if (obj == null || "".equals(obj)) {
+            return BigInteger.ZERO;
+        }
+        if (obj instanceof String) {
+            return new BigInteger((String) obj);
+        }
+        if (obj instanceof BigInteger) {
+            return (BigInteger) obj;
+        }
+        if (obj instanceof BigDecimal) {
+            return ((BigDecimal) obj).toBigInteger();
+        }
+        if (obj instanceof Number) {
+            return BigInteger.valueOf(((Number) obj).longValue());
+        }
+        if (obj instanceof Character) {
+            return BigInteger.valueOf((short) ((Character) obj).charValue());
+        }
+        throw new IllegalArgumentException(convertMessage(obj, BigInteger.class));
+    }
+
+    private static BigDecimal toBigDecimal(Object obj) {
+        if (obj == null || "".equals(obj)) {
+            return new BigDecimal(0L);
+        }
+        if (obj instanceof String) {
+            return new BigDecimal((String) obj);
+        }
+        if (obj instanceof BigDecimal) {
+            return (BigDecimal) obj;
+        }
+        if (obj instanceof BigInteger) {
+            return new BigDecimal((BigInteger) obj);
+        }
+        if (obj instanceof Long) {
+            return new BigDecimal((Long) obj);
+        }
+        if (obj instanceof Number) {
+            return new BigDecimal(((Number) obj).doubleValue());
+        }
+        if (obj instanceof Character) {
+            return new BigDecimal((short) ((Character) obj).charValue());
+        }
+        throw new IllegalArgumentException(convertMessage(obj, BigDecimal.class));
+    }
+
+    private static String convertMessage(Object obj, Class<?> type) {
+        return "Cannot convert " + obj + " of type " + obj.getClass() + " to " + type;
+    }
+
+    /**
+     * Arithmetic for each of the numeric types an arithmetic operator may be
+     * evaluated with, chosen based on the types of the operands.
+     */
+    enum Arithmetic {
+        BIGDECIMAL {
+            @Override
+            Number coerce(Number num) {
+                if (num instanceof BigDecimal) {
+                    return num;
+                }
+                if (num instanceof BigInteger) {
+                    return new BigDecimal((BigInteger) num);
+                }
+                return new BigDecimal(num.doubleValue());
+            }
+
+            @Override
+            Number coerce(String str) {
+                return new BigDecimal(str);
+            }
+
+            @Override
+            Number add(Number num0, Number num1) {
+                return ((BigDecimal) num0).add((BigDecimal) num1);
+            }
+
+            @Override
+            Number subtract(Number num0, Number num1) {
+                return ((BigDecimal) num0).subtract((BigDecimal) num1);
+            }
+
+            @Override
+            Number multiply(Number num0, Number num1) {
+                return ((BigDecimal) num0).multiply((BigDecimal) num1);
+            }
+
+            @Override
+            Number divide(Number num0, Number num1) {
+                return ((BigDecimal) num0).divide((BigDecimal) num1, RoundingMode.HALF_UP);
+            }
+
+            @Override
+            Number mod(Number num0, Number num1) {
+                return Double.valueOf(num0.doubleValue() % num1.doubleValue());
+            }
+        },
+        DOUBLE {
+            @Override
+            Number coerce(Number num) {
+                if (num instanceof Double) {
+                    return num;
+                }
+                if (num instanceof BigInteger) {
+                    return new BigDecimal((BigInteger) num);
+                }
+                return Double.valueOf(num.doubleValue());
+            }
+
+            @Override
+            Number coerce(String str) {
+                return Double.valueOf(str);
+            }
+
+            @Override
+            Number add(Number num0, Number num1) {
+                if (num0 instanceof BigDecimal) {
+                    return ((BigDecimal) num0).add(new BigDecimal(num1.doubleValue()));
+                }
+                if (num1 instanceof BigDecimal) {
+                    return new BigDecimal(num0.doubleValue()).add((BigDecimal) num1);
+                }
+                return Double.valueOf(num0.doubleValue() + num1.doubleValue());
+            }
+
+            @Override
+            Number subtract(Number num0, Number num1) {
+                if (num0 instanceof BigDecimal) {
+                    return ((BigDecimal) num0).subtract(new BigDecimal(num1.doubleValue()));
+                }
+                if (num1 instanceof BigDecimal) {
+                    return new BigDecimal(num0.doubleValue()).subtract((BigDecimal) num1);
+                }
+                return Double.valueOf(num0.doubleValue() - num1.doubleValue());
+            }
+
+            @Override
+            Number multiply(Number num0, Number num1) {
+                if (num0 instanceof BigDecimal) {
+                    return ((BigDecimal) num0).multiply(new BigDecimal(num1.doubleValue()));
+                }
+                if (num1 instanceof BigDecimal) {
+                    return new BigDecimal(num0.doubleValue()).multiply((BigDecimal) num1);
+                }
+                return Double.valueOf(num0.doubleValue() * num1.doubleValue());
+            }
+
+            @Override
+            Number divide(Number num0, Number num1) {
+                return Double.valueOf(num0.doubleValue() / num1.doubleValue());
+            }
+
+            @Override
+            Number mod(Number num0, Number num1) {
+                return Double.valueOf(num0.doubleValue() % num1.doubleValue());
+            }
+        },
+        BIGINTEGER {
+            @Override
+            Number coerce(Number num) {
+                if (num instanceof BigInteger) {
+                    return num;
+                }
+                return new BigInteger(num.toString());
+            }
+
+            @Override
+            Number coerce(String str) {
+                return new BigInteger(str);
+            }
+
+            @Override
+            Number add(Number num0, Number num1) {
+                return ((BigInteger) num0).add((BigInteger) num1);
+            }
+
+            @Override
+            Number subtract(Number num0, Number num1) {
+                return ((BigInteger) num0).subtract((BigInteger) num1);
+            }
+
+            @Override
+            Number multiply(Number num0, Number num1) {
+                return ((BigInteger) num0).multiply((BigInteger) num1);
+            }
+
+            @Override
+            Number divide(Number num0, Number num1) {
+                return new BigDecimal((BigInteger) num0).divide(new BigDecimal((BigInteger) num1), RoundingMode.HALF_UP);
+            }
+
+            @Override
+            Number mod(Number num0, Number num1) {
+                return ((BigInteger) num0).mod((BigInteger) num1);
+            }
+        },
+        LONG {
+            @Override
+            Number coerce(Number num) {
+                if (num instanceof Long) {
+                    return num;
+                }
+                return Long.valueOf(num.longValue());
+            }
+
+            @Override
+            Number coerce(String str) {
+                return Long.valueOf(str);
+            }
+
+            @Override
+            Number add(Number num0, Number num1) {
+                return Long.valueOf(num0.longValue() + num1.longValue());
+            }
+
+            @Override
+            Number subtract(Number num0, Number num1) {
+                return Long.valueOf(num0.longValue() - num1.longValue());
+            }
+
+            @Override
+            Number multiply(Number num0, Number num1) {
+                return Long.valueOf(num0.longValue() * num1.longValue());
+            }
+
+            @Override
+            Number divide(Number num0, Number num1) {
+                return Long.valueOf(num0.longValue() / num1.longValue());
+            }
+
+            @Override
+            Number mod(Number num0, Number num1) {
+                return Long.valueOf(num0.longValue() % num1.longValue());
+            }
+        };
+
+        static Arithmetic of(Object obj0, Object obj1) {
+            if (isBigDecimalOp(obj0, obj1)) {
+                return BIGDECIMAL;
+            }
+            if (isDoubleOp(obj0, obj1)
+                    || (obj0 instanceof String && isStringFloat((String) obj0))
+                    || (obj1 instanceof String && isStringFloat((String) obj1))) {
+                return DOUBLE;
+            }
+            if (isBigIntegerOp(obj0, obj1)) {
+                return BIGINTEGER;
+            }
+            return LONG;
+        }
+
+        Number coerce(Object obj) {
+            if (obj instanceof Number) {
+                return coerce((Number) obj);
+            }
+            if (obj instanceof String) {
+                return coerce((String) obj);
+            }
+            if (obj == null) {
+                return coerce(ZERO);
+            }
+            if (obj instanceof Character) {
+                return coerce(Short.valueOf((short) ((Character) obj).charValue()));
+            }
+            throw new IllegalArgumentException("Cannot convert " + obj + " of type " + obj.getClass());
+        }
+
+        abstract Number coerce(Number num);
+
+        abstract Number coerce(String str);
+
+        abstract Number add(Number num0, Number num1);
+
+        abstract Number subtract(Number num0, Number num1);
+
+        abstract Number multiply(Number num0, Number num1);
+
+        abstract Number divide(Number num0, Number num1);
+
+        abstract Number mod(Number num0, Number num1);
+    }
+
+    /**
+     * The operators, for the evaluators generated by the annotation
+     * processor.
+     */
+    enum Instance implements PrecompiledExpressions.Operations {
+        INSTANCE;
+
+        @Override
+        public boolean coerceToBoolean(Object value) {
+            return Operators.coerceToBoolean(value);
+        }
+
+        @Override
+        public boolean equal(Object value0, Object value1) {
+            return Operators.equal(value0, value1);
+        }
+
+        @Override
+        public boolean lessThan(Object value0, Object value1) {
+            return Operators.lessThan(value0, value1);
+        }
+
+        @Override
+        public boolean greaterThan(Object value0, Object value1) {
+            return Operators.greaterThan(value0, value1);
+        }
+
+        @Override
+        public boolean lessThanOrEqual(Object value0, Object value1) {
+            return Operators.lessThanOrEqual(value0, value1);
+        }
+
+        @Override
+        public boolean greaterThanOrEqual(Object value0, Object value1) {
+            return Operators.greaterThanOrEqual(value0, value1);
+        }
+
+        @Override
+        public Number add(Object value0, Object value1) {
+            return Operators.add(value0, value1);
+        }
+
+        @Override
+        public Number subtract(Object value0, Object value1) {
+            return Operators.subtract(value0, value1);
+        }
+
+        @Override
+        public Number multiply(Object value0, Object value1) {
+            return Operators.multiply(value0, value1);
+        }
+
+        @Override
+        public Number divide(Object value0, Object value1) {
+            return Operators.divide(value0, value1);
+        }
+
+        @Override
+        public Number mod(Object value0, Object value1) {
+            return Operators.mod(value0, value1);
+        }
+
+        @Override
+        public Object negate(Object value) {
+            return Operators.negate(value);
+        }
+
+        @Override
+        public boolean isEmpty(Object value) {
+            return Operators.isEmpty(value);
+        }
+
+        @Override
+        public Object concat(Object value0, Object value1) {
+            return Operators.concat(value0, value1);
+        }
+
+        @Override
+        public RuntimeException propertyFailed(Throwable cause) {
+            // As for compiled property reads
+            return new ELException(cause);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+/**
+ * Binds the value of a compiled parameter expression to a statement using the
+ * setter matching the value's type (e.g. {@link PreparedStatement#setLong}),
+ * sparing the driver from inspecting the values given to
+ * {@link PreparedStatement#setObject}. The type is inferred from the
+ * expression when known at compile time, otherwise from the first non-null
+ * value.
+ */
+final class ParameterBinder {
+
+    /**
+     * The setters used for each type of parameter value.
+     */
+    enum Binding {
+        STRING(String.class, Types.VARCHAR) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setString(index, (String) value);
+            }
+        },
+        LONG(Long.class, Types.BIGINT) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setLong(index, (Long) value);
+            }
+        },
+        INTEGER(Integer.class, Types.INTEGER) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setInt(index, (Integer) value);
+            }
+        },
+        SHORT(Short.class, Types.SMALLINT) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setShort(index, (Short) value);
+            }
+        },
+        BYTE(Byte.class, Types.TINYINT) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setByte(index, (Byte) value);
+            }
+        },
+        BOOLEAN(Boolean.class, Types.BOOLEAN) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setBoolean(index, (Boolean) value);
+            }
+        },
+        DOUBLE(Double.class, Types.DOUBLE) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setDouble(index, (Double) value);
+            }
+        },
+        FLOAT(Float.class, Types.REAL) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setFloat(index, (Float) value);
+            }
+        },
+        BIG_DECIMAL(BigDecimal.class, Types.NUMERIC) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setBigDecimal(index, (BigDecimal) value);
+            }
+        },
+        BYTES(byte[].class, Types.VARBINARY) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setBytes(index, (byte[]) value);
+            }
+        },
+        DATE(Date.class, Types.DATE) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setDate(index, (Date) value);
+            }
+        },
+        TIME(Time.class, Types.TIME) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setTime(index, (Time) value);
+            }
+        },
+        TIMESTAMP(Timestamp.class, Types.TIMESTAMP) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setTimestamp(index, (Timestamp) value);
+            }
+        },
+        /**
+         * Any other type (e.g. java.time values), left to the driver.
+         */
+        OBJECT(Object.class, Types.OTHER) {
+            @Override
+            void set(PreparedStatement statement, int index, Object value) throws SQLException {
+                statement.setObject(index, value);
+            }
+
+            @Override
+            void setNull(PreparedStatement statement, int index) throws SQLException {
+                statement.setObject(index, null);
+            }
+        };
+
+        private static final Map<Class<?>, Binding> BINDINGS = new HashMap<>();
+
+        static {
+            for (Binding binding : values()) {
+                BINDINGS.put(binding.type, binding);
+            }
+        }
+
+        final Class<?> type;
+        final int sqlType;
+
+        Binding(Class<?> type, int sqlType) {
+            this.type = type;
+            this.sqlType = sqlType;
+        }
+
+        static Binding of(Class<?> type) {
+            return BINDINGS.getOrDefault(MethodType.methodType(type).wrap().returnType(), OBJECT);
+        }
+
+        abstract void set(PreparedStatement statement, int index, Object value) throws SQLException;
+
+        void setNull(PreparedStatement statement, int index) throws SQLException {
+            statement.setNull(index, sqlType);
+        }
+    }
+
+    private final CompiledExpression expression;
+    private volatile Binding binding;
+
+    ParameterBinder(CompiledExpression expression) {
+        this.expression = expression;
+        Class<?> resultType = expression.getResultType();
+
+        if (resultType != null && resultType != Object.class) {
+            binding = Binding.of(resultType);
+        }
+    }
+
+    CompiledExpression getExpression() {
+        return expression;
+    }
+
+    Binding getBinding() {
+        return binding;
+    }
+
+    /**
+     * Evaluate the expression.
+     */
+    Object getValue(TargetELContext context) {
+        return expression.getValue(context);
+    }
+
+    /**
+     * Set the parameter at the index of the statement to the value.
+     */
+    void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+        Binding current = binding;
+
+        if (value == null) {
+            if (current != null) {
+                current.setNull(statement, index);
+            } else {
+                Binding.OBJECT.setNull(statement, index);
+            }
+        } else if (current != null && current.type.isInstance(value)) {
+            current.set(statement, index, value);
+        } else {
+            Binding inferred = Binding.of(value.getClass());
+
+            if (current == null) {
+                // Same result for any thread setting it concurrently
+                binding = inferred;
+            }
+
+            inferred.set(statement, index, value);
+        }
+    }
+}
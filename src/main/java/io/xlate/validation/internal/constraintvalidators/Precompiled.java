@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+import io.xlate.validation.spi.PrecompiledExpressions;
+import io.xlate.validation.spi.PrecompiledExpressions.Evaluator;
+
+/**
+ * Access to the {@link PrecompiledExpressions} generated at build time by the
+ * validators' annotation processor. Everything here is optional: when nothing
+ * was generated, expressions are verified, properties discovered, and
+ * expressions evaluated at runtime.
+ */
+final class Precompiled {
+
+    static final String GENERATED_SUFFIX = "_PrecompiledExpressions";
+
+    private static final MethodHandle APPLY;
+
+    static {
+        try {
+            APPLY = MethodHandles.publicLookup()
+                                 .findVirtual(Function.class,
+                                              "apply",
+                                              MethodType.methodType(Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Generated provider for each top-level class, found by naming convention.
+     */
+    private static final ClassValue<Optional<PrecompiledExpressions>> PROVIDERS = new ClassValue<Optional<PrecompiledExpressions>>() {
+        @Override
+        protected Optional<PrecompiledExpressions> computeValue(Class<?> type) {
+            return Optional.ofNullable(loadProvider(type));
+        }
+    };
+
+    /**
+     * Verified expressions and evaluators of all providers registered as
+     * services, by class loader. The index references the generated classes
+     * (and through them the loader), so it is only softly referenced to allow
+     * the loader to be collected.
+     */
+    private static final Map<ClassLoader, SoftReference<Index>> INDEXES = new WeakHashMap<>();
+
+    private Precompiled() {
+    }
+
+    /**
+     * Whether the expression identified by the key (see
+     * {@link TemplateELContext#getPrecompiledKey(String)}) was successfully
+     * parsed at build time by the annotation processor.
+     */
+    static boolean isVerified(String key) {
+        return getIndex().verified.contains(key);
+    }
+
+    /**
+     * Find the evaluators generated for the expression identified by the key
+     * (see {@link TemplateELContext#getPrecompiledKey(String)}).
+     *
+     * @return the evaluators, possibly empty
+     */
+    static List<Evaluator> getEvaluators(String key) {
+        return getIndex().evaluators.getOrDefault(key, Collections.emptyList());
+    }
+
+    static Index getIndex() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+        if (loader == null) {
+            loader = Precompiled.class.getClassLoader();
+        }
+
+        synchronized (INDEXES) {
+            SoftReference<Index> reference = INDEXES.get(loader);
+            Index index = reference != null ? reference.get() : null;
+
+            if (index == null) {
+                index = loadIndex(loader);
+                INDEXES.put(loader, new SoftReference<>(index));
+            }
+
+            return index;
+        }
+    }
+
+    static Index loadIndex(ClassLoader loader) {
+        Set<String> verified = new HashSet<>();
+        Map<String, List<Evaluator>> evaluators = new HashMap<>();
+
+        try {
+            for (PrecompiledExpressions provider : ServiceLoader.load(PrecompiledExpressions.class, loader)) {
+                verified.addAll(provider.getVerifiedExpressions());
+                provider.getEvaluators()
+                        .forEach((key, list) -> evaluators.computeIfAbsent(key, k -> new ArrayList<>()).addAll(list));
+            }
+        } catch (ServiceConfigurationError e) {
+            // Generated classes unusable, expressions will be verified and evaluated at runtime
+        }
+
+        return new Index(verified, evaluators);
+    }
+
+    static final class Index {
+        final Set<String> verified;
+        final Map<String, List<Evaluator>> evaluators;
+
+        Index(Set<String> verified, Map<String, List<Evaluator>> evaluators) {
+            this.verified = verified.isEmpty() ? Collections.emptySet() : verified;
+            this.evaluators = evaluators.isEmpty() ? Collections.emptyMap() : evaluators;
+        }
+    }
+
+    /**
+     * Find the generated accessors for the properties of the given type.
+     *
+     * @return the accessors, possibly empty when nothing was generated for
+     *         the type
+     */
+    static Map<String, MethodHandle> getAccessors(Class<?> type) {
+        Class<?> topLevel = type;
+
+        while (topLevel.getEnclosingClass() != null) {
+            topLevel = topLevel.getEnclosingClass();
+        }
+
+        Map<String, Function<Object, Object>> functions = PROVIDERS.get(topLevel)
+                                                                   .map(PrecompiledExpressions::getPropertyAccessors)
+                                                                   .map(accessors -> accessors.get(type))
+                                                                   .orElse(null);
+
+        if (functions == null || functions.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, MethodHandle> accessors = new HashMap<>(functions.size());
+        functions.forEach((name, function) -> accessors.put(name, APPLY.bindTo(function)));
+        return accessors;
+    }
+
+    static PrecompiledExpressions loadProvider(Class<?> topLevel) {
+        ClassLoader loader = topLevel.getClassLoader();
+
+        if (loader == null) {
+            return null;
+        }
+
+        try {
+            Class<?> providerType = Class.forName(topLevel.getName() + GENERATED_SUFFIX, true, loader);
+
+            if (PrecompiledExpressions.class.isAssignableFrom(providerType)) {
+                return (PrecompiledExpressions) providerType.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // Not generated or not accessible
+        }
+
+        return null;
+    }
+}
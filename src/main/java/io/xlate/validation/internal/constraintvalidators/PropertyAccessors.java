@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import jakarta.el.ELClass;
+
+/**
+ * Cache of {@link MethodHandle}s used to read bean properties, record
+ * components, and public fields without reflection. Handles are discovered
+ * once per class (and shared by all constraints) using the same naming rules
+ * as the EL {@code BeanELResolver} and {@code RecordELResolver}. Public fields
+ * are only used when there is no accessor method of the same name. Properties without a handle (e.g. when the getter
+ * is not accessible) are left to the EL resolvers. Accessors generated at build
+ * time by the annotation processor are used when available.
+ */
+final class PropertyAccessors {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<Map<String, MethodHandle>> ACCESSORS = new ClassValue<Map<String, MethodHandle>>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return findAccessors(type);
+        }
+    };
+
+    private PropertyAccessors() {
+    }
+
+    /**
+     * Find the accessor for the named property of the given base object, or
+     * null if the property must be resolved by the EL resolvers. Maps, lists,
+     * arrays, resource bundles, and static references are always left to the
+     * resolvers.
+     */
+    static MethodHandle getAccessor(Object base, Object property) {
+        if (!(property instanceof String) || !isBean(base)) {
+            return null;
+        }
+        return ACCESSORS.get(base.getClass()).get(property);
+    }
+
+    static boolean isBean(Object base) {
+        return !(base instanceof Map
+                || base instanceof List
+                || base instanceof ResourceBundle
+                || base instanceof ELClass
+                || base.getClass().isArray());
+    }
+
+    static Map<String, MethodHandle> findAccessors(Class<?> type) {
+        Map<String, MethodHandle> precompiled = Precompiled.getAccessors(type);
+
+        if (!precompiled.isEmpty()) {
+            // Generated by the annotation processor at build time
+            return precompiled;
+        }
+
+        Map<String, Method> methods = new HashMap<>();
+
+        if (isRecord(type)) {
+            // Only the components, like the RecordELResolver (not e.g. `hashCode` or `toString`)
+            for (Method method : getRecordAccessors(type)) {
+                methods.put(method.getName(), method);
+            }
+        } else {
+            for (Method method : type.getMethods()) {
+                String name = method.getName();
+
+                if (!isAccessor(method) || method.getReturnType() == void.class) {
+                    continue;
+                }
+
+                if (name.startsWith("is") && method.getReturnType() == boolean.class) {
+                    // `is` accessor takes precedence
+                    putProperty(methods, name.substring(2), method, true);
+                } else if (name.startsWith("get")) {
+                    putProperty(methods, name.substring(3), method, false);
+                }
+            }
+        }
+
+        Map<String, MethodHandle> accessors = new HashMap<>(methods.size());
+
+        for (Map.Entry<String, Method> entry : methods.entrySet()) {
+            MethodHandle handle = findHandle(entry.getValue());
+
+            if (handle != null) {
+                accessors.put(entry.getKey(), handle);
+            }
+        }
+
+        if (Modifier.isPublic(type.getModifiers())) {
+            for (Field field : type.getFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !accessors.containsKey(field.getName())) {
+                    MethodHandle handle = unreflectGetter(field);
+
+                    if (handle != null) {
+                        accessors.put(field.getName(), handle.asType(GETTER_TYPE));
+                    }
+                }
+            }
+        }
+
+        return accessors.isEmpty() ? Collections.emptyMap() : accessors;
+    }
+
+    static boolean isRecord(Class<?> type) {
+        Class<?> superclass = type.getSuperclass();
+        return superclass != null && "java.lang.Record".equals(superclass.getName());
+    }
+
+    /**
+     * Find the accessor methods of the record's components. Records are not
+     * available in the Java release targeted by this library, the components
+     * are obtained reflectively.
+     */
+    static List<Method> getRecordAccessors(Class<?> type) {
+        List<Method> accessors = new ArrayList<>();
+
+        try {
+            Object[] components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+
+            for (Object component : components) {
+                accessors.add((Method) component.getClass().getMethod("getAccessor").invoke(component));
+            }
+        } catch (ReflectiveOperationException e) {
+            // Not a record after all, no components
+        }
+
+        return accessors;
+    }
+
+    static boolean isAccessor(Method method) {
+        // Default methods are not bean properties to java.beans.Introspector (prior to Java 21)
+        return method.getParameterCount() == 0 && !Modifier.isStatic(method.getModifiers()) && !method.isDefault();
+    }
+
+    static void putProperty(Map<String, Method> methods, String suffix, Method method, boolean preferred) {
+        String propertyName = getPropertyName(suffix);
+
+        if (propertyName == null) {
+            return;
+        }
+
+        if (preferred) {
+            methods.put(propertyName, method);
+        } else {
+            methods.putIfAbsent(propertyName, method);
+        }
+    }
+
+    /**
+     * The name of the property for the suffix of an accessor's name (following
+     * <code>get</code> or <code>is</code>), decapitalized like
+     * <code>java.beans.Introspector</code>.
+     *
+     * @return the property name, or null when the suffix does not start with
+     *         an upper case letter
+     */
+    static String getPropertyName(String suffix) {
+        if (suffix.isEmpty() || !Character.isUpperCase(suffix.charAt(0))) {
+            return null;
+        }
+
+        if (suffix.length() > 1 && Character.isUpperCase(suffix.charAt(1))) {
+            return suffix;
+        }
+
+        return Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+    }
+
+    /**
+     * Obtain a handle for the method, searching the super types of the
+     * declaring class for an accessible declaration when the method is
+     * declared by a class that is not public (like the EL resolvers do).
+     */
+    static MethodHandle findHandle(Method method) {
+        Deque<Class<?>> types = new ArrayDeque<>();
+        types.add(method.getDeclaringClass());
+
+        while (!types.isEmpty()) {
+            Class<?> type = types.remove();
+
+            if (Modifier.isPublic(type.getModifiers())) {
+                try {
+                    MethodHandle handle = unreflect(type.getMethod(method.getName()));
+
+                    if (handle != null) {
+                        return handle.asType(GETTER_TYPE);
+                    }
+                } catch (NoSuchMethodException e) {
+                    continue;
+                }
+            }
+
+            if (type.getSuperclass() != null) {
+                types.add(type.getSuperclass());
+            }
+
+            Collections.addAll(types, type.getInterfaces());
+        }
+
+        return null;
+    }
+
+    static MethodHandle unreflect(Method method) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // Not exported unconditionally, try using this module's access
+        }
+
+        addReads(method.getDeclaringClass());
+
+        try {
+            return MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    static MethodHandle unreflectGetter(Field field) {
+        try {
+            return MethodHandles.publicLookup().unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            // Not exported unconditionally, try using this module's access
+        }
+
+        addReads(field.getDeclaringClass());
+
+        try {
+            return MethodHandles.lookup().unreflectGetter(field);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    static void addReads(Class<?> type) {
+        Module module = PropertyAccessors.class.getModule();
+        Module targetModule = type.getModule();
+
+        if (!module.canRead(targetModule)) {
+            module.addReads(targetModule);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import jakarta.validation.ConstraintDeclarationException;
+import jakarta.validation.ValidationException;
+
+import io.xlate.validation.constraints.Snapshot;
+
+/**
+ * In-memory set of the valid keys of a {@link Snapshot}, loaded by the
+ * snapshot's query and replaced atomically by each refresh. Snapshots are
+ * shared by the constraints declared with the same data source and query.
+ */
+final class ReferenceSnapshot {
+
+    private static final Map<String, LongAdder> REFRESH_FAILURES = new ConcurrentHashMap<>();
+
+    private final DataSource dataSource;
+    private final String query;
+    private final int columns;
+    private final Loader loader;
+    private final LongAdder failures;
+    private volatile Keys keys;
+
+    /**
+     * Immutable set of keys, each having a value for every column.
+     */
+    interface Keys {
+        /**
+         * The types of the columns of the keys.
+         */
+        KeyColumns getColumns();
+
+        /**
+         * Whether the set contains the key, normalized by the
+         * {@linkplain #getColumns() columns}.
+         */
+        boolean containsKey(Object key);
+
+        int size();
+
+        /**
+         * Whether the parameter values are one of the keys.
+         *
+         * @return whether the values are one of the keys, or null when the
+         *         values can not be compared with the columns of the keys
+         */
+        default Boolean contains(Object[] values) {
+            Object key = getColumns().key(values);
+
+            if (key == KeyColumns.MISMATCH) {
+                return null;
+            }
+
+            return key != null && containsKey(key);
+        }
+    }
+
+    /**
+     * Creates the keys from the rows of a query's results.
+     */
+    interface Loader {
+        Keys load(ResultSet results, KeyColumns columns) throws SQLException;
+    }
+
+    /**
+     * Keys of a single integral column, held in an open-addressing table of
+     * primitive longs.
+     */
+    static final class LongKeys implements Keys {
+        private final KeyColumns columns;
+        private final long[] table;
+        private final int mask;
+        private final int size;
+        private final boolean containsZero;
+
+        LongKeys(KeyColumns columns, long[] values, int count) {
+            this.columns = columns;
+            int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+            long[] entries = new long[Math.max(capacity, 2)];
+            int m = entries.length - 1;
+            int distinct = 0;
+            boolean zero = false;
+
+            for (int i = 0; i < count; i++) {
+                long value = values[i];
+
+                if (value == 0) {
+                    // Zero marks empty slots and is tracked separately
+                    if (!zero) {
+                        zero = true;
+                        distinct++;
+                    }
+                    continue;
+                }
+
+                int slot = slot(value, m);
+
+                while (entries[slot] != 0 && entries[slot] != value) {
+                    slot = (slot + 1) & m;
+                }
+
+                if (entries[slot] == 0) {
+                    entries[slot] = value;
+                    distinct++;
+                }
+            }
+
+            this.table = entries;
+            this.mask = m;
+            this.size = distinct;
+            this.containsZero = zero;
+        }
+
+        static int slot(long value, int mask) {
+            long hash = value * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        boolean contains(long value) {
+            if (value == 0) {
+                return containsZero;
+            }
+
+            int slot = slot(value, mask);
+            long entry;
+
+            while ((entry = table[slot]) != 0) {
+                if (entry == value) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            return false;
+        }
+
+        @Override
+        public KeyColumns getColumns() {
+            return columns;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Long && contains(((Long) key).longValue());
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Keys of any type or of multiple columns, normalized by their
+     * {@link KeyColumns}.
+     */
+    static final class ObjectKeys implements Keys {
+        private final KeyColumns columns;
+        private final Set<Object> keys;
+
+        ObjectKeys(KeyColumns columns, Set<Object> keys) {
+            this.columns = columns;
+            this.keys = keys;
+        }
+
+        @Override
+        public KeyColumns getColumns() {
+            return columns;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keys.contains(key);
+        }
+
+        @Override
+        public int size() {
+            return keys.size();
+        }
+    }
+
+    /**
+     * Refreshes a snapshot until the snapshot is no longer used by any
+     * constraint.
+     */
+    static final class Refresh implements Runnable {
+        final WeakReference<ReferenceSnapshot> snapshot;
+        volatile ScheduledFuture<?> future;
+
+        Refresh(ReferenceSnapshot snapshot) {
+            this.snapshot = new WeakReference<>(snapshot);
+        }
+
+        @Override
+        public void run() {
+            ReferenceSnapshot current = snapshot.get();
+
+            if (current != null) {
+                current.refresh();
+            } else {
+                future.cancel(false);
+            }
+        }
+    }
+
+    static final class Scheduler {
+        static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "io.xlate.validation snapshot refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+
+        private Scheduler() {
+        }
+    }
+
+    ReferenceSnapshot(DataSource dataSource, String query, int columns) {
+        this(dataSource, query, columns, ReferenceSnapshot::loadKeys);
+    }
+
+    ReferenceSnapshot(DataSource dataSource, String query, int columns, Loader loader) {
+        this.dataSource = dataSource;
+        this.query = query;
+        this.columns = columns;
+        this.loader = loader;
+        this.failures = REFRESH_FAILURES.computeIfAbsent(query, k -> new LongAdder());
+    }
+
+    /**
+     * Obtain the snapshot shared by constraints using the same data source
+     * and configuration, loading its keys when first used.
+     *
+     * @param dataSourceLookup
+     *            the name of the data source, identifying it in the cache of
+     *            snapshots
+     * @param columns
+     *            the number of columns of each key, i.e. the number of the
+     *            constraint's parameters
+     * @throws ConstraintDeclarationException
+     *             when the configuration is not valid
+     * @throws ValidationException
+     *             when the keys can not be loaded
+     */
+    static ReferenceSnapshot getInstance(String dataSourceLookup, DataSource dataSource, Snapshot annotation, int columns) {
+        return getInstance(dataSourceLookup,
+                           dataSource,
+                           annotation.value(),
+                           toNanos(annotation.refresh(), annotation.refreshUnit()),
+                           columns,
+                           Snapshot.class,
+                           ReferenceSnapshot::loadKeys);
+    }
+
+    /**
+     * Obtain the snapshot shared by constraints using the same data source,
+     * query, and configuration of the keys loaded by the loader.
+     *
+     * @param configuration
+     *            identifies the type and configuration of the keys created
+     *            by the loader
+     */
+    static ReferenceSnapshot getInstance(String dataSourceLookup,
+                                         DataSource dataSource,
+                                         String query,
+                                         long refreshNanos,
+                                         int columns,
+                                         Object configuration,
+                                         Loader loader) {
+        if (columns == 0) {
+            throw new ConstraintDeclarationException("Query `" + query + "` requires parameters");
+        }
+
+        List<Object> key = List.of(ReferenceSnapshot.class, dataSourceLookup, query, columns, refreshNanos, configuration);
+
+        return ExpressionCache.intern(key, () -> {
+            ReferenceSnapshot snapshot = new ReferenceSnapshot(dataSource, query, columns, loader);
+
+            try {
+                snapshot.keys = snapshot.load();
+            } catch (SQLException e) {
+                throw new ValidationException("Keys of query `" + query + "` could not be loaded", e);
+            }
+
+            if (refreshNanos > 0) {
+                Refresh refresh = new Refresh(snapshot);
+                refresh.future = Scheduler.INSTANCE.scheduleWithFixedDelay(refresh,
+                                                                           refreshNanos,
+                                                                           refreshNanos,
+                                                                           TimeUnit.NANOSECONDS);
+            }
+
+            return snapshot;
+        });
+    }
+
+    static long toNanos(long refresh, ChronoUnit unit) {
+        long refreshNanos;
+
+        try {
+            refreshNanos = Duration.of(refresh, unit).toNanos();
+        } catch (UnsupportedTemporalTypeException | ArithmeticException e) {
+            throw new ConstraintDeclarationException("Invalid refresh interval " + refresh + ' ' + unit, e);
+        }
+
+        if (refreshNanos < 0) {
+            throw new ConstraintDeclarationException("Invalid refresh interval " + refresh + ' ' + unit);
+        }
+
+        return refreshNanos;
+    }
+
+    /**
+     * Whether the values are one of the keys of the snapshot.
+     *
+     * @return whether the values are one of the keys, or null when the values
+     *         can not be compared with the columns of the keys (and must be
+     *         validated by the database)
+     */
+    Boolean contains(Object[] values) {
+        return keys.contains(values);
+    }
+
+    Keys getKeys() {
+        return keys;
+    }
+
+    /**
+     * Load the keys and replace the current keys, or keep the current keys
+     * when they can not be loaded.
+     */
+    void refresh() {
+        try {
+            keys = load();
+        } catch (SQLException | RuntimeException e) {
+            failures.increment();
+        }
+    }
+
+    Keys load() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(query);
+             ResultSet results = statement.executeQuery()) {
+
+            ResultSetMetaData metadata = results.getMetaData();
+
+            if (metadata.getColumnCount() != columns) {
+                throw new ConstraintDeclarationException("Query `" + query + "` must select " + columns
+                        + " column(s), one for each parameter");
+            }
+
+            return loader.load(results, KeyColumns.of(metadata, columns));
+        }
+    }
+
+    /**
+     * Load the keys into a set of primitive longs when possible, otherwise a
+     * set of objects.
+     */
+    static Keys loadKeys(ResultSet results, KeyColumns columns) throws SQLException {
+        if (columns.size() == 1 && isIntegral(results.getMetaData().getColumnType(1))) {
+            return loadLongs(results, columns);
+        }
+
+        return loadObjects(results, columns);
+    }
+
+    static boolean isIntegral(int sqlType) {
+        switch (sqlType) {
+        case Types.BIGINT:
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static Keys loadLongs(ResultSet results, KeyColumns columns) throws SQLException {
+        long[] values = new long[64];
+        int count = 0;
+
+        while (results.next()) {
+            long value = results.getLong(1);
+
+            if (results.wasNull()) {
+                continue;
+            }
+
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+
+            values[count++] = value;
+        }
+
+        return new LongKeys(columns, values, count);
+    }
+
+    static Keys loadObjects(ResultSet results, KeyColumns columns) throws SQLException {
+        Set<Object> keys = new HashSet<>();
+        Object[] values = new Object[columns.size()];
+
+        while (results.next()) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = results.getObject(i + 1);
+            }
+
+            Object key = columns.rowKey(values);
+
+            if (key != null) {
+                // Rows with null values never equal any parameter values
+                keys.add(key);
+            }
+        }
+
+        return new ObjectKeys(columns, keys);
+    }
+
+    /**
+     * The number of failed refreshes of each snapshot, identified by its
+     * query.
+     */
+    static Map<String, Long> getRefreshFailureCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        REFRESH_FAILURES.forEach((query, count) -> counts.put(query, count.sum()));
+        return counts;
+    }
+}
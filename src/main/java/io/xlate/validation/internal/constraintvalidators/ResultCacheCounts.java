@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of the hits and misses of the result caches of the constraints,
+ * shared by all caches with the same name.
+ */
+final class ResultCacheCounts {
+
+    private static final Map<String, ResultCacheCounts> COUNTS = new ConcurrentHashMap<>();
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    private ResultCacheCounts() {
+    }
+
+    /**
+     * The counts of the caches having the name, or counts not shared with
+     * any other cache when the name is null.
+     */
+    static ResultCacheCounts of(String name) {
+        return name != null ? COUNTS.computeIfAbsent(name, k -> new ResultCacheCounts()) : new ResultCacheCounts();
+    }
+
+    /**
+     * The number of results found in the caches of each named constraint.
+     */
+    static Map<String, Long> getHitCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        COUNTS.forEach((name, count) -> counts.put(name, count.hits.sum()));
+        return counts;
+    }
+
+    /**
+     * The number of results not found (or expired) in the caches of each
+     * named constraint.
+     */
+    static Map<String, Long> getMissCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        COUNTS.forEach((name, count) -> counts.put(name, count.misses.sum()));
+        return counts;
+    }
+
+    /**
+     * Reset the counts of hits and misses of all caches.
+     */
+    static void resetCounts() {
+        COUNTS.values().forEach(count -> {
+            count.hits.reset();
+            count.misses.reset();
+        });
+    }
+}
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.xlate.validation.constraints.Expression;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+/**
+ * A single pass of the shared {@link Expression @Expression} constraints
+ * declared on a class (see {@link Expression#shared()}) over one target
+ * object. Property reads and the values of compiled subexpressions (see
+ * {@link ExpressionNode.Memoized}) are memoized for the duration of the pass,
+ * which ends once every shared constraint with the same groups has evaluated
+ * the target, when one of them evaluates the target a second time, when an
+ * evaluation fails, or when a pass over another target begins on the same
+ * thread.
+ */
+final class SharedEvaluation {
+
+    /**
+     * Position of the distinct shared {@link Expression}s declared on each
+     * class and its super classes within their passes.
+     */
+    private static final ClassValue<Map<Expression, Slot>> SLOTS = new ClassValue<Map<Expression, Slot>>() {
+        @Override
+        protected Map<Expression, Slot> computeValue(Class<?> type) {
+            return findSlots(findSharedExpressions(type));
+        }
+    };
+
+    /**
+     * Passes in progress on this thread.
+     */
+    private static final ThreadLocal<Passes> PASSES = ThreadLocal.withInitial(Passes::new);
+
+    /**
+     * Position of a shared constraint in the passes over targets of a class:
+     * the constraints with the same groups (identified by the group object)
+     * take part in the same pass.
+     */
+    static final class Slot {
+        final Object group;
+        final int index;
+        final int members;
+
+        Slot(Object group, int index, int members) {
+            this.group = group;
+            this.index = index;
+            this.members = members;
+        }
+    }
+
+    /**
+     * A shared constraint taking part in passes, prepared once when the
+     * constraint's validator is initialized. The slot of the constraint is
+     * remembered for the last class of target, so that the constraint
+     * annotation (compared reflectively) is only looked up when the class of
+     * the targets changes.
+     */
+    static final class Participant {
+        final Expression constraint;
+        private volatile Resolved resolved;
+
+        Participant(Expression constraint) {
+            this.constraint = constraint;
+        }
+
+        Slot getSlot(Class<?> type) {
+            Resolved current = resolved;
+
+            if (current == null || current.type != type) {
+                current = new Resolved(type, SLOTS.get(type).get(constraint));
+                resolved = current;
+            }
+
+            return current.slot;
+        }
+    }
+
+    static final class Resolved {
+        final Class<?> type;
+        final Slot slot;
+
+        Resolved(Class<?> type, Slot slot) {
+            this.type = type;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * The passes of a thread, all over the same target. A pass over another
+     * target replaces them, so that passes left incomplete (e.g. the
+     * validation of the target was interrupted) do not retain their target.
+     */
+    static final class Passes {
+        Object target;
+        final Map<Object, SharedEvaluation> byGroup = new IdentityHashMap<>(4);
+
+        void remove(SharedEvaluation pass) {
+            if (byGroup.remove(pass.group, pass) && byGroup.isEmpty()) {
+                target = null;
+            }
+        }
+
+        void clear() {
+            byGroup.clear();
+            target = null;
+        }
+    }
+
+    private final Object group;
+    private final Object target;
+    private final boolean[] joined;
+    private final Map<Object, Map<Object, Object>> reads = new IdentityHashMap<>();
+    private final Map<String, Object> subexpressions = new HashMap<>();
+    private int members;
+    private int active;
+
+    private SharedEvaluation(Slot slot, Object target) {
+        this.group = slot.group;
+        this.target = target;
+        this.joined = new boolean[slot.members];
+    }
+
+    /**
+     * Join (or start) the pass over the target for the given constraint. Must
+     * be followed by a call to {@link #leave()} once the constraint has been
+     * evaluated.
+     *
+     * @return the pass, or null when the constraint is not a shared constraint
+     *         declared on the target's class
+     */
+    static SharedEvaluation join(Participant participant, Object target) {
+        if (target == null) {
+            return null;
+        }
+
+        Slot slot = participant.getSlot(target.getClass());
+
+        if (slot == null) {
+            return null;
+        }
+
+        Passes passes = PASSES.get();
+
+        if (passes.target != target) {
+            // Any pass over a previous target is over
+            passes.clear();
+            passes.target = target;
+        }
+
+        SharedEvaluation pass = passes.byGroup.get(slot.group);
+
+        if (pass == null || pass.joined[slot.index]) {
+            pass = new SharedEvaluation(slot, target);
+            passes.byGroup.put(slot.group, pass);
+        }
+
+        pass.joined[slot.index] = true;
+        pass.members++;
+        pass.active++;
+        return pass;
+    }
+
+    /**
+     * Record that the constraint evaluated the target without taking part in
+     * the pass, e.g. its result was cached or it does not evaluate
+     * expressions, so that the pass ends once the other constraints have
+     * evaluated the target.
+     */
+    static void skip(Participant participant, Object target) {
+        SharedEvaluation pass = join(participant, target);
+
+        if (pass != null) {
+            pass.leave();
+        }
+    }
+
+    /**
+     * Leave the pass, ending it when all of the shared constraints have
+     * evaluated the target.
+     */
+    void leave() {
+        if (--active == 0 && members >= joined.length) {
+            PASSES.get().remove(this);
+        }
+    }
+
+    /**
+     * End the pass before all of the shared constraints have evaluated the
+     * target, e.g. when the evaluation failed and the validation of the target
+     * will not continue.
+     */
+    void end() {
+        PASSES.get().remove(this);
+    }
+
+    /**
+     * End the passes in progress on this thread, if any. Used when only some
+     * of the shared constraints will evaluate a target, so that a later pass
+     * over the same (possibly modified) target does not use values memoized
+     * by an earlier one.
+     */
+    static void endPasses() {
+        PASSES.get().clear();
+    }
+
+    /**
+     * Read a property using the accessor, or return the value previously read
+     * during this pass.
+     */
+    Object getValue(Object base, Object property, MethodHandle accessor) throws Throwable {
+        Map<Object, Object> values = reads.computeIfAbsent(base, k -> new HashMap<>());
+        Object value = values.get(property);
+
+        if (value == null && !values.containsKey(property)) {
+            value = accessor.invokeExact(base);
+            values.put(property, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Evaluate a subexpression, or return the value previously obtained for a
+     * subexpression with the same key during this pass.
+     */
+    Object getValue(String key, ExpressionNode node, TargetELContext context) {
+        Object value = subexpressions.get(key);
+
+        if (value == null && !subexpressions.containsKey(key)) {
+            value = node.getValue(context);
+            subexpressions.put(key, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Find the distinct shared constraints declared on the type and its super
+     * classes. Like the {@link ExpressionRule}s of a type, constraints declared
+     * on interfaces are not included.
+     */
+    static List<Expression> findSharedExpressions(Class<?> type) {
+        Set<Expression> shared = new LinkedHashSet<>();
+
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Expression expression : current.getDeclaredAnnotationsByType(Expression.class)) {
+                if (expression.shared()) {
+                    shared.add(expression);
+                }
+            }
+        }
+
+        return shared.isEmpty() ? Collections.emptyList() : new ArrayList<>(shared);
+    }
+
+    static Map<Expression, Slot> findSlots(List<Expression> shared) {
+        if (shared.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Set<Class<?>>, List<Expression>> byGroups = new LinkedHashMap<>();
+
+        for (Expression expression : shared) {
+            byGroups.computeIfAbsent(new HashSet<>(Arrays.asList(expression.groups())), k -> new ArrayList<>())
+                    .add(expression);
+        }
+
+        Map<Expression, Slot> slots = new HashMap<>();
+
+        for (Map.Entry<Set<Class<?>>, List<Expression>> entry : byGroups.entrySet()) {
+            List<Expression> members = entry.getValue();
+
+            for (int i = 0; i < members.size(); i++) {
+                slots.put(members.get(i), new Slot(entry.getKey(), i, members.size()));
+            }
+        }
+
+        return slots;
+    }
+}
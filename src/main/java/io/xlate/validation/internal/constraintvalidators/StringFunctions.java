@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import io.xlate.validation.spi.FunctionLibrary;
+
+/**
+ * Built-in string functions, available to all expressions with the prefix
+ * <code>str</code>, e.g. <code>str:matches(self.code, '[A-Z]{3}[0-9]+')</code>.
+ *
+ * <p>
+ * Regular expressions are compiled once and kept in a bounded cache shared by
+ * all expressions, unlike {@link String#matches(String)} which compiles the
+ * pattern for every call. Once the cache is full, further regular expressions
+ * are compiled for each call rather than displacing those already cached. The other functions examine their arguments in place
+ * without allocating. As with any EL function taking a String, a null argument
+ * is coerced to an empty string.
+ */
+public final class StringFunctions implements FunctionLibrary {
+
+    static final String PREFIX = "str";
+    static final int MAX_PATTERNS = 256;
+    static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+    static final AtomicInteger PATTERN_COUNT = new AtomicInteger();
+
+    @Override
+    public String getPrefix() {
+        return PREFIX;
+    }
+
+    static Pattern pattern(String regex) {
+        Pattern pattern = PATTERNS.get(regex);
+
+        if (pattern == null) {
+            pattern = PATTERNS.computeIfAbsent(regex, StringFunctions::reservePattern);
+
+            if (pattern == null) {
+                pattern = Pattern.compile(regex);
+            }
+        }
+
+        return pattern;
+    }
+
+    /**
+     * Compile a pattern to be cached, or null when the cache is full.
+     */
+    static Pattern reservePattern(String regex) {
+        if (PATTERN_COUNT.getAndIncrement() >= MAX_PATTERNS) {
+            PATTERN_COUNT.decrementAndGet();
+            return null;
+        }
+
+        try {
+            return Pattern.compile(regex);
+        } catch (RuntimeException e) {
+            PATTERN_COUNT.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the entire value matches the regular expression.
+     */
+    public static boolean matches(String value, String regex) {
+        return pattern(regex).matcher(value).matches();
+    }
+
+    /**
+     * Whether the regular expression matches some part of the value.
+     */
+    public static boolean find(String value, String regex) {
+        return pattern(regex).matcher(value).find();
+    }
+
+    public static boolean startsWith(String value, String prefix) {
+        return value.startsWith(prefix);
+    }
+
+    public static boolean endsWith(String value, String suffix) {
+        return value.endsWith(suffix);
+    }
+
+    /**
+     * Whether the length of the value is at least min and at most max.
+     */
+    public static boolean lengthBetween(String value, int min, int max) {
+        int length = value.length();
+        return length >= min && length <= max;
+    }
+
+    /**
+     * Whether the value is not empty and consists of ASCII digits only.
+     */
+    public static boolean digits(String value) {
+        int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return length > 0;
+    }
+
+    /**
+     * Whether the value is not empty and consists of ASCII letters only.
+     */
+    public static boolean letters(String value) {
+        int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            if (!isLetter(value.charAt(i))) {
+                return false;
+            }
+        }
+
+        return length > 0;
+    }
+
+    /**
+     * Whether the value is not empty and consists of ASCII letters and digits
+     * only.
+     */
+    public static boolean alphanumeric(String value) {
+        int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (!isLetter(c) && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+
+        return length > 0;
+    }
+
+    /**
+     * Whether the value consists of ASCII characters only.
+     */
+    public static boolean ascii(String value) {
+        int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether every character of the value is one of the allowed characters.
+     */
+    public static boolean charsIn(String value, String allowed) {
+        int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            if (allowed.indexOf(value.charAt(i)) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,460 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.el.ArrayELResolver;
+import jakarta.el.BeanELResolver;
+import jakarta.el.CompositeELResolver;
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.ELManager;
+import jakarta.el.ELResolver;
+import jakarta.el.FunctionMapper;
+import jakarta.el.ImportHandler;
+import jakarta.el.ListELResolver;
+import jakarta.el.MapELResolver;
+import jakarta.el.PropertyNotWritableException;
+import jakarta.el.RecordELResolver;
+import jakarta.el.ResourceBundleELResolver;
+import jakarta.el.StandardELContext;
+import jakarta.el.StaticFieldELResolver;
+import jakarta.el.VariableMapper;
+import jakarta.validation.ConstraintDeclarationException;
+
+import io.xlate.validation.constraints.ELResolverType;
+import io.xlate.validation.spi.FunctionLibrary;
+import io.xlate.validation.spi.PrecompiledExpressions;
+
+/**
+ * EL context built once per constraint. The resolver chain and the imports are
+ * shared (read-only) by every evaluation, and each evaluation only needs a
+ * lightweight context from {@link #acquireContext(Object)} carrying the target.
+ */
+class TemplateELContext extends StandardELContext {
+
+    static final String RESOLVERS_PROPERTY = "io.xlate.validation.resolvers";
+
+    private static final String[] NONE = {};
+
+    private final String targetName;
+    private final String signature;
+    private final String precompiledKey;
+    private final ImportHandler importHandler;
+    private final FunctionRegistry functions;
+    private final CompositeELResolver resolver;
+
+    TemplateELContext(String targetName, String[] packageImports, String[] classImports, String[] staticImports) {
+        this(targetName, packageImports, classImports, staticImports, FunctionRegistry.BUILT_IN);
+    }
+
+    TemplateELContext(String targetName,
+                      String[] packageImports,
+                      String[] classImports,
+                      String[] staticImports,
+                      FunctionRegistry functions) {
+        this(targetName, packageImports, classImports, staticImports, functions, EnumSet.allOf(ELResolverType.class));
+    }
+
+    TemplateELContext(String targetName,
+                      String[] packageImports,
+                      String[] classImports,
+                      String[] staticImports,
+                      FunctionRegistry functions,
+                      Set<ELResolverType> resolverTypes) {
+        this(targetName,
+             packageImports,
+             classImports,
+             staticImports,
+             functions,
+             resolverTypes,
+             PrecompiledExpressions.key("", targetName, packageImports, classImports, staticImports, NONE, NONE));
+    }
+
+    TemplateELContext(String targetName,
+                      String[] packageImports,
+                      String[] classImports,
+                      String[] staticImports,
+                      FunctionRegistry functions,
+                      Set<ELResolverType> resolverTypes,
+                      String precompiledKey) {
+        super(ELManager.getExpressionFactory());
+        this.targetName = targetName;
+        this.signature = targetName + Arrays.toString(packageImports) + Arrays.toString(classImports)
+                + Arrays.toString(staticImports) + functions.getSignature() + resolverTypes;
+        this.precompiledKey = precompiledKey;
+        this.importHandler = new SharedImportHandler(packageImports, classImports, staticImports);
+        this.functions = functions;
+        this.resolver = new CompositeELResolver();
+        resolver.add(new TargetELResolver(targetName));
+        resolver.add(AccessorELResolver.INSTANCE);
+
+        for (ELResolverType type : resolverTypes) {
+            ELResolver standard = newResolver(type);
+
+            if (standard != null) {
+                resolver.add(standard);
+            }
+        }
+    }
+
+    /**
+     * Obtain the template shared by all constraints having the same target
+     * name, imports, function libraries, and resolvers.
+     *
+     * @param resolverTypes
+     *            the standard resolvers to use, or an empty array to use the
+     *            default resolvers
+     */
+    static TemplateELContext getInstance(String targetName,
+                                         String[] packageImports,
+                                         String[] classImports,
+                                         String[] staticImports,
+                                         Class<? extends FunctionLibrary>[] functionLibraries,
+                                         ELResolverType[] resolverTypes) {
+        List<Class<? extends FunctionLibrary>> libraries = List.of(functionLibraries);
+        Set<ELResolverType> resolvers = getResolverTypes(resolverTypes, System.getProperty(RESOLVERS_PROPERTY));
+        // Keyed by the template as declared, the build-time processor knows nothing of the runtime defaults
+        String precompiledKey = PrecompiledExpressions.key("",
+                                                           targetName,
+                                                           packageImports,
+                                                           classImports,
+                                                           staticImports,
+                                                           libraries.stream().map(Class::getName).toArray(String[]::new),
+                                                           Arrays.stream(resolverTypes).map(Enum::name).toArray(String[]::new));
+
+        return ExpressionCache.intern(List.of(TemplateELContext.class,
+                                              targetName,
+                                              List.of(packageImports),
+                                              List.of(classImports),
+                                              List.of(staticImports),
+                                              libraries,
+                                              resolvers),
+                                      () -> new TemplateELContext(targetName,
+                                                                  packageImports,
+                                                                  classImports,
+                                                                  staticImports,
+                                                                  FunctionRegistry.getInstance(libraries),
+                                                                  resolvers,
+                                                                  precompiledKey));
+    }
+
+    /**
+     * The resolvers selected by a constraint, otherwise those named by the
+     * system property, otherwise all of them.
+     */
+    static Set<ELResolverType> getResolverTypes(ELResolverType[] selected, String defaults) {
+        if (selected.length > 0) {
+            return EnumSet.copyOf(Arrays.asList(selected));
+        }
+
+        if (defaults == null || defaults.isBlank()) {
+            return EnumSet.allOf(ELResolverType.class);
+        }
+
+        Set<ELResolverType> types = EnumSet.noneOf(ELResolverType.class);
+
+        for (String name : defaults.split(",")) {
+            try {
+                types.add(ELResolverType.valueOf(name.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new ConstraintDeclarationException("Unknown resolver `" + name.trim() + "` in system property "
+                        + RESOLVERS_PROPERTY, e);
+            }
+        }
+
+        return types;
+    }
+
+    /**
+     * @return the resolver, or null when the EL implementation does not
+     *         provide one of the type
+     */
+    static ELResolver newResolver(ELResolverType type) {
+        switch (type) {
+        case STREAM:
+            return ELManager.getExpressionFactory().getStreamELResolver();
+        case STATIC_FIELD:
+            return new StaticFieldELResolver();
+        case MAP:
+            return new MapELResolver();
+        case RESOURCE_BUNDLE:
+            return new ResourceBundleELResolver();
+        case LIST:
+            return new ListELResolver();
+        case ARRAY:
+            return new ArrayELResolver();
+        case RECORD:
+            return new RecordELResolver();
+        default:
+            return new BeanELResolver();
+        }
+    }
+
+    @Override
+    public ELResolver getELResolver() {
+        return resolver;
+    }
+
+    @Override
+    public void addELResolver(ELResolver cELResolver) {
+        throw new UnsupportedOperationException("Resolvers are selected when the context is created");
+    }
+
+    @Override
+    public ImportHandler getImportHandler() {
+        return importHandler;
+    }
+
+    @Override
+    public FunctionRegistry getFunctionMapper() {
+        return functions;
+    }
+
+    String getTargetName() {
+        return targetName;
+    }
+
+    /**
+     * Identifies the target name and imports of this context. Expressions
+     * have the same meaning in contexts having the same signature.
+     */
+    String getSignature() {
+        return signature;
+    }
+
+    /**
+     * The key identifying the expression in the {@link PrecompiledExpressions}
+     * generated at build time for constraints declared with this template.
+     */
+    String getPrecompiledKey(String expression) {
+        return precompiledKey + expression;
+    }
+
+    /**
+     * Obtain a context for evaluating expressions against the target. The
+     * context must be closed once evaluation is complete.
+     */
+    TargetELContext acquireContext(Object target) {
+        return TargetELContext.acquire(this, target);
+    }
+
+    /**
+     * Per-evaluation context. Everything except the target and the state
+     * maintained by the EL implementation during evaluation (e.g. lambda
+     * arguments) is delegated to the template. Instances are short-lived and
+     * allocated for each evaluation.
+     */
+    static class TargetELContext extends ELContext implements AutoCloseable {
+        final TemplateELContext template;
+        final Object target;
+        SharedEvaluation shared;
+        EvaluationLimits limits;
+        long steps;
+        long started;
+        boolean exceeded;
+
+        TargetELContext(TemplateELContext template, Object target) {
+            this.template = template;
+            this.target = target;
+        }
+
+        static TargetELContext acquire(TemplateELContext template, Object target) {
+            return new TargetELContext(template, target);
+        }
+
+        @Override
+        public void close() {
+            if (shared != null) {
+                shared.leave();
+                shared = null;
+            }
+        }
+
+        /**
+         * Count a step of the evaluation against the evaluation's budget, if
+         * any.
+         */
+        void step() {
+            if (limits != null) {
+                limits.step(this);
+            }
+        }
+
+        /**
+         * Read a property using the accessor, sharing the value with the other
+         * constraints of a {@link SharedEvaluation} when one is in progress.
+         */
+        Object read(Object base, Object property, MethodHandle accessor) throws Throwable {
+            step();
+
+            if (shared != null) {
+                return shared.getValue(base, property, accessor);
+            }
+            return accessor.invokeExact(base);
+        }
+
+        @Override
+        public Object getContext(Class<?> key) {
+            // Allows the TargetELResolver to find this context through any wrapping context
+            return key == TargetELContext.class ? this : super.getContext(key);
+        }
+
+        @Override
+        public ELResolver getELResolver() {
+            // Obtained by the EL implementation for each property read and method call
+            step();
+            return template.getELResolver();
+        }
+
+        @Override
+        public void enterLambdaScope(Map<String, Object> arguments) {
+            step();
+            super.enterLambdaScope(arguments);
+        }
+
+        @Override
+        public ImportHandler getImportHandler() {
+            return template.getImportHandler();
+        }
+
+        @Override
+        public FunctionMapper getFunctionMapper() {
+            return template.getFunctionMapper();
+        }
+
+        @Override
+        public VariableMapper getVariableMapper() {
+            return template.getVariableMapper();
+        }
+    }
+
+    /**
+     * Resolves the constraint's target name to the target of the current
+     * {@link TargetELContext}.
+     */
+    static class TargetELResolver extends ELResolver {
+        final String targetName;
+
+        TargetELResolver(String targetName) {
+            this.targetName = targetName;
+        }
+
+        TargetELContext getTargetContext(ELContext context, Object base, Object property) {
+            if (base == null && targetName.equals(property)) {
+                return (TargetELContext) context.getContext(TargetELContext.class);
+            }
+            return null;
+        }
+
+        @Override
+        public Object getValue(ELContext context, Object base, Object property) {
+            TargetELContext targetContext = getTargetContext(context, base, property);
+
+            if (targetContext != null) {
+                context.setPropertyResolved(base, property);
+                return targetContext.target;
+            }
+
+            return null;
+        }
+
+        @Override
+        public Class<?> getType(ELContext context, Object base, Object property) {
+            if (getTargetContext(context, base, property) != null) {
+                // Read-only
+                context.setPropertyResolved(true);
+            }
+            return null;
+        }
+
+        @Override
+        public void setValue(ELContext context, Object base, Object property, Object value) {
+            if (getTargetContext(context, base, property) != null) {
+                throw new PropertyNotWritableException("`" + targetName + "` may not be modified");
+            }
+        }
+
+        @Override
+        public boolean isReadOnly(ELContext context, Object base, Object property) {
+            if (getTargetContext(context, base, property) != null) {
+                context.setPropertyResolved(true);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Class<?> getCommonPropertyType(ELContext context, Object base) {
+            return String.class;
+        }
+    }
+
+    /**
+     * {@link ImportHandler} safe for use by concurrent evaluations. Classes
+     * named by class and static imports are loaded eagerly and all
+     * resolutions (including failures) are remembered.
+     */
+    static class SharedImportHandler extends ImportHandler {
+        private final Map<String, Optional<Class<?>>> classes = new ConcurrentHashMap<>();
+        private final Map<String, Optional<Class<?>>> statics = new ConcurrentHashMap<>();
+
+        SharedImportHandler(String[] packageImports, String[] classImports, String[] staticImports) {
+            try {
+                for (String name : packageImports) {
+                    importPackage(name);
+                }
+                for (String name : classImports) {
+                    importClass(name);
+                    resolveClass(name.substring(name.lastIndexOf('.') + 1));
+                }
+                for (String name : staticImports) {
+                    importStatic(name);
+                    resolveStatic(name.substring(name.lastIndexOf('.') + 1));
+                }
+            } catch (ELException e) {
+                throw new ConstraintDeclarationException(e);
+            }
+        }
+
+        @Override
+        public Class<?> resolveClass(String name) {
+            return classes.computeIfAbsent(name, this::resolveClassSynchronized).orElse(null);
+        }
+
+        @Override
+        public Class<?> resolveStatic(String name) {
+            return statics.computeIfAbsent(name, this::resolveStaticSynchronized).orElse(null);
+        }
+
+        synchronized Optional<Class<?>> resolveClassSynchronized(String name) {
+            return Optional.ofNullable(super.resolveClass(name));
+        }
+
+        synchronized Optional<Class<?>> resolveStaticSynchronized(String name) {
+            return Optional.ofNullable(super.resolveStatic(name));
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.time.Duration;
+import java.time.temporal.UnsupportedTemporalTypeException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jakarta.validation.ConstraintDeclarationException;
+
+import io.xlate.validation.constraints.ResultCache;
+import io.xlate.validation.constraints.ResultCache.EvictionPolicy;
+import io.xlate.validation.constraints.ResultCache.KeyType;
+
+/**
+ * Bounded cache of the results of a single constraint, configured by a
+ * {@link ResultCache} annotation. Least recently used (or oldest) results are
+ * evicted when the cache is full and results older than their TTL (if any)
+ * are ignored and replaced. Hits and misses are counted for each named
+ * cache.
+ *
+ * <p>
+ * Results are kept in a set-associative table without locks: the hash of a
+ * target selects a set of (at most {@value #WAYS}) slots, and the least
+ * recently used (or oldest) result of the set is evicted when the set is full,
+ * approximating the eviction policy over the whole cache. Caches with up to
+ * {@value #WAYS} results have a single set and evict exactly. Sizes that do
+ * not divide evenly among the sets are rounded down.
+ */
+final class ValidationResults {
+
+    static final int WAYS = 8;
+
+    private final AtomicReferenceArray<Result> slots;
+    final int ways;
+    final int sets;
+    private final boolean leastRecentlyUsed;
+    /**
+     * Orders results by the time they were stored (even values) or last used
+     * (odd values).
+     */
+    private final AtomicLong clock = new AtomicLong();
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final ResultCacheCounts statistics;
+    final boolean identity;
+
+    static final class Result {
+        final Object target;
+        final boolean valid;
+        final long created;
+        volatile long used;
+
+        Result(Object target, boolean valid, long created, long used) {
+            this.target = target;
+            this.valid = valid;
+            this.created = created;
+            this.used = used;
+        }
+    }
+
+    ValidationResults(String name, int size, long ttlNanos, long negativeTtlNanos, boolean identity, EvictionPolicy eviction) {
+        // Enough sets (a power of two) to hold the results in at most WAYS slots each
+        this.sets = size > WAYS ? Integer.highestOneBit((size + WAYS - 1) / WAYS - 1) << 1 : 1;
+        this.ways = size / sets;
+        this.slots = new AtomicReferenceArray<>(sets * ways);
+        this.leastRecentlyUsed = eviction != EvictionPolicy.FIFO;
+        this.ttlNanos = ttlNanos;
+        this.negativeTtlNanos = negativeTtlNanos;
+        this.identity = identity;
+        this.statistics = ResultCacheCounts.of(name);
+    }
+
+    /**
+     * Create the cache configured by the annotation.
+     *
+     * @return the cache, or null when the cache is not enabled
+     * @throws ConstraintDeclarationException
+     *             when the configuration is not valid
+     */
+    static ValidationResults of(ResultCache annotation) {
+        return of(null, annotation);
+    }
+
+    /**
+     * Create the cache configured by the annotation, counting its hits and
+     * misses with those of other caches having the same name.
+     *
+     * @param name
+     *            identifies the constraint in the counts of hits and misses,
+     *            or null when not counted
+     * @return the cache, or null when the cache is not enabled
+     * @throws ConstraintDeclarationException
+     *             when the configuration is not valid
+     */
+    static ValidationResults of(String name, ResultCache annotation) {
+        return of(name, annotation, annotation.key() == KeyType.IDENTITY);
+    }
+
+    /**
+     * Create the cache configured by the annotation, with the given type of
+     * key rather than the annotation's.
+     */
+    static ValidationResults of(String name, ResultCache annotation, boolean identity) {
+        if (annotation.size() <= 0) {
+            return null;
+        }
+
+        long ttlNanos = toNanos(annotation.ttl(), annotation);
+        long negativeTtlNanos = annotation.negativeTtl() < 0 ? ttlNanos : toNanos(annotation.negativeTtl(), annotation);
+
+        return new ValidationResults(name,
+                                     annotation.size(),
+                                     ttlNanos,
+                                     negativeTtlNanos,
+                                     identity,
+                                     annotation.eviction());
+    }
+
+    static long toNanos(long ttl, ResultCache annotation) {
+        long ttlNanos;
+
+        try {
+            ttlNanos = Duration.of(ttl, annotation.ttlUnit()).toNanos();
+        } catch (UnsupportedTemporalTypeException | ArithmeticException e) {
+            throw new ConstraintDeclarationException("Invalid result cache TTL " + ttl + ' ' + annotation.ttlUnit(), e);
+        }
+
+        if (ttlNanos < 0) {
+            throw new ConstraintDeclarationException("Invalid result cache TTL " + ttl + ' ' + annotation.ttlUnit());
+        }
+
+        return ttlNanos;
+    }
+
+    /**
+     * The first slot of the set of the target.
+     */
+    int set(Object target) {
+        int hash = target == null ? 0 : identity ? System.identityHashCode(target) : target.hashCode();
+        return ((hash ^ (hash >>> 16)) & (sets - 1)) * ways;
+    }
+
+    boolean matches(Result result, Object target) {
+        if (identity || result.target == target) {
+            return result.target == target;
+        }
+        return target != null && target.equals(result.target);
+    }
+
+    /**
+     * @return the remembered result, or null when there is none
+     */
+    Boolean get(Object target) {
+        int set = set(target);
+
+        for (int i = set, m = set + ways; i < m; i++) {
+            Result result = slots.get(i);
+
+            if (result != null && matches(result, target)) {
+                if (isExpired(result)) {
+                    break;
+                }
+
+                if (leastRecentlyUsed) {
+                    // Ordered after all results stored so far, before those stored later
+                    long used = clock.get() | 1;
+
+                    if (result.used != used) {
+                        result.used = used;
+                    }
+                }
+
+                statistics.hits.increment();
+                return result.valid;
+            }
+        }
+
+        statistics.misses.increment();
+        return null;
+    }
+
+    boolean isExpired(Result result) {
+        long ttl = result.valid ? ttlNanos : negativeTtlNanos;
+        return ttl > 0 && System.nanoTime() - result.created >= ttl;
+    }
+
+    void put(Object target, boolean valid) {
+        Result result = new Result(target, valid, System.nanoTime(), clock.addAndGet(2));
+        int set = set(target);
+        int victim = -1;
+        long oldest = Long.MAX_VALUE;
+
+        for (int i = set, m = set + ways; i < m; i++) {
+            Result current = slots.get(i);
+
+            if (current == null || matches(current, target)) {
+                victim = i;
+                break;
+            }
+            if (current.used < oldest) {
+                oldest = current.used;
+                victim = i;
+            }
+        }
+
+        // Concurrent stores to the set may replace each other, only losing a cached result
+        slots.set(victim, result);
+    }
+
+    int size() {
+        int size = 0;
+
+        for (int i = 0, m = slots.length(); i < m; i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+
+        return size;
+    }
+
+    long getHits() {
+        return statistics.hits.sum();
+    }
+
+    long getMisses() {
+        return statistics.misses.sum();
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.spi;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A library of EL functions available to the expressions of
+ * {@link io.xlate.validation.constraints.Expression @Expression} and
+ * {@link io.xlate.validation.constraints.JdbcStatement @JdbcStatement}
+ * constraints, referenced in expressions as <code>prefix:name(...)</code>.
+ * Functions are bound once, when a constraint is initialized. Compiled
+ * expressions (see {@link io.xlate.validation.constraints.Expression#compile()})
+ * and the expressions of <code>@JdbcStatement</code> invoke them directly.
+ * Interpreted expressions invoke them through the EL implementation, which
+ * calls the bound {@link java.lang.reflect.Method} reflectively.
+ *
+ * <p>
+ * Libraries listed in
+ * <code>META-INF/services/io.xlate.validation.spi.FunctionLibrary</code> (or
+ * declared using <code>provides ... with ...</code> by a named module) are
+ * available to all constraints. Other libraries are available to the
+ * constraints naming them in their <code>functionLibraries</code>, and must
+ * have a public constructor without parameters.
+ *
+ * @since 1.6
+ */
+public interface FunctionLibrary {
+
+    /**
+     * The prefix of the functions of this library in expressions.
+     *
+     * @return the function prefix
+     */
+    String getPrefix();
+
+    /**
+     * The public static methods implementing the functions of this library,
+     * by function name. By default, the public static methods declared by the
+     * library class itself are used with their own names and such methods may
+     * not be overloaded.
+     *
+     * @return map of function implementations, by name
+     */
+    default Map<String, Method> getFunctions() {
+        Map<String, Method> functions = new HashMap<>();
+
+        for (Method method : getClass().getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+
+            if (Modifier.isPublic(modifiers) && Modifier.isStatic(modifiers)
+                    && functions.put(method.getName(), method) != null) {
+                throw new IllegalStateException("Function `" + method.getName() + "` is overloaded");
+            }
+        }
+
+        return functions;
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.spi;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Information about the constraints of an application prepared at build time
+ * by the validators annotation processor (the <code>processor</code> artifact
+ * of this library). Implementations are generated for each top-level class
+ * with {@link io.xlate.validation.constraints.Expression @Expression} or
+ * {@link io.xlate.validation.constraints.JdbcStatement @JdbcStatement}
+ * constraints and are not intended to be written by hand.
+ *
+ * <p>
+ * Generated implementations are listed in
+ * <code>META-INF/services/io.xlate.validation.spi.PrecompiledExpressions</code>.
+ * When the application is a named module, the generated classes must also be
+ * declared using <code>provides ... with ...</code> in the module descriptor,
+ * and the packages of the constrained types must be opened or exported to
+ * <code>io.xlate.validation</code> (as required for Bean Validation itself).
+ *
+ * @since 1.6
+ */
+public interface PrecompiledExpressions {
+
+    /**
+     * The key identifying an expression within the template (target name,
+     * imports, function libraries, and resolvers) of the constraint declaring
+     * it. The same text declared by constraints with different templates may
+     * not have the same meaning and is identified by a different key. The key
+     * of an expression always ends with the expression itself, preceded by
+     * the key of the empty expression for the template.
+     *
+     * @param expression
+     *            the expression
+     * @param targetName
+     *            the name of the validated object in the expression
+     * @param packageImports
+     *            the packages imported by the constraint
+     * @param classImports
+     *            the classes imported by the constraint
+     * @param staticImports
+     *            the static members imported by the constraint
+     * @param functionLibraries
+     *            the binary names of the constraint's function libraries
+     * @param resolvers
+     *            the names of the resolvers selected by the constraint
+     * @return the key of the expression
+     */
+    static String key(String expression,
+                      String targetName,
+                      String[] packageImports,
+                      String[] classImports,
+                      String[] staticImports,
+                      String[] functionLibraries,
+                      String[] resolvers) {
+        return targetName + Arrays.toString(packageImports) + Arrays.toString(classImports)
+                + Arrays.toString(staticImports) + Arrays.toString(functionLibraries) + Arrays.toString(resolvers)
+                + ':' + expression;
+    }
+
+    /**
+     * The {@linkplain #key keys} of the expressions (e.g.
+     * {@code Expression#value()} or {@code JdbcStatement#parameters()}) that
+     * were parsed successfully at build time and do not need to be verified
+     * by the EL implementation again at runtime.
+     *
+     * @return the set of keys of the verified expressions
+     */
+    Set<String> getVerifiedExpressions();
+
+    /**
+     * Accessors for the bean properties (or record components) of the
+     * constrained types declared in the top-level class for which the
+     * implementation was generated. The accessors invoke the getter methods
+     * directly, avoiding reflection.
+     *
+     * @return map of accessors for each property, by type
+     */
+    Map<Class<?>, Map<String, Function<Object, Object>>> getPropertyAccessors();
+
+    /**
+     * Evaluators generated for the compiled expressions that only read
+     * properties of the target's (declared) type and apply EL operators to
+     * them, by {@linkplain #key key}. The evaluators are used in place of the
+     * expression's compiled form when the type of the target allows it.
+     *
+     * @return the evaluators of each expression, by key
+     */
+    default Map<String, List<Evaluator>> getEvaluators() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * An expression translated to Java code at build time for targets of a
+     * single type.
+     */
+    interface Evaluator {
+
+        /**
+         * @return the type of the targets the evaluator accepts
+         */
+        Class<?> getTargetType();
+
+        /**
+         * Evaluate the expression for the target.
+         *
+         * @param target
+         *            the validated object, an instance of the
+         *            {@link #getTargetType() target type}
+         * @param operations
+         *            the EL operators
+         * @return the value of the expression
+         */
+        Object evaluate(Object target, Operations operations);
+    }
+
+    /**
+     * The EL operators (with the coercion rules of the Jakarta Expression
+     * Language) used by {@link Evaluator}s, provided by the validators at
+     * runtime.
+     */
+    interface Operations {
+
+        boolean coerceToBoolean(Object value);
+
+        boolean equal(Object value0, Object value1);
+
+        boolean lessThan(Object value0, Object value1);
+
+        boolean greaterThan(Object value0, Object value1);
+
+        boolean lessThanOrEqual(Object value0, Object value1);
+
+        boolean greaterThanOrEqual(Object value0, Object value1);
+
+        Number add(Object value0, Object value1);
+
+        Number subtract(Object value0, Object value1);
+
+        Number multiply(Object value0, Object value1);
+
+        Number divide(Object value0, Object value1);
+
+        Number mod(Object value0, Object value1);
+
+        Object negate(Object value);
+
+        boolean isEmpty(Object value);
+
+        Object concat(Object value0, Object value1);
+
+        /**
+         * Obtain the exception to throw when reading a property failed.
+         *
+         * @param cause
+         *            the exception thrown by the property's accessor
+         * @return the exception to throw
+         */
+        RuntimeException propertyFailed(Throwable cause);
+    }
+}
@@ -8,8 +8,13 @@ module io.xlate.validation {
     requires static jakarta.el;
     requires transitive jakarta.validation;
 
+    exports io.xlate.validation;
     exports io.xlate.validation.constraints;
+    exports io.xlate.validation.spi;
 
     opens io.xlate.validation.internal.constraintvalidators;
 
+    uses io.xlate.validation.spi.FunctionLibrary;
+    uses io.xlate.validation.spi.PrecompiledExpressions;
+
 }
@@ -0,0 +1,926 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import io.xlate.validation.internal.constraintvalidators.EvaluatorGenerator;
+import io.xlate.validation.internal.constraintvalidators.EvaluatorGenerator.TypeProperty;
+import io.xlate.validation.spi.PrecompiledExpressions;
+
+/**
+ * Annotation processor verifying {@code @Expression} and
+ * {@code @JdbcStatement} constraints at build time. Expressions that can not
+ * be parsed, imports that can not be resolved and invalid target names are
+ * reported as compilation errors.
+ *
+ * <p>
+ * For each top-level class declaring constraints, an implementation of
+ * {@code io.xlate.validation.spi.PrecompiledExpressions} is generated listing
+ * the verified expressions, providing direct accessors for the properties
+ * of the constrained (public) classes, and evaluating the compiled
+ * expressions that only read properties of the (public) constrained classes
+ * with Java code. The validators use the generated classes at runtime to
+ * avoid re-verifying the expressions, introspecting the classes, and
+ * interpreting the expressions.
+ *
+ * <p>
+ * The annotation processor path must include the validators and the EL
+ * implementation used to verify expressions. When the EL implementation is
+ * not available, only the imports and target names are checked.
+ */
+@SupportedAnnotationTypes({
+    ExpressionProcessor.EXPRESSION,
+    ExpressionProcessor.EXPRESSION_LIST,
+    ExpressionProcessor.JDBC_STATEMENT,
+    ExpressionProcessor.JDBC_STATEMENT_LIST
+})
+public class ExpressionProcessor extends AbstractProcessor {
+
+    static final String EXPRESSION = "io.xlate.validation.constraints.Expression";
+    static final String EXPRESSION_LIST = EXPRESSION + ".List";
+    static final String JDBC_STATEMENT = "io.xlate.validation.constraints.JdbcStatement";
+    static final String JDBC_STATEMENT_LIST = JDBC_STATEMENT + ".List";
+
+    static final String SERVICE = "io.xlate.validation.spi.PrecompiledExpressions";
+    static final String GENERATED_SUFFIX = "_PrecompiledExpressions";
+
+    static final Set<String> RESERVED = Set.of("and", "or", "not", "eq", "ne", "lt", "gt", "le", "ge", "true", "false",
+                                               "null", "instanceof", "empty", "div", "mod");
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+    private Filer filer;
+    private ExpressionVerifier verifier;
+
+    /**
+     * Generated classes for the current round, by top-level class
+     */
+    private final Map<TypeElement, GeneratedClass> pending = new LinkedHashMap<>();
+
+    /**
+     * Names of all classes generated (for the service descriptor)
+     */
+    private final Set<String> generated = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        messager = processingEnv.getMessager();
+        filer = processingEnv.getFiler();
+
+        try {
+            verifier = ExpressionVerifier.create(ExpressionProcessor.class.getClassLoader());
+        } catch (LinkageError | RuntimeException e) {
+            messager.printMessage(Kind.NOTE, "No EL implementation available to the annotation processor, "
+                    + "expressions will be verified at runtime: " + e);
+        }
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceDescriptor();
+            return false;
+        }
+
+        Set<Element> annotated = new LinkedHashSet<>();
+
+        for (TypeElement annotation : annotations) {
+            annotated.addAll(roundEnv.getElementsAnnotatedWith(annotation));
+        }
+
+        for (Element element : annotated) {
+            for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+                process(roundEnv, element, mirror);
+            }
+        }
+
+        pending.values().forEach(this::writeGeneratedClass);
+        pending.clear();
+
+        return false;
+    }
+
+    void process(RoundEnvironment roundEnv, Element element, AnnotationMirror mirror) {
+        switch (getName(mirror)) {
+        case EXPRESSION:
+            processExpression(roundEnv, element, mirror);
+            break;
+        case EXPRESSION_LIST:
+            for (AnnotationValue entry : getArray(getValues(mirror).get("value"))) {
+                processExpression(roundEnv, element, (AnnotationMirror) entry.getValue());
+            }
+            break;
+        case JDBC_STATEMENT:
+            processJdbcStatement(element, mirror);
+            break;
+        case JDBC_STATEMENT_LIST:
+            for (AnnotationValue entry : getArray(getValues(mirror).get("value"))) {
+                processJdbcStatement(element, (AnnotationMirror) entry.getValue());
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    void processExpression(RoundEnvironment roundEnv, Element element, AnnotationMirror mirror) {
+        Map<String, AnnotationValue> values = getValues(mirror);
+        List<String> verified = new ArrayList<>(2);
+        boolean valid = true;
+
+        valid &= verify(element, mirror, values.get("value"), verified);
+        valid &= verify(element, mirror, values.get("when"), verified);
+
+        AnnotationValue targetName = values.get("targetName");
+        String name = (String) targetName.getValue();
+        String[] packageImports = getStrings(values.get("packageImports"));
+        String[] classImports = getStrings(values.get("classImports"));
+        String[] staticImports = getStrings(values.get("staticImports"));
+
+        if (!SourceVersion.isIdentifier(name) || RESERVED.contains(name)) {
+            error(element, mirror, targetName, "Target name `" + name + "` is not a valid EL identifier");
+            valid = false;
+        }
+
+        valid &= verifyImports(element, mirror, values);
+        valid &= verifyPredicate(element, mirror, values);
+        TypeElement targetType = getTargetType(element);
+
+        if (valid && verifier != null) {
+            GeneratedClass generatedClass = getGeneratedClass(topLevel(element));
+            String[] functionLibraries = getBinaryNames(values.get("functionLibraries"));
+            String[] resolvers = getStrings(values.get("resolvers"));
+
+            for (String expression : verified) {
+                generatedClass.verifiedExpressions.add(PrecompiledExpressions.key(expression,
+                                                                                  name,
+                                                                                  packageImports,
+                                                                                  classImports,
+                                                                                  staticImports,
+                                                                                  functionLibraries,
+                                                                                  resolvers));
+            }
+
+            // Evaluators are used by expressions compiled without null-safe navigation or a fixed exceptional value
+            boolean compiled = (Boolean) values.get("compile").getValue() && !(Boolean) values.get("shared").getValue();
+            TypeElement predicateType = getTypeElement(values.get("predicate"));
+            boolean predicate = predicateType == null
+                    || !predicateType.getQualifiedName().contentEquals("java.util.function.Predicate");
+            boolean navigation = predicate
+                    || ("UNSET".equals(getString(values.get("nullValue")))
+                            && "UNSET".equals(getString(values.get("exceptionalValue"))));
+
+            if (compiled && isAccessible(targetType)) {
+                String key = PrecompiledExpressions.key("", name, packageImports, classImports, staticImports,
+                                                        functionLibraries, resolvers);
+
+                if (navigation) {
+                    generatedClass.addEvaluator(key, (String) values.get("value").getValue(), name, targetType);
+                }
+
+                generatedClass.addEvaluator(key, (String) values.get("when").getValue(), name, targetType);
+            }
+        }
+
+
+        if (targetType != null && isPublic(targetType) && roundEnv.getRootElements().contains(topLevel(targetType))) {
+            getGeneratedClass(topLevel(targetType)).addAccessors(elements, targetType);
+        }
+    }
+
+    void processJdbcStatement(Element element, AnnotationMirror mirror) {
+        Map<String, AnnotationValue> values = getValues(mirror);
+        List<String> verified = new ArrayList<>();
+        boolean valid = true;
+
+        valid &= verify(element, mirror, values.get("when"), verified);
+
+        AnnotationValue parametersValue = values.get("parameters");
+        List<? extends AnnotationValue> parameters = getArray(parametersValue);
+
+        for (AnnotationValue parameter : parameters) {
+            valid &= verify(element, mirror, parameter, verified);
+        }
+
+        AnnotationValue statement = values.get("value");
+        int markers = countParameterMarkers((String) statement.getValue());
+
+        if (markers != parameters.size()) {
+            messager.printMessage(Kind.WARNING,
+                                  "Statement has " + markers + " parameter marker(s) but " + parameters.size()
+                                          + " parameter(s) are given",
+                                  element, mirror, statement);
+        }
+
+        if (valid && verifier != null) {
+            // Parameters and conditions are compiled in the template of the validator
+            GeneratedClass generatedClass = getGeneratedClass(topLevel(element));
+            TypeElement targetType = getTargetType(element);
+            String[] none = {};
+            String key = PrecompiledExpressions.key("", "self", none, none, none,
+                                                    getBinaryNames(values.get("functionLibraries")),
+                                                    getStrings(values.get("resolvers")));
+
+            for (String expression : verified) {
+                generatedClass.verifiedExpressions.add(key + expression);
+
+                if (isAccessible(targetType)) {
+                    generatedClass.addEvaluator(key, expression, "self", targetType);
+                }
+            }
+        }
+    }
+
+    boolean verify(Element element, AnnotationMirror mirror, AnnotationValue value, List<String> verified) {
+        String expression = (String) value.getValue();
+
+        if (expression.isEmpty() || verifier == null) {
+            return true;
+        }
+
+        String error = verifier.verify(expression);
+
+        if (error != null) {
+            error(element, mirror, value, "Expression `" + expression + "` could not be parsed: " + error);
+            return false;
+        }
+
+        verified.add(expression);
+        return true;
+    }
+
+    boolean verifyImports(Element element, AnnotationMirror mirror, Map<String, AnnotationValue> values) {
+        boolean valid = true;
+
+        AnnotationValue classImports = values.get("classImports");
+
+        for (AnnotationValue entry : getArray(classImports)) {
+            String name = (String) entry.getValue();
+
+            if (getTypeElement(name) == null) {
+                error(element, mirror, classImports, "Class import `" + name + "` could not be resolved");
+                valid = false;
+            }
+        }
+
+        AnnotationValue staticImports = values.get("staticImports");
+
+        for (AnnotationValue entry : getArray(staticImports)) {
+            String name = (String) entry.getValue();
+            int separator = name.lastIndexOf('.');
+            TypeElement type = separator > 0 ? getTypeElement(name.substring(0, separator)) : null;
+
+            if (type == null || !hasStaticMember(type, name.substring(separator + 1))) {
+                error(element, mirror, staticImports, "Static import `" + name + "` could not be resolved");
+                valid = false;
+            }
+        }
+
+        AnnotationValue packageImports = values.get("packageImports");
+
+        for (AnnotationValue entry : getArray(packageImports)) {
+            String name = (String) entry.getValue();
+            PackageElement packageElement = elements.getPackageElement(name);
+
+            if (packageElement == null) {
+                messager.printMessage(Kind.WARNING, "Package import `" + name + "` could not be resolved",
+                                      element, mirror, packageImports);
+            }
+        }
+
+        return valid;
+    }
+
+    boolean verifyPredicate(Element element, AnnotationMirror mirror, Map<String, AnnotationValue> values) {
+        AnnotationValue predicate = values.get("predicate");
+        TypeElement type = getTypeElement(predicate);
+
+        if (type == null || type.getQualifiedName().contentEquals("java.util.function.Predicate")) {
+            // Default, or not resolved (reported by the compiler)
+            return true;
+        }
+
+        boolean instantiable = type.getKind() == ElementKind.CLASS
+                && type.getModifiers().contains(Modifier.PUBLIC)
+                && !type.getModifiers().contains(Modifier.ABSTRACT)
+                && ElementFilter.constructorsIn(type.getEnclosedElements())
+                                .stream()
+                                .anyMatch(c -> c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC));
+
+        if (!instantiable) {
+            error(element, mirror, predicate, "Predicate " + type.getQualifiedName()
+                    + " must be a public class with a public constructor without parameters");
+            return false;
+        }
+
+        return true;
+    }
+
+    boolean hasStaticMember(TypeElement type, String name) {
+        return elements.getAllMembers(type)
+                .stream()
+                .filter(member -> member.getKind() == ElementKind.FIELD || member.getKind() == ElementKind.METHOD)
+                .filter(member -> member.getModifiers().contains(Modifier.STATIC))
+                .anyMatch(member -> member.getSimpleName().contentEquals(name));
+    }
+
+    TypeElement getTypeElement(String binaryName) {
+        TypeElement type = elements.getTypeElement(binaryName.replace('$', '.'));
+        return type != null ? type : elements.getTypeElement(binaryName);
+    }
+
+    /**
+     * Find the class of the object validated by a constraint placed on the
+     * given element, if it can be determined.
+     */
+    static TypeElement getTargetType(Element element) {
+        TypeMirror type;
+
+        switch (element.getKind()) {
+        case CLASS:
+        case ENUM:
+            return (TypeElement) element;
+        case FIELD:
+        case PARAMETER:
+            type = element.asType();
+            break;
+        case METHOD:
+            ExecutableElement method = (ExecutableElement) element;
+            if (!method.getParameters().isEmpty()) {
+                // Possibly a cross-parameter constraint
+                return null;
+            }
+            type = method.getReturnType();
+            break;
+        default:
+            if ("RECORD".equals(element.getKind().name())) {
+                return (TypeElement) element;
+            }
+            return null;
+        }
+
+        if (type.getKind() == TypeKind.DECLARED) {
+            TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+            ElementKind kind = typeElement.getKind();
+
+            if (kind == ElementKind.CLASS || kind == ElementKind.ENUM || "RECORD".equals(kind.name())) {
+                return typeElement;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether the type (and all types enclosing it) is public and may be
+     * accessed by the EL resolvers.
+     */
+    static boolean isPublic(TypeElement type) {
+        Element current = type;
+
+        while (current instanceof TypeElement) {
+            if (!current.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+            current = current.getEnclosingElement();
+        }
+
+        return !type.getModifiers().contains(Modifier.ABSTRACT);
+    }
+
+    static TypeElement topLevel(Element element) {
+        Element current = element;
+        TypeElement type = null;
+
+        while (current != null && !(current instanceof PackageElement)) {
+            if (current instanceof TypeElement) {
+                type = (TypeElement) current;
+            }
+            current = current.getEnclosingElement();
+        }
+
+        return type;
+    }
+
+    /**
+     * Count the `?` parameter markers in the statement, ignoring those within
+     * quoted literals, quoted identifiers, and comments.
+     */
+    static int countParameterMarkers(String statement) {
+        int count = 0;
+        int length = statement.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = statement.charAt(i);
+
+            if (c == '\'' || c == '"') {
+                int end = statement.indexOf(c, i + 1);
+                i = end < 0 ? length : end;
+            } else if (c == '-' && statement.startsWith("--", i)) {
+                int end = statement.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && statement.startsWith("/*", i)) {
+                int end = statement.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '?') {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    GeneratedClass getGeneratedClass(TypeElement topLevel) {
+        return pending.computeIfAbsent(topLevel, type -> new GeneratedClass(type, new EvaluatorGenerator(this::getProperty)));
+    }
+
+    /**
+     * Whether the type (and all types enclosing it) is public, i.e. it may be
+     * referenced by the generated classes.
+     */
+    static boolean isAccessible(TypeElement type) {
+        Element current = type;
+
+        while (current instanceof TypeElement) {
+            if (!current.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+            current = current.getEnclosingElement();
+        }
+
+        return type != null;
+    }
+
+    /**
+     * Find the property of the type read by the validators' property accessors
+     * for the {@link EvaluatorGenerator}. Properties of maps, lists, and
+     * resource bundles are resolved by the EL resolvers and are not found.
+     */
+    TypeProperty getProperty(String typeName, String name) {
+        TypeElement type = elements.getTypeElement(typeName);
+
+        if (type == null || !isAccessible(type) || isResolvedByEL(type)) {
+            return null;
+        }
+
+        Element member = findProperties(elements, type).get(name);
+
+        if (member == null) {
+            return null;
+        }
+
+        if (member instanceof ExecutableElement) {
+            String returnType = getSourceName(((ExecutableElement) member).getReturnType());
+            return returnType != null ? new TypeProperty(member.getSimpleName() + "()", returnType) : null;
+        }
+
+        String fieldType = getSourceName(member.asType());
+        return fieldType != null ? new TypeProperty(member.getSimpleName().toString(), fieldType) : null;
+    }
+
+    boolean isResolvedByEL(TypeElement type) {
+        TypeMirror erased = types.erasure(type.asType());
+
+        for (String name : List.of("java.util.Map", "java.util.List", "java.util.ResourceBundle")) {
+            TypeElement resolved = elements.getTypeElement(name);
+
+            if (resolved != null && types.isAssignable(erased, types.erasure(resolved.asType()))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The name of the (erased) type for use in generated source, or null when
+     * the type may not be referenced by the generated classes.
+     */
+    String getSourceName(TypeMirror type) {
+        TypeKind kind = type.getKind();
+
+        if (kind.isPrimitive()) {
+            return type.toString();
+        }
+
+        switch (kind) {
+        case ARRAY:
+            String component = getSourceName(((ArrayType) type).getComponentType());
+            return component != null ? component + "[]" : null;
+        case TYPEVAR:
+        case INTERSECTION:
+            return getSourceName(types.erasure(type));
+        case DECLARED:
+            TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            return isAccessible(element) ? element.getQualifiedName().toString() : null;
+        default:
+            return null;
+        }
+    }
+
+    static String getString(AnnotationValue value) {
+        return String.valueOf(value.getValue());
+    }
+
+    static String[] getStrings(AnnotationValue value) {
+        return getArray(value).stream().map(ExpressionProcessor::getString).toArray(String[]::new);
+    }
+
+    String[] getBinaryNames(AnnotationValue value) {
+        return getArray(value).stream()
+                .map(ExpressionProcessor::getTypeElement)
+                .map(type -> type != null ? elements.getBinaryName(type).toString() : null)
+                .toArray(String[]::new);
+    }
+
+    /**
+     * @return the class given by the annotation value, or null when the class
+     *         could not be resolved
+     */
+    static TypeElement getTypeElement(AnnotationValue value) {
+        Object type = value.getValue();
+        return type instanceof DeclaredType ? (TypeElement) ((DeclaredType) type).asElement() : null;
+    }
+
+    /**
+     * The bean properties (or record components) of the type, as seen by the
+     * EL BeanELResolver and RecordELResolver, read by the method or field
+     * given for each property. Methods declaring exceptions are left to the
+     * resolvers.
+     */
+    static Map<String, Element> findProperties(Elements elements, TypeElement type) {
+        Map<String, Element> properties = new TreeMap<>();
+        boolean record = "RECORD".equals(type.getKind().name());
+        // Only the components of a record are properties (not e.g. `hashCode` or `toString`)
+        Set<String> components = type.getEnclosedElements()
+                .stream()
+                .filter(member -> "RECORD_COMPONENT".equals(member.getKind().name()))
+                .map(member -> member.getSimpleName().toString())
+                .collect(Collectors.toSet());
+
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            Set<Modifier> modifiers = method.getModifiers();
+
+            if (!modifiers.contains(Modifier.PUBLIC)
+                    || modifiers.contains(Modifier.STATIC)
+                    || !method.getParameters().isEmpty()
+                    || !method.getThrownTypes().isEmpty()
+                    || method.isDefault()
+                    || method.getReturnType().getKind() == TypeKind.VOID) {
+                continue;
+            }
+
+            String name = method.getSimpleName().toString();
+
+            if (record) {
+                if (components.contains(name)) {
+                    properties.put(name, method);
+                }
+            } else if (name.startsWith("is") && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+                putProperty(properties, name.substring(2), method, true);
+            } else if (name.startsWith("get")) {
+                putProperty(properties, name.substring(3), method, false);
+            }
+        }
+
+        if (!record) {
+            // Public fields, used when there is no accessor method of the same name
+            for (VariableElement field : ElementFilter.fieldsIn(elements.getAllMembers(type))) {
+                if (field.getModifiers().contains(Modifier.PUBLIC) && !field.getModifiers().contains(Modifier.STATIC)) {
+                    properties.putIfAbsent(field.getSimpleName().toString(), field);
+                }
+            }
+        }
+
+        return properties;
+    }
+
+    static void putProperty(Map<String, Element> properties, String suffix, Element method, boolean preferred) {
+        if (suffix.isEmpty() || !Character.isUpperCase(suffix.charAt(0))) {
+            return;
+        }
+
+        String propertyName;
+
+        if (suffix.length() > 1 && Character.isUpperCase(suffix.charAt(1))) {
+            propertyName = suffix;
+        } else {
+            propertyName = Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+        }
+
+        if (preferred) {
+            properties.put(propertyName, method);
+        } else {
+            properties.putIfAbsent(propertyName, method);
+        }
+    }
+
+    void writeGeneratedClass(GeneratedClass generatedClass) {
+        String name = generatedClass.getName(elements);
+
+        if (!generated.add(name)) {
+            // Already written in a previous round
+            return;
+        }
+
+        try (Writer writer = filer.createSourceFile(name, generatedClass.topLevel).openWriter()) {
+            generatedClass.write(elements, writer);
+        } catch (IOException e) {
+            messager.printMessage(Kind.ERROR, "Unable to write " + name + ": " + e, generatedClass.topLevel);
+        }
+    }
+
+    void writeServiceDescriptor() {
+        if (generated.isEmpty()) {
+            return;
+        }
+
+        try {
+            FileObject resource = filer.createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + SERVICE);
+
+            try (Writer writer = resource.openWriter()) {
+                for (String name : generated) {
+                    writer.write(name);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            messager.printMessage(Kind.ERROR, "Unable to write service descriptor for " + SERVICE + ": " + e);
+        }
+    }
+
+    void error(Element element, AnnotationMirror mirror, AnnotationValue value, String message) {
+        messager.printMessage(Kind.ERROR, message, element, mirror, value);
+    }
+
+    static String getName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    Map<String, AnnotationValue> getValues(AnnotationMirror mirror) {
+        Map<String, AnnotationValue> values = new TreeMap<>();
+        elements.getElementValuesWithDefaults(mirror)
+                .forEach((key, value) -> values.put(key.getSimpleName().toString(), value));
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<? extends AnnotationValue> getArray(AnnotationValue value) {
+        Object array = value.getValue();
+
+        if (array instanceof List) {
+            return (List<? extends AnnotationValue>) array;
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Source of a generated implementation of
+     * {@code io.xlate.validation.spi.PrecompiledExpressions}.
+     */
+    static class GeneratedClass {
+        final TypeElement topLevel;
+        final EvaluatorGenerator generator;
+        final Set<String> verifiedExpressions = new TreeSet<>();
+        final Map<TypeElement, Map<String, String>> accessors = new LinkedHashMap<>();
+        final Map<String, Map<String, String>> evaluators = new TreeMap<>();
+
+        GeneratedClass(TypeElement topLevel, EvaluatorGenerator generator) {
+            this.topLevel = topLevel;
+            this.generator = generator;
+        }
+
+        String getName(Elements elements) {
+            PackageElement packageElement = elements.getPackageOf(topLevel);
+            String simpleName = topLevel.getSimpleName() + GENERATED_SUFFIX;
+
+            if (packageElement.isUnnamed()) {
+                return simpleName;
+            }
+
+            return packageElement.getQualifiedName() + "." + simpleName;
+        }
+
+        void addAccessors(Elements elements, TypeElement type) {
+            if (accessors.containsKey(type)) {
+                return;
+            }
+
+            Map<String, String> properties = new TreeMap<>();
+
+            findProperties(elements, type).forEach((name, member) -> {
+                String accessor = member.getSimpleName().toString();
+                properties.put(name, member instanceof ExecutableElement ? accessor + "()" : accessor);
+            });
+
+            accessors.put(type, properties);
+        }
+
+        /**
+         * Generate the evaluator of the expression for targets of the type,
+         * when the expression can be translated to Java.
+         *
+         * @param key
+         *            the key of the empty expression in the template of the
+         *            constraint
+         */
+        void addEvaluator(String key, String expression, String targetName, TypeElement targetType) {
+            if (expression.isEmpty()) {
+                return;
+            }
+
+            String typeName = targetType.getQualifiedName().toString();
+            Map<String, String> methods = evaluators.computeIfAbsent(key + expression, k -> new LinkedHashMap<>());
+
+            if (!methods.containsKey(typeName)) {
+                String method = generator.generate(expression, targetName, typeName);
+
+                if (method != null) {
+                    methods.put(typeName, method);
+                }
+            }
+        }
+
+        void write(Elements elements, Writer writer) throws IOException {
+            PackageElement packageElement = elements.getPackageOf(topLevel);
+            StringBuilder source = new StringBuilder();
+
+            if (!packageElement.isUnnamed()) {
+                source.append("package ").append(packageElement.getQualifiedName()).append(";\n\n");
+            }
+
+            source.append("import java.util.HashMap;\n");
+            source.append("import java.util.List;\n");
+            source.append("import java.util.Map;\n");
+            source.append("import java.util.Set;\n");
+            source.append("import java.util.function.BiFunction;\n");
+            source.append("import java.util.function.Function;\n\n");
+            source.append("/**\n");
+            source.append(" * Generated by ").append(ExpressionProcessor.class.getName()).append(" for {@link ")
+                  .append(topLevel.getQualifiedName()).append("}. Do not edit.\n");
+            source.append(" */\n");
+            source.append("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })\n");
+            source.append("public final class ").append(topLevel.getSimpleName()).append(GENERATED_SUFFIX)
+                  .append(" implements ").append(SERVICE).append(" {\n\n");
+
+            source.append("    @Override\n");
+            source.append("    public Set<String> getVerifiedExpressions() {\n");
+            source.append("        return Set.of(");
+
+            String separator = "";
+
+            for (String expression : verifiedExpressions) {
+                source.append(separator).append("\n            ").append(elements.getConstantExpression(expression));
+                separator = ",";
+            }
+
+            source.append(");\n");
+            source.append("    }\n\n");
+
+            source.append("    @Override\n");
+            source.append("    public Map<Class<?>, Map<String, Function<Object, Object>>> getPropertyAccessors() {\n");
+            source.append("        Map<Class<?>, Map<String, Function<Object, Object>>> accessors = new HashMap<>();\n");
+
+            for (Map.Entry<TypeElement, Map<String, String>> type : accessors.entrySet()) {
+                String typeName = type.getKey().getQualifiedName().toString();
+                source.append("\n        Map<String, Function<Object, Object>> ")
+                      .append(variableName(type.getKey())).append(" = new HashMap<>();\n");
+
+                for (Map.Entry<String, String> property : type.getValue().entrySet()) {
+                    source.append("        ").append(variableName(type.getKey())).append(".put(")
+                          .append(elements.getConstantExpression(property.getKey()))
+                          .append(", bean -> ((").append(typeName).append(") bean).")
+                          .append(property.getValue()).append(");\n");
+                }
+
+                source.append("        accessors.put(").append(typeName).append(".class, ")
+                      .append(variableName(type.getKey())).append(");\n");
+            }
+
+            source.append("\n        return accessors;\n");
+            source.append("    }\n");
+
+            writeEvaluators(elements, source);
+
+            source.append("}\n");
+
+            writer.write(source.toString());
+        }
+
+        void writeEvaluators(Elements elements, StringBuilder source) {
+            evaluators.values().removeIf(Map::isEmpty);
+
+            if (evaluators.isEmpty()) {
+                return;
+            }
+
+            String evaluator = SERVICE + ".Evaluator";
+            String operations = SERVICE + ".Operations";
+
+            source.append("\n    @Override\n");
+            source.append("    public Map<String, List<").append(evaluator).append(">> getEvaluators() {\n");
+            source.append("        Map<String, List<").append(evaluator).append(">> evaluators = new HashMap<>();\n");
+
+            for (Map.Entry<String, Map<String, String>> entry : evaluators.entrySet()) {
+                source.append("        evaluators.put(").append(elements.getConstantExpression(entry.getKey()))
+                      .append(", List.of(");
+
+                String separator = "";
+
+                for (Map.Entry<String, String> method : entry.getValue().entrySet()) {
+                    source.append(separator).append("\n            evaluator(").append(method.getKey())
+                          .append(".class, ").append(topLevel.getSimpleName()).append(GENERATED_SUFFIX).append("::")
+                          .append(method.getValue()).append(')');
+                    separator = ",";
+                }
+
+                source.append("));\n");
+            }
+
+            source.append("        return evaluators;\n");
+            source.append("    }\n\n");
+
+            source.append("    private static <T> ").append(evaluator).append(" evaluator(Class<T> type, BiFunction<T, ")
+                  .append(operations).append(", Object> function) {\n");
+            source.append("        return new ").append(evaluator).append("() {\n");
+            source.append("            @Override\n");
+            source.append("            public Class<?> getTargetType() {\n");
+            source.append("                return type;\n");
+            source.append("            }\n\n");
+            source.append("            @Override\n");
+            source.append("            public Object evaluate(Object target, ").append(operations).append(" operations) {\n");
+            source.append("                return function.apply(type.cast(target), operations);\n");
+            source.append("            }\n");
+            source.append("        };\n");
+            source.append("    }\n\n");
+            source.append(generator.getMethods().stripTrailing()).append('\n');
+        }
+
+        String variableName(TypeElement type) {
+            return "accessors" + new ArrayList<>(accessors.keySet()).indexOf(type);
+        }
+    }
+}
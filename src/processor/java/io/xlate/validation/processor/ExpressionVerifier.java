@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.processor;
+
+import java.lang.reflect.Method;
+
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.ExpressionFactory;
+import jakarta.el.FunctionMapper;
+import jakarta.el.StandardELContext;
+
+/**
+ * Parses expressions using the EL implementation available to the annotation
+ * processor, exactly as they will be parsed at runtime.
+ */
+final class ExpressionVerifier {
+
+    private final ExpressionFactory factory;
+    private final ELContext context;
+
+    private ExpressionVerifier(ExpressionFactory factory) {
+        this.factory = factory;
+        this.context = new StandardELContext(factory) {
+            @Override
+            public FunctionMapper getFunctionMapper() {
+                return LibraryFunctions.INSTANCE;
+            }
+        };
+    }
+
+    /**
+     * Accepts every prefixed function. Function libraries are loaded at
+     * runtime and are generally not available to the annotation processor, so
+     * calls are only checked for syntax here.
+     */
+    static final class LibraryFunctions extends FunctionMapper {
+        static final LibraryFunctions INSTANCE = new LibraryFunctions();
+        static final Method ANY;
+
+        static {
+            try {
+                ANY = LibraryFunctions.class.getDeclaredMethod("any", Object[].class);
+            } catch (NoSuchMethodException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        @SuppressWarnings("unused")
+        private static Object any(Object... arguments) {
+            return null;
+        }
+
+        @Override
+        public Method resolveFunction(String prefix, String localName) {
+            return prefix.isEmpty() ? null : ANY;
+        }
+    }
+
+    /**
+     * Create a verifier using the EL implementation visible to the given class
+     * loader (i.e. the annotation processor path).
+     *
+     * @throws ELException
+     *             when no EL implementation is available
+     */
+    static ExpressionVerifier create(ClassLoader loader) {
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+
+        try {
+            thread.setContextClassLoader(loader);
+            return new ExpressionVerifier(ExpressionFactory.newInstance());
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    /**
+     * @return null when the expression is valid, otherwise a description of
+     *         the error
+     */
+    String verify(String expression) {
+        try {
+            factory.createValueExpression(context, "${" + expression + '}', Object.class);
+            return null;
+        } catch (ELException e) {
+            return e.getMessage();
+        }
+    }
+}
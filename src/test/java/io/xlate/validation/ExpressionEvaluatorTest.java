@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import jakarta.validation.ConstraintDeclarationException;
+import jakarta.validation.ValidationException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.xlate.validation.constraints.EvaluationBudget;
+import io.xlate.validation.constraints.Expression;
+import io.xlate.validation.constraints.Expression.ExceptionalValue;
+import io.xlate.validation.spi.FunctionLibrary;
+
+class ExpressionEvaluatorTest {
+
+    @Expression(value = "self.length() gt 2", when = "self ne 'skip'", nullValue = ExceptionalValue.FALSE)
+    static class Annotated {
+    }
+
+    @Test
+    void testDefaultsApply() {
+        ExpressionEvaluator target = ExpressionEvaluator.of("self.size() eq 2");
+        Assertions.assertTrue(target.test(List.of(1, 2)));
+        Assertions.assertFalse(target.test(List.of(1)));
+        Assertions.assertEquals("self.size() eq 2", target.getConstraint().value());
+        Assertions.assertEquals("self", target.getConstraint().targetName());
+        Assertions.assertFalse(target.getConstraint().compile());
+        Assertions.assertEquals(Expression.class, target.getConstraint().annotationType());
+    }
+
+    @Test
+    void testBuilderOptions() {
+        ExpressionEvaluator target = ExpressionEvaluator.builder("LocalDate.of(2020, 1, 1).isBefore(date.start) and str:digits(date.code)")
+                                                        .targetName("date")
+                                                        .classImports(LocalDate.class.getName())
+                                                        .nullValue(ExceptionalValue.TRUE)
+                                                        .exceptionalValue(ExceptionalValue.FALSE)
+                                                        .compile(false)
+                                                        .build();
+
+        Assertions.assertTrue(target.test(Map.of("start", LocalDate.of(2021, 1, 1), "code", "123")));
+        Assertions.assertFalse(target.test(Map.of("start", LocalDate.of(2019, 1, 1), "code", "123")));
+        Assertions.assertFalse(target.test(Map.of("start", LocalDate.of(2021, 1, 1), "code", "12a")));
+        // Missing code is exceptional
+        Assertions.assertFalse(target.test(Map.of("start", LocalDate.of(2021, 1, 1))));
+        Assertions.assertTrue(target.test(null));
+        Assertions.assertFalse(target.getConstraint().compile());
+    }
+
+    public static class Library implements FunctionLibrary {
+        @Override
+        public String getPrefix() {
+            return "lib";
+        }
+
+        public static boolean positive(int value) {
+            return value > 0;
+        }
+    }
+
+    @Test
+    void testConstraintArraysCopied() {
+        String[] imports = { LocalDate.class.getName() };
+        ExpressionEvaluator target = ExpressionEvaluator.builder("LocalDate.MIN ne null and lib:positive(1)")
+                                                        .classImports(imports)
+                                                        .functionLibraries(Library.class)
+                                                        .build();
+        imports[0] = "changed";
+
+        Expression constraint = target.getConstraint();
+        constraint.classImports()[0] = "changed";
+        constraint.functionLibraries()[0] = null;
+
+        Assertions.assertArrayEquals(new String[] { LocalDate.class.getName() }, constraint.classImports());
+        Assertions.assertArrayEquals(new Object[] { Library.class }, constraint.functionLibraries());
+        Assertions.assertTrue(target.test(null));
+    }
+
+    @Test
+    void testConstraintEqualsAnnotation() {
+        Expression annotation = Annotated.class.getAnnotation(Expression.class);
+        Expression constraint = ExpressionEvaluator.builder("self.length() gt 2")
+                                                   .when("self ne 'skip'")
+                                                   .nullValue(ExceptionalValue.FALSE)
+                                                   .build()
+                                                   .getConstraint();
+        Expression other = ExpressionEvaluator.of("self.length() gt 2").getConstraint();
+
+        Assertions.assertEquals(annotation, constraint);
+        Assertions.assertEquals(constraint, annotation);
+        Assertions.assertEquals(annotation.hashCode(), constraint.hashCode());
+        Assertions.assertNotEquals(constraint, other);
+        Assertions.assertNotEquals(other, annotation);
+    }
+
+    @Test
+    void testExceptionWithoutExceptionalValue() {
+        ExpressionEvaluator target = ExpressionEvaluator.of("self.missing eq 1");
+        Object value = new Object();
+        Assertions.assertThrows(ValidationException.class, () -> target.test(value));
+    }
+
+    @Test
+    void testInvalidExpression() {
+        Assertions.assertThrows(ConstraintDeclarationException.class, () -> ExpressionEvaluator.of("self.(("));
+    }
+
+    @Test
+    void testAnnotatedConstraint() {
+        ExpressionEvaluator target = ExpressionEvaluator.of(Annotated.class.getAnnotation(Expression.class));
+        Assertions.assertTrue(target.test("abc"));
+        Assertions.assertFalse(target.test("ab"));
+        Assertions.assertTrue(target.test("skip"));
+        Assertions.assertFalse(target.test(null));
+    }
+
+    @Expression(value = "self.stream().anyMatch(x -> x lt 0)",
+                exceptionalValue = ExceptionalValue.TRUE,
+                budget = @EvaluationBudget(maxSteps = 20))
+    static class Budgeted {
+    }
+
+    @Test
+    void testBudgetExceededCounted() {
+        Expression constraint = Budgeted.class.getAnnotation(Expression.class);
+        ExpressionEvaluator target = ExpressionEvaluator.of(constraint);
+        EvaluationMetrics.resetBudgetExceededCounts();
+
+        Assertions.assertFalse(target.test(List.of(1, 2, 3)));
+        Assertions.assertTrue(target.test(IntStream.range(0, 100).boxed().collect(Collectors.toList())));
+        Assertions.assertEquals(1, EvaluationMetrics.getBudgetExceededCount(constraint.value()));
+        Assertions.assertEquals(0, EvaluationMetrics.getBudgetExceededCount("self.unknown"));
+    }
+
+    @Test
+    void testConcurrentEvaluation() {
+        ExpressionEvaluator target = ExpressionEvaluator.of("self % 3 eq 0");
+        List<Integer> matched = IntStream.range(0, 3000)
+                                         .boxed()
+                                         .parallel()
+                                         .filter(target)
+                                         .collect(Collectors.toList());
+        Assertions.assertEquals(1000, matched.size());
+    }
+}
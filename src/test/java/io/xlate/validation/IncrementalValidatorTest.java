@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.xlate.validation.constraints.Expression;
+
+class IncrementalValidatorTest {
+
+    interface Strict {
+    }
+
+    public static class LongName implements Predicate<Form> {
+        @Override
+        public boolean test(Form form) {
+            return form.name == null || form.name.length() < 10;
+        }
+    }
+
+    @Expression(value = "self.start le self.end", message = "start after end")
+    @Expression(value = "self.name ne null and self.name.length() gt 2", message = "name too short", compile = true)
+    @Expression(value = "self.name ne null", when = "self.start gt 100", message = "name required")
+    @Expression(value = "self", predicate = LongName.class, message = "name too long")
+    @Expression(value = "self.end lt 1000", message = "end too late", groups = Strict.class)
+    public static class Form {
+        @Expression(value = "self ne null", message = "code required")
+        String code;
+        String name;
+        int start;
+        int end;
+
+        public String getName() {
+            return name;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        @Expression(value = "self ge 0", message = "length negative")
+        public int getLength() {
+            return end - start;
+        }
+    }
+
+    static List<String> messages(List<IncrementalValidator.Violation> violations) {
+        return violations.stream().map(IncrementalValidator.Violation::getMessage).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    void testOnlyAffectedRulesEvaluated() {
+        Form form = new Form();
+        form.code = "A";
+        form.name = "Alice";
+        form.start = 1;
+        form.end = 2;
+
+        IncrementalValidator<Form> validator = IncrementalValidator.of(form);
+        Assertions.assertEquals(List.of(), validator.validate());
+        Assertions.assertEquals(6, validator.getEvaluatedCount());
+
+        form.start = 3;
+        Assertions.assertEquals(List.of("length negative", "start after end"),
+                                messages(validator.validate(Set.of("start", "length"))));
+        // start rules (2), length, and the predicate (unknown dependencies)
+        Assertions.assertEquals(4, validator.getEvaluatedCount());
+
+        form.name = "Al";
+        List<IncrementalValidator.Violation> violations = validator.validate(Set.of("name"));
+        Assertions.assertEquals(List.of("length negative", "name too short", "start after end"), messages(violations));
+        Assertions.assertEquals(3, validator.getEvaluatedCount());
+
+        form.code = null;
+        violations = validator.validate(Set.of("code"));
+        Assertions.assertEquals(2, validator.getEvaluatedCount());
+        Assertions.assertTrue(violations.stream().anyMatch(v -> "code".equals(v.getProperty())
+                && "code required".equals(v.getMessage())));
+
+        // Unreported changes are not detected until a full validation
+        form.end = 10;
+        Assertions.assertEquals(4, validator.validate(Set.of()).size());
+        Assertions.assertEquals(1, validator.getEvaluatedCount());
+        Assertions.assertEquals(List.of("code required", "name too short"), messages(validator.validate()));
+    }
+
+    @Test
+    void testGroupsSelected() {
+        Form form = new Form();
+        form.code = "A";
+        form.name = "Alice";
+        form.end = 1000;
+
+        IncrementalValidator<Form> validator = IncrementalValidator.of(form, Strict.class);
+        Assertions.assertSame(form, validator.getBean());
+        Assertions.assertEquals(List.of("end too late"), messages(validator.validate()));
+        Assertions.assertEquals(1, validator.getEvaluatedCount());
+        Assertions.assertEquals(List.of(), IncrementalValidator.of(form).validate());
+    }
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import jakarta.validation.ConstraintDeclarationException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.xlate.validation.constraints.BatchQuery;
+import io.xlate.validation.constraints.JdbcStatement;
+
+class JdbcBatchValidatorTest {
+
+    private static final String DATASOURCE = "java:comp/env/jdbc/batchDataSource";
+
+    interface Strict {
+    }
+
+    @JdbcStatement(
+            value = "SELECT 1 FROM ORDER_LINE WHERE ORDER_ID = ? AND LINE = ?",
+            dataSourceLookup = DATASOURCE,
+            parameters = { "self.orderId", "self.line" },
+            batch = @BatchQuery(value = "SELECT ORDER_ID, LINE FROM ORDER_LINE WHERE (ORDER_ID, LINE) IN ({keys})", size = 2),
+            message = "unknown line")
+    public static class Line {
+        @JdbcStatement(
+                value = "SELECT 1 FROM CURRENCY WHERE CODE = ?",
+                dataSourceLookup = DATASOURCE,
+                parameters = { "self" },
+                batch = @BatchQuery(value = "SELECT CODE FROM CURRENCY WHERE CODE IN ({keys})", size = 2),
+                message = "unknown currency")
+        String currency;
+
+        @JdbcStatement(
+                value = "SELECT 1 FROM CURRENCY WHERE CODE = ?",
+                dataSourceLookup = DATASOURCE,
+                parameters = { "self" },
+                when = "self ne null",
+                message = "unknown fallback")
+        String fallback;
+
+        @JdbcStatement(
+                value = "SELECT 1 FROM CURRENCY WHERE CODE = 'none'",
+                dataSourceLookup = DATASOURCE,
+                groups = Strict.class,
+                message = "strict")
+        String strict;
+
+        long orderId;
+        int line;
+
+        Line(String currency, String fallback, long orderId, int line) {
+            this.currency = currency;
+            this.fallback = fallback;
+            this.orderId = orderId;
+            this.line = line;
+        }
+
+        public long getOrderId() {
+            return orderId;
+        }
+
+        public int getLine() {
+            return line;
+        }
+    }
+
+    public static class InvalidBatch {
+        @JdbcStatement(
+                value = "SELECT 1 FROM CURRENCY WHERE CODE = ?",
+                dataSourceLookup = DATASOURCE,
+                parameters = { "self" },
+                batch = @BatchQuery("SELECT CODE FROM CURRENCY"))
+        String currency;
+    }
+
+    public static class InvalidBatchColumns {
+        @JdbcStatement(
+                value = "SELECT 1 FROM CURRENCY WHERE CODE = ?",
+                dataSourceLookup = DATASOURCE,
+                parameters = { "self" },
+                batch = @BatchQuery("SELECT CODE, CODE FROM CURRENCY WHERE CODE IN ({keys})"))
+        String currency;
+    }
+
+    public static class Amount {
+        @JdbcStatement(
+                value = "SELECT 1 FROM PRICE WHERE AMOUNT = ?",
+                dataSourceLookup = DATASOURCE,
+                parameters = { "self" },
+                batch = @BatchQuery("SELECT AMOUNT FROM PRICE WHERE AMOUNT IN ({keys})"),
+                message = "unknown amount")
+        Object amount;
+
+        Amount(Object amount) {
+            this.amount = amount;
+        }
+    }
+
+    // Rules (with their data source) are created once for each class
+    static DataSource dataSource;
+
+    Context context;
+
+    @BeforeAll
+    static void setUpBeforeClass() throws ClassNotFoundException, SQLException {
+        Class.forName("org.h2.Driver");
+        dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> getConnection());
+    }
+
+    static Connection getConnection() throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:mem:batch;DB_CLOSE_DELAY=-1");
+    }
+
+    @BeforeEach
+    void setUp() throws NamingException, SQLException {
+        System.setProperty("java.naming.factory.initial", "org.osjava.sj.SimpleContextFactory");
+        System.setProperty("org.osjava.sj.jndi.shared", "true");
+        System.setProperty("org.osjava.sj.delimiter", "/");
+
+        Mockito.clearInvocations(dataSource);
+        context = new InitialContext();
+        context.createSubcontext("java:");
+        context.createSubcontext("java:comp");
+        context.createSubcontext("java:comp/env");
+        context.createSubcontext("java:comp/env/jdbc");
+        context.bind(DATASOURCE, dataSource);
+
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE CURRENCY (CODE VARCHAR(3))");
+            statement.executeUpdate("INSERT INTO CURRENCY (CODE) VALUES ('USD'), ('EUR'), ('GBP')");
+            statement.execute("CREATE TABLE ORDER_LINE (ORDER_ID BIGINT, LINE INT)");
+            statement.executeUpdate("INSERT INTO ORDER_LINE (ORDER_ID, LINE) VALUES (1, 1), (1, 2), (2, 1)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws NamingException, SQLException {
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE CURRENCY");
+            statement.execute("DROP TABLE ORDER_LINE");
+            statement.execute("DROP TABLE IF EXISTS PRICE");
+        }
+
+        context.close();
+        System.getProperties().remove("java.naming.factory.initial");
+        System.getProperties().remove("org.osjava.sj.jndi.shared");
+        System.getProperties().remove("org.osjava.sj.delimiter");
+    }
+
+    @Test
+    void testValidateResolvesKeysPerConstraint() throws SQLException {
+        // Constraints initialized (checking the columns of their batch queries) before counting connections
+        JdbcBatchValidator.validate(List.of(new Line("USD", null, 1, 1)));
+        Mockito.clearInvocations(dataSource);
+
+        List<Line> lines = List.of(
+                new Line("USD", null, 1, 1),
+                new Line("XXX", "EUR", 1, 2),
+                new Line("EUR", "YYY", 1, 3),
+                new Line("GBP", null, 2, 1),
+                new Line("XXX", "EUR", 3, 1));
+
+        List<JdbcBatchValidator.Violation<Line>> violations = JdbcBatchValidator.validate(lines);
+
+        Assertions.assertEquals(List.of("currency: unknown currency", "unknown line", "fallback: unknown fallback",
+                "unknown line", "currency: unknown currency"),
+                violations.stream().map(Object::toString).collect(Collectors.toList()));
+        Assertions.assertSame(lines.get(1), violations.get(0).getBean());
+        Assertions.assertSame(lines.get(2), violations.get(1).getBean());
+        Assertions.assertSame(lines.get(2), violations.get(2).getBean());
+        Assertions.assertSame(lines.get(4), violations.get(3).getBean());
+        Assertions.assertNull(violations.get(1).getProperty());
+        Assertions.assertEquals("unknown line", violations.get(1).getMessage());
+        Assertions.assertEquals("SELECT 1 FROM CURRENCY WHERE CODE = ?", violations.get(0).getConstraint().value());
+
+        // One connection for each of the three constraints
+        Mockito.verify(dataSource, Mockito.times(3)).getConnection();
+    }
+
+    @Test
+    void testValidateGroups() {
+        List<JdbcBatchValidator.Violation<Line>> violations = JdbcBatchValidator.validate(List.of(new Line("USD", null, 1, 1)), Strict.class);
+
+        Assertions.assertEquals(1, violations.size());
+        Assertions.assertEquals("strict: strict", violations.get(0).toString());
+    }
+
+    @Test
+    void testValidateEmpty() {
+        Assertions.assertTrue(JdbcBatchValidator.validate(List.of()).isEmpty());
+    }
+
+    @Test
+    void testBatchQueryWithoutKeysMarkerInvalid() {
+        List<InvalidBatch> beans = List.of(new InvalidBatch());
+        Assertions.assertThrows(ConstraintDeclarationException.class, () -> JdbcBatchValidator.validate(beans));
+    }
+
+    @Test
+    void testBatchQueryColumnsCheckedAtExecution() {
+        InvalidBatchColumns bean = new InvalidBatchColumns();
+        bean.currency = "USD";
+        List<InvalidBatchColumns> beans = List.of(bean);
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                                                    () -> JdbcBatchValidator.validate(beans));
+        Assertions.assertTrue(ex.getMessage().endsWith("must select 1 column(s), one for each parameter"), ex::getMessage);
+    }
+
+    @Test
+    void testSelectedKeysMatchedByColumnType() throws SQLException {
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE PRICE (AMOUNT DECIMAL(10, 2))");
+            statement.executeUpdate("INSERT INTO PRICE (AMOUNT) VALUES (1.50), (2.00)");
+        }
+
+        List<Amount> amounts = List.of(new Amount(new BigDecimal("1.5")),
+                                       new Amount(2),
+                                       new Amount("1.50"),
+                                       new Amount(new BigDecimal("3")));
+
+        List<JdbcBatchValidator.Violation<Amount>> violations = JdbcBatchValidator.validate(amounts);
+
+        Assertions.assertEquals(1, violations.size());
+        Assertions.assertSame(amounts.get(3), violations.get(0).getBean());
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.Map;
+
+import jakarta.el.ELException;
+import jakarta.el.ELManager;
+import jakarta.el.ELProcessor;
+import jakarta.el.StandardELContext;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AccessorELResolverTest {
+
+    public static class Node {
+        public final String label;
+        public String name = "field";
+        final Node next;
+
+        Node(String label, Node next) {
+            this.label = label;
+            this.next = next;
+        }
+
+        public String getName() {
+            return "getter-" + label;
+        }
+
+        public Node getNext() {
+            return next;
+        }
+
+        public String getFailure() {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    StandardELContext context;
+    AccessorELResolver target;
+
+    @BeforeEach
+    void setUp() {
+        context = new StandardELContext(ELManager.getExpressionFactory());
+        target = AccessorELResolver.INSTANCE;
+    }
+
+    @Test
+    void testGetterPreferredOverField() {
+        Object value = target.getValue(context, new Node("a", null), "name");
+        Assertions.assertTrue(context.isPropertyResolved());
+        Assertions.assertEquals("getter-a", value);
+    }
+
+    @Test
+    void testPublicFieldResolved() {
+        Object value = target.getValue(context, new Node("a", null), "label");
+        Assertions.assertTrue(context.isPropertyResolved());
+        Assertions.assertEquals("a", value);
+    }
+
+    @Test
+    void testUnknownPropertyNotResolved() {
+        Assertions.assertNull(target.getValue(context, new Node("a", null), "unknown"));
+        Assertions.assertFalse(context.isPropertyResolved());
+    }
+
+    @Test
+    void testMapAndNullBaseNotResolved() {
+        Assertions.assertNull(target.getValue(context, Map.of("name", "value"), "name"));
+        Assertions.assertFalse(context.isPropertyResolved());
+        Assertions.assertNull(target.getValue(context, null, "name"));
+        Assertions.assertFalse(context.isPropertyResolved());
+    }
+
+    @Test
+    void testAccessorExceptionWrapped() {
+        Node node = new Node("a", null);
+        ELException thrown = Assertions.assertThrows(ELException.class, () -> target.getValue(context, node, "failure"));
+        Assertions.assertEquals(IllegalStateException.class, thrown.getCause().getClass());
+    }
+
+    @Test
+    void testPropertyChainEvaluatedByProcessor() {
+        ELProcessor processor = new ELProcessor();
+        processor.getELManager().addELResolver(target);
+        processor.defineBean("self", new Node("a", new Node("b", new Node("c", null))));
+
+        Assertions.assertEquals("getter-c", processor.eval("self.next.next.name"));
+        Assertions.assertEquals("c", processor.eval("self.next.next.label"));
+        Assertions.assertNull(processor.eval("self.next.next.next"));
+    }
+}
@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import jakarta.validation.ConstraintDeclarationException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.Mockito;
+
+import io.xlate.validation.constraints.BloomFilter;
+import io.xlate.validation.internal.constraintvalidators.KeyColumns.Kind;
+
+class BloomFilterKeysTest {
+
+    static BloomFilter filter(long expectedKeys, double falsePositiveRate) {
+        BloomFilter filter = Mockito.mock(BloomFilter.class);
+        Mockito.when(filter.expectedKeys()).thenReturn(expectedKeys);
+        Mockito.when(filter.falsePositiveRate()).thenReturn(falsePositiveRate);
+        return filter;
+    }
+
+    static KeyColumns columns(Kind... kinds) {
+        return new KeyColumns(kinds, new String[kinds.length]);
+    }
+
+    @Test
+    void testSizedForKeysAndRate() {
+        BloomFilterKeys target = new BloomFilterKeys(columns(Kind.INTEGRAL), 100_000, 0.01);
+        // -n ln(p) / ln(2)^2, rounded up to whole words
+        Assertions.assertEquals(958_528, target.getBitCount());
+        Assertions.assertEquals(7, target.getHashCount());
+    }
+
+    @Test
+    void testNoFalseNegatives() {
+        BloomFilterKeys target = new BloomFilterKeys(columns(Kind.STRING, Kind.INTEGRAL), 10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> target.add(new Object[] { "K" + i, i }));
+
+        Assertions.assertEquals(10_000, target.size());
+        // Integral numbers are normalized, as for snapshots
+        IntStream.range(0, 10_000).forEach(i -> Assertions.assertTrue(target.contains(new Object[] { "K" + i, (long) i })));
+    }
+
+    @Test
+    void testNoFalseNegativesForValuesEqualInSql() {
+        BloomFilterKeys target = new BloomFilterKeys(columns(Kind.DECIMAL, Kind.CHAR, Kind.DATE), 100, 0.01);
+        target.add(new Object[] { new BigDecimal("1.50"), "EUR  ", Date.valueOf("2020-01-31") });
+        target.add(new Object[] { null, "USD", Date.valueOf("2020-01-31") });
+
+        Assertions.assertEquals(1, target.size());
+        Assertions.assertTrue(target.contains(new Object[] { new BigDecimal("1.5"), "EUR", LocalDate.of(2020, 1, 31) }));
+        Assertions.assertTrue(target.contains(new Object[] { 1.5d, "EUR ", Date.valueOf("2020-01-31") }));
+        Assertions.assertFalse(target.contains(new Object[] { null, "USD", LocalDate.of(2020, 1, 31) }));
+        // Values the database would convert are not decided by the filter
+        Assertions.assertNull(target.contains(new Object[] { "1.5", "EUR", LocalDate.of(2020, 1, 31) }));
+        Assertions.assertNull(target.contains(new Object[] { new BigDecimal("1.5"), "EUR", "2020-01-31" }));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "0.01",
+        "0.001",
+    })
+    void testFalsePositiveRate(double rate) {
+        BloomFilterKeys target = new BloomFilterKeys(columns(Kind.INTEGRAL), 50_000, rate);
+        Random random = new Random(1);
+        random.longs(50_000).forEach(v -> target.add(new Object[] { v }));
+
+        long positives = random.longs(100_000).filter(v -> target.contains(new Object[] { v })).count();
+        Assertions.assertTrue(positives < 100_000 * rate * 2, () -> "False positives: " + positives);
+    }
+
+    @Test
+    void testStringKeysHashedWithAllBits() {
+        // Different strings with the same 32-bit hash code
+        Assertions.assertEquals("Aa".hashCode(), "BB".hashCode());
+        Assertions.assertNotEquals(BloomFilterKeys.hash("Aa"), BloomFilterKeys.hash("BB"));
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        BloomFilter keys = filter(0, 0.01);
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                                                    () -> BloomFilterKeys.loader(keys));
+        Assertions.assertEquals("Invalid filter expected keys 0", ex.getMessage());
+
+        BloomFilter rate = filter(10, 1.0);
+        ex = Assertions.assertThrows(ConstraintDeclarationException.class, () -> BloomFilterKeys.loader(rate));
+        Assertions.assertEquals("Invalid filter false positive rate 1.0", ex.getMessage());
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import jakarta.el.PropertyNotFoundException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+class CollectionFunctionsTest {
+
+    public static class Line {
+        final String sku;
+        final Object amount;
+        final boolean flagged;
+
+        Line(String sku, Object amount, boolean flagged) {
+            this.sku = sku;
+            this.amount = amount;
+            this.flagged = flagged;
+        }
+
+        public String getSku() {
+            return sku;
+        }
+
+        public Object getAmount() {
+            return amount;
+        }
+
+        public boolean isFlagged() {
+            return flagged;
+        }
+    }
+
+    public static class Order {
+        final List<Line> lines;
+        final long total;
+
+        Order(List<Line> lines, long total) {
+            this.lines = lines;
+            this.total = total;
+        }
+
+        public List<Line> getLines() {
+            return lines;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    static List<Line> lines(int count) {
+        return IntStream.range(0, count)
+                        .mapToObj(i -> new Line("SKU" + i, i, i == count - 1))
+                        .collect(Collectors.toList());
+    }
+
+    @Test
+    void testSumAccumulators() {
+        Assertions.assertEquals(0L, CollectionFunctions.sum(null, ""));
+        Assertions.assertEquals(6L, CollectionFunctions.sum(List.of(1, 2L, (short) 3), ""));
+        Assertions.assertEquals(3.5d, CollectionFunctions.sum(List.of(1, 2.5d), ""));
+        Assertions.assertEquals(new BigDecimal("4.25"), CollectionFunctions.sum(List.of(1, new BigDecimal("3.25")), ""));
+        Assertions.assertEquals(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE),
+                                CollectionFunctions.sum(List.of(Long.MAX_VALUE, 1), ""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CollectionFunctions.sum(List.of("1"), ""));
+    }
+
+    @Test
+    void testPropertyPaths() {
+        List<Line> lines = List.of(new Line("A", 1, false), new Line("B", null, true), new Line(null, 3, false));
+        Order order = new Order(lines, 4);
+
+        Assertions.assertEquals(4L, CollectionFunctions.sum(lines, "amount"));
+        Assertions.assertEquals(2L, CollectionFunctions.count(lines, "sku"));
+        Assertions.assertEquals(3L, CollectionFunctions.count(lines, ""));
+        Assertions.assertEquals(1, CollectionFunctions.min(lines, "amount"));
+        Assertions.assertEquals("B", CollectionFunctions.max(lines, "sku"));
+        Assertions.assertEquals(4L, CollectionFunctions.sum(List.of(order), "total"));
+        Assertions.assertEquals(1L, CollectionFunctions.count(List.of(order, new Order(null, 0)), "lines"));
+        Assertions.assertEquals(4L, CollectionFunctions.sum(Map.of("o", Map.of("amount", 4)), "amount"));
+        Assertions.assertNull(CollectionFunctions.min(List.of(), ""));
+        Assertions.assertThrows(PropertyNotFoundException.class, () -> CollectionFunctions.count(lines, "price"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> CollectionFunctions.count("lines", ""));
+    }
+
+    @Test
+    void testMatchesAndDistinct() {
+        List<Line> lines = List.of(new Line("A", 1, false), new Line("B", 2, true));
+
+        Assertions.assertTrue(CollectionFunctions.anyMatch(lines, "flagged"));
+        Assertions.assertFalse(CollectionFunctions.allMatch(lines, "flagged"));
+        Assertions.assertFalse(CollectionFunctions.noneMatch(lines, "flagged"));
+        Assertions.assertTrue(CollectionFunctions.allMatch(List.of(), "flagged"));
+        Assertions.assertTrue(CollectionFunctions.distinct(lines, "sku"));
+        Assertions.assertTrue(CollectionFunctions.distinct(new LinkedHashSet<>(List.of("A", "B")), ""));
+        Assertions.assertFalse(CollectionFunctions.distinct(new String[] { "A", null, null, "A" }, ""));
+    }
+
+    @Test
+    void testLargeCollectionsProcessedInParallel() {
+        int size = CollectionFunctions.PARALLEL_THRESHOLD * 2;
+        List<Line> lines = lines(size);
+        long expected = (long) size * (size - 1) / 2;
+
+        Assertions.assertTrue(CollectionFunctions.Elements.of(lines, "amount", CollectionFunctions.PARALLEL_THRESHOLD).parallel);
+        Assertions.assertEquals(expected, CollectionFunctions.sum(lines, "amount"));
+        Assertions.assertEquals((long) size, CollectionFunctions.count(lines, "sku"));
+        Assertions.assertEquals(0, CollectionFunctions.min(lines, "amount"));
+        Assertions.assertEquals(size - 1, CollectionFunctions.max(lines, "amount"));
+        Assertions.assertTrue(CollectionFunctions.distinct(lines, "sku"));
+        Assertions.assertTrue(CollectionFunctions.anyMatch(lines, "flagged"));
+        Assertions.assertFalse(CollectionFunctions.allMatch(lines, "flagged"));
+
+        List<Line> duplicated = new ArrayList<>(lines);
+        duplicated.add(new Line("SKU0", 0, false));
+        Assertions.assertFalse(CollectionFunctions.distinct(duplicated, "sku"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void testFunctionsAvailableToExpressions(boolean compiled) {
+        TemplateELContext template = new TemplateELContext("self", new String[0], new String[0], new String[0]);
+        String expression = "coll:sum(self.lines, 'amount') == self.total and coll:distinct(self.lines, 'sku')";
+        CompiledExpression result = compiled
+                ? CompiledExpression.compile(template, expression)
+                : CompiledExpression.interpret(template, expression);
+
+        try (TargetELContext context = template.acquireContext(new Order(lines(100), 4950))) {
+            Assertions.assertEquals(Boolean.TRUE, result.getValue(context));
+        }
+        try (TargetELContext context = template.acquireContext(new Order(lines(100), 4951))) {
+            Assertions.assertEquals(Boolean.FALSE, result.getValue(context));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+class CompiledExpressionTest {
+
+    static final String[] EMPTY_STRING_ARRAY = { };
+
+    public static class Person {
+        public static String prefix(String value) {
+            return "P-" + value;
+        }
+
+        public String getName() {
+            return "Alice";
+        }
+
+        public int getAge() {
+            return 42;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+
+        public BigDecimal getAmount() {
+            return new BigDecimal("10.25");
+        }
+
+        public List<String> getTags() {
+            return Arrays.asList("a", "b");
+        }
+
+        public Map<String, Long> getScores() {
+            return Map.of("a", 1L);
+        }
+
+        public Person getManager() {
+            return null;
+        }
+
+        public String getFailure() {
+            throw new IllegalStateException("failure");
+        }
+    }
+
+    TemplateELContext template = new TemplateELContext("self",
+                                                       EMPTY_STRING_ARRAY,
+                                                       EMPTY_STRING_ARRAY,
+                                                       new String[] {
+                                                           "java.lang.Math.abs",
+                                                           "java.lang.Math.PI",
+                                                           "io.xlate.validation.internal.constraintvalidators.CompiledExpressionTest$Person.prefix"
+                                                       });
+
+    Object evaluate(CompiledExpression expression, Object target) {
+        try (TargetELContext context = template.acquireContext(target)) {
+            return expression.getValue(context);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "self.name == 'Alice'",
+        "self.name eq \"Al\" += 'ice'",
+        "self.age gt 40 and self.active",
+        "self.age lt 40 or !self.active",
+        "self.age >= 42 && self.age <= 42.0",
+        "self.age + 1",
+        "self.age - 1.5",
+        "self.age * self.amount",
+        "self.age / 5",
+        "self.age div 0",
+        "self.age % 5",
+        "self.age mod '5'",
+        "-self.age",
+        "-self.amount",
+        "empty self.tags",
+        "not empty self.name",
+        "self.tags[0]",
+        "self.tags[5]",
+        "self['tags'][1] == 'b'",
+        "self.scores['a'] ge 1",
+        "self.scores.a == '1'",
+        "self.manager.name",
+        "self.manager.name == null",
+        "self.name.length()",
+        "self.name.substring(1, 3)",
+        "self.active ? 'yes' : 'no'",
+        "self.missing",
+        "self.failure",
+        "self.age > 'x'",
+        "self.name < 'Bob'",
+        "null == self.manager",
+        "abs(-self.age)",
+        "Math.max(self.age, 50)",
+        "Integer.MAX_VALUE > self.age",
+        "PI > 3.14",
+        "prefix(self.name)",
+        "prefix(self.age)",
+        "self.tags.stream().filter(t -> t != 'a').count() == 1",
+        "[1, 2, 3].size() + self.age",
+        "{'a', 'b'}.contains(self.tags[0])",
+        "1.5e3 + .5 + 10"
+    })
+    void testCompiledEqualsInterpreted(String expression) {
+        CompiledExpression interpreted = CompiledExpression.interpret(template, expression);
+        CompiledExpression compiled = CompiledExpression.compile(template, expression);
+        Person person = new Person();
+
+        Assertions.assertFalse(interpreted.isCompiled());
+        Assertions.assertTrue(compiled.isCompiled());
+        Assertions.assertEquals(evaluate(interpreted, person), evaluate(compiled, person));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "(x -> x)(self.name)",
+        "unknown(self.age)",
+        "(x -> x + 1)(self.age)",
+        "self.scores.size() eq 1; self.age",
+        "self.age = 1",
+        "99999999999999999999 > self.age"
+    })
+    void testUnsupportedExpressionInterpreted(String expression) {
+        CompiledExpression interpreted = CompiledExpression.interpret(template, expression);
+        CompiledExpression compiled = CompiledExpression.compile(template, expression);
+        Person person = new Person();
+
+        Assertions.assertFalse(compiled.isCompiled());
+        Assertions.assertEquals(evaluate(interpreted, person), evaluate(compiled, person));
+    }
+
+    @Test
+    void testNestedLambdaArgumentsInterpreted() {
+        CompiledExpression compiled = CompiledExpression.compile(template, "[1, 2, 3].stream().map(x -> y -> x + y).toList().size()");
+        Assertions.assertTrue(compiled.isCompiled());
+        Assertions.assertEquals(3, evaluate(compiled, null));
+    }
+
+    @Test
+    void testPropertyAccessorsFollowBeanNaming() {
+        Person person = new Person();
+        Assertions.assertNotNull(PropertyAccessors.getAccessor(person, "name"));
+        Assertions.assertNotNull(PropertyAccessors.getAccessor(person, "active"));
+        Assertions.assertNotNull(PropertyAccessors.getAccessor(person, "class"));
+        Assertions.assertNull(PropertyAccessors.getAccessor(person, "Name"));
+        Assertions.assertNull(PropertyAccessors.getAccessor(person, "prefix"));
+        Assertions.assertNull(PropertyAccessors.getAccessor(Map.of("name", "x"), "name"));
+    }
+
+    @Test
+    void testDependenciesOfExpression() {
+        TemplateELContext template = new TemplateELContext("self", EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY);
+
+        Assertions.assertEquals(Set.of("address", "name", "age"),
+                                CompiledExpression.compile(template, "self.address.city eq self.name.trim() or self['age'] gt 1 ? true : false")
+                                                  .getDependencies());
+        Assertions.assertEquals(Set.of("name"),
+                                CompiledExpression.compile(template, "str:matches(self.name, '[A-Z]+') and Math.abs(1) eq 1")
+                                                  .getDependencies());
+        Assertions.assertEquals(Set.of(), CompiledExpression.compile(template, "1 + 2").getDependencies());
+        // The target itself is used
+        Assertions.assertNull(CompiledExpression.compile(template, "str:matches(self, '[A-Z]+')").getDependencies());
+        Assertions.assertNull(CompiledExpression.compile(template, "self.toString() ne null").getDependencies());
+        Assertions.assertNull(CompiledExpression.compile(template, "self[self.key] ne null").getDependencies());
+        Assertions.assertNull(CompiledExpression.interpret(template, "self.name").getDependencies());
+    }
+
+    @Test
+    void testFailuresSignalledWithExceptionalValue() {
+        TemplateELContext template = new TemplateELContext("self", EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY);
+        CompiledExpression expression = CompiledExpression.compile(template, "self.failure eq 1", null, Boolean.TRUE);
+        CompiledExpression nullSafe = CompiledExpression.compile(template, "self.name.bytes eq null", Boolean.FALSE, null);
+
+        try (TargetELContext context = template.acquireContext(new Person())) {
+            Assertions.assertEquals(Boolean.TRUE, expression.getValue(context));
+            Assertions.assertEquals(Boolean.FALSE, nullSafe.getValue(context));
+        }
+
+        try (TargetELContext context = template.acquireContext(null)) {
+            Assertions.assertEquals(Boolean.FALSE, nullSafe.getValue(context));
+        }
+    }
+}
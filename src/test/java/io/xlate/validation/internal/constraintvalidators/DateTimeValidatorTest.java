@@ -1,10 +1,12 @@
 package io.xlate.validation.internal.constraintvalidators;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoUnit;
 
 import jakarta.validation.ConstraintDeclarationException;
 import jakarta.validation.ConstraintValidatorContext;
@@ -22,6 +24,7 @@ import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
 import io.xlate.validation.constraints.DateTime;
+import io.xlate.validation.constraints.ResultCache;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.LENIENT)
@@ -38,6 +41,7 @@ class DateTimeValidatorTest {
     @BeforeEach
     void setUp() {
         target = new DateTimeValidator();
+        Mockito.when(annotation.cache()).thenReturn(Mockito.mock(ResultCache.class));
     }
 
     @Test
@@ -86,4 +90,27 @@ class DateTimeValidatorTest {
         assertEquals(isValid, target.isValid(inputSequence, context));
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = { "IDENTITY", "EQUALS" })
+    void testResultsCached(ResultCache.KeyType keyType) {
+        ResultCache cache = Mockito.mock(ResultCache.class);
+        Mockito.when(cache.size()).thenReturn(10);
+        Mockito.when(cache.ttlUnit()).thenReturn(ChronoUnit.SECONDS);
+        Mockito.when(cache.key()).thenReturn(keyType);
+        Mockito.when(annotation.cache()).thenReturn(cache);
+        Mockito.when(annotation.parserType()).thenReturn(DateTime.ParserType.JAVA_TIME);
+        Mockito.when(annotation.patterns()).thenReturn(new String[] { "uuuu-MM-dd" });
+        Mockito.when(annotation.resolverStyle()).thenReturn(ResolverStyle.STRICT);
+        target.initialize(annotation);
+
+        StringBuilder value = new StringBuilder("2018-01-01");
+        assertTrue(target.isValid(value, context));
+        assertTrue(target.isValid("2018-01-01", context));
+
+        // A changed sequence is parsed again, regardless of the key type
+        value.setLength(0);
+        value.append("2018-02-29");
+        assertFalse(target.isValid(value, context));
+        assertFalse(target.isValid(value.toString(), context));
+    }
 }
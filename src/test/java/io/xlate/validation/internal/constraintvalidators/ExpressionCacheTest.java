@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ExpressionCacheTest {
+
+    @Test
+    void testEqualKeysShareValue() {
+        Object first = ExpressionCache.intern(List.of("testEqualKeysShareValue", 1), Object::new);
+        Object second = ExpressionCache.intern(List.of("testEqualKeysShareValue", 1), Object::new);
+        Object other = ExpressionCache.intern(List.of("testEqualKeysShareValue", 2), Object::new);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertNotSame(first, other);
+    }
+
+    @Test
+    void testValuesCachedByContextClassLoader() throws Exception {
+        Object key = List.of("testValuesCachedByContextClassLoader");
+        Object value = ExpressionCache.intern(key, Object::new);
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[0], previous)) {
+            thread.setContextClassLoader(loader);
+            Object loaderValue = ExpressionCache.intern(key, Object::new);
+            Assertions.assertNotSame(value, loaderValue);
+            Assertions.assertSame(loaderValue, ExpressionCache.intern(key, Object::new));
+            Assertions.assertEquals(1, ExpressionCache.size());
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+
+        Assertions.assertSame(value, ExpressionCache.intern(key, Object::new));
+    }
+
+    @Test
+    void testFactoryExceptionNotCached() {
+        Object key = List.of("testFactoryExceptionNotCached");
+        Assertions.assertThrows(IllegalStateException.class, () -> ExpressionCache.intern(key, () -> {
+            throw new IllegalStateException();
+        }));
+        Assertions.assertEquals("value", ExpressionCache.intern(key, () -> "value"));
+    }
+
+    @Test
+    void testFactoryRunsWithoutBlockingOtherKeys() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Object> blocked = CompletableFuture.supplyAsync(() -> ExpressionCache.intern(List.of("testFactoryRunsWithoutBlockingOtherKeys", 1), () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "first";
+        }));
+
+        try {
+            Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assertions.assertEquals("second", ExpressionCache.intern(List.of("testFactoryRunsWithoutBlockingOtherKeys", 2), () -> "second"));
+        } finally {
+            release.countDown();
+        }
+
+        Assertions.assertEquals("first", blocked.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testClassLoaderCollectedWithValues() throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        URLClassLoader loader = new URLClassLoader(new URL[0], previous);
+        WeakReference<ClassLoader> reference = new WeakReference<>(loader);
+
+        try {
+            thread.setContextClassLoader(loader);
+            // Key strongly references the class loader, value is not retained
+            ExpressionCache.intern(List.of(loader), Object::new);
+            Assertions.assertEquals(1, ExpressionCache.size());
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+
+        loader.close();
+        loader = null;
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+            ExpressionCache.intern(List.of("testClassLoaderCollectedWithValues"), Object::new);
+        }
+
+        Assertions.assertNull(reference.get());
+    }
+}
@@ -90,6 +90,37 @@ class ExpressionValidatorIT {
         }
     }
 
+    @Expression(value = "self.value1 ne self.value2", node = "value2", compile = true)
+    public static class CompiledBean {
+        private String value1;
+
+        private String value2;
+
+        private List<
+            @Expression(
+                targetName = "entry",
+                when = "entry != null",
+                value = "validRegex(entry)",
+                compile = true,
+                staticImports = "io.xlate.validation.internal.constraintvalidators.ExpressionValidatorIT$TestBean.validRegex",
+                message = "value3 entries must be a valid regex"
+            )
+            String
+        > value3;
+
+        public String getValue1() {
+            return value1;
+        }
+
+        public String getValue2() {
+            return value2;
+        }
+
+        public List<String> getValue3() {
+            return value3;
+        }
+    }
+
     @Expression(
         targetName = "target",
         value = "target.newPassword eq target.newPasswordConfirmation",
@@ -129,6 +160,50 @@ class ExpressionValidatorIT {
         }
     }
 
+    public static class CompiledImportBean {
+        @Expression(
+            value = "TEST.equals(self)",
+            compile = true,
+            staticImports = "io.xlate.validation.internal.constraintvalidators.ExpressionValidatorIT$ImportBean.TEST")
+        private String value1;
+
+        public String getValue1() {
+            return value1;
+        }
+    }
+
+    public static class CardBean {
+        @Expression(value = "chk:luhn(self)",
+                    functionLibraries = FunctionRegistryTest.Checks.class,
+                    compile = true,
+                    message = "invalid card number")
+        String number;
+
+        @Expression(value = "self eq null or chk:luhn(self)",
+                    functionLibraries = FunctionRegistryTest.Checks.class,
+                    message = "invalid account number")
+        String account;
+    }
+
+    @Expression(value = "self.code ne null", node = "code", shared = true)
+    @Expression(value = "self.code.length() eq 3", node = "code", message = "code must have 3 characters", shared = true, compile = true)
+    @Expression(value = "self.code ne 'XXX'", node = "code", message = "code must not be XXX", shared = true)
+    @Expression(value = "self.limit gt 0", node = "limit", shared = true)
+    public static class SharedBean {
+        private String code;
+        private int limit;
+        int codeReads;
+
+        public String getCode() {
+            codeReads++;
+            return code;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
     @BeforeEach
     void initialize() {
         validator = Validation.buildDefaultValidatorFactory().getValidator();
@@ -200,6 +275,43 @@ class ExpressionValidatorIT {
         Assertions.assertEquals(0, violations.size());
     }
 
+    @Test
+    void testCompiledValueEqualsStaticValue() {
+        CompiledImportBean bean = new CompiledImportBean();
+        bean.value1 = ImportBean.TEST;
+        Assertions.assertEquals(0, validator.validate(bean).size());
+
+        bean.value1 = "OTHER";
+        Assertions.assertEquals(1, validator.validate(bean).size());
+    }
+
+    @Test
+    void testCompiledBeanValuesEqualInvalid() {
+        CompiledBean bean = new CompiledBean();
+        bean.value1 = "legal-value";
+        bean.value2 = "legal-value";
+        Set<ConstraintViolation<CompiledBean>> violations = validator.validate(bean);
+        Assertions.assertEquals(1, violations.size());
+        Assertions.assertEquals("value2", violations.iterator().next().getPropertyPath().toString());
+
+        bean.value2 = "other-value";
+        Assertions.assertEquals(0, validator.validate(bean).size());
+    }
+
+    @Test
+    void testCompiledValue3InvalidFromEntry() {
+        CompiledBean bean = new CompiledBean();
+        bean.value1 = "legal-value";
+        bean.value3 = List.of("(?:.*)", "(?:unclosed");
+        Set<ConstraintViolation<CompiledBean>> violations = validator.validate(bean);
+        Assertions.assertEquals(1, violations.size(), violations::toString);
+        ConstraintViolation<CompiledBean> violation = violations.iterator().next();
+        Assertions.assertEquals("value3 entries must be a valid regex", violation.getMessage());
+        Iterator<Path.Node> pathIterator = violation.getPropertyPath().iterator();
+        Assertions.assertEquals("value3", pathIterator.next().getName());
+        Assertions.assertEquals(1, pathIterator.next().as(Path.ContainerElementNode.class).getIndex());
+    }
+
     @Test
     void testCrossParameterExpression() throws Exception {
         TestBean bean = new TestBean();
@@ -232,4 +344,39 @@ class ExpressionValidatorIT {
         Assertions.assertEquals(ElementKind.CONTAINER_ELEMENT, entryNode.getKind());
         Assertions.assertEquals(1, entryNode.as(Path.ContainerElementNode.class).getIndex());
     }
+
+    @Test
+    void testSharedExpressionsReadPropertyOncePerValidation() {
+        SharedBean bean = new SharedBean();
+        bean.code = "XXX";
+        bean.limit = 0;
+
+        Set<ConstraintViolation<SharedBean>> violations = validator.validate(bean);
+        Assertions.assertEquals(2, violations.size(), violations::toString);
+        Assertions.assertEquals(1, bean.codeReads);
+        Assertions.assertTrue(violations.stream().anyMatch(v -> "code must not be XXX".equals(v.getMessage())
+                && "code".equals(v.getPropertyPath().toString())));
+        Assertions.assertTrue(violations.stream().anyMatch(v -> "limit".equals(v.getPropertyPath().toString())));
+
+        // Each validation is a new pass and observes changes to the bean
+        bean.code = "ABCD";
+        bean.limit = 1;
+        violations = validator.validate(bean);
+        Assertions.assertEquals(1, violations.size(), violations::toString);
+        Assertions.assertEquals("code must have 3 characters", violations.iterator().next().getMessage());
+        Assertions.assertEquals(2, bean.codeReads);
+    }
+
+    @Test
+    void testFunctionLibraryFunctionsCalled() {
+        CardBean bean = new CardBean();
+        bean.number = "4111111111111111";
+        Assertions.assertTrue(validator.validate(bean).isEmpty());
+
+        bean.number = "4111111111111112";
+        bean.account = "79927398713";
+        Set<ConstraintViolation<CardBean>> violations = validator.validate(bean);
+        Assertions.assertEquals(1, violations.size(), violations::toString);
+        Assertions.assertEquals("invalid card number", violations.iterator().next().getMessage());
+    }
 }
@@ -19,13 +19,23 @@ package io.xlate.validation.internal.constraintvalidators;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import jakarta.el.ELException;
 import jakarta.el.PropertyNotFoundException;
 import jakarta.validation.ConstraintDeclarationException;
 import jakarta.validation.ConstraintValidatorContext;
+import jakarta.validation.ValidationException;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -39,8 +49,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import io.xlate.validation.constraints.ELResolverType;
+import io.xlate.validation.constraints.EvaluationBudget;
 import io.xlate.validation.constraints.Expression;
 import io.xlate.validation.constraints.Expression.ExceptionalValue;
+import io.xlate.validation.constraints.ResultCache;
+import io.xlate.validation.spi.FunctionLibrary;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.LENIENT)
@@ -65,6 +79,46 @@ class ExpressionValidatorTest {
         Mockito.when(annotation.classImports()).thenReturn(EMPTY_STRING_ARRAY);
         Mockito.when(annotation.staticImports()).thenReturn(EMPTY_STRING_ARRAY);
         Mockito.when(annotation.exceptionalValue()).thenReturn(ExceptionalValue.UNSET);
+        Mockito.when(annotation.nullValue()).thenReturn(ExceptionalValue.UNSET);
+        Mockito.doReturn(Predicate.class).when(annotation).predicate();
+        Mockito.doReturn(new Class<?>[0]).when(annotation).functionLibraries();
+        Mockito.when(annotation.resolvers()).thenReturn(new ELResolverType[0]);
+        Mockito.when(annotation.cache()).thenReturn(Mockito.mock(ResultCache.class));
+        EvaluationBudget budget = budget(-1, -1);
+        Mockito.when(annotation.budget()).thenReturn(budget);
+    }
+
+    static EvaluationBudget budget(long maxSteps, long maxTime) {
+        EvaluationBudget budget = Mockito.mock(EvaluationBudget.class);
+        Mockito.when(budget.maxSteps()).thenReturn(maxSteps);
+        Mockito.when(budget.maxTime()).thenReturn(maxTime);
+        Mockito.when(budget.timeUnit()).thenReturn(ChronoUnit.MILLIS);
+        return budget;
+    }
+
+    public static class NotEmpty implements Predicate<String> {
+        @Override
+        public boolean test(String value) {
+            return !value.isEmpty();
+        }
+    }
+
+    public static class StartBeforeEnd implements Predicate<Map<String, Integer>> {
+        @Override
+        public boolean test(Map<String, Integer> data) {
+            return data.get("start") < data.get("end");
+        }
+    }
+
+    public static class NotInstantiable implements Predicate<Object> {
+        public NotInstantiable(String required) {
+            // Constructor not usable
+        }
+
+        @Override
+        public boolean test(Object t) {
+            return true;
+        }
     }
 
     @Test
@@ -118,16 +172,316 @@ class ExpressionValidatorTest {
         Assertions.assertTrue(target.isValid(data, context));
     }
 
+    @Test
+    void testEqualConstraintsShareCompiledExpressions() {
+        Mockito.when(annotation.value()).thenReturn("self.end ge self.start and 'testEqualConstraintsShare' ne null");
+        target.initialize(annotation);
+        int size = ExpressionCache.size();
+
+        ExpressionValidator other = new ExpressionValidator();
+        other.initialize(annotation);
+        Assertions.assertEquals(size, ExpressionCache.size());
+
+        Map<String, Integer> data = new HashMap<>();
+        data.put("start", 1);
+        data.put("end", 2);
+        Assertions.assertTrue(target.isValid(data, context));
+        Assertions.assertTrue(other.isValid(data, context));
+    }
+
+    @Test
+    void testSelectedResolversOnly() {
+        Mockito.when(annotation.value()).thenReturn("self.end ge self.start");
+        Mockito.when(annotation.resolvers()).thenReturn(new ELResolverType[] { ELResolverType.BEAN });
+        target.initialize(annotation);
+
+        Map<String, Integer> data = new HashMap<>();
+        data.put("start", 1);
+        data.put("end", 2);
+        // Maps are not resolved without the MAP resolver
+        Assertions.assertThrows(ELException.class, () -> target.isValid(data, context));
+
+        Mockito.when(annotation.value()).thenReturn("self.toString().length() gt 0");
+        target.initialize(annotation);
+        Assertions.assertTrue(target.isValid(data, context));
+    }
+
+    @Test
+    void testDefaultResolverTypes() {
+        ELResolverType[] none = {};
+
+        Assertions.assertEquals(EnumSet.allOf(ELResolverType.class), TemplateELContext.getResolverTypes(none, null));
+        Assertions.assertEquals(EnumSet.allOf(ELResolverType.class), TemplateELContext.getResolverTypes(none, " "));
+        Assertions.assertEquals(EnumSet.of(ELResolverType.BEAN, ELResolverType.MAP),
+                                TemplateELContext.getResolverTypes(none, "BEAN, MAP"));
+        Assertions.assertEquals(EnumSet.of(ELResolverType.LIST),
+                                TemplateELContext.getResolverTypes(new ELResolverType[] { ELResolverType.LIST }, "BEAN"));
+
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                () -> TemplateELContext.getResolverTypes(none, "BEAN,BEANS"));
+        Assertions.assertEquals("Unknown resolver `BEANS` in system property io.xlate.validation.resolvers", ex.getMessage());
+    }
+
+    @Test
+    void testResolversDistinguishTemplates() {
+        @SuppressWarnings("unchecked")
+        Class<? extends FunctionLibrary>[] libraries = new Class[0];
+        TemplateELContext all = TemplateELContext.getInstance("self", EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY,
+                                                              libraries, new ELResolverType[0]);
+        TemplateELContext bean = TemplateELContext.getInstance("self", EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY,
+                                                               libraries, new ELResolverType[] { ELResolverType.BEAN });
+
+        Assertions.assertNotSame(all, bean);
+        Assertions.assertNotEquals(all.getSignature(), bean.getSignature());
+        Assertions.assertSame(bean, TemplateELContext.getInstance("self", EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY, EMPTY_STRING_ARRAY,
+                                                                  libraries, new ELResolverType[] { ELResolverType.BEAN }));
+    }
+
+    public static class CountingPredicate implements Predicate<Object> {
+        static int calls;
+
+        @Override
+        public boolean test(Object target) {
+            calls++;
+            return target instanceof String;
+        }
+    }
+
+    @Test
+    void testResultsCachedForTarget() {
+        ResultCache cache = Mockito.mock(ResultCache.class);
+        Mockito.when(cache.size()).thenReturn(2);
+        Mockito.when(cache.ttlUnit()).thenReturn(ChronoUnit.SECONDS);
+        Mockito.when(cache.key()).thenReturn(ResultCache.KeyType.EQUALS);
+        Mockito.when(annotation.cache()).thenReturn(cache);
+        Mockito.when(annotation.value()).thenReturn("self");
+        Mockito.doReturn(CountingPredicate.class).when(annotation).predicate();
+        target.initialize(annotation);
+        CountingPredicate.calls = 0;
+
+        Assertions.assertTrue(target.isValid("a", context));
+        Assertions.assertFalse(target.isValid(1, context));
+        Assertions.assertTrue(target.isValid("a", context));
+        Assertions.assertFalse(target.isValid(1, context));
+        Assertions.assertEquals(2, CountingPredicate.calls);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "false, 3, true",
+        "false, 100, false",
+        "true, 3, true",
+        "true, 100, false",
+    })
+    void testStepBudgetUsesExceptionalValue(boolean compile, int size, boolean expectedResult) {
+        String expression = "self.stream().filter(x -> x ge 0).count() eq self.size()";
+        Mockito.when(annotation.value()).thenReturn(expression);
+        Mockito.when(annotation.compile()).thenReturn(compile);
+        Mockito.when(annotation.exceptionalValue()).thenReturn(ExceptionalValue.FALSE);
+        EvaluationBudget budget = budget(50, 0);
+        Mockito.when(annotation.budget()).thenReturn(budget);
+        target.initialize(annotation);
+        EvaluationLimits.resetExceededCounts();
+
+        List<Integer> values = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        Assertions.assertEquals(expectedResult, target.isValid(values, context));
+        Assertions.assertEquals(expectedResult ? 0L : 1L, EvaluationLimits.getExceededCounts().get(expression));
+    }
+
+    @Test
+    void testTimeBudgetExceededWithoutExceptionalValue() {
+        String expression = "self.stream().filter(x -> x ge 0).count() gt 0";
+        Mockito.when(annotation.value()).thenReturn(expression);
+        EvaluationBudget budget = budget(0, 1);
+        Mockito.when(annotation.budget()).thenReturn(budget);
+        target.initialize(annotation);
+
+        // Each reading of the clock advances it by 0.4ms, exceeding the budget on the third step
+        AtomicLong clock = new AtomicLong();
+        target.limits = new EvaluationLimits(expression, 0, 1_000_000, () -> clock.addAndGet(400_000));
+
+        List<Integer> values = List.of(1, 2, 3, 4, 5);
+        ValidationException thrown = Assertions.assertThrows(EvaluationLimits.ExceededException.class,
+                                                             () -> target.isValid(values, context));
+        Assertions.assertTrue(thrown.getMessage().endsWith("exceeded 1000000ns"));
+    }
+
+    @Test
+    void testGlobalStepBudget() {
+        String expression = "self.a eq 1 and self.b eq 2";
+        Mockito.when(annotation.value()).thenReturn(expression);
+        Mockito.when(annotation.compile()).thenReturn(true);
+        Mockito.when(annotation.exceptionalValue()).thenReturn(ExceptionalValue.TRUE);
+        System.setProperty(EvaluationLimits.MAX_STEPS_PROPERTY, "1");
+
+        try {
+            target.initialize(annotation);
+        } finally {
+            System.clearProperty(EvaluationLimits.MAX_STEPS_PROPERTY);
+        }
+
+        Assertions.assertTrue(target.isValid(Map.of("a", 1, "b", 0), context));
+
+        target.initialize(annotation);
+        Assertions.assertFalse(target.isValid(Map.of("a", 1, "b", 0), context));
+    }
+
+    @Test
+    void testInvalidGlobalBudget() {
+        Mockito.when(annotation.value()).thenReturn("self eq 1");
+        System.setProperty(EvaluationLimits.MAX_TIME_PROPERTY, "soon");
+
+        try {
+            Assertions.assertThrows(ConstraintDeclarationException.class, () -> target.initialize(annotation));
+        } finally {
+            System.clearProperty(EvaluationLimits.MAX_TIME_PROPERTY);
+        }
+    }
+
+    @Test
+    void testPredicateTestedWithTarget() {
+        Mockito.when(annotation.value()).thenReturn("self");
+        Mockito.doReturn(StartBeforeEnd.class).when(annotation).predicate();
+        target.initialize(annotation);
+
+        Map<String, Integer> data = new HashMap<>();
+        data.put("start", 1);
+        data.put("end", 2);
+        Assertions.assertTrue(target.isValid(data, context));
+        data.put("end", 0);
+        Assertions.assertFalse(target.isValid(data, context));
+    }
+
+    @Test
+    void testPredicateWithWhenCondition() {
+        Mockito.when(annotation.value()).thenReturn("self");
+        Mockito.when(annotation.when()).thenReturn("self.end ne null");
+        Mockito.doReturn(StartBeforeEnd.class).when(annotation).predicate();
+        target.initialize(annotation);
+
+        Map<String, Integer> data = new HashMap<>();
+        data.put("start", 1);
+        Assertions.assertTrue(target.isValid(data, context));
+        data.put("end", 0);
+        Assertions.assertFalse(target.isValid(data, context));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "TRUE, true",
+        "FALSE, false"
+    })
+    void testPredicateExceptionUsesExceptionalValue(ExceptionalValue ev, boolean expectedResult) {
+        Mockito.when(annotation.value()).thenReturn("self");
+        Mockito.when(annotation.exceptionalValue()).thenReturn(ev);
+        Mockito.doReturn(StartBeforeEnd.class).when(annotation).predicate();
+        target.initialize(annotation);
+        assertEquals(expectedResult, target.isValid(new HashMap<>(), context));
+    }
+
+    @Test
+    void testPredicateExceptionThrownWithoutExceptionalValue() {
+        Mockito.when(annotation.value()).thenReturn("self");
+        Mockito.doReturn(StartBeforeEnd.class).when(annotation).predicate();
+        target.initialize(annotation);
+        HashMap<String, Integer> data = new HashMap<>();
+        assertThrows(NullPointerException.class, () -> target.isValid(data, context));
+    }
+
+    @Test
+    void testPredicateTestedWithExpressionValue() {
+        Mockito.when(annotation.value()).thenReturn("self.name");
+        Mockito.doReturn(NotEmpty.class).when(annotation).predicate();
+        target.initialize(annotation);
+
+        Assertions.assertTrue(target.isValid(Map.of("name", "Alice"), context));
+        Assertions.assertFalse(target.isValid(Map.of("name", ""), context));
+        Assertions.assertEquals(Set.of("name"), target.getDependencies());
+    }
+
+    @Test
+    void testPredicateTestedWithTargetHasUnknownDependencies() {
+        Mockito.when(annotation.value()).thenReturn(" self ");
+        Mockito.doReturn(StartBeforeEnd.class).when(annotation).predicate();
+        target.initialize(annotation);
+        Assertions.assertNull(target.getDependencies());
+    }
+
+    @Test
+    void testPredicateNotInstantiable() {
+        Mockito.when(annotation.value()).thenReturn("self");
+        Mockito.doReturn(NotInstantiable.class).when(annotation).predicate();
+        ConstraintDeclarationException ex = assertThrows(ConstraintDeclarationException.class, () -> target.initialize(annotation));
+        Assertions.assertTrue(ex.getMessage().contains("could not be instantiated"));
+    }
+
     @Test
     void testNonBoolean() {
         Mockito.when(annotation.value()).thenReturn("'a string, not a Boolean'");
+        ConstraintDeclarationException ex = assertThrows(ConstraintDeclarationException.class, () -> {
+            target.initialize(annotation);
+        });
+        Assertions.assertTrue(ex.getMessage().contains("does not evaluate to Boolean"));
+    }
+
+    @Test
+    void testNonBooleanOperatorRejectedAtInitialization() {
+        Mockito.when(annotation.value()).thenReturn("self.earlier.time + 1");
+        ConstraintDeclarationException ex = assertThrows(ConstraintDeclarationException.class, () -> {
+            target.initialize(annotation);
+        });
+        Assertions.assertTrue(ex.getMessage().contains("`self.earlier.time + 1` does not evaluate to Boolean"));
+    }
+
+    @Test
+    void testNonBooleanResultAtEvaluation() {
+        Mockito.when(annotation.value()).thenReturn("self.earlier");
         Map<String, Date> data = new HashMap<>();
+        data.put("earlier", new Date(1));
         target.initialize(annotation);
         assertThrows(ConstraintDeclarationException.class, () -> {
             target.isValid(data, context);
         });
     }
 
+    @Test
+    void testConstantFalseWhenConditionDisablesConstraint() {
+        Mockito.when(annotation.value()).thenReturn("self.earlier.time.missing");
+        Mockito.when(annotation.when()).thenReturn("1 + 1 eq 3 and self.earlier ne null");
+        Map<String, Date> data = new HashMap<>();
+        data.put("earlier", new Date(1));
+        target.initialize(annotation);
+        Assertions.assertTrue(target.isValid(data, context));
+    }
+
+    @Test
+    void testConstantTrueWhenConditionAlwaysApplies() {
+        Mockito.when(annotation.value()).thenReturn("self.earlier.time eq 2");
+        Mockito.when(annotation.when()).thenReturn("not empty 'x' or self.earlier eq null");
+        Map<String, Date> data = new HashMap<>();
+        data.put("earlier", new Date(1));
+        target.initialize(annotation);
+        Assertions.assertFalse(target.isValid(data, context));
+    }
+
+    @Test
+    void testConstantSubexpressionsFolded() {
+        CompiledExpression expression = target.compile(new TemplateELContext("self", new String[0], new String[0], new String[0]),
+                                                       "(2 * 3 gt 5) ? true : self.missing",
+                                                       false);
+        Assertions.assertTrue(expression.isConstant());
+        Assertions.assertEquals(Boolean.TRUE, expression.getConstantValue());
+    }
+
+    @Test
+    void testInvalidSyntaxThrowsAtInitialization() {
+        Mockito.when(annotation.value()).thenReturn("self.value eq eq 1");
+        ConstraintDeclarationException ex = assertThrows(ConstraintDeclarationException.class, () -> {
+            target.initialize(annotation);
+        });
+        Assertions.assertTrue(ex.getMessage().contains("`self.value eq eq 1` could not be parsed"));
+    }
+
     @Test
     void testPrimitiveIntArray() {
         Mockito.when(annotation.value()).thenReturn("self[0] lt self[1]");
@@ -162,12 +516,8 @@ class ExpressionValidatorTest {
     void testNonBooleanInWhenCondition() {
         Mockito.when(annotation.value()).thenReturn("self.earlier lt self.later");
         Mockito.when(annotation.when()).thenReturn("'0'");
-        Map<String, Date> data = new HashMap<>();
-        data.put("earlier", new Date(1));
-        data.put("later", new Date());
-        target.initialize(annotation);
         ConstraintDeclarationException ex = assertThrows(ConstraintDeclarationException.class, () -> {
-            target.isValid(data, context);
+            target.initialize(annotation);
         });
         Assertions.assertTrue(ex.getMessage().contains("`'0'` does not evaluate to Boolean"));
     }
@@ -195,6 +545,22 @@ class ExpressionValidatorTest {
         assertThrows(PropertyNotFoundException.class, () -> target.isValid(null, context));
     }
 
+    @Test
+    void testValueParsedAtInitializationEvenWhenNeverApplied() {
+        // Both expressions are parsed eagerly, not when first evaluated
+        Mockito.when(annotation.when()).thenReturn("false");
+        Mockito.when(annotation.value()).thenReturn("self.value eq eq 1");
+        assertThrows(ConstraintDeclarationException.class, () -> target.initialize(annotation));
+    }
+
+    @Test
+    void testUnresolvableValueReferenceThrowsAtEvaluation() {
+        // Parsing is eager, but names are still resolved when evaluated
+        Mockito.when(annotation.value()).thenReturn("invalidTarget == null");
+        target.initialize(annotation);
+        assertThrows(PropertyNotFoundException.class, () -> target.isValid(null, context));
+    }
+
     @ParameterizedTest
     @CsvSource({
         "TRUE, true",
@@ -208,6 +574,31 @@ class ExpressionValidatorTest {
         assertEquals(expectedResult, actualResult);
     }
 
+    @ParameterizedTest
+    @CsvSource({
+        "TRUE, true",
+        "FALSE, false"
+    })
+    void testNullValueUsedWhenNavigatingThroughNull(ExceptionalValue nv, boolean expectedResult) {
+        Mockito.when(annotation.value()).thenReturn("self.account.type eq 'checking' or self.account.type eq 'savings'");
+        Mockito.when(annotation.nullValue()).thenReturn(nv);
+        target.initialize(annotation);
+        Map<String, Object> data = new HashMap<>();
+        assertEquals(expectedResult, target.isValid(data, context));
+
+        data.put("account", Map.of("type", "checking"));
+        Assertions.assertTrue(target.isValid(data, context));
+        data.put("account", Map.of("type", "other"));
+        Assertions.assertFalse(target.isValid(data, context));
+    }
+
+    @Test
+    void testNullNavigationWithoutNullValue() {
+        Mockito.when(annotation.value()).thenReturn("self.account.type eq null");
+        target.initialize(annotation);
+        Assertions.assertTrue(target.isValid(new HashMap<>(), context));
+    }
+
     @Test
     void testArgArrayElementsAccessible() {
         Mockito.when(annotation.targetName()).thenReturn("args");
@@ -217,4 +608,15 @@ class ExpressionValidatorTest {
         Assertions.assertTrue(target.isValid(new Object[] { null, 1, 1 }, context));
     }
 
+    @Test
+    void testImportsSharedByConcurrentEvaluations() {
+        Mockito.when(annotation.classImports()).thenReturn(new String[] { "java.util.Collections" });
+        Mockito.when(annotation.staticImports()).thenReturn(new String[] { "java.lang.Math.abs" });
+        Mockito.when(annotation.value()).thenReturn("abs(self) == Collections.nCopies(abs(self), 'x').size()");
+        target.initialize(annotation);
+
+        Assertions.assertTrue(IntStream.range(-500, 500)
+                                       .parallel()
+                                       .allMatch(i -> target.isValid(i, context)));
+    }
 }
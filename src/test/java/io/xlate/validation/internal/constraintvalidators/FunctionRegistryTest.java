@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.validation.ConstraintDeclarationException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+import io.xlate.validation.spi.FunctionLibrary;
+
+class FunctionRegistryTest {
+
+    public static class Checks implements FunctionLibrary {
+        @Override
+        public String getPrefix() {
+            return "chk";
+        }
+
+        public static boolean luhn(String number) {
+            int sum = 0;
+
+            for (int i = 0; i < number.length(); i++) {
+                int digit = number.charAt(number.length() - 1 - i) - '0';
+                sum += i % 2 == 0 ? digit : (digit * 2) / 10 + (digit * 2) % 10;
+            }
+
+            return sum % 10 == 0;
+        }
+
+        public static int twice(int value) {
+            return value * 2;
+        }
+    }
+
+    public static class Overloaded implements FunctionLibrary {
+        @Override
+        public String getPrefix() {
+            return "ovl";
+        }
+
+        public static int size(String value) {
+            return value.length();
+        }
+
+        public static int size(List<?> value) {
+            return value.size();
+        }
+    }
+
+    public static class NotStatic implements FunctionLibrary {
+        @Override
+        public String getPrefix() {
+            return "inst";
+        }
+
+        @Override
+        public Map<String, Method> getFunctions() {
+            try {
+                return Map.of("prefix", NotStatic.class.getMethod("getPrefix"));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    static class NotInstantiable implements FunctionLibrary {
+        @Override
+        public String getPrefix() {
+            return "none";
+        }
+    }
+
+    static FunctionRegistry registry(Class<? extends FunctionLibrary> type) {
+        return FunctionRegistry.getInstance(List.of(type));
+    }
+
+    Object evaluate(TemplateELContext template, CompiledExpression expression, Object target) {
+        try (TargetELContext context = template.acquireContext(target)) {
+            return expression.getValue(context);
+        }
+    }
+
+    @Test
+    void testFunctionsBoundToHandles() {
+        FunctionRegistry registry = registry(Checks.class);
+
+        Assertions.assertNotNull(registry.resolveFunction("chk", "luhn"));
+        Assertions.assertNotNull(registry.getHandle("chk", "luhn"));
+        Assertions.assertNotNull(registry.getHandle("chk", "twice"));
+        Assertions.assertNull(registry.resolveFunction("chk", "getPrefix"));
+        Assertions.assertNull(registry.resolveFunction("", "luhn"));
+        Assertions.assertSame(registry, registry(Checks.class));
+    }
+
+    @Test
+    void testCompiledCallsInvokeFunction() {
+        TemplateELContext template = new TemplateELContext("self", new String[0], new String[0], new String[0], registry(Checks.class));
+        CompiledExpression luhn = CompiledExpression.compile(template, "chk:luhn(self)");
+        CompiledExpression twice = CompiledExpression.compile(template, "chk:twice(self.length()) == 32");
+
+        Assertions.assertTrue(luhn.isCompiled());
+        Assertions.assertTrue(twice.isCompiled());
+        Assertions.assertEquals(Boolean.TRUE, evaluate(template, luhn, "4111111111111111"));
+        Assertions.assertEquals(Boolean.FALSE, evaluate(template, luhn, "4111111111111112"));
+        Assertions.assertEquals(Boolean.TRUE, evaluate(template, twice, "4111111111111111"));
+    }
+
+    @Test
+    void testCompiledCallsCoerceArguments() {
+        TemplateELContext template = new TemplateELContext("self", new String[0], new String[0], new String[0], registry(Checks.class));
+        CompiledExpression luhn = CompiledExpression.compile(template, "chk:luhn(self)");
+        CompiledExpression twice = CompiledExpression.compile(template, "chk:twice(self)");
+
+        Assertions.assertEquals(Boolean.TRUE, evaluate(template, luhn, 4111111111111111L));
+        Assertions.assertEquals(8L, ((Number) evaluate(template, twice, "4")).longValue());
+    }
+
+    @Test
+    void testInterpretedCallsInvokeFunction() {
+        TemplateELContext template = new TemplateELContext("self", new String[0], new String[0], new String[0], registry(Checks.class));
+        CompiledExpression luhn = CompiledExpression.interpret(template, "chk:luhn(self)");
+
+        Assertions.assertEquals(Boolean.TRUE, evaluate(template, luhn, "4111111111111111"));
+    }
+
+    @Test
+    void testOverloadedFunctionRejected() {
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                                                    () -> registry(Overloaded.class));
+        Assertions.assertEquals("Function library " + Overloaded.class.getName() + " is not valid", ex.getMessage());
+        Assertions.assertEquals("Function `size` is overloaded", ex.getCause().getMessage());
+    }
+
+    @Test
+    void testInstanceMethodRejected() {
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                                                    () -> registry(NotStatic.class));
+        Assertions.assertEquals("Function inst:prefix must be a public static method", ex.getMessage());
+    }
+
+    @Test
+    void testLibraryNotInstantiable() {
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                                                    () -> registry(NotInstantiable.class));
+        Assertions.assertEquals("Function library " + NotInstantiable.class.getName() + " could not be instantiated", ex.getMessage());
+    }
+
+    @Test
+    void testNoLibrariesGivesBuiltInRegistry() {
+        Assertions.assertSame(FunctionRegistry.BUILT_IN, FunctionRegistry.getInstance(List.of()));
+        Assertions.assertNull(FunctionRegistry.BUILT_IN.resolveFunction("chk", "luhn"));
+        Assertions.assertNotNull(FunctionRegistry.BUILT_IN.getHandle("str", "matches"));
+        Assertions.assertNotNull(registry(Checks.class).getHandle("str", "matches"));
+    }
+}
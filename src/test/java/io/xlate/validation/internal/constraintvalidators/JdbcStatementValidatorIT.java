@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -30,7 +31,9 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.xlate.validation.constraints.BloomFilter;
 import io.xlate.validation.constraints.JdbcStatement;
+import io.xlate.validation.constraints.Snapshot;
 
 @ExtendWith(MockitoExtension.class)
 class JdbcStatementValidatorIT {
@@ -75,6 +78,42 @@ class JdbcStatementValidatorIT {
         }
     }
 
+    static class TestBeanSnapshot {
+        @JdbcStatement(
+                value = "SELECT 1 FROM CURRENCY WHERE CODE = ?",
+                dataSourceLookup = CUSTOM_DATASOURCE,
+                parameters = { "self" },
+                snapshot = @Snapshot("SELECT CODE FROM CURRENCY"))
+        String currency;
+    }
+
+    static class TestBeanSnapshotAmount {
+        @JdbcStatement(
+                value = "SELECT 1 FROM PRICE WHERE AMOUNT = ?",
+                dataSourceLookup = CUSTOM_DATASOURCE,
+                parameters = { "self" },
+                snapshot = @Snapshot("SELECT AMOUNT FROM PRICE"))
+        Object amount;
+    }
+
+    static class TestBeanFilter {
+        @JdbcStatement(
+                value = "SELECT 1 FROM ACCOUNT WHERE ID = ?",
+                dataSourceLookup = CUSTOM_DATASOURCE,
+                parameters = { "self" },
+                filter = @BloomFilter(value = "SELECT ID FROM ACCOUNT", expectedKeys = 100))
+        Long account;
+    }
+
+    static class TestBeanFilterText {
+        @JdbcStatement(
+                value = "SELECT 1 FROM ACCOUNT WHERE ID = ?",
+                dataSourceLookup = CUSTOM_DATASOURCE,
+                parameters = { "self" },
+                filter = @BloomFilter(value = "SELECT ID FROM ACCOUNT", expectedKeys = 100))
+        String account;
+    }
+
     @BeforeAll
     static void setUpBeforeClass() throws ClassNotFoundException {
         Class.forName("org.h2.Driver");
@@ -174,6 +213,127 @@ class JdbcStatementValidatorIT {
         }
     }
 
+    @Test
+    void testValidationUsingSnapshot() throws NamingException, SQLException {
+        context.createSubcontext("java:");
+        context.createSubcontext("java:comp");
+        context.createSubcontext("java:comp/env");
+        context.createSubcontext("java:comp/env/jdbc");
+        context.bind(CUSTOM_DATASOURCE, dataSource);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> getConnection());
+        TestBeanSnapshot bean = new TestBeanSnapshot();
+
+        try (Statement statement = getConnection().createStatement()) {
+            statement.execute("CREATE TABLE CURRENCY (CODE VARCHAR(3))");
+            statement.executeUpdate("INSERT INTO CURRENCY (CODE) VALUES ('USD'), ('EUR')");
+
+            bean.currency = "EUR";
+            Assertions.assertTrue(validator.validate(bean).isEmpty());
+            bean.currency = "XYZ";
+            assertEquals(1, validator.validate(bean).size());
+            bean.currency = "USD";
+            Assertions.assertTrue(validator.validate(bean).isEmpty());
+
+            // Keys loaded once, validations do not use the database
+            Mockito.verify(dataSource).getConnection();
+        } finally {
+            try (Statement statement = getConnection().createStatement()) {
+                statement.execute("DROP TABLE CURRENCY");
+            }
+        }
+    }
+
+    @Test
+    void testValidationUsingSnapshotComparesColumnTypes() throws NamingException, SQLException {
+        context.createSubcontext("java:");
+        context.createSubcontext("java:comp");
+        context.createSubcontext("java:comp/env");
+        context.createSubcontext("java:comp/env/jdbc");
+        context.bind(CUSTOM_DATASOURCE, dataSource);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> getConnection());
+        TestBeanSnapshotAmount bean = new TestBeanSnapshotAmount();
+
+        try (Statement statement = getConnection().createStatement()) {
+            statement.execute("CREATE TABLE PRICE (AMOUNT DECIMAL(10, 2))");
+            statement.executeUpdate("INSERT INTO PRICE (AMOUNT) VALUES (1.50), (2.00)");
+
+            bean.amount = new BigDecimal("1.5");
+            Assertions.assertTrue(validator.validate(bean).isEmpty());
+            bean.amount = 2;
+            Assertions.assertTrue(validator.validate(bean).isEmpty());
+            bean.amount = new BigDecimal("1.25");
+            assertEquals(1, validator.validate(bean).size());
+            Mockito.verify(dataSource).getConnection();
+
+            // Not comparable with the decimal keys, converted and compared by the database
+            bean.amount = "1.50";
+            Assertions.assertTrue(validator.validate(bean).isEmpty());
+            Mockito.verify(dataSource, Mockito.times(2)).getConnection();
+        } finally {
+            try (Statement statement = getConnection().createStatement()) {
+                statement.execute("DROP TABLE PRICE");
+            }
+        }
+    }
+
+    @Test
+    void testValidationUsingBloomFilter() throws NamingException, SQLException {
+        context.createSubcontext("java:");
+        context.createSubcontext("java:comp");
+        context.createSubcontext("java:comp/env");
+        context.createSubcontext("java:comp/env/jdbc");
+        context.bind(CUSTOM_DATASOURCE, dataSource);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> getConnection());
+        TestBeanFilter bean = new TestBeanFilter();
+
+        try (Statement statement = getConnection().createStatement()) {
+            statement.execute("CREATE TABLE ACCOUNT (ID BIGINT)");
+            statement.executeUpdate("INSERT INTO ACCOUNT (ID) VALUES (10), (20), (30)");
+
+            bean.account = 20L;
+            Assertions.assertTrue(validator.validate(bean).isEmpty());
+            Mockito.verify(dataSource, Mockito.times(2)).getConnection();
+
+            // Rejected by the filter without executing the statement
+            for (long id = 1000; id < 1010; id++) {
+                bean.account = id;
+                assertEquals(1, validator.validate(bean).size());
+            }
+            Mockito.verify(dataSource, Mockito.atMost(3)).getConnection();
+        } finally {
+            try (Statement statement = getConnection().createStatement()) {
+                statement.execute("DROP TABLE ACCOUNT");
+            }
+        }
+    }
+
+    @Test
+    void testValidationUsingBloomFilterDefersOtherTypes() throws NamingException, SQLException {
+        context.createSubcontext("java:");
+        context.createSubcontext("java:comp");
+        context.createSubcontext("java:comp/env");
+        context.createSubcontext("java:comp/env/jdbc");
+        context.bind(CUSTOM_DATASOURCE, dataSource);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> getConnection());
+        TestBeanFilterText bean = new TestBeanFilterText();
+
+        try (Statement statement = getConnection().createStatement()) {
+            statement.execute("CREATE TABLE ACCOUNT (ID BIGINT)");
+            statement.executeUpdate("INSERT INTO ACCOUNT (ID) VALUES (10), (20), (30)");
+
+            // Not comparable with the integral keys, each converted and compared by the database
+            bean.account = "20";
+            Assertions.assertTrue(validator.validate(bean).isEmpty());
+            bean.account = "21";
+            assertEquals(1, validator.validate(bean).size());
+            Mockito.verify(dataSource, Mockito.atLeast(2)).getConnection();
+        } finally {
+            try (Statement statement = getConnection().createStatement()) {
+                statement.execute("DROP TABLE ACCOUNT");
+            }
+        }
+    }
+
     @Test
     void testValidationOfField1UsingUnknownDataSourceThrowsNamingException() throws NamingException, SQLException {
         context.createSubcontext("java:");
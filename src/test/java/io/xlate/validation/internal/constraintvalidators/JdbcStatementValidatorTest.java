@@ -1,6 +1,7 @@
 package io.xlate.validation.internal.constraintvalidators;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -10,6 +11,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -20,7 +22,6 @@ import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
 
-import jakarta.el.ELProcessor;
 import jakarta.el.PropertyNotFoundException;
 import jakarta.validation.ConstraintDeclarationException;
 import jakarta.validation.ConstraintValidatorContext;
@@ -39,7 +40,13 @@ import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import org.mockito.stubbing.Answer;
 
+import io.xlate.validation.constraints.BatchQuery;
+import io.xlate.validation.constraints.BloomFilter;
+import io.xlate.validation.constraints.ELResolverType;
 import io.xlate.validation.constraints.JdbcStatement;
+import io.xlate.validation.constraints.ResultCache;
+import io.xlate.validation.constraints.Snapshot;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
 
 @ExtendWith(MockitoExtension.class)
 class JdbcStatementValidatorTest {
@@ -54,12 +61,34 @@ class JdbcStatementValidatorTest {
         target = new JdbcStatementValidator();
     }
 
+    static TargetELContext newContext(Object self) {
+        return new TemplateELContext("self", new String[0], new String[0], new String[0]).acquireContext(self);
+    }
+
+    static ParameterBinder[] compile(String... parameters) {
+        TemplateELContext template = new TemplateELContext("self", new String[0], new String[0], new String[0]);
+        return JdbcStatementValidator.compileParameters(template, parameters);
+    }
+
     @Test
     void testWhenExpessionFalse() throws NamingException {
         JdbcStatement annotation = Mockito.mock(JdbcStatement.class);
         Mockito.when(annotation.value()).thenReturn("SELECT 1");
         Mockito.when(annotation.when()).thenReturn("0 == 1");
+        Mockito.when(annotation.parameters()).thenReturn(new String[0]);
+        Mockito.when(annotation.functionLibraries()).thenReturn(new Class[0]);
+        Mockito.when(annotation.resolvers()).thenReturn(new ELResolverType[0]);
         Mockito.when(annotation.dataSourceLookup()).thenReturn("");
+        Mockito.when(annotation.cache()).thenReturn(Mockito.mock(ResultCache.class));
+        Snapshot snapshot = Mockito.mock(Snapshot.class);
+        Mockito.when(snapshot.value()).thenReturn("");
+        Mockito.when(annotation.snapshot()).thenReturn(snapshot);
+        BloomFilter filter = Mockito.mock(BloomFilter.class);
+        Mockito.when(filter.value()).thenReturn("");
+        Mockito.when(annotation.filter()).thenReturn(filter);
+        BatchQuery batch = Mockito.mock(BatchQuery.class);
+        Mockito.when(batch.value()).thenReturn("");
+        Mockito.when(annotation.batch()).thenReturn(batch);
 
         DataSource dataSource = Mockito.mock(DataSource.class);
         System.setProperty("java.naming.factory.initial", "org.osjava.sj.SimpleContextFactory");
@@ -145,7 +174,7 @@ class JdbcStatementValidatorTest {
     @Test
     void testExecuteQuerySucceeds() throws SQLException {
         String sql = "SELECT 1";
-        String[] parameters = { };
+        ParameterBinder[] parameters = { };
 
         DataSource dataSource = Mockito.mock(DataSource.class);
         Connection connection = Mockito.mock(Connection.class);
@@ -159,18 +188,51 @@ class JdbcStatementValidatorTest {
         Mockito.when(results.next()).thenReturn(true);
 
         target.dataSource = dataSource;
-        assertTrue(target.executeQuery(null, sql, parameters));
+        assertTrue(target.executeQuery(sql, parameters, new Object[0]));
+    }
+
+    @Test
+    @MockitoSettings(strictness = Strictness.LENIENT)
+    void testResultsCachedForParameterValues() throws SQLException {
+        String sql = "SELECT 1 WHERE ? = 1";
+        DataSource dataSource = Mockito.mock(DataSource.class);
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(dataSource.getConnection()).thenReturn(connection);
+
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+        Mockito.when(connection.prepareStatement(sql)).thenReturn(statement);
+
+        ResultSet results  = Mockito.mock(ResultSet.class);
+        Mockito.when(statement.executeQuery()).thenReturn(results);
+        Mockito.when(results.next()).thenReturn(true, false);
+
+        ResultCache cache = ValidationResultsTest.cache(10, 0, ChronoUnit.SECONDS, ResultCache.KeyType.IDENTITY);
+        target.dataSource = dataSource;
+        target.parameters = compile("self");
+        // Parameter values are always compared by equality
+        target.results = ValidationResults.of(sql, cache, false);
+
+        assertTrue(target.getResult(sql, new Object[] { 1 }));
+        assertFalse(target.getResult(sql, new Object[] { 2 }));
+        assertTrue(target.getResult(sql, new Object[] { 1 }));
+        assertFalse(target.getResult(sql, new Object[] { 2 }));
+
+        Mockito.verify(dataSource, Mockito.times(2)).getConnection();
+        Mockito.verify(statement).setInt(1, 1);
+        Mockito.verify(statement).setInt(1, 2);
+        assertEquals(2, target.results.getHits());
+        assertEquals(2, target.results.getMisses());
     }
 
     @Test
     void testExecuteQueryThrowsValidationException() throws SQLException {
         DataSource dataSource = Mockito.mock(DataSource.class);
         String sql = "SELECT 1";
-        String[] parameters = { };
+        ParameterBinder[] parameters = { };
         Mockito.when(dataSource.getConnection()).thenThrow(SQLException.class);
         target.dataSource = dataSource;
         ValidationException ex = assertThrows(ValidationException.class, () -> {
-            target.executeQuery(null, sql, parameters);
+            target.executeQuery(sql, parameters, new Object[0]);
         });
 
         Throwable cause = ex.getCause();
@@ -181,7 +243,7 @@ class JdbcStatementValidatorTest {
     @Test
     @MockitoSettings(strictness = Strictness.LENIENT)
     void testSetParametersNoParameters() throws SQLException {
-        String[] parameters = { };
+        ParameterBinder[] parameters = { };
         PreparedStatement statement = Mockito.mock(PreparedStatement.class);
         final AtomicInteger callCount = new AtomicInteger(0);
 
@@ -190,7 +252,7 @@ class JdbcStatementValidatorTest {
             return null;
         }).when(statement).setObject(1, Object.class);
 
-        target.setParameters(null, parameters, statement);
+        JdbcStatementValidator.setParameters(parameters, new Object[0], statement);
         assertEquals(0, callCount.get());
     }
 
@@ -214,17 +276,18 @@ class JdbcStatementValidatorTest {
         Mockito.doAnswer((Answer<?>) invocation -> {
             callCount.incrementAndGet();
             return null;
-        }).when(statement).setObject(1, self.getValue1());
+        }).when(statement).setString(1, self.getValue1());
 
         Mockito.doAnswer((Answer<?>) invocation -> {
             callCount.incrementAndGet();
             return null;
-        }).when(statement).setObject(2, self.getValue2());
+        }).when(statement).setInt(2, self.getValue2());
 
-        ELProcessor processor = new ELProcessor();
-        processor.defineBean("self", self);
+        ParameterBinder[] binders = compile(parameters);
 
-        target.setParameters(processor, parameters, statement);
+        try (TargetELContext context = newContext(self)) {
+            JdbcStatementValidator.setParameters(binders, JdbcStatementValidator.getParameterValues(context, binders), statement);
+        }
         assertEquals(2, callCount.get());
     }
 
@@ -245,11 +308,12 @@ class JdbcStatementValidatorTest {
         String[] parameters = { "self.value1", "self.value2" };
         PreparedStatement statement = Mockito.mock(PreparedStatement.class);
 
-        ELProcessor processor = new ELProcessor();
-        processor.defineBean("self", self);
+        ParameterBinder[] expressions = compile(parameters);
 
         ConstraintDeclarationException ex = assertThrows(ConstraintDeclarationException.class, () -> {
-            target.setParameters(processor, parameters, statement);
+            try (TargetELContext context = newContext(self)) {
+                JdbcStatementValidator.getParameterValues(context, expressions);
+            }
         });
 
         Throwable cause = ex.getCause();
@@ -268,11 +332,14 @@ class JdbcStatementValidatorTest {
         PreparedStatement statement = Mockito.mock(PreparedStatement.class);
         Mockito.doThrow(java.sql.SQLException.class).when(statement).setObject(1, self);
 
-        ELProcessor processor = new ELProcessor();
-        processor.defineBean("self", self);
+        ParameterBinder[] expressions = compile(parameters);
 
         ConstraintDeclarationException ex = assertThrows(ConstraintDeclarationException.class, () -> {
-            target.setParameters(processor, parameters, statement);
+            try (TargetELContext context = newContext(self)) {
+                JdbcStatementValidator.setParameters(expressions,
+                                                     JdbcStatementValidator.getParameterValues(context, expressions),
+                                                     statement);
+            }
         });
 
         Throwable cause = ex.getCause();
@@ -333,4 +400,11 @@ class JdbcStatementValidatorTest {
         assertEquals(nodeName, values.get("nodeName"));
     }
 
+
+    @Test
+    void testGetMarkers() {
+        assertEquals("?", JdbcStatementValidator.getMarkers(1, 1));
+        assertEquals("?, ?, ?", JdbcStatementValidator.getMarkers(3, 1));
+        assertEquals("(?, ?), (?, ?)", JdbcStatementValidator.getMarkers(2, 2));
+    }
 }
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.Mockito;
+
+import io.xlate.validation.internal.constraintvalidators.ParameterBinder.Binding;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+class ParameterBinderTest {
+
+    static final TemplateELContext TEMPLATE = new TemplateELContext("self", new String[0], new String[0], new String[0]);
+
+    static ParameterBinder binder(String expression) {
+        return new ParameterBinder(CompiledExpression.compile(TEMPLATE, expression));
+    }
+
+    static void bind(ParameterBinder binder, Object self, PreparedStatement statement) throws SQLException {
+        try (TargetELContext context = TEMPLATE.acquireContext(self)) {
+            binder.bind(statement, 1, binder.getValue(context));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "int, INTEGER",
+        "long, LONG",
+        "java.lang.Boolean, BOOLEAN",
+        "java.lang.String, STRING",
+        "java.math.BigDecimal, BIG_DECIMAL",
+        "[B, BYTES",
+        "java.sql.Timestamp, TIMESTAMP",
+        "java.time.LocalDate, OBJECT",
+    })
+    void testBindingOfType(String typeName, Binding expected) throws ClassNotFoundException {
+        Class<?> type = typeName.equals("int") ? int.class
+                : typeName.equals("long") ? long.class
+                : Class.forName(typeName);
+        Assertions.assertEquals(expected, Binding.of(type));
+    }
+
+    @Test
+    void testBindingInferredFromExpression() throws SQLException {
+        ParameterBinder target = binder("'abc'");
+        Assertions.assertEquals(Binding.STRING, target.getBinding());
+
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+        bind(target, null, statement);
+        Mockito.verify(statement).setString(1, "abc");
+        Mockito.verifyNoMoreInteractions(statement);
+    }
+
+    @Test
+    void testBindingInferredFromFirstValue() throws SQLException {
+        ParameterBinder target = binder("self.id");
+        Map<String, Object> self = new HashMap<>();
+        PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+
+        self.put("id", null);
+        bind(target, self, statement);
+        Assertions.assertNull(target.getBinding());
+        Mockito.verify(statement).setObject(1, null);
+
+        self.put("id", 5L);
+        bind(target, self, statement);
+        Assertions.assertEquals(Binding.LONG, target.getBinding());
+        Mockito.verify(statement).setLong(1, 5L);
+
+        self.put("id", null);
+        bind(target, self, statement);
+        Mockito.verify(statement).setNull(1, Types.BIGINT);
+
+        // Values of other types are bound by their own type
+        self.put("id", new BigDecimal("1.5"));
+        bind(target, self, statement);
+        Assertions.assertEquals(Binding.LONG, target.getBinding());
+        Mockito.verify(statement).setBigDecimal(1, new BigDecimal("1.5"));
+
+        LocalDate today = LocalDate.now();
+        self.put("id", today);
+        bind(target, self, statement);
+        Mockito.verify(statement).setObject(1, today);
+        Mockito.verifyNoMoreInteractions(statement);
+    }
+}
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.xlate.validation.constraints.ELResolverType;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+import io.xlate.validation.spi.PrecompiledExpressions;
+import io.xlate.validation.spi.PrecompiledExpressions.Evaluator;
+
+/**
+ * Compiles sample sources with the annotation processor (from
+ * {@code target/processor-classes}) and uses the generated classes.
+ */
+class PrecompiledExpressionsTest {
+
+    @TempDir
+    Path output;
+
+    List<Diagnostic<? extends JavaFileObject>> compile(String className, String source, String... extraOptions) throws IOException {
+        Path sourceFile = output.resolve("src").resolve(className.replace('.', '/') + ".java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+        Path classes = Files.createDirectories(output.resolve("classes"));
+
+        List<String> dependencies = Stream.of(System.getProperty("jdk.module.path", ""),
+                                              System.getProperty("java.class.path", ""))
+                                          .flatMap(path -> Arrays.stream(path.split(File.pathSeparator)))
+                                          .filter(entry -> !entry.isEmpty())
+                                          .collect(Collectors.toList());
+
+        List<String> classpath = new ArrayList<>(dependencies);
+        List<String> processorpath = new ArrayList<>(dependencies);
+        processorpath.add(0, Paths.get("target", "processor-classes").toString());
+
+        List<String> options = new ArrayList<>(Arrays.asList("-d", classes.toString(),
+                                                             "-classpath", String.join(File.pathSeparator, classpath),
+                                                             "-processorpath", String.join(File.pathSeparator, processorpath)));
+        options.addAll(Arrays.asList(extraOptions));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            compiler.getTask(null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjects(sourceFile.toFile()))
+                    .call();
+        }
+
+        return diagnostics.getDiagnostics();
+    }
+
+    @SuppressWarnings("unchecked")
+    static TemplateELContext template(String targetName) {
+        String[] none = {};
+        return TemplateELContext.getInstance(targetName, none, none, none, new Class[0], new ELResolverType[0]);
+    }
+
+    static String key(String targetName, String expression) {
+        return template(targetName).getPrecompiledKey(expression);
+    }
+
+    static Object evaluate(String expression, Object target) {
+        TemplateELContext template = template("self");
+        CompiledExpression compiled = CompiledExpression.compile(template, expression);
+
+        try (TargetELContext context = TargetELContext.acquire(template, target)) {
+            return compiled.getValue(context);
+        }
+    }
+
+    static List<String> messages(List<Diagnostic<? extends JavaFileObject>> diagnostics, Diagnostic.Kind kind) {
+        return diagnostics.stream()
+                          .filter(d -> d.getKind() == kind)
+                          .map(d -> d.getMessage(null))
+                          .collect(Collectors.toList());
+    }
+
+    @Test
+    void testGeneratedClassesUsedAtRuntime() throws Throwable {
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile("sample.Person", ""
+                + "package sample;\n"
+                + "import io.xlate.validation.constraints.Expression;\n"
+                + "import io.xlate.validation.constraints.JdbcStatement;\n"
+                + "@Expression(\"self.name ne null\")\n"
+                + "@Expression(value = \"self.active and self.address.city eq 'Springfield' and self.age ge 18\", compile = true)\n"
+                + "@Expression(value = \"self.address.zip.code eq null ? 'none' : self.address.zip.code\", predicate = Person.NotEmpty.class, compile = true)\n"
+                + "@Expression(value = \"self.name.length() gt 3\", compile = true)\n"
+                + "@JdbcStatement(value = \"SELECT 1 FROM PEOPLE WHERE NAME = ?\", parameters = \"self.name\", when = \"fmt:upper(self.name) ne ''\")\n"
+                + "public class Person {\n"
+                + "    public static class NotEmpty implements java.util.function.Predicate<Object> {\n"
+                + "        public boolean test(Object value) { return !value.toString().isEmpty(); }\n"
+                + "    }\n"
+                + "    public static class Zip {\n"
+                + "        public String code;\n"
+                + "    }\n"
+                + "    public static class Address {\n"
+                + "        public String getCity() { return \"Springfield\"; }\n"
+                + "        public Zip getZip() { return null; }\n"
+                + "    }\n"
+                + "    public String getName() { return \"Alice\"; }\n"
+                + "    public int getAge() { return 21; }\n"
+                + "    public boolean isActive() { return true; }\n"
+                + "    public String getURL() { return \"http://example.com\"; }\n"
+                + "    @Expression(value = \"a.city ne null\", targetName = \"a\")\n"
+                + "    public Address getAddress() { return new Address(); }\n"
+                + "}\n");
+
+        Assertions.assertEquals(List.of(), messages(diagnostics, Diagnostic.Kind.ERROR));
+
+        Path classes = output.resolve("classes");
+        Assertions.assertTrue(Files.exists(classes.resolve("sample/Person_PrecompiledExpressions.class")));
+        Assertions.assertEquals(List.of("sample.Person_PrecompiledExpressions"),
+                                Files.readAllLines(classes.resolve("META-INF/services/" + PrecompiledExpressions.class.getName())));
+
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, getClass().getClassLoader())) {
+            thread.setContextClassLoader(loader);
+
+            Assertions.assertTrue(Precompiled.isVerified(key("self", "self.name ne null")));
+            Assertions.assertTrue(Precompiled.isVerified(key("self", "self.name")));
+            // Library functions are not available to the processor, only the syntax is verified
+            Assertions.assertTrue(Precompiled.isVerified(key("self", "fmt:upper(self.name) ne ''")));
+            Assertions.assertTrue(Precompiled.isVerified(key("a", "a.city ne null")));
+            Assertions.assertFalse(Precompiled.isVerified(key("self", "self.other")));
+            // Verified within the template of the constraint only
+            Assertions.assertFalse(Precompiled.isVerified(key("a", "self.name ne null")));
+            Assertions.assertFalse(Precompiled.isVerified(key("self", "a.city ne null")));
+
+            Class<?> personType = loader.loadClass("sample.Person");
+            Object person = personType.getConstructor().newInstance();
+            Map<String, MethodHandle> accessors = Precompiled.getAccessors(personType);
+
+            Assertions.assertEquals(List.of("URL", "active", "address", "age", "class", "name"),
+                                    accessors.keySet().stream().sorted().collect(Collectors.toList()));
+            Assertions.assertEquals("Alice", accessors.get("name").invoke(person));
+            Assertions.assertEquals(true, accessors.get("active").invoke(person));
+
+            Class<?> addressType = loader.loadClass("sample.Person$Address");
+            Object address = addressType.getConstructor().newInstance();
+            Assertions.assertEquals("Springfield", PropertyAccessors.getAccessor(address, "city").invoke(address));
+
+            // Compiled expressions reading properties are evaluated by generated code
+            String condition = "self.active and self.address.city eq 'Springfield' and self.age ge 18";
+            List<Evaluator> evaluators = Precompiled.getEvaluators(key("self", condition));
+            Assertions.assertEquals(1, evaluators.size());
+            Assertions.assertEquals(personType, evaluators.get(0).getTargetType());
+            Assertions.assertEquals(Boolean.TRUE, evaluators.get(0).evaluate(person, Operators.Instance.INSTANCE));
+            Assertions.assertEquals(Boolean.TRUE, evaluate(condition, person));
+
+            String choice = "self.address.zip.code eq null ? 'none' : self.address.zip.code";
+            Assertions.assertEquals(1, Precompiled.getEvaluators(key("self", choice)).size());
+            Assertions.assertEquals("none", evaluate(choice, person));
+            // Other targets are evaluated by the compiled expression
+            Assertions.assertEquals(Boolean.FALSE, evaluate(condition, Map.of("active", false)));
+
+            // Method calls are not generated, nor are expressions not compiled
+            Assertions.assertTrue(Precompiled.getEvaluators(key("self", "self.name.length() gt 3")).isEmpty());
+            Assertions.assertTrue(Precompiled.getEvaluators(key("self", "self.name ne null")).isEmpty());
+            // JDBC statement parameters are always compiled
+            Assertions.assertEquals(1, Precompiled.getEvaluators(key("self", "self.name")).size());
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    @Test
+    void testRecordPropertiesAreComponents() throws Throwable {
+        Assumptions.assumeTrue(Runtime.version().feature() >= 16, "Records not supported");
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile("sample.Point", ""
+                + "package sample;\n"
+                + "import io.xlate.validation.constraints.Expression;\n"
+                + "@Expression(\"self.x le self.y\")\n"
+                + "public record Point(int x, int y) {\n"
+                + "    public int getSum() { return x + y; }\n"
+                + "}\n", "--release", "17");
+
+        Assertions.assertEquals(List.of(), messages(diagnostics, Diagnostic.Kind.ERROR));
+
+        diagnostics = compile("sample.Range", ""
+                + "package sample;\n"
+                + "public record Range(int low, int high) {\n"
+                + "}\n", "--release", "17", "-proc:none");
+
+        Assertions.assertEquals(List.of(), messages(diagnostics, Diagnostic.Kind.ERROR));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { output.resolve("classes").toUri().toURL() }, getClass().getClassLoader())) {
+            // Generated
+            Class<?> pointType = loader.loadClass("sample.Point");
+            Assertions.assertEquals(List.of("x", "y"),
+                                    Precompiled.getAccessors(pointType).keySet().stream().sorted().collect(Collectors.toList()));
+
+            // Discovered at runtime
+            Class<?> rangeType = loader.loadClass("sample.Range");
+            Object range = rangeType.getConstructor(int.class, int.class).newInstance(1, 2);
+            Assertions.assertEquals(List.of("high", "low"),
+                                    PropertyAccessors.findAccessors(rangeType).keySet().stream().sorted().collect(Collectors.toList()));
+            Assertions.assertEquals(2, PropertyAccessors.getAccessor(range, "high").invoke(range));
+            Assertions.assertNull(PropertyAccessors.getAccessor(range, "hashCode"));
+            Assertions.assertNull(PropertyAccessors.getAccessor(range, "toString"));
+        }
+    }
+
+    @Test
+    void testInvalidConstraintsReported() throws IOException {
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile("sample.Invalid", ""
+                + "package sample;\n"
+                + "import io.xlate.validation.constraints.Expression;\n"
+                + "import io.xlate.validation.constraints.JdbcStatement;\n"
+                + "@Expression(\"self.name eq\")\n"
+                + "@Expression(value = \"true\", classImports = \"no.such.Type\")\n"
+                + "@Expression(value = \"true\", staticImports = \"java.lang.Math.nothing\")\n"
+                + "@Expression(value = \"true\", targetName = \"not\")\n"
+                + "@Expression(value = \"self\", predicate = Invalid.Abstract.class)\n"
+                + "@JdbcStatement(value = \"SELECT 1 FROM T WHERE A = ? AND B = '?'\", parameters = { \"self.a\", \"self.b\" })\n"
+                + "public class Invalid {\n"
+                + "    public static abstract class Abstract implements java.util.function.Predicate<Object> {\n"
+                + "    }\n"
+                + "}\n");
+
+        List<String> errors = messages(diagnostics, Diagnostic.Kind.ERROR);
+        Assertions.assertEquals(5, errors.size(), () -> errors.toString());
+        Assertions.assertTrue(errors.get(0).startsWith("Expression `self.name eq` could not be parsed"));
+        Assertions.assertEquals("Class import `no.such.Type` could not be resolved", errors.get(1));
+        Assertions.assertEquals("Static import `java.lang.Math.nothing` could not be resolved", errors.get(2));
+        Assertions.assertEquals("Target name `not` is not a valid EL identifier", errors.get(3));
+        Assertions.assertEquals("Predicate sample.Invalid.Abstract must be a public class with a public constructor without parameters",
+                                errors.get(4));
+
+        List<String> warnings = messages(diagnostics, Diagnostic.Kind.WARNING);
+        Assertions.assertTrue(warnings.contains("Statement has 1 parameter marker(s) but 2 parameter(s) are given"),
+                              () -> warnings.toString());
+        Assertions.assertFalse(Files.exists(output.resolve("classes/sample/Invalid_PrecompiledExpressions.class")));
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import jakarta.validation.ConstraintDeclarationException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.xlate.validation.constraints.Snapshot;
+import io.xlate.validation.internal.constraintvalidators.ReferenceSnapshot.LongKeys;
+import io.xlate.validation.internal.constraintvalidators.ReferenceSnapshot.ObjectKeys;
+
+class ReferenceSnapshotTest {
+
+    DataSource dataSource;
+
+    static Connection getConnection() throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:mem:snapshots;DB_CLOSE_DELAY=-1");
+    }
+
+    static void execute(String... sql) throws SQLException {
+        try (Connection connection = getConnection(); Statement statement = connection.createStatement()) {
+            for (String s : sql) {
+                statement.execute(s);
+            }
+        }
+    }
+
+    static Snapshot snapshot(String query, long refresh, ChronoUnit unit) {
+        Snapshot snapshot = Mockito.mock(Snapshot.class);
+        Mockito.when(snapshot.value()).thenReturn(query);
+        Mockito.when(snapshot.refresh()).thenReturn(refresh);
+        Mockito.when(snapshot.refreshUnit()).thenReturn(unit);
+        return snapshot;
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = Mockito.mock(DataSource.class);
+        Mockito.when(dataSource.getConnection()).thenAnswer(invocation -> getConnection());
+        execute("CREATE TABLE CODES (ID BIGINT, CODE VARCHAR(10), VERSION INT)",
+                "INSERT INTO CODES VALUES (0, 'USD', 1), (5, 'EUR', 1), (-3, 'GBP', 2), (5, 'EUR', 1), (NULL, 'JPY', 1)");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        execute("DROP TABLE IF EXISTS CODES");
+    }
+
+    @Test
+    void testIntegralKeysHeldAsLongs() {
+        ReferenceSnapshot target = ReferenceSnapshot.getInstance("", dataSource, snapshot("SELECT ID FROM CODES", 0, ChronoUnit.MINUTES), 1);
+
+        Assertions.assertTrue(target.getKeys() instanceof LongKeys);
+        Assertions.assertEquals(3, target.getKeys().size());
+        Assertions.assertTrue(target.contains(new Object[] { 0 }));
+        Assertions.assertTrue(target.contains(new Object[] { 5L }));
+        Assertions.assertTrue(target.contains(new Object[] { (short) -3 }));
+        Assertions.assertTrue(target.contains(new Object[] { new BigDecimal("5.0") }));
+        Assertions.assertFalse(target.contains(new Object[] { new BigDecimal("5.5") }));
+        Assertions.assertFalse(target.contains(new Object[] { 4 }));
+        // Compared by the database, after converting to the column's type
+        Assertions.assertNull(target.contains(new Object[] { "5" }));
+        Assertions.assertFalse(target.contains(new Object[] { null }));
+    }
+
+    @Test
+    void testLongKeysOfManyValues() {
+        Random random = new Random(1);
+        long[] values = random.longs(10_000).toArray();
+        LongKeys target = new LongKeys(new KeyColumns(new KeyColumns.Kind[] { KeyColumns.Kind.INTEGRAL }, new String[1]), values, values.length);
+        Set<Long> expected = Arrays.stream(values).boxed().collect(Collectors.toSet());
+
+        Assertions.assertEquals(expected.size(), target.size());
+
+        for (long value : values) {
+            Assertions.assertTrue(target.contains(value));
+        }
+
+        random.longs(10_000).filter(v -> !expected.contains(v)).forEach(v -> Assertions.assertFalse(target.contains(v)));
+    }
+
+    @Test
+    void testMultipleColumnKeys() {
+        ReferenceSnapshot target = ReferenceSnapshot.getInstance("", dataSource, snapshot("SELECT CODE, VERSION FROM CODES", 0, ChronoUnit.MINUTES), 2);
+
+        Assertions.assertTrue(target.getKeys() instanceof ObjectKeys);
+        Assertions.assertEquals(4, target.getKeys().size());
+        Assertions.assertTrue(target.contains(new Object[] { "GBP", 2L }));
+        Assertions.assertTrue(target.contains(new Object[] { "JPY", 1 }));
+        Assertions.assertFalse(target.contains(new Object[] { "GBP", 1 }));
+    }
+
+    @Test
+    void testKeysComparedByColumnType() throws SQLException {
+        execute("CREATE TABLE PRICES (AMOUNT DECIMAL(10, 2), CODE CHAR(5), VALID_FROM DATE, RATE DOUBLE)",
+                "INSERT INTO PRICES VALUES (1.50, 'EUR', DATE '2020-01-31', 0.25), (NULL, 'USD', DATE '2021-01-01', 1)");
+
+        try {
+            ReferenceSnapshot amounts = ReferenceSnapshot.getInstance("", dataSource, snapshot("SELECT AMOUNT FROM PRICES", 0, ChronoUnit.MINUTES), 1);
+            Assertions.assertEquals(1, amounts.getKeys().size());
+            Assertions.assertTrue(amounts.contains(new Object[] { new BigDecimal("1.5") }));
+            Assertions.assertTrue(amounts.contains(new Object[] { new BigDecimal("1.500") }));
+            Assertions.assertTrue(amounts.contains(new Object[] { 1.5d }));
+            Assertions.assertFalse(amounts.contains(new Object[] { 1 }));
+            Assertions.assertNull(amounts.contains(new Object[] { "1.5" }));
+
+            ReferenceSnapshot codes = ReferenceSnapshot.getInstance("", dataSource, snapshot("SELECT CODE, VALID_FROM FROM PRICES", 0, ChronoUnit.MINUTES), 2);
+            Assertions.assertTrue(codes.contains(new Object[] { "EUR", LocalDate.of(2020, 1, 31) }));
+            Assertions.assertTrue(codes.contains(new Object[] { "EUR  ", Date.valueOf("2020-01-31") }));
+            Assertions.assertFalse(codes.contains(new Object[] { "EUR", LocalDate.of(2020, 2, 1) }));
+            Assertions.assertNull(codes.contains(new Object[] { "EUR", "2020-01-31" }));
+            Assertions.assertFalse(codes.contains(new Object[] { null, LocalDate.of(2020, 1, 31) }));
+
+            ReferenceSnapshot rates = ReferenceSnapshot.getInstance("", dataSource, snapshot("SELECT RATE FROM PRICES", 0, ChronoUnit.MINUTES), 1);
+            Assertions.assertTrue(rates.contains(new Object[] { 0.25f }));
+            Assertions.assertTrue(rates.contains(new Object[] { 1L }));
+            Assertions.assertTrue(rates.contains(new Object[] { new BigDecimal("1.00") }));
+        } finally {
+            execute("DROP TABLE PRICES");
+        }
+    }
+
+    @Test
+    void testRefreshReplacesKeys() throws SQLException {
+        ReferenceSnapshot target = new ReferenceSnapshot(dataSource, "SELECT CODE FROM CODES", 1);
+        target.refresh();
+        Assertions.assertFalse(target.contains(new Object[] { "CHF" }));
+
+        execute("INSERT INTO CODES VALUES (7, 'CHF', 1)");
+        target.refresh();
+        Assertions.assertTrue(target.contains(new Object[] { "CHF" }));
+
+        // Previous keys are kept when a refresh fails
+        long failures = ReferenceSnapshot.getRefreshFailureCounts().get("SELECT CODE FROM CODES");
+        execute("DROP TABLE CODES");
+        target.refresh();
+        Assertions.assertTrue(target.contains(new Object[] { "CHF" }));
+        Assertions.assertEquals(failures + 1, ReferenceSnapshot.getRefreshFailureCounts().get("SELECT CODE FROM CODES"));
+    }
+
+    @Test
+    void testScheduledRefresh() throws SQLException, InterruptedException {
+        Snapshot annotation = snapshot("SELECT CODE FROM CODES WHERE VERSION > 0", 20, ChronoUnit.MILLIS);
+        ReferenceSnapshot target = ReferenceSnapshot.getInstance("", dataSource, annotation, 1);
+        Assertions.assertFalse(target.contains(new Object[] { "AUD" }));
+
+        execute("INSERT INTO CODES VALUES (8, 'AUD', 1)");
+
+        for (int i = 0; i < 200 && !target.contains(new Object[] { "AUD" }); i++) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertTrue(target.contains(new Object[] { "AUD" }));
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        Snapshot months = snapshot("SELECT ID FROM CODES", 1, ChronoUnit.MONTHS);
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                                                    () -> ReferenceSnapshot.getInstance("", dataSource, months, 1));
+        Assertions.assertEquals("Invalid refresh interval 1 Months", ex.getMessage());
+
+        Snapshot columns = snapshot("SELECT ID, CODE FROM CODES", 0, ChronoUnit.MINUTES);
+        ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                     () -> ReferenceSnapshot.getInstance("", dataSource, columns, 1));
+        Assertions.assertEquals("Query `SELECT ID, CODE FROM CODES` must select 1 column(s), one for each parameter", ex.getMessage());
+
+        Assertions.assertThrows(ConstraintDeclarationException.class,
+                                () -> ReferenceSnapshot.getInstance("", dataSource, columns, 0));
+    }
+}
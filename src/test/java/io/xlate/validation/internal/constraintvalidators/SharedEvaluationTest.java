@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import io.xlate.validation.constraints.Expression;
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+class SharedEvaluationTest {
+
+    interface Other {
+    }
+
+    public static class Functions {
+        static int calls;
+
+        public static int measure(String value) {
+            calls++;
+            return value.length();
+        }
+    }
+
+    @Expression(value = "self.name ne null", shared = true)
+    @Expression(value = "self.name ne ''", shared = true)
+    @Expression(value = "self.name ne 'other'", shared = true, groups = Other.class)
+    @Expression(value = "self.name ne 'unshared'")
+    public static class Bean {
+        public String getName() {
+            return "name";
+        }
+    }
+
+    @Expression(value = "self.name ne 'interface'", shared = true)
+    public interface Named {
+        String getName();
+    }
+
+    public static class NamedBean extends Bean implements Named {
+    }
+
+    static final Expression[] EXPRESSIONS = Bean.class.getAnnotationsByType(Expression.class);
+
+    static final SharedEvaluation.Participant[] PARTICIPANTS = Arrays.stream(EXPRESSIONS)
+            .map(SharedEvaluation.Participant::new)
+            .toArray(SharedEvaluation.Participant[]::new);
+
+    int reads;
+
+    @Test
+    void testUnsharedConstraintNotJoined() {
+        Assertions.assertNull(SharedEvaluation.join(PARTICIPANTS[3], new Bean()));
+        Assertions.assertNull(SharedEvaluation.join(PARTICIPANTS[0], new Object()));
+        Assertions.assertNull(SharedEvaluation.join(PARTICIPANTS[0], null));
+    }
+
+    @Test
+    void testPassEndsWhenAllMembersEvaluated() {
+        Bean bean = new Bean();
+
+        SharedEvaluation first = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        first.leave();
+        SharedEvaluation second = SharedEvaluation.join(PARTICIPANTS[1], bean);
+        Assertions.assertSame(first, second);
+        second.leave();
+
+        // Previous pass complete
+        SharedEvaluation third = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        Assertions.assertNotSame(first, third);
+        third.leave();
+        SharedEvaluation.join(PARTICIPANTS[1], bean).leave();
+    }
+
+    @Test
+    void testPassRestartsForRepeatedMemberOrNewTarget() {
+        Bean bean = new Bean();
+
+        SharedEvaluation first = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        first.leave();
+        SharedEvaluation repeated = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        Assertions.assertNotSame(first, repeated);
+        repeated.leave();
+
+        SharedEvaluation other = SharedEvaluation.join(PARTICIPANTS[1], new Bean());
+        Assertions.assertNotSame(repeated, other);
+        other.leave();
+    }
+
+    @Test
+    void testGroupsHaveSeparatePasses() {
+        Bean bean = new Bean();
+
+        SharedEvaluation defaultGroup = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        SharedEvaluation otherGroup = SharedEvaluation.join(PARTICIPANTS[2], bean);
+        Assertions.assertNotSame(defaultGroup, otherGroup);
+        otherGroup.leave();
+        defaultGroup.leave();
+        SharedEvaluation.join(PARTICIPANTS[1], bean).leave();
+    }
+
+    @Test
+    void testInterfaceConstraintNotJoined() {
+        Expression onInterface = Named.class.getAnnotation(Expression.class);
+        Assertions.assertNull(SharedEvaluation.join(new SharedEvaluation.Participant(onInterface), new NamedBean()));
+
+        // Members are those declared by the classes
+        NamedBean bean = new NamedBean();
+        SharedEvaluation first = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        first.leave();
+        Assertions.assertSame(first, SharedEvaluation.join(PARTICIPANTS[1], bean));
+        first.leave();
+        Assertions.assertNotSame(first, SharedEvaluation.join(PARTICIPANTS[0], bean));
+        SharedEvaluation.endPasses();
+    }
+
+    @Test
+    void testSkippedMemberCompletesPass() {
+        Bean bean = new Bean();
+
+        SharedEvaluation first = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        first.leave();
+        SharedEvaluation.skip(PARTICIPANTS[1], bean);
+
+        // Previous pass complete
+        SharedEvaluation next = SharedEvaluation.join(PARTICIPANTS[1], bean);
+        Assertions.assertNotSame(first, next);
+        next.leave();
+        SharedEvaluation.skip(PARTICIPANTS[0], bean);
+    }
+
+    @Test
+    void testNewTargetEndsIncompletePasses() {
+        Bean bean = new Bean();
+
+        SharedEvaluation defaultGroup = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        defaultGroup.leave();
+
+        // Another target on this thread, the incomplete pass over `bean` ends
+        Bean other = new Bean();
+        SharedEvaluation.join(PARTICIPANTS[2], other).leave();
+
+        SharedEvaluation next = SharedEvaluation.join(PARTICIPANTS[1], bean);
+        Assertions.assertNotSame(defaultGroup, next);
+        next.end();
+    }
+
+    @Expression(value = "self.name ne null", shared = true)
+    @Expression(value = "self.name ne ''", shared = true)
+    @Expression(value = "self.name ne 'x'", shared = true)
+    public static class Failing {
+        public String getName() {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    @Test
+    void testFailedEvaluationEndsPass() {
+        Expression[] expressions = Failing.class.getAnnotationsByType(Expression.class);
+        ExpressionValidator validator = new ExpressionValidator();
+        validator.initialize(expressions[0]);
+        Failing failing = new Failing();
+
+        SharedEvaluation started = SharedEvaluation.join(new SharedEvaluation.Participant(expressions[1]), failing);
+        started.leave();
+        Assertions.assertThrows(RuntimeException.class, () -> validator.validate(failing));
+
+        // Not continued by the remaining member
+        SharedEvaluation next = SharedEvaluation.join(new SharedEvaluation.Participant(expressions[2]), failing);
+        Assertions.assertNotSame(started, next);
+        next.end();
+    }
+
+    @Test
+    void testPropertyReadOncePerPass() throws Throwable {
+        Bean bean = new Bean();
+        MethodHandle accessor = MethodHandles.lookup()
+                .findVirtual(SharedEvaluationTest.class, "read", MethodType.methodType(Object.class, Object.class))
+                .bindTo(this)
+                .asType(MethodType.methodType(Object.class, Object.class));
+
+        SharedEvaluation pass = SharedEvaluation.join(PARTICIPANTS[0], bean);
+        Assertions.assertEquals("name", pass.getValue(bean, "name", accessor));
+        Assertions.assertEquals("name", pass.getValue(bean, "name", accessor));
+        Assertions.assertEquals(1, reads);
+        pass.leave();
+        SharedEvaluation.join(PARTICIPANTS[1], bean).leave();
+    }
+
+    Object read(Object bean) {
+        reads++;
+        return ((Bean) bean).getName();
+    }
+
+    @Test
+    void testCommonSubexpressionEvaluatedOncePerPass() {
+        String[] none = {};
+        String[] imports = { Functions.class.getName() + ".measure" };
+        TemplateELContext template = new TemplateELContext("self", none, none, imports);
+        CompiledExpression when = CompiledExpression.compile(template, "measure(self.name) gt 0").share(template);
+        CompiledExpression value = CompiledExpression.compile(template, "measure( self.name ) gt 0 and self.name ne 'x'")
+                .share(template);
+        Bean bean = new Bean();
+        Functions.calls = 0;
+
+        try (TargetELContext context = template.acquireContext(bean)) {
+            context.shared = SharedEvaluation.join(PARTICIPANTS[0], bean);
+            Assertions.assertEquals(Boolean.TRUE, when.getValue(context));
+            Assertions.assertEquals(Boolean.TRUE, value.getValue(context));
+        }
+
+        Assertions.assertEquals(1, Functions.calls);
+
+        try (TargetELContext context = template.acquireContext(bean)) {
+            context.shared = SharedEvaluation.join(PARTICIPANTS[1], bean);
+            Assertions.assertEquals(Boolean.TRUE, value.getValue(context));
+        }
+
+        Assertions.assertEquals(1, Functions.calls);
+
+        // Without a shared evaluation
+        try (TargetELContext context = template.acquireContext(bean)) {
+            Assertions.assertEquals(Boolean.TRUE, when.getValue(context));
+            Assertions.assertEquals(Boolean.TRUE, value.getValue(context));
+        }
+
+        Assertions.assertEquals(3, Functions.calls);
+    }
+
+    @Test
+    void testEquivalentSubexpressionsShareKey() {
+        String[] none = {};
+        String[] imports = { Functions.class.getName() + ".measure" };
+        TemplateELContext template = new TemplateELContext("self", none, none, imports);
+        CompiledExpression when = CompiledExpression.compile(template, "measure(self.name) == 4").share(template);
+        CompiledExpression value = CompiledExpression.compile(template, "measure(self['name']) eq 4 and self.name ne 'x'")
+                .share(template);
+        CompiledExpression other = CompiledExpression.compile(template, "measure(self.name) eq 5").share(template);
+        Bean bean = new Bean();
+        Functions.calls = 0;
+
+        try (TargetELContext context = template.acquireContext(bean)) {
+            context.shared = SharedEvaluation.join(PARTICIPANTS[0], bean);
+            Assertions.assertEquals(Boolean.TRUE, when.getValue(context));
+            Assertions.assertEquals(Boolean.TRUE, value.getValue(context));
+            Assertions.assertEquals(1, Functions.calls);
+            Assertions.assertEquals(Boolean.FALSE, other.getValue(context));
+            Assertions.assertEquals(2, Functions.calls);
+        }
+
+        SharedEvaluation.join(PARTICIPANTS[1], bean).leave();
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.IntStream;
+
+import jakarta.el.ELException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.xlate.validation.internal.constraintvalidators.TemplateELContext.TargetELContext;
+
+class StringFunctionsTest {
+
+    Object evaluate(CompiledExpression expression, TemplateELContext template, Object target) {
+        try (TargetELContext context = template.acquireContext(target)) {
+            return expression.getValue(context);
+        }
+    }
+
+    @Test
+    void testPatternsCompiledOnce() {
+        Assertions.assertSame(StringFunctions.pattern("[A-Z]{3}[0-9]+"), StringFunctions.pattern("[A-Z]{3}[0-9]+"));
+        Assertions.assertTrue(StringFunctions.matches("ABC123", "[A-Z]{3}[0-9]+"));
+        Assertions.assertFalse(StringFunctions.matches("ABC123x", "[A-Z]{3}[0-9]+"));
+        Assertions.assertTrue(StringFunctions.find("xABC123x", "[A-Z]{3}[0-9]+"));
+        Assertions.assertFalse(StringFunctions.find("abc", "[A-Z]"));
+    }
+
+    @Test
+    void testPatternCacheBounded() {
+        try {
+            IntStream.range(0, StringFunctions.MAX_PATTERNS * 4)
+                .parallel()
+                .forEach(i -> Assertions.assertTrue(StringFunctions.matches("x" + i, "x" + i)));
+
+            Assertions.assertEquals(StringFunctions.MAX_PATTERNS, StringFunctions.PATTERNS.size());
+            Assertions.assertEquals(StringFunctions.MAX_PATTERNS, StringFunctions.PATTERN_COUNT.get());
+            // Not cached once full, but still matched
+            Assertions.assertTrue(StringFunctions.matches("full", "f.*"));
+            Assertions.assertFalse(StringFunctions.PATTERNS.containsKey("f.*"));
+        } finally {
+            StringFunctions.PATTERNS.clear();
+            StringFunctions.PATTERN_COUNT.set(0);
+        }
+    }
+
+    @Test
+    void testInvalidPatternThrows() {
+        Assertions.assertThrows(PatternSyntaxException.class, () -> StringFunctions.matches("", "(unclosed"));
+    }
+
+    @Test
+    void testStringChecks() {
+        Assertions.assertTrue(StringFunctions.startsWith("ABC123", "AB"));
+        Assertions.assertFalse(StringFunctions.endsWith("ABC123", "AB"));
+        Assertions.assertTrue(StringFunctions.lengthBetween("ABC", 1, 3));
+        Assertions.assertFalse(StringFunctions.lengthBetween("ABCD", 1, 3));
+        Assertions.assertFalse(StringFunctions.lengthBetween("", 1, 3));
+        Assertions.assertTrue(StringFunctions.digits("0123456789"));
+        Assertions.assertFalse(StringFunctions.digits(""));
+        Assertions.assertFalse(StringFunctions.digits("12a"));
+        Assertions.assertTrue(StringFunctions.letters("azAZ"));
+        Assertions.assertFalse(StringFunctions.letters("az1"));
+        Assertions.assertTrue(StringFunctions.alphanumeric("az09AZ"));
+        Assertions.assertFalse(StringFunctions.alphanumeric("az-09"));
+        Assertions.assertTrue(StringFunctions.ascii("~ !"));
+        Assertions.assertFalse(StringFunctions.ascii("café"));
+        Assertions.assertTrue(StringFunctions.charsIn("ACGT", "ACGT"));
+        Assertions.assertFalse(StringFunctions.charsIn("ACGU", "ACGT"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    void testFunctionsAvailableToExpressions(boolean compiled) {
+        TemplateELContext template = new TemplateELContext("self", new String[0], new String[0], new String[0]);
+        String expression = "str:matches(self, '[A-Z]{3}[0-9]+') and str:lengthBetween(self, 4, 8)";
+        CompiledExpression result = compiled
+                ? CompiledExpression.compile(template, expression)
+                : CompiledExpression.interpret(template, expression);
+
+        Assertions.assertEquals(compiled, result.isCompiled());
+        Assertions.assertEquals(Boolean.TRUE, evaluate(result, template, "ABC123"));
+        Assertions.assertEquals(Boolean.FALSE, evaluate(result, template, "ABC123456"));
+        Assertions.assertEquals(Boolean.FALSE, evaluate(result, template, null));
+    }
+
+    @Test
+    void testInvalidPatternInExpression() {
+        TemplateELContext template = new TemplateELContext("self", new String[0], new String[0], new String[0]);
+        CompiledExpression result = CompiledExpression.compile(template, "str:matches(self, '(unclosed')");
+        Assertions.assertThrows(ELException.class, () -> evaluate(result, template, "x"));
+    }
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (C) 2018 xlate.io LLC, http://www.xlate.io
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package io.xlate.validation.internal.constraintvalidators;
+
+import java.time.temporal.ChronoUnit;
+import java.util.stream.IntStream;
+
+import jakarta.validation.ConstraintDeclarationException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+import io.xlate.validation.constraints.ResultCache;
+
+class ValidationResultsTest {
+
+    static ResultCache cache(int size, long ttl, ChronoUnit unit, ResultCache.KeyType key) {
+        ResultCache cache = Mockito.mock(ResultCache.class);
+        Mockito.when(cache.size()).thenReturn(size);
+        Mockito.when(cache.ttl()).thenReturn(ttl);
+        Mockito.when(cache.ttlUnit()).thenReturn(unit);
+        Mockito.when(cache.key()).thenReturn(key);
+        return cache;
+    }
+
+    @Test
+    void testDisabledBySize() {
+        Assertions.assertNull(ValidationResults.of(cache(0, 0, ChronoUnit.SECONDS, ResultCache.KeyType.IDENTITY)));
+    }
+
+    @Test
+    void testLeastRecentlyUsedEvicted() {
+        ValidationResults results = ValidationResults.of(cache(2, 0, ChronoUnit.SECONDS, ResultCache.KeyType.EQUALS));
+        results.put("a", true);
+        results.put("b", false);
+        Assertions.assertEquals(Boolean.TRUE, results.get("a"));
+        results.put("c", true);
+
+        Assertions.assertEquals(2, results.size());
+        Assertions.assertEquals(Boolean.TRUE, results.get("a"));
+        Assertions.assertNull(results.get("b"));
+        Assertions.assertEquals(Boolean.TRUE, results.get("c"));
+    }
+
+    @Test
+    void testBoundedUnderConcurrentUse() {
+        ValidationResults results = ValidationResults.of(cache(100, 0, ChronoUnit.SECONDS, ResultCache.KeyType.EQUALS));
+
+        IntStream.range(0, 10_000).parallel().forEach(i -> {
+            Integer target = i % 500;
+            Boolean cached = results.get(target);
+
+            if (cached != null) {
+                Assertions.assertEquals(target % 2 == 0, cached);
+            } else {
+                results.put(target, target % 2 == 0);
+            }
+        });
+
+        Assertions.assertTrue(results.size() <= 100);
+        Assertions.assertTrue(results.size() > 0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 8, 9, 16, 24, 100, 1000 })
+    void testSetsHoldAtMostWays(int size) {
+        ValidationResults results = ValidationResults.of(cache(size, 0, ChronoUnit.SECONDS, ResultCache.KeyType.EQUALS));
+
+        Assertions.assertTrue(results.ways <= ValidationResults.WAYS, () -> results.ways + " ways");
+        Assertions.assertEquals(0, results.sets & (results.sets - 1), () -> results.sets + " sets");
+        Assertions.assertTrue(results.sets * results.ways <= size);
+        Assertions.assertTrue(results.sets * results.ways > size - results.sets);
+    }
+
+    @Test
+    void testIdentityKeys() {
+        ValidationResults results = ValidationResults.of(cache(2, 0, ChronoUnit.SECONDS, ResultCache.KeyType.IDENTITY));
+        String key = new String("a");
+        results.put(key, true);
+
+        Assertions.assertEquals(Boolean.TRUE, results.get(key));
+        Assertions.assertNull(results.get(new String("a")));
+        results.put(null, false);
+        Assertions.assertEquals(Boolean.FALSE, results.get(null));
+    }
+
+    @Test
+    void testExpiredResultsIgnored() throws InterruptedException {
+        ValidationResults results = ValidationResults.of(cache(2, 1, ChronoUnit.MILLIS, ResultCache.KeyType.EQUALS));
+        results.put("a", true);
+        Thread.sleep(5);
+        Assertions.assertNull(results.get("a"));
+        results.put("a", false);
+        Assertions.assertEquals(1, results.size());
+    }
+
+    @Test
+    void testOldestEvictedFirst() {
+        ResultCache cache = cache(2, 0, ChronoUnit.SECONDS, ResultCache.KeyType.EQUALS);
+        Mockito.when(cache.eviction()).thenReturn(ResultCache.EvictionPolicy.FIFO);
+        ValidationResults results = ValidationResults.of(cache);
+        results.put("a", true);
+        results.put("b", false);
+        Assertions.assertEquals(Boolean.TRUE, results.get("a"));
+        results.put("c", true);
+
+        Assertions.assertNull(results.get("a"));
+        Assertions.assertEquals(Boolean.FALSE, results.get("b"));
+        Assertions.assertEquals(Boolean.TRUE, results.get("c"));
+    }
+
+    @Test
+    void testNegativeResultsExpireSeparately() throws InterruptedException {
+        ResultCache cache = cache(4, 0, ChronoUnit.MILLIS, ResultCache.KeyType.EQUALS);
+        Mockito.when(cache.negativeTtl()).thenReturn(1L);
+        ValidationResults results = ValidationResults.of(cache);
+        results.put("a", true);
+        results.put("b", false);
+        Thread.sleep(5);
+
+        Assertions.assertEquals(Boolean.TRUE, results.get("a"));
+        Assertions.assertNull(results.get("b"));
+    }
+
+    @Test
+    void testHitsAndMissesCounted() {
+        ResultCache cache = cache(2, 0, ChronoUnit.SECONDS, ResultCache.KeyType.EQUALS);
+        ResultCacheCounts.resetCounts();
+        ValidationResults results = ValidationResults.of("counted", cache);
+        ValidationResults other = ValidationResults.of("counted", cache);
+
+        Assertions.assertNull(results.get("a"));
+        results.put("a", true);
+        Assertions.assertEquals(Boolean.TRUE, results.get("a"));
+        Assertions.assertNull(other.get("a"));
+
+        Assertions.assertEquals(1L, ResultCacheCounts.getHitCounts().get("counted"));
+        Assertions.assertEquals(2L, ResultCacheCounts.getMissCounts().get("counted"));
+        Assertions.assertEquals(1L, other.getHits());
+    }
+
+    @Test
+    void testInvalidTtl() {
+        ResultCache months = cache(2, 1, ChronoUnit.MONTHS, ResultCache.KeyType.EQUALS);
+        ConstraintDeclarationException ex = Assertions.assertThrows(ConstraintDeclarationException.class,
+                                                                    () -> ValidationResults.of(months));
+        Assertions.assertEquals("Invalid result cache TTL 1 Months", ex.getMessage());
+
+        ResultCache negative = cache(2, -1, ChronoUnit.SECONDS, ResultCache.KeyType.EQUALS);
+        Assertions.assertThrows(ConstraintDeclarationException.class, () -> ValidationResults.of(negative));
+
+        ResultCache negativeTtl = cache(2, 1, ChronoUnit.SECONDS, ResultCache.KeyType.EQUALS);
+        Mockito.when(negativeTtl.negativeTtl()).thenReturn(Long.MAX_VALUE);
+        ex = Assertions.assertThrows(ConstraintDeclarationException.class, () -> ValidationResults.of(negativeTtl));
+        Assertions.assertEquals("Invalid result cache TTL " + Long.MAX_VALUE + " Seconds", ex.getMessage());
+    }
+}